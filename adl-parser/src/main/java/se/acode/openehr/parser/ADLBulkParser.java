@@ -0,0 +1,347 @@
+/*
+ * component:   "openEHR Java Reference Implementation"
+ * description: "Java ADL Parser"
+ * keywords:    "parser"
+ *
+ * file:        "$URL$"
+ * revision:    "$LastChangedRevision$"
+ * last_change: "$LastChangedDate$"
+ */
+
+package se.acode.openehr.parser;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openehr.am.archetype.Archetype;
+import org.openehr.rm.support.identification.ArchetypeID;
+
+/**
+ * Parses all ADL files of a directory tree or list of files, spread over
+ * a number of threads.
+ * <p/>
+ * Each thread parses files taken one at a time from the shared list with
+ * its own parser, re-initialized for each file. A file that fails to
+ * parse does not stop the others; its exception is kept in the result.
+ * The result does not depend on the number of threads: where more than
+ * one file has the same archetype id, the archetype of the first file in
+ * list order is taken and the others are reported as duplicates.
+ * <p/>
+ * In header only mode the definition sections are skipped; the definition
+ * of each archetype is parsed from its file when first needed.
+ *
+ * @version 1.0
+ */
+public class ADLBulkParser {
+
+    /**
+     * Creates a bulk parser using one thread per available processor
+     */
+    public ADLBulkParser() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a bulk parser using given number of threads
+     *
+     * @param threads at least 1
+     * @throws IllegalArgumentException if threads less than 1
+     */
+    public ADLBulkParser(int threads) {
+        this(threads, false);
+    }
+
+    /**
+     * Creates a bulk parser using given number of threads
+     *
+     * @param threads at least 1
+     * @param headerOnly true to skip the definition sections, leaving them
+     *          to be loaded on first access
+     * @throws IllegalArgumentException if threads less than 1
+     */
+    public ADLBulkParser(int threads, boolean headerOnly) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads less than 1");
+        }
+        this.threads = threads;
+        this.headerOnly = headerOnly;
+    }
+
+    /**
+     * Parses all files ending with ".adl" under given directory, in path
+     * order
+     *
+     * @param directory not null
+     * @return result
+     * @throws IllegalArgumentException if directory is not a directory
+     */
+    public Result parseDirectory(File directory) {
+        if (directory == null || !directory.isDirectory()) {
+            throw new IllegalArgumentException("not a directory: " + directory);
+        }
+        List<File> files = new ArrayList<File>();
+        collect(directory, files);
+        Collections.sort(files);
+        return parseFiles(files);
+    }
+
+    /**
+     * Parses given files
+     *
+     * @param files not null
+     * @return result
+     */
+    public Result parseFiles(List<File> files) {
+        final File[] list = files.toArray(new File[files.size()]);
+        final Archetype[] archetypes = new Archetype[list.length];
+        final Exception[] failures = new Exception[list.length];
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicLong parseNanos = new AtomicLong();
+        long start = System.currentTimeMillis();
+
+        int workers = Math.min(threads, list.length);
+        if (workers <= 1) {
+            new Worker(list, archetypes, failures, next, parseNanos,
+                    headerOnly).run();
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(workers);
+            try {
+                List<Future<?>> futures = new ArrayList<Future<?>>();
+                for (int i = 0; i < workers; i++) {
+                    futures.add(executor.submit(new Worker(list, archetypes,
+                            failures, next, parseNanos, headerOnly)));
+                }
+                for (Future<?> future : futures) {
+                    await(future);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        Map<ArchetypeID, Archetype> map =
+                new LinkedHashMap<ArchetypeID, Archetype>();
+        Map<File, Exception> errors = new LinkedHashMap<File, Exception>();
+        Map<File, ArchetypeID> duplicates =
+                new LinkedHashMap<File, ArchetypeID>();
+        for (int i = 0; i < list.length; i++) {
+            if (failures[i] != null) {
+                errors.put(list[i], failures[i]);
+            } else {
+                ArchetypeID id = archetypes[i].getArchetypeId();
+                if (map.containsKey(id)) {
+                    duplicates.put(list[i], id);
+                } else {
+                    map.put(id, archetypes[i]);
+                }
+            }
+        }
+        return new Result(list.length, map, errors, duplicates,
+                System.currentTimeMillis() - start,
+                parseNanos.get() / 1000000L);
+    }
+
+    /*
+     * Collects files ending with ".adl" under given directory
+     */
+    static void collect(File directory, List<File> files) {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collect(child, files);
+            } else if (child.getName().endsWith(ADL_EXTENSION)) {
+                files.add(child);
+            }
+        }
+    }
+
+    private static void await(Future<?> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    future.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw (RuntimeException) cause;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /*
+     * Parses files with one parser until none is left
+     */
+    private static final class Worker implements Runnable {
+
+        Worker(File[] files, Archetype[] archetypes, Exception[] failures,
+                AtomicInteger next, AtomicLong parseNanos,
+                boolean headerOnly) {
+            this.files = files;
+            this.archetypes = archetypes;
+            this.failures = failures;
+            this.next = next;
+            this.parseNanos = parseNanos;
+            this.headerOnly = headerOnly;
+        }
+
+        public void run() {
+            ADLParser parser = null;
+            for (int i; (i = next.getAndIncrement()) < files.length;) {
+                long start = System.nanoTime();
+                try {
+                    InputStream input = new BufferedInputStream(
+                            new FileInputStream(files[i]));
+                    try {
+                        if (parser == null) {
+                            parser = new ADLParser(input, CHARSET);
+                        } else {
+                            parser.ReInit(input, CHARSET);
+                        }
+                        archetypes[i] = headerOnly ? parser.parse(
+                                new ADLDefinitionLoader(files[i]))
+                                : parser.parse();
+                    } finally {
+                        input.close();
+                    }
+                } catch (Exception e) {
+                    failures[i] = e;
+                } catch (TokenMgrError e) {
+                    failures[i] = new ParseException(e.getMessage());
+                }
+                parseNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+
+        /* fields */
+        private final File[] files;
+        private final Archetype[] archetypes;
+        private final Exception[] failures;
+        private final AtomicInteger next;
+        private final AtomicLong parseNanos;
+        private final boolean headerOnly;
+    }
+
+    /**
+     * Archetypes parsed from a set of files, with the failures and timing
+     */
+    public static final class Result {
+
+        Result(int fileCount, Map<ArchetypeID, Archetype> archetypes,
+                Map<File, Exception> errors,
+                Map<File, ArchetypeID> duplicates, long elapsedMillis,
+                long parseMillis) {
+            this.fileCount = fileCount;
+            this.archetypes = Collections.unmodifiableMap(archetypes);
+            this.errors = Collections.unmodifiableMap(errors);
+            this.duplicates = Collections.unmodifiableMap(duplicates);
+            this.elapsedMillis = elapsedMillis;
+            this.parseMillis = parseMillis;
+        }
+
+        /**
+         * Parsed archetypes by id, in file order
+         *
+         * @return unmodifiable map
+         */
+        public Map<ArchetypeID, Archetype> getArchetypes() {
+            return archetypes;
+        }
+
+        /**
+         * Exceptions of the files failed to parse, in file order
+         *
+         * @return unmodifiable map
+         */
+        public Map<File, Exception> getErrors() {
+            return errors;
+        }
+
+        /**
+         * Ids of the files parsed but not taken since an earlier file has
+         * the same archetype id
+         *
+         * @return unmodifiable map
+         */
+        public Map<File, ArchetypeID> getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * Number of files read
+         *
+         * @return file count
+         */
+        public int getFileCount() {
+            return fileCount;
+        }
+
+        /**
+         * Wall-clock time of the whole run
+         *
+         * @return time in milliseconds
+         */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * Time spent reading and parsing files, summed over all threads
+         *
+         * @return time in milliseconds
+         */
+        public long getParseMillis() {
+            return parseMillis;
+        }
+
+        /**
+         * Files parsed per second of wall-clock time
+         *
+         * @return rate
+         */
+        public double getFilesPerSecond() {
+            return elapsedMillis == 0 ? 0 : fileCount * 1000.0 / elapsedMillis;
+        }
+
+        public String toString() {
+            return fileCount + " files, " + archetypes.size() + " archetypes, "
+                    + errors.size() + " errors, " + duplicates.size()
+                    + " duplicates in " + elapsedMillis + " ms ("
+                    + parseMillis + " ms parsing)";
+        }
+
+        /* fields */
+        private final int fileCount;
+        private final Map<ArchetypeID, Archetype> archetypes;
+        private final Map<File, Exception> errors;
+        private final Map<File, ArchetypeID> duplicates;
+        private final long elapsedMillis;
+        private final long parseMillis;
+    }
+
+    private static final String CHARSET = "UTF-8";
+    private static final String ADL_EXTENSION = ".adl";
+
+    /* fields */
+    private final int threads;
+    private final boolean headerOnly;
+}
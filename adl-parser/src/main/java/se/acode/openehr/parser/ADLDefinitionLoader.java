@@ -0,0 +1,114 @@
+/*
+ * component:   "openEHR Java Reference Implementation"
+ * description: "Java ADL Parser"
+ * keywords:    "parser"
+ *
+ * file:        "$URL$"
+ * revision:    "$LastChangedRevision$"
+ * last_change: "$LastChangedDate$"
+ */
+
+package se.acode.openehr.parser;
+
+import java.io.*;
+
+import org.openehr.am.archetype.Archetype;
+import org.openehr.am.archetype.DefinitionLoader;
+import org.openehr.am.archetype.constraintmodel.CComplexObject;
+
+/**
+ * Loads the definition of an archetype parsed without it by parsing its
+ * ADL source in full.
+ * <p/>
+ * Used with <code>ADLParser.parse(DefinitionLoader)</code> to index
+ * archetypes by header and ontology only:
+ * <pre>
+ * Archetype archetype = new ADLParser(file).parse(
+ *         new ADLDefinitionLoader(file));
+ * </pre>
+ * The source must still hold the same archetype when the definition is
+ * loaded.
+ *
+ * @version 1.0
+ */
+public class ADLDefinitionLoader implements DefinitionLoader {
+
+    /**
+     * Creates a loader reading given ADL file
+     *
+     * @param file not null
+     */
+    public ADLDefinitionLoader(File file) {
+        this(file, false, false);
+    }
+
+    /**
+     * Creates a loader reading given ADL file with the same backwards
+     * compatibility flags as used to parse the header
+     *
+     * @param file not null
+     * @param missingLanguageCompatible
+     * @param emptyPurposeCompatible
+     */
+    public ADLDefinitionLoader(File file, boolean missingLanguageCompatible,
+            boolean emptyPurposeCompatible) {
+        if (file == null) {
+            throw new IllegalArgumentException("null file");
+        }
+        this.file = file;
+        this.adl = null;
+        this.missingLanguageCompatible = missingLanguageCompatible;
+        this.emptyPurposeCompatible = emptyPurposeCompatible;
+    }
+
+    /**
+     * Creates a loader parsing given ADL text
+     *
+     * @param adl not null
+     */
+    public ADLDefinitionLoader(String adl) {
+        if (adl == null) {
+            throw new IllegalArgumentException("null adl");
+        }
+        this.file = null;
+        this.adl = adl;
+        this.missingLanguageCompatible = false;
+        this.emptyPurposeCompatible = false;
+    }
+
+    /**
+     * Parses the source and returns its definition
+     *
+     * @throws ParseException if the source no longer holds given archetype
+     */
+    public CComplexObject loadDefinition(Archetype archetype)
+            throws Exception {
+        Archetype parsed;
+        if (file != null) {
+            Reader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), CHARSET));
+            try {
+                parsed = new ADLParser(reader, missingLanguageCompatible,
+                        emptyPurposeCompatible).parse();
+            } finally {
+                reader.close();
+            }
+        } else {
+            parsed = new ADLParser(adl).parse();
+        }
+        if (!parsed.getArchetypeId().equals(archetype.getArchetypeId())) {
+            throw new ParseException("expected archetype "
+                    + archetype.getArchetypeId() + " but found "
+                    + parsed.getArchetypeId());
+        }
+        return parsed.getDefinition();
+    }
+
+    private static final String CHARSET = "UTF-8";
+
+    /* fields */
+    private final File file;
+    private final String adl;
+    private final boolean missingLanguageCompatible;
+    private final boolean emptyPurposeCompatible;
+}
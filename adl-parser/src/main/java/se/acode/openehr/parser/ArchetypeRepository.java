@@ -0,0 +1,432 @@
+/*
+ * component:   "openEHR Java Reference Implementation"
+ * description: "Java ADL Parser"
+ * keywords:    "parser"
+ *
+ * file:        "$URL$"
+ * revision:    "$LastChangedRevision$"
+ * last_change: "$LastChangedDate$"
+ */
+
+package se.acode.openehr.parser;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openehr.am.archetype.Archetype;
+import org.openehr.rm.support.identification.ArchetypeID;
+
+/**
+ * Thread-safe repository of the archetypes in the ADL files of a directory
+ * tree, parsed on demand.
+ * <p/>
+ * The files are indexed by the archetype id read from their header, the
+ * first file in path order being used for an id found in more than one
+ * file. An archetype is parsed when first asked for; threads asking for an
+ * archetype being parsed wait for that parse instead of starting their
+ * own. Parsed archetypes are cached up to a maximum number, the least
+ * recently used ones being evicted first.
+ * <p/>
+ * Each time a cached archetype is asked for, the modification time and
+ * length of its file are checked. If either changed, the file is read
+ * again and only parsed if its content digest changed as well. Failed
+ * parses are cached the same way, so a broken file is not parsed again
+ * until it changes.
+ * <p/>
+ * An id not in the index makes the directory be scanned again, once;
+ * later requests for that id get null without scanning until
+ * {@link #refresh()} is called.
+ *
+ * @version 1.0
+ */
+public class ArchetypeRepository {
+
+    /**
+     * Creates a repository of the ADL files under given directory
+     *
+     * @param directory not null
+     * @param maxSize maximum number of parsed archetypes cached, at least 1
+     * @throws IllegalArgumentException if directory is not a directory or
+     *          maxSize less than 1
+     * @throws IOException if fails to read the directory
+     */
+    public ArchetypeRepository(File directory, int maxSize)
+            throws IOException {
+        if (directory == null || !directory.isDirectory()) {
+            throw new IllegalArgumentException("not a directory: " + directory);
+        }
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize less than 1");
+        }
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> e) {
+                return size() > ArchetypeRepository.this.maxSize;
+            }
+        };
+        scan();
+    }
+
+    /**
+     * Gets the archetype of given id
+     *
+     * @param archetypeId not null
+     * @return null if no file of the repository has the archetype
+     * @throws ArchetypeRepositoryException if fails to read or parse the
+     *          file of the archetype
+     */
+    public Archetype getArchetype(ArchetypeID archetypeId)
+            throws ArchetypeRepositoryException {
+        return getArchetype(archetypeId.toString());
+    }
+
+    /**
+     * Gets the archetype of given id
+     *
+     * @param archetypeId not null
+     * @return null if no file of the repository has the archetype
+     * @throws ArchetypeRepositoryException if fails to read or parse the
+     *          file of the archetype
+     */
+    public Archetype getArchetype(final String archetypeId)
+            throws ArchetypeRepositoryException {
+        if (archetypeId == null) {
+            throw new IllegalArgumentException("null archetypeId");
+        }
+        final Entry cached;
+        synchronized (cache) {
+            cached = cache.get(archetypeId);
+        }
+        if (cached != null && cached.isCurrent()) {
+            hits.incrementAndGet();
+            return cached.get();
+        }
+        FutureTask<Entry> task = new FutureTask<Entry>(new Callable<Entry>() {
+            public Entry call() throws Exception {
+                // loaded by a run that finished after the lookup
+                Entry current;
+                synchronized (cache) {
+                    current = cache.get(archetypeId);
+                }
+                if (current != null && current.isCurrent()) {
+                    return current;
+                }
+                return load(archetypeId, current != null ? current : cached);
+            }
+        });
+        FutureTask<Entry> running = loading.putIfAbsent(archetypeId, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                loading.remove(archetypeId, task);
+            }
+        }
+        Entry entry;
+        try {
+            entry = running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ArchetypeRepositoryException("interrupted while "
+                    + "loading " + archetypeId, e);
+        } catch (ExecutionException e) {
+            throw new ArchetypeRepositoryException("failed to read "
+                    + archetypeId, e.getCause());
+        }
+        return entry == null ? null : entry.get();
+    }
+
+    /**
+     * Scans the directory again for ADL files. Cached archetypes whose
+     * file is no longer indexed are removed, and ids not found before are
+     * looked for again.
+     *
+     * @throws IOException if fails to read the directory
+     */
+    public synchronized void refresh() throws IOException {
+        missing.clear();
+        scan();
+    }
+
+    /*
+     * Indexes the ADL files of the directory
+     */
+    private synchronized void scan() throws IOException {
+        List<File> files = new ArrayList<File>();
+        ADLBulkParser.collect(directory, files);
+        Collections.sort(files);
+        Map<String, File> map = new HashMap<String, File>();
+        for (File file : files) {
+            String id = readArchetypeId(file);
+            if (id != null && !map.containsKey(id)) {
+                map.put(id, file);
+            }
+        }
+        index = Collections.unmodifiableMap(map);
+        synchronized (cache) {
+            for (Iterator<Map.Entry<String, Entry>> it =
+                    cache.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<String, Entry> e = it.next();
+                if (!e.getValue().file.equals(map.get(e.getKey()))) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the archetype of given id from the cache
+     *
+     * @param archetypeId not null
+     */
+    public void invalidate(String archetypeId) {
+        synchronized (cache) {
+            cache.remove(archetypeId);
+        }
+    }
+
+    /**
+     * Removes all archetypes from the cache
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Ids of the archetypes in the files of this repository
+     *
+     * @return unmodifiable set of ids as of the last scan
+     */
+    public Set<String> getArchetypeIds() {
+        return index.keySet();
+    }
+
+    /**
+     * The file of given archetype
+     *
+     * @param archetypeId not null
+     * @return null if not found as of the last scan
+     */
+    public File getFile(String archetypeId) {
+        return index.get(archetypeId);
+    }
+
+    /**
+     * Number of parsed archetypes cached
+     *
+     * @return size
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Number of requests answered from the cache
+     *
+     * @return hit count
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Number of ADL files parsed
+     *
+     * @return parse count
+     */
+    public long getParseCount() {
+        return parses.get();
+    }
+
+    /*
+     * Reads the file of given archetype, reusing the archetype of previous
+     * entry if the content is unchanged
+     */
+    private Entry load(String archetypeId, Entry previous) throws IOException {
+        File file = index.get(archetypeId);
+        if (file == null) {
+            // scanned once per id until the next refresh
+            if (missing.containsKey(archetypeId)) {
+                return null;
+            }
+            scan();
+            file = index.get(archetypeId);
+            if (file == null) {
+                if (missing.size() >= MAX_MISSING) {
+                    missing.clear();
+                }
+                missing.put(archetypeId, Boolean.TRUE);
+                return null;
+            }
+        }
+        long lastModified = file.lastModified();
+        byte[] content = read(file);
+        byte[] digest = digest(content);
+
+        Entry entry;
+        if (previous != null && previous.file.equals(file)
+                && MessageDigest.isEqual(previous.digest, digest)) {
+            entry = new Entry(file, lastModified, content.length, digest,
+                    previous.archetype, previous.failure);
+        } else {
+            parses.incrementAndGet();
+            Archetype archetype = null;
+            Exception failure = null;
+            try {
+                archetype = new ADLParser(new ByteArrayInputStream(content),
+                        CHARSET).parse();
+            } catch (Exception e) {
+                failure = e;
+            } catch (TokenMgrError e) {
+                failure = new ParseException(e.getMessage());
+            }
+            entry = new Entry(file, lastModified, content.length, digest,
+                    archetype, failure);
+        }
+        synchronized (cache) {
+            cache.put(archetypeId, entry);
+        }
+        return entry;
+    }
+
+    /*
+     * Reads the archetype id from the header of given ADL file, which is
+     * the first word after the "archetype" keyword and its optional list
+     * of arguments, comments excluded.
+     *
+     * @return null if not found in the first lines of the file
+     */
+    static String readArchetypeId(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), CHARSET));
+        try {
+            boolean keyword = false;
+            boolean arguments = false;
+            String line;
+            for (int n = 0; n < HEADER_LINES
+                    && (line = reader.readLine()) != null; n++) {
+                if (n == 0 && line.length() > 0 && line.charAt(0) == BOM) {
+                    line = line.substring(1);
+                }
+                int comment = line.indexOf("--");
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                StringTokenizer tokens = new StringTokenizer(line, " \t()",
+                        true);
+                while (tokens.hasMoreTokens()) {
+                    String token = tokens.nextToken();
+                    if (token.equals(" ") || token.equals("\t")) {
+                        continue;
+                    }
+                    if (!keyword) {
+                        if (!token.equalsIgnoreCase("archetype")) {
+                            return null;
+                        }
+                        keyword = true;
+                    } else if (token.equals("(")) {
+                        arguments = true;
+                    } else if (token.equals(")")) {
+                        arguments = false;
+                    } else if (!arguments) {
+                        return token;
+                    }
+                }
+            }
+            return null;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(
+                    (int) file.length());
+            byte[] buf = new byte[8192];
+            for (int n; (n = in.read(buf)) > 0;) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] digest(byte[] content) {
+        try {
+            return MessageDigest.getInstance(DIGEST).digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(DIGEST + " not supported", e);
+        }
+    }
+
+    /*
+     * A parsed file with the state of the file when read
+     */
+    private static final class Entry {
+
+        Entry(File file, long lastModified, long length, byte[] digest,
+                Archetype archetype, Exception failure) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.digest = digest;
+            this.archetype = archetype;
+            this.failure = failure;
+        }
+
+        boolean isCurrent() {
+            return file.lastModified() == lastModified
+                    && file.length() == length;
+        }
+
+        Archetype get() throws ArchetypeRepositoryException {
+            if (failure != null) {
+                throw new ArchetypeRepositoryException("failed to parse "
+                        + file, failure);
+            }
+            return archetype;
+        }
+
+        /* fields */
+        final File file;
+        final long lastModified;
+        final long length;
+        final byte[] digest;
+        final Archetype archetype;
+        final Exception failure;
+    }
+
+    private static final String CHARSET = "UTF-8";
+    private static final String DIGEST = "MD5";
+    private static final char BOM = '\uFEFF';
+    private static final int HEADER_LINES = 50;
+    private static final int MAX_MISSING = 1000;
+
+    /* fields */
+    private final File directory;
+    private final int maxSize;
+    private final Map<String, Entry> cache;
+    private final ConcurrentHashMap<String, FutureTask<Entry>> loading =
+            new ConcurrentHashMap<String, FutureTask<Entry>>();
+    private final ConcurrentHashMap<String, Boolean> missing =
+            new ConcurrentHashMap<String, Boolean>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong parses = new AtomicLong();
+    private volatile Map<String, File> index;
+}
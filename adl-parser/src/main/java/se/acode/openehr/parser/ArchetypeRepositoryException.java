@@ -0,0 +1,23 @@
+/*
+ * component:   "openEHR Java Reference Implementation"
+ * description: "Java ADL Parser"
+ * keywords:    "parser"
+ *
+ * file:        "$URL$"
+ * revision:    "$LastChangedRevision$"
+ * last_change: "$LastChangedDate$"
+ */
+
+package se.acode.openehr.parser;
+
+/**
+ * Failure to read or parse an archetype of an {@link ArchetypeRepository}
+ *
+ * @version 1.0
+ */
+public class ArchetypeRepositoryException extends Exception {
+
+    public ArchetypeRepositoryException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
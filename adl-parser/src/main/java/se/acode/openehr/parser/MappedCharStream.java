@@ -0,0 +1,227 @@
+/*
+ * component:   "openEHR Java Reference Implementation"
+ * description: "Java ADL Parser"
+ * keywords:    "parser"
+ *
+ * file:        "$URL$"
+ * revision:    "$LastChangedRevision$"
+ * last_change: "$LastChangedDate$"
+ */
+
+package se.acode.openehr.parser;
+
+import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Character stream over a memory-mapped file, decoded once as a whole,
+ * for use instead of the buffered stream the parser creates by default:
+ * <pre>
+ * Archetype archetype = new ADLParser(new MappedCharStream(file)).parse();
+ * </pre>
+ * Characters are read straight from the decoded text, so nothing is
+ * copied per token except the token images. Line and column numbers are
+ * not kept for each character read but worked out when a token asks for
+ * them; they are the same as those of the default stream, except that
+ * after adjustBeginLineColumn the rest of the line goes on from the new
+ * column, where the default stream wrongly starts a new line.
+ * <p/>
+ * A stream is read by one parser once. The file is closed when the
+ * constructor returns.
+ * <p/>
+ * Each parser generates its own SimpleCharStream to extend, so the same
+ * class is kept in the dADL parser (org.openehr.am.parser).
+ * A fix to one is to be made to both.
+ *
+ * @version 1.0
+ */
+public class MappedCharStream extends SimpleCharStream {
+
+    /**
+     * Creates a stream of given UTF-8 file
+     *
+     * @param file not null
+     * @throws IOException if fails to read the file
+     */
+    public MappedCharStream(File file) throws IOException {
+        this(file, CHARSET);
+    }
+
+    /**
+     * Creates a stream of given file
+     *
+     * @param file not null
+     * @param encoding name of the charset of the file
+     * @throws IOException if fails to read the file
+     */
+    public MappedCharStream(File file, String encoding) throws IOException {
+        super(new StringReader(""), 1, 1, 1);
+        super.Done();
+
+        CharBuffer decoded;
+        FileInputStream input = new FileInputStream(file);
+        try {
+            FileChannel channel = input.getChannel();
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+            decoded = Charset.forName(encoding).decode(bytes);
+        } finally {
+            input.close();
+        }
+        length = decoded.remaining();
+        if (decoded.hasArray() && decoded.arrayOffset() == 0
+                && decoded.position() == 0) {
+            chars = decoded.array();
+        } else {
+            chars = new char[length];
+            decoded.get(chars);
+        }
+    }
+
+    public char BeginToken() throws IOException {
+        if (next >= length) {
+            tokenBegin = next - 1;
+            throw new IOException();
+        }
+        tokenBegin = next;
+        return chars[next++];
+    }
+
+    public char readChar() throws IOException {
+        if (next >= length) {
+            throw new IOException();
+        }
+        return chars[next++];
+    }
+
+    public void backup(int amount) {
+        next -= amount;
+    }
+
+    public String GetImage() {
+        return new String(chars, tokenBegin, next - tokenBegin);
+    }
+
+    public char[] GetSuffix(int len) {
+        char[] suffix = new char[len];
+        System.arraycopy(chars, next - len, suffix, 0, len);
+        return suffix;
+    }
+
+    public int getBeginLine() {
+        moveTo(tokenBegin);
+        return line;
+    }
+
+    public int getBeginColumn() {
+        moveTo(tokenBegin);
+        return column;
+    }
+
+    public int getEndLine() {
+        moveTo(next - 1);
+        return line;
+    }
+
+    public int getEndColumn() {
+        moveTo(next - 1);
+        return column;
+    }
+
+    public int getLine() {
+        return getEndLine();
+    }
+
+    public int getColumn() {
+        return getEndColumn();
+    }
+
+    public void adjustBeginLineColumn(int newLine, int newCol) {
+        if (tokenBegin < 0) {
+            return;
+        }
+        // replaces the adjustments from the token on
+        while (!adjustments.isEmpty() && adjustments.get(
+                adjustments.size() - 1)[0] >= tokenBegin) {
+            adjustments.remove(adjustments.size() - 1);
+        }
+        adjustments.add(new int[] { tokenBegin, newLine, newCol });
+        position = length;
+        moveTo(next - 1);
+    }
+
+    public void Done() {
+        chars = null;
+    }
+
+    /*
+     * Moves the line and column of the inherited fields to the character
+     * at given index, counting the same way as the default stream. Tokens
+     * ask for increasing positions, so the scan usually goes forward from
+     * the last position asked for. The line and column set by
+     * adjustBeginLineColumn are taken over when the scan passes the
+     * character they were set for.
+     */
+    private void moveTo(int index) {
+        if (index < 0) {
+            // no character read, reported as line 0 like the default stream
+            position = length;
+            line = 0;
+            column = 0;
+            return;
+        }
+        if (index < position) {
+            position = -1;
+            line = 1;
+            column = 0;
+            prevCharIsCR = false;
+            prevCharIsLF = false;
+            adjusted = 0;
+        }
+        while (position < index) {
+            char c = chars[++position];
+            column++;
+            if (prevCharIsLF) {
+                prevCharIsLF = false;
+                line += (column = 1);
+            } else if (prevCharIsCR) {
+                prevCharIsCR = false;
+                if (c == '\n') {
+                    prevCharIsLF = true;
+                } else {
+                    line += (column = 1);
+                }
+            }
+            if (c == '\r') {
+                prevCharIsCR = true;
+            } else if (c == '\n') {
+                prevCharIsLF = true;
+            } else if (c == '\t') {
+                column--;
+                column += (tabSize - (column % tabSize));
+            }
+            if (adjusted < adjustments.size()
+                    && adjustments.get(adjusted)[0] == position) {
+                int[] adjustment = adjustments.get(adjusted++);
+                line = adjustment[1];
+                column = adjustment[2];
+            }
+        }
+    }
+
+    private static final String CHARSET = "UTF-8";
+
+    /* fields */
+    private char[] chars;
+    private final int length;
+    private int next;
+    private int position = -1;
+    /* index, line and column of each adjustment, by index */
+    private final List<int[]> adjustments = new ArrayList<int[]>();
+    private int adjusted;
+}
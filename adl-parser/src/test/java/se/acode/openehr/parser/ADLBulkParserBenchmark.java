@@ -0,0 +1,61 @@
+package se.acode.openehr.parser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares parsing the test ADL files one at a time with a new parser per
+ * file against {@link ADLBulkParser} on all processors.
+ * <p/>
+ * Usage: ADLBulkParserBenchmark [directory [rounds]]
+ *
+ * @version 1.0
+ */
+public class ADLBulkParserBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        File directory = args.length > 0 ? new File(args[0])
+                : new File(ADLBulkParserBenchmark.class.getClassLoader()
+                        .getResource("adl-test-entry.most_minimal.test.adl")
+                        .toURI()).getParentFile();
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        List<File> files = new ArrayList<File>();
+        ADLBulkParser.collect(directory, files);
+
+        // same files repeated for a longer run
+        List<File> all = new ArrayList<File>();
+        for (int i = 0; i < rounds; i++) {
+            all.addAll(files);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        for (int warmup = 0; warmup < 2; warmup++) {
+            sequential(files);
+            new ADLBulkParser(threads).parseFiles(files);
+        }
+
+        long sequential = sequential(all);
+        ADLBulkParser.Result result = new ADLBulkParser(threads)
+                .parseFiles(all);
+        System.out.println(all.size() + " files");
+        System.out.println("sequential: " + sequential + " ms");
+        System.out.println("bulk, " + threads + " threads: " + result);
+        System.out.println("speed-up: " + (result.getElapsedMillis() == 0 ? 0
+                : (double) sequential / result.getElapsedMillis()));
+    }
+
+    private static long sequential(List<File> files) {
+        long start = System.currentTimeMillis();
+        for (File file : files) {
+            try {
+                new ADLParser(file).parse();
+            } catch (Exception e) {
+                // counted in the time all the same
+            } catch (TokenMgrError e) {
+                // counted in the time all the same
+            }
+        }
+        return System.currentTimeMillis() - start;
+    }
+}
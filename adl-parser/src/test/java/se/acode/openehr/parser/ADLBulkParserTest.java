@@ -0,0 +1,98 @@
+package se.acode.openehr.parser;
+
+import java.io.File;
+import java.util.*;
+
+import org.openehr.am.archetype.Archetype;
+import org.openehr.rm.support.identification.ArchetypeID;
+
+/**
+ * ADLBulkParserTest
+ *
+ * @version 1.0
+ */
+public class ADLBulkParserTest extends ParserTestBase {
+
+    public void testSameAsSequentialParse() throws Exception {
+        File directory = testDirectory();
+        ADLBulkParser.Result result = new ADLBulkParser(4).parseDirectory(
+                directory);
+
+        List<File> files = new ArrayList<File>();
+        ADLBulkParser.collect(directory, files);
+        Collections.sort(files);
+        assertEquals(files.size(), result.getFileCount());
+
+        Set<ArchetypeID> ids = new HashSet<ArchetypeID>();
+        for (File file : files) {
+            Archetype expected;
+            try {
+                expected = new ADLParser(file).parse();
+            } catch (Throwable e) {
+                assertTrue(file.toString(),
+                        result.getErrors().containsKey(file));
+                continue;
+            }
+            assertFalse(file.toString(), result.getErrors().containsKey(file));
+            ArchetypeID id = expected.getArchetypeId();
+            if (ids.add(id)) {
+                Archetype actual = result.getArchetypes().get(id);
+                assertEquals(file.toString(), expected.getConcept(),
+                        actual.getConcept());
+                assertEquals(file.toString(), expected.getPathNodeMap().keySet(),
+                        actual.getPathNodeMap().keySet());
+            } else {
+                assertEquals(id, result.getDuplicates().get(file));
+            }
+        }
+        assertEquals(ids, result.getArchetypes().keySet());
+    }
+
+    public void testSameForAnyNumberOfThreads() throws Exception {
+        File directory = testDirectory();
+        ADLBulkParser.Result one = new ADLBulkParser(1).parseDirectory(
+                directory);
+        ADLBulkParser.Result many = new ADLBulkParser(8).parseDirectory(
+                directory);
+        assertEquals(new ArrayList<ArchetypeID>(one.getArchetypes().keySet()),
+                new ArrayList<ArchetypeID>(many.getArchetypes().keySet()));
+        assertEquals(one.getErrors().keySet(), many.getErrors().keySet());
+        assertEquals(one.getDuplicates(), many.getDuplicates());
+    }
+
+    public void testFailureReported() throws Exception {
+        File broken = File.createTempFile("broken", ".adl");
+        try {
+            File good = new File(testDirectory(),
+                    "adl-test-entry.most_minimal.test.adl");
+            ADLBulkParser.Result result = new ADLBulkParser(2).parseFiles(
+                    Arrays.asList(broken, good, new File("no-such-file.adl")));
+            assertEquals(3, result.getFileCount());
+            assertEquals(1, result.getArchetypes().size());
+            assertEquals(Arrays.asList(broken, new File("no-such-file.adl")),
+                    new ArrayList<File>(result.getErrors().keySet()));
+            assertTrue(result.getErrors().get(broken)
+                    instanceof ParseException);
+            try {
+                result.getArchetypes().clear();
+                fail("exception should be thrown");
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+        } finally {
+            broken.delete();
+        }
+    }
+
+    public void testNoFiles() throws Exception {
+        ADLBulkParser.Result result = new ADLBulkParser().parseFiles(
+                new ArrayList<File>());
+        assertEquals(0, result.getFileCount());
+        assertTrue(result.getArchetypes().isEmpty());
+    }
+
+    static File testDirectory() throws Exception {
+        return new File(ADLBulkParserTest.class.getClassLoader().getResource(
+                "adl-test-entry.most_minimal.test.adl").toURI()).getParentFile();
+    }
+}
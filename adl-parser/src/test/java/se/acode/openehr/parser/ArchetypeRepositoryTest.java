@@ -0,0 +1,209 @@
+package se.acode.openehr.parser;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openehr.am.archetype.Archetype;
+
+/**
+ * ArchetypeRepositoryTest
+ *
+ * @version 1.0
+ */
+public class ArchetypeRepositoryTest extends ParserTestBase {
+
+    public void setUp() throws Exception {
+        directory = File.createTempFile("repository", "");
+        directory.delete();
+        directory.mkdir();
+        File sub = new File(directory, "sub");
+        sub.mkdir();
+        copy("adl-test-entry.most_minimal.test.adl",
+                new File(directory, "minimal.adl"));
+        copy("adl-test-entry.archetype_ontology.test.adl",
+                new File(sub, "ontology.adl"));
+        copy("adl-test-entry.c_dv_quantity_full.test.adl",
+                new File(sub, "quantity.adl"));
+        copy("adl-test-entry.unicode_BOM_support.test.adl",
+                new File(sub, "bom.adl"));
+    }
+
+    public void tearDown() throws Exception {
+        delete(directory);
+    }
+
+    public void testIndex() throws Exception {
+        ArchetypeRepository repository = new ArchetypeRepository(directory, 10);
+        assertEquals(new HashSet<String>(Arrays.asList(MINIMAL, ONTOLOGY,
+                QUANTITY, "adl-test-ENTRY.unicode_BOM_support.draft")),
+                repository.getArchetypeIds());
+        assertEquals(new File(directory, "minimal.adl"),
+                repository.getFile(MINIMAL));
+        assertNull(repository.getArchetype("no-such-ENTRY.archetype.v1"));
+    }
+
+    public void testGetArchetype() throws Exception {
+        ArchetypeRepository repository = new ArchetypeRepository(directory, 10);
+        Archetype archetype = repository.getArchetype(MINIMAL);
+        assertEquals(MINIMAL, archetype.getArchetypeId().toString());
+        assertSame(archetype, repository.getArchetype(
+                archetype.getArchetypeId()));
+        assertEquals(1, repository.getParseCount());
+        assertEquals(1, repository.getHitCount());
+    }
+
+    public void testSingleFlight() throws Exception {
+        final ArchetypeRepository repository = new ArchetypeRepository(
+                directory, 10);
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Archetype>> futures = new ArrayList<Future<Archetype>>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(new Callable<Archetype>() {
+                public Archetype call() throws Exception {
+                    start.await();
+                    return repository.getArchetype(QUANTITY);
+                }
+            }));
+        }
+        start.countDown();
+        Archetype first = futures.get(0).get();
+        assertNotNull(first);
+        for (Future<Archetype> future : futures) {
+            assertSame(first, future.get());
+        }
+        executor.shutdown();
+        assertEquals(1, repository.getParseCount());
+    }
+
+    public void testEviction() throws Exception {
+        ArchetypeRepository repository = new ArchetypeRepository(directory, 2);
+        Archetype minimal = repository.getArchetype(MINIMAL);
+        repository.getArchetype(ONTOLOGY);
+        repository.getArchetype(MINIMAL);
+        repository.getArchetype(QUANTITY);
+        assertEquals(2, repository.size());
+        assertSame(minimal, repository.getArchetype(MINIMAL));
+        assertEquals(3, repository.getParseCount());
+
+        repository.getArchetype(ONTOLOGY);
+        assertEquals(4, repository.getParseCount());
+    }
+
+    public void testTouchedFileNotParsedAgain() throws Exception {
+        ArchetypeRepository repository = new ArchetypeRepository(directory, 10);
+        Archetype archetype = repository.getArchetype(MINIMAL);
+        File file = new File(directory, "minimal.adl");
+        assertTrue(file.setLastModified(file.lastModified() - 10000));
+        assertSame(archetype, repository.getArchetype(MINIMAL));
+        assertEquals(1, repository.getParseCount());
+    }
+
+    public void testChangedFileParsedAgain() throws Exception {
+        ArchetypeRepository repository = new ArchetypeRepository(directory, 10);
+        Archetype archetype = repository.getArchetype(QUANTITY);
+        File file = new File(directory, "sub/quantity.adl");
+        long lastModified = file.lastModified();
+        copy("adl-test-entry.c_dv_quantity_full2.test.adl", file);
+        assertTrue(file.setLastModified(lastModified - 10000));
+        Archetype changed = repository.getArchetype(QUANTITY);
+        assertNotSame(archetype, changed);
+        assertEquals(QUANTITY, changed.getArchetypeId().toString());
+        assertEquals(2, repository.getParseCount());
+    }
+
+    public void testFailureCached() throws Exception {
+        File file = new File(directory, "broken.adl");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+                "UTF-8");
+        writer.write("archetype (adl_version=1.4)\n\tadl-test-ENTRY.broken.v1\n"
+                + "concept\n");
+        writer.close();
+        ArchetypeRepository repository = new ArchetypeRepository(directory, 10);
+        for (int i = 0; i < 2; i++) {
+            try {
+                repository.getArchetype("adl-test-ENTRY.broken.v1");
+                fail("exception should be thrown");
+            } catch (ArchetypeRepositoryException e) {
+                // expected
+            }
+        }
+        assertEquals(1, repository.getParseCount());
+    }
+
+    public void testNewFileFound() throws Exception {
+        ArchetypeRepository repository = new ArchetypeRepository(directory, 10);
+        copy("adl-test-entry.archetype_slot.test.adl",
+                new File(directory, "slot.adl"));
+        assertNotNull(repository.getArchetype(SLOT));
+    }
+
+    public void testMissingIdNotScannedAgain() throws Exception {
+        ArchetypeRepository repository = new ArchetypeRepository(directory, 10);
+        assertNull(repository.getArchetype(SLOT));
+        copy("adl-test-entry.archetype_slot.test.adl",
+                new File(directory, "slot.adl"));
+        assertNull(repository.getArchetype(SLOT));
+
+        // a miss of another id still scans, indexing both files
+        copy("adl-test-entry.archetype_language.test.adl",
+                new File(directory, "language.adl"));
+        assertNotNull(repository.getArchetype(
+                "adl-test-ENTRY.archetype_language.draft"));
+        assertNotNull(repository.getArchetype(SLOT));
+    }
+
+    public void testMissingIdFoundAfterRefresh() throws Exception {
+        ArchetypeRepository repository = new ArchetypeRepository(directory, 10);
+        assertNull(repository.getArchetype(SLOT));
+        copy("adl-test-entry.archetype_slot.test.adl",
+                new File(directory, "slot.adl"));
+        repository.refresh();
+        assertNotNull(repository.getArchetype(SLOT));
+    }
+
+    public void testInvalidArguments() throws Exception {
+        try {
+            new ArchetypeRepository(new File(directory, "minimal.adl"), 10);
+            fail("exception should be thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new ArchetypeRepository(directory, 0);
+            fail("exception should be thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private void copy(String resource, File file) throws Exception {
+        InputStream in = loadFromClasspath(resource);
+        OutputStream out = new FileOutputStream(file);
+        byte[] buf = new byte[4096];
+        for (int n; (n = in.read(buf)) > 0;) {
+            out.write(buf, 0, n);
+        }
+        out.close();
+        in.close();
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static final String MINIMAL = "adl-test-ENTRY.most_minimal.draft";
+    private static final String ONTOLOGY = "adl-test-ENTRY.archetype_ontology.draft";
+    private static final String QUANTITY = "adl-test-ENTRY.c_dv_quantity.test";
+    private static final String SLOT = "adl-test-entry.archetype_slot.test";
+    private static final int THREADS = 8;
+
+    private File directory;
+}
@@ -0,0 +1,139 @@
+package se.acode.openehr.parser;
+
+import java.io.File;
+import java.util.*;
+
+import org.openehr.am.archetype.Archetype;
+import org.openehr.am.archetype.DefinitionLoader;
+import org.openehr.am.archetype.constraintmodel.CComplexObject;
+
+/**
+ * HeaderOnlyParseTest
+ *
+ * @version 1.0
+ */
+public class HeaderOnlyParseTest extends ParserTestBase {
+
+    public void testSameAsFullParse() throws Exception {
+        List<File> files = new ArrayList<File>();
+        ADLBulkParser.collect(ADLBulkParserTest.testDirectory(), files);
+        int count = 0;
+        for (File file : files) {
+            Archetype expected;
+            try {
+                expected = new ADLParser(file).parse();
+            } catch (Exception e) {
+                continue;
+            } catch (TokenMgrError e) {
+                continue;
+            }
+            Archetype header = new ADLParser(file).parse(
+                    new ADLDefinitionLoader(file));
+            String name = file.getName();
+            assertFalse(name, header.isDefinitionLoaded());
+            assertEquals(name, expected.getArchetypeId(),
+                    header.getArchetypeId());
+            assertEquals(name, expected.getConcept(), header.getConcept());
+            assertEquals(name, expected.getOriginalLanguage(),
+                    header.getOriginalLanguage());
+            assertEquals(name, expected.getDescription(),
+                    header.getDescription());
+            assertEquals(name, expected.getOntology(), header.getOntology());
+            assertFalse(name, header.isDefinitionLoaded());
+
+            assertEquals(name, expected.getDefinition(),
+                    header.getDefinition());
+            assertTrue(name, header.isDefinitionLoaded());
+            assertEquals(name, expected.getPathNodeMap().keySet(),
+                    header.getPathNodeMap().keySet());
+            count++;
+        }
+        assertTrue(count > 10);
+    }
+
+    public void testPathsLoadDefinition() throws Exception {
+        CountingLoader loader = new CountingLoader(new ADLDefinitionLoader(
+                new File(ADLBulkParserTest.testDirectory(),
+                        "adl-test-entry.most_minimal.test.adl")));
+        Archetype archetype = new ADLParser(loadFromClasspath(
+                "adl-test-entry.most_minimal.test.adl")).parse(loader);
+        assertEquals(0, loader.count);
+        assertNotNull(archetype.node("/"));
+        assertEquals(1, loader.count);
+        assertSame(archetype.node("/"), archetype.getDefinition());
+        assertEquals(1, loader.count);
+    }
+
+    public void testFailedLoad() throws Exception {
+        Archetype archetype = new ADLParser(loadFromClasspath(
+                "adl-test-entry.most_minimal.test.adl")).parse(
+                new ADLDefinitionLoader(new File("no-such-file.adl")));
+        try {
+            archetype.getDefinition();
+            fail("exception should be thrown");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof java.io.IOException);
+        }
+        assertFalse(archetype.isDefinitionLoaded());
+    }
+
+    public void testOtherArchetypeRejected() throws Exception {
+        Archetype archetype = new ADLParser(loadFromClasspath(
+                "adl-test-entry.most_minimal.test.adl")).parse(
+                new ADLDefinitionLoader(new File(
+                        ADLBulkParserTest.testDirectory(),
+                        "adl-test-entry.archetype_internal_ref.test.adl")));
+        try {
+            archetype.getDefinition();
+            fail("exception should be thrown");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof ParseException);
+        }
+    }
+
+    public void testMissingOntology() throws Exception {
+        String adl = read("adl-test-entry.most_minimal.test.adl");
+        adl = adl.substring(0, adl.indexOf("ontology"));
+        try {
+            new ADLParser(adl).parse(new ADLDefinitionLoader(adl));
+            fail("exception should be thrown");
+        } catch (ParseException e) {
+            // expected
+        }
+    }
+
+    public void testParserReusedForFullParse() throws Exception {
+        ADLParser parser = new ADLParser(loadFromClasspath(
+                "adl-test-entry.most_minimal.test.adl"));
+        parser.parse(new ADLDefinitionLoader(read(
+                "adl-test-entry.most_minimal.test.adl")));
+        parser.reInit(loadFromClasspath(
+                "adl-test-entry.most_minimal.test.adl"));
+        assertTrue(parser.parse().isDefinitionLoaded());
+    }
+
+    private String read(String name) throws Exception {
+        Scanner scanner = new Scanner(loadFromClasspath(name), "UTF-8");
+        try {
+            return scanner.useDelimiter("\\A").next();
+        } finally {
+            scanner.close();
+        }
+    }
+
+    private static class CountingLoader implements DefinitionLoader {
+
+        CountingLoader(DefinitionLoader loader) {
+            this.loader = loader;
+        }
+
+        public CComplexObject loadDefinition(Archetype archetype)
+                throws Exception {
+            count++;
+            return loader.loadDefinition(archetype);
+        }
+
+        private final DefinitionLoader loader;
+        int count;
+    }
+}
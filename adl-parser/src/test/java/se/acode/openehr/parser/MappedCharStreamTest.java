@@ -0,0 +1,141 @@
+package se.acode.openehr.parser;
+
+import java.io.*;
+import java.util.*;
+
+import org.openehr.am.archetype.Archetype;
+
+/**
+ * MappedCharStreamTest
+ *
+ * @version 1.0
+ */
+public class MappedCharStreamTest extends ParserTestBase {
+
+    public void testSameAsDefaultStream() throws Exception {
+        List<File> files = new ArrayList<File>();
+        ADLBulkParser.collect(ADLBulkParserTest.testDirectory(), files);
+        int count = 0;
+        for (File file : files) {
+            String name = file.getName();
+            Object expected = parse(new ADLParser(file));
+            Object actual = parse(new ADLParser(new MappedCharStream(file)));
+            if (expected instanceof Archetype) {
+                Archetype archetype = (Archetype) actual;
+                assertEquals(name, ((Archetype) expected).getArchetypeId(),
+                        archetype.getArchetypeId());
+                assertEquals(name, ((Archetype) expected).getDefinition(),
+                        archetype.getDefinition());
+                assertEquals(name, ((Archetype) expected).getOntology(),
+                        archetype.getOntology());
+                count++;
+            } else {
+                assertEquals(name, expected, actual);
+            }
+        }
+        assertTrue(count > 10);
+    }
+
+    public void testSamePositionsInErrors() throws Exception {
+        assertSameError("archetype (adl_version=1.4)\r\n"
+                + "\topenEHR-EHR-OBSERVATION.test.v1\r\n"
+                + "\r\nconcept\r\n\t[at0000]\r\n\r\n  \t $$$\r\n");
+        assertSameError("archetype\n\topenEHR-EHR-OBSERVATION.test.v1\n"
+                + "concept\n\t[at0000]\nlanguage\n\t"
+                + "original_language = <[ISO_639-1::en]>\n\n"
+                + "definition\n\tOBSERVATION[at0000] matches {\n\t\t"
+                + "data matches { * } }\n");
+        assertSameError("archetype\r\rwrong");
+        assertSameError("");
+    }
+
+    public void testHeaderOnlyParse() throws Exception {
+        File file = new File(ADLBulkParserTest.testDirectory(),
+                "adl-test-entry.most_minimal.test.adl");
+        Archetype archetype = new ADLParser(new MappedCharStream(file)).parse(
+                new ADLDefinitionLoader(file));
+        assertFalse(archetype.isDefinitionLoaded());
+        assertEquals(new ADLParser(file).parse().getDefinition(),
+                archetype.getDefinition());
+    }
+
+    public void testReInit() throws Exception {
+        File file = new File(ADLBulkParserTest.testDirectory(),
+                "adl-test-entry.most_minimal.test.adl");
+        ADLParser parser = new ADLParser(new MappedCharStream(file));
+        Archetype first = parser.parse();
+        parser.reInit(new MappedCharStream(file));
+        assertEquals(first.getDefinition(), parser.parse().getDefinition());
+        parser.reInit(file);
+        assertEquals(first.getDefinition(), parser.parse().getDefinition());
+    }
+
+    public void testAdjustBeginLineColumn() throws Exception {
+        File file = File.createTempFile("mapped", ".txt");
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+                    "UTF-8");
+            try {
+                writer.write("ab\ncd ef\r\ngh\rij\n\nkl mn op");
+            } finally {
+                writer.close();
+            }
+            // positions of the two-character tokens, with the begin of
+            // tokens 1, 5 and 7 moved, as "line:column-line:column"
+            String[] positions = { "1:1-1:2", "10:3-11:1", "11:2-11:3",
+                    "11:4-11:5", "11:6-11:7", "50:7-50:8", "50:9-51:1",
+                    "70:9-70:10", "71:1-72:1", "72:2-72:3", "72:4-72:5",
+                    "72:6-72:7" };
+            MappedCharStream stream = new MappedCharStream(file);
+            for (int i = 0; i < positions.length; i++) {
+                stream.BeginToken();
+                stream.readChar();
+                if (i == 3) {
+                    stream.readChar();
+                    stream.backup(1);
+                }
+                if (i == 1 || i == 5 || i == 7) {
+                    stream.adjustBeginLineColumn(10 * i, i + 2);
+                }
+                // end asked first, so that the begin is scanned again
+                String end = stream.getEndLine() + ":" + stream.getEndColumn();
+                assertEquals("token " + i, positions[i], stream.getBeginLine()
+                        + ":" + stream.getBeginColumn() + "-" + end);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private void assertSameError(String adl) throws Exception {
+        File file = File.createTempFile("mapped", ".adl");
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+                    "UTF-8");
+            try {
+                writer.write(adl);
+            } finally {
+                writer.close();
+            }
+            Object expected = parse(new ADLParser(file));
+            assertTrue(expected instanceof String);
+            assertEquals(expected, parse(new ADLParser(
+                    new MappedCharStream(file))));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /*
+     * The archetype parsed or the message of the failure
+     */
+    private static Object parse(ADLParser parser) {
+        try {
+            return parser.parse();
+        } catch (Exception e) {
+            return e.getClass().getName() + ": " + e.getMessage();
+        } catch (TokenMgrError e) {
+            return e.getClass().getName() + ": " + e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package se.acode.openehr.parser;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.openehr.am.archetype.Archetype;
+import org.openehr.am.archetype.PathIndex;
+import org.openehr.am.archetype.constraintmodel.CComplexObject;
+import org.openehr.am.archetype.constraintmodel.CObject;
+
+/**
+ * Test case tests queries and updates of the path index of an archetype.
+ *
+ * @version 1.0
+ */
+public class PathIndexTest extends ParserTestBase {
+
+    public PathIndexTest(String test) {
+        super(test);
+    }
+
+    public void setUp() throws Exception {
+        ADLParser parser = new ADLParser(loadFromClasspath(
+                "adl-test-car.paths.test.adl"));
+        archetype = parser.parse();
+        index = archetype.getPathIndex();
+    }
+
+    public void testSameAsPathNodeMap() throws Exception {
+        assertSame(index, archetype.getPathNodeMap());
+        assertSame(archetype.getDefinition(), index.get("/"));
+        assertEquals(index.keySet(), index.subtree("/").keySet());
+    }
+
+    public void testSubtree() throws Exception {
+        for (String path : index.keySet()) {
+            assertEquals(path, under(path),
+                    index.subtree(path).keySet());
+        }
+        assertEquals(set("/wheels[at0001]/parts[at0002]",
+                "/wheels[at0001]/parts[at0002]/something",
+                "/wheels[at0001]/parts[at0002]/something_else"),
+                index.subtree("/wheels[at0001]/parts[at0002]").keySet());
+        assertTrue(index.subtree("/wheels[at000]").isEmpty());
+    }
+
+    public void testWithPrefix() throws Exception {
+        String[] prefixes = { "/wheels[at000", "/wheels[at0001]/",
+                "/wheels[at0001]/parts[at0002]/some", "/engine" };
+        for (String prefix : prefixes) {
+            Set<String> expected = new LinkedHashSet<String>();
+            for (String path : index.keySet()) {
+                if (path.startsWith(prefix)) {
+                    expected.add(path);
+                }
+            }
+            assertEquals(prefix, expected,
+                    index.withPrefix(prefix).keySet());
+        }
+    }
+
+    public void testByRmTypeAndNodeId() throws Exception {
+        assertEquals(set("/wheels[at0001]", "/wheels[at0003]",
+                "/wheels[at0004]", "/wheels[at0005]"),
+                index.byRmType("WHEEL").keySet());
+        assertEquals(index.get("/wheels[at0001]/parts[at0002]"),
+                index.byNodeId("at0002").get(
+                        "/wheels[at0001]/parts[at0002]"));
+        assertTrue(index.byRmType("ENGINE").isEmpty());
+    }
+
+    public void testRemove() throws Exception {
+        CObject wheel = index.remove("/wheels[at0005]");
+        assertNotNull(wheel);
+        assertNull(index.get("/wheels[at0005]"));
+        assertFalse(index.byRmType("WHEEL").containsKey("/wheels[at0005]"));
+        assertNotNull(index.get("/wheels[at0005]/description"));
+
+        index.put("/wheels[at0005]", wheel);
+        assertTrue(index.byRmType("WHEEL").containsKey("/wheels[at0005]"));
+    }
+
+    public void testReloadSubtree() throws Exception {
+        CComplexObject wheel = (CComplexObject) archetype.node(
+                "/wheels[at0001]");
+        wheel.removeAttribute("parts");
+        archetype.reloadNodeMaps(wheel);
+
+        assertEquals(set("/wheels[at0001]", "/wheels[at0001]/description"),
+                index.subtree("/wheels[at0001]").keySet());
+        assertFalse(index.byNodeId("at0002").containsKey(
+                "/wheels[at0001]/parts[at0002]"));
+        assertNotNull(archetype.node("/wheels[at0003]/description"));
+    }
+
+    public void testNamedNodePaths() throws Exception {
+        PathIndex named = new PathIndex();
+        CObject wheel = index.get("/wheels[at0001]");
+        named.put("/wheels[at0001 and name/value='a/b']", wheel);
+        named.put("/wheels[at0001 and name/value='a/b']/parts[at0002]",
+                wheel);
+        named.put("/wheels[at0001]", wheel);
+
+        assertEquals(2, named.subtree(
+                "/wheels[at0001 and name/value='a/b']").size());
+        assertEquals(1, named.subtree("/wheels[at0001]").size());
+
+        named.removeSubtree("/wheels[at0001 and name/value='a/b']");
+        assertEquals(set("/wheels[at0001]"), named.keySet());
+        assertEquals(set("/wheels[at0001]"),
+                named.byRmType("WHEEL").keySet());
+    }
+
+    private Set<String> under(String path) {
+        Set<String> paths = new LinkedHashSet<String>();
+        for (String other : index.keySet()) {
+            if (other.equals(path) || other.startsWith(path + "/")
+                    || path.equals("/")) {
+                paths.add(other);
+            }
+        }
+        return paths;
+    }
+
+    private static Set<String> set(String... paths) {
+        return new LinkedHashSet<String>(java.util.Arrays.asList(paths));
+    }
+
+    private Archetype archetype;
+    private PathIndex index;
+}
@@ -0,0 +1,122 @@
+/*
+ * component:   "openEHR Reference Implementation"
+ * description: "Class BinaryArchetypeFormat"
+ * keywords:    "archetype"
+ *
+ * license:     "See notice at bottom of class"
+ *
+ * file:        "$URL$"
+ * revision:    "$LastChangedRevision$"
+ * last_change: "$LastChangedDate$"
+ */
+package org.openehr.am.serialize;
+
+/**
+ * Constants of the binary archetype format written by
+ * {@link BinaryArchetypeWriter} and read by {@link BinaryArchetypeReader}.
+ * <p>
+ * All numbers are big-endian. A file starts with a fixed size header:
+ *
+ * <pre>
+ * int   magic
+ * short version
+ * short reserved, 0
+ * int   archetype id, index in the string table
+ * int   offset of the string table
+ * int   number of strings
+ * int   offset of the node table
+ * int   number of nodes
+ * int   offset of the archetype record
+ * </pre>
+ *
+ * The string table holds each distinct string once, as an int length
+ * followed by that many bytes of UTF-8; everywhere else a string is an int
+ * index in the table, -1 for null. The node table holds for each object
+ * node of the definition the index of its path and the offset of its
+ * record, so that a single node can be read without the rest. Lists, sets
+ * and maps are an int size, -1 for null, followed by their elements.
+ * <p>
+ * The version is increased whenever the layout of any record changes;
+ * files of another version are rejected by the reader.
+ */
+final class BinaryArchetypeFormat {
+
+	private BinaryArchetypeFormat() {
+	}
+
+	/* "oAOM" */
+	static final int MAGIC = 0x6F414F4D;
+
+	static final short VERSION = 1;
+
+	static final int HEADER_SIZE = 32;
+
+	static final int NULL = -1;
+
+	/* object node kinds */
+	static final byte C_COMPLEX_OBJECT = 1;
+	static final byte C_PRIMITIVE_OBJECT = 2;
+	static final byte ARCHETYPE_SLOT = 3;
+	static final byte ARCHETYPE_INTERNAL_REF = 4;
+	static final byte CONSTRAINT_REF = 5;
+	static final byte C_CODE_PHRASE = 6;
+	static final byte C_DV_ORDINAL = 7;
+	static final byte C_DV_QUANTITY = 8;
+
+	/* attribute kinds */
+	static final byte C_SINGLE_ATTRIBUTE = 1;
+	static final byte C_MULTIPLE_ATTRIBUTE = 2;
+
+	/* primitive constraint kinds */
+	static final byte C_BOOLEAN = 1;
+	static final byte C_INTEGER = 2;
+	static final byte C_REAL = 3;
+	static final byte C_STRING = 4;
+	static final byte C_DATE = 5;
+	static final byte C_TIME = 6;
+	static final byte C_DATE_TIME = 7;
+	static final byte C_DURATION = 8;
+
+	/* expression kinds */
+	static final byte EXPRESSION_LEAF = 1;
+	static final byte EXPRESSION_UNARY = 2;
+	static final byte EXPRESSION_BINARY = 3;
+
+	/* kinds of values of expression leaves */
+	static final byte VALUE_NULL = 0;
+	static final byte VALUE_STRING = 1;
+	static final byte VALUE_INTEGER = 2;
+	static final byte VALUE_LONG = 3;
+	static final byte VALUE_DOUBLE = 4;
+	static final byte VALUE_BOOLEAN = 5;
+	static final byte VALUE_C_PRIMITIVE = 6;
+
+	/* ontology binding item kinds */
+	static final byte TERM_BINDING = 1;
+	static final byte QUERY_BINDING = 2;
+
+	/* flags of intervals */
+	static final byte INTERVAL_NULL = 1;
+	static final byte INTERVAL_LOWER = 2;
+	static final byte INTERVAL_UPPER = 4;
+	static final byte INTERVAL_LOWER_INCLUDED = 8;
+	static final byte INTERVAL_UPPER_INCLUDED = 16;
+
+	/* flags of object nodes */
+	static final byte ANY_ALLOWED = 1;
+}
+/*
+ * ***** BEGIN LICENSE BLOCK ***** Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the 'License'); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is BinaryArchetypeFormat.java
+ *
+ * ***** END LICENSE BLOCK *****
+ */
@@ -0,0 +1,838 @@
+/*
+ * component:   "openEHR Reference Implementation"
+ * description: "Class BinaryArchetypeReader"
+ * keywords:    "archetype"
+ *
+ * license:     "See notice at bottom of class"
+ *
+ * file:        "$URL$"
+ * revision:    "$LastChangedRevision$"
+ * last_change: "$LastChangedDate$"
+ */
+package org.openehr.am.serialize;
+
+import static org.openehr.am.serialize.BinaryArchetypeFormat.*;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+import org.openehr.am.archetype.Archetype;
+import org.openehr.am.archetype.assertion.*;
+import org.openehr.am.archetype.constraintmodel.*;
+import org.openehr.am.archetype.constraintmodel.primitive.*;
+import org.openehr.am.archetype.ontology.*;
+import org.openehr.am.openehrprofile.datatypes.quantity.CDvOrdinal;
+import org.openehr.am.openehrprofile.datatypes.quantity.CDvQuantity;
+import org.openehr.am.openehrprofile.datatypes.quantity.CDvQuantityItem;
+import org.openehr.am.openehrprofile.datatypes.quantity.Ordinal;
+import org.openehr.am.openehrprofile.datatypes.text.CCodePhrase;
+import org.openehr.rm.common.resource.ResourceDescription;
+import org.openehr.rm.common.resource.ResourceDescriptionItem;
+import org.openehr.rm.common.resource.TranslationDetails;
+import org.openehr.rm.datatypes.quantity.DvQuantity;
+import org.openehr.rm.datatypes.quantity.datetime.DvDate;
+import org.openehr.rm.datatypes.quantity.datetime.DvDateTime;
+import org.openehr.rm.datatypes.quantity.datetime.DvDuration;
+import org.openehr.rm.datatypes.quantity.datetime.DvTime;
+import org.openehr.rm.datatypes.text.CodePhrase;
+import org.openehr.rm.support.basic.Interval;
+import org.openehr.rm.support.identification.HierObjectID;
+import org.openehr.rm.support.identification.TerminologyID;
+import org.openehr.rm.support.measurement.MeasurementService;
+import org.openehr.rm.support.measurement.SimpleMeasurementService;
+import org.openehr.rm.support.terminology.TerminologyService;
+import org.openehr.terminology.SimpleTerminologyService;
+
+/**
+ * Reads an archetype written by {@link BinaryArchetypeWriter}.
+ * <p>
+ * A file is memory-mapped rather than read. The header and string table
+ * are read when the reader is created, so the archetype id is available
+ * without reading the rest; the archetype itself, or any single node of
+ * its definition, is built on request. Strings are shared by all the
+ * objects built by one reader. A reader can be used by any number of
+ * threads at the same time.
+ *
+ * @version 1.0
+ */
+public class BinaryArchetypeReader {
+
+	/**
+	 * Creates a reader of given file, which is mapped into memory
+	 *
+	 * @param file not null
+	 * @throws IOException if fails to read the file, or it is not in a
+	 *             supported version of the format
+	 */
+	public BinaryArchetypeReader(File file) throws IOException {
+		this(map(file));
+	}
+
+	/**
+	 * Creates a reader of given bytes
+	 *
+	 * @param bytes not null
+	 * @throws IOException if not in a supported version of the format
+	 */
+	public BinaryArchetypeReader(byte[] bytes) throws IOException {
+		this(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Creates a reader of the content of given buffer from its current
+	 * position; the buffer itself is not changed
+	 *
+	 * @param buffer not null
+	 * @throws IOException if not in a supported version of the format
+	 */
+	public BinaryArchetypeReader(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer.slice();
+		try {
+			this.terminologyService = SimpleTerminologyService.getInstance();
+		} catch (Exception e) {
+			IOException ioe = new IOException(
+					"failed to load terminology service");
+			ioe.initCause(e);
+			throw ioe;
+		}
+		try {
+			ByteBuffer header = this.buffer.duplicate();
+			if (header.remaining() < HEADER_SIZE
+					|| header.getInt() != MAGIC) {
+				throw new IOException("not a binary archetype");
+			}
+			this.version = header.getShort();
+			if (version != VERSION) {
+				throw new IOException("unsupported version " + version
+						+ " of binary archetype, expected " + VERSION);
+			}
+			header.getShort();
+			int archetypeId = header.getInt();
+			int stringTable = header.getInt();
+			int stringCount = header.getInt();
+			this.nodeTable = header.getInt();
+			this.nodeCount = header.getInt();
+			this.record = header.getInt();
+			int limit = this.buffer.limit();
+			if (stringTable < HEADER_SIZE || nodeTable < stringTable
+					|| nodeTable > limit || stringCount < 0
+					|| stringCount > (nodeTable - stringTable) / 4
+					|| nodeCount < 0 || nodeCount > (limit - nodeTable) / 8
+					|| record < HEADER_SIZE || record >= limit
+					|| archetypeId < 0 || archetypeId >= stringCount) {
+				throw new IOException("corrupt binary archetype: bad header");
+			}
+
+			ByteBuffer table = this.buffer.duplicate();
+			table.position(stringTable);
+			byte[] bytes = new byte[nodeTable - stringTable];
+			table.get(bytes);
+			this.strings = new String[stringCount];
+			for (int i = 0, offset = 0; i < stringCount; i++) {
+				int length = ((bytes[offset] & 0xFF) << 24)
+						| ((bytes[offset + 1] & 0xFF) << 16)
+						| ((bytes[offset + 2] & 0xFF) << 8)
+						| (bytes[offset + 3] & 0xFF);
+				strings[i] = new String(bytes, offset + 4, length, UTF8);
+				offset += 4 + length;
+			}
+			this.archetypeId = strings[archetypeId];
+		} catch (RuntimeException e) {
+			throw corrupt(e);
+		}
+	}
+
+	/**
+	 * The id of the archetype, read from the header
+	 *
+	 * @return archetype id
+	 */
+	public String getArchetypeId() {
+		return archetypeId;
+	}
+
+	/**
+	 * The version of the format
+	 *
+	 * @return version
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Builds the archetype
+	 *
+	 * @return a new archetype each time called
+	 * @throws IOException if the content is corrupt
+	 */
+	public Archetype readArchetype() throws IOException {
+		try {
+			return new Decoder(record).archetype();
+		} catch (RuntimeException e) {
+			throw corrupt(e);
+		}
+	}
+
+	/**
+	 * Builds the object node of given path of the archetype definition,
+	 * with the nodes below it but without parent
+	 *
+	 * @param path not null
+	 * @return null if no node has the path
+	 * @throws IOException if the content is corrupt
+	 */
+	public CObject readNode(String path) throws IOException {
+		try {
+			Integer offset = nodeOffsets().get(path);
+			return offset == null ? null : new Decoder(offset.intValue())
+					.cobject(null);
+		} catch (RuntimeException e) {
+			throw corrupt(e);
+		}
+	}
+
+	/**
+	 * The paths of the object nodes of the archetype definition
+	 *
+	 * @return unmodifiable set of paths
+	 * @throws IOException if the content is corrupt
+	 */
+	public Set<String> getNodePaths() throws IOException {
+		try {
+			return Collections.unmodifiableSet(nodeOffsets().keySet());
+		} catch (RuntimeException e) {
+			throw corrupt(e);
+		}
+	}
+
+	/* offsets of the node records by path, read on first use */
+	private Map<String, Integer> nodeOffsets() {
+		Map<String, Integer> map = nodes;
+		if (map == null) {
+			ByteBuffer table = buffer.duplicate();
+			table.position(nodeTable);
+			map = new LinkedHashMap<String, Integer>();
+			for (int i = 0; i < nodeCount; i++) {
+				String path = strings[table.getInt()];
+				int offset = table.getInt();
+				if (!map.containsKey(path)) {
+					map.put(path, offset);
+				}
+			}
+			nodes = map;
+		}
+		return map;
+	}
+
+	private static ByteBuffer map(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel
+					.size());
+		} finally {
+			in.close();
+		}
+	}
+
+	private static IOException corrupt(RuntimeException e) {
+		if (e instanceof BufferUnderflowException
+				|| e instanceof IndexOutOfBoundsException
+				|| e instanceof IllegalArgumentException
+				|| e instanceof ClassCastException
+				|| e instanceof NullPointerException) {
+			IOException ioe = new IOException("corrupt binary archetype: "
+					+ e);
+			ioe.initCause(e);
+			return ioe;
+		}
+		throw e;
+	}
+
+	/*
+	 * Builds objects from records starting at a given offset
+	 */
+	private final class Decoder {
+
+		Decoder(int offset) {
+			this.in = buffer.duplicate();
+			in.position(offset);
+		}
+
+		Archetype archetype() {
+			String adlVersion = string();
+			String id = string();
+			String parentId = string();
+			String concept = string();
+			String uid = string();
+			boolean isControlled = bool();
+			CodePhrase originalLanguage = codePhrase();
+
+			Map<String, TranslationDetails> translations = null;
+			int size = size();
+			if (size != NULL) {
+				translations = new LinkedHashMap<String, TranslationDetails>();
+				for (int i = 0; i < size; i++) {
+					String key = string();
+					CodePhrase language = codePhrase();
+					Map<String, String> author = stringMap();
+					String accreditation = string();
+					Map<String, String> otherDetails = stringMap();
+					translations.put(key, new TranslationDetails(language,
+							author, accreditation, otherDetails,
+							terminologyService));
+				}
+			}
+			ResourceDescription description = description();
+			CComplexObject definition = (CComplexObject) cobject(null);
+			ArchetypeOntology ontology = ontology();
+			Set<Assertion> invariants = assertions();
+
+			return new Archetype(adlVersion, id, parentId, concept,
+					originalLanguage, translations, description, null,
+					isControlled, uid == null ? null : new HierObjectID(uid),
+					definition, ontology, invariants, terminologyService);
+		}
+
+		ResourceDescription description() {
+			if (!bool()) {
+				return null;
+			}
+			Map<String, String> originalAuthor = stringMap();
+			List<String> otherContributors = stringList();
+			String lifecycleState = string();
+			List<ResourceDescriptionItem> details = null;
+			int size = size();
+			if (size != NULL) {
+				details = new ArrayList<ResourceDescriptionItem>(size);
+				for (int i = 0; i < size; i++) {
+					CodePhrase language = codePhrase();
+					String purpose = string();
+					List<String> keywords = stringList();
+					String use = string();
+					String misuse = string();
+					String copyright = string();
+					Map<String, String> originalResourceUri = stringMap();
+					Map<String, String> otherDetails = stringMap();
+					details.add(new ResourceDescriptionItem(language, purpose,
+							keywords, use, misuse, copyright,
+							originalResourceUri, otherDetails,
+							terminologyService));
+				}
+			}
+			String resourcePackageUri = string();
+			Map<String, String> otherDetails = stringMap();
+			return new ResourceDescription(originalAuthor, otherContributors,
+					lifecycleState, details, resourcePackageUri, otherDetails,
+					null);
+		}
+
+		CObject cobject(CAttribute parent) {
+			byte kind = in.get();
+			String path = string();
+			String rmTypeName = string();
+			String nodeId = string();
+			Interval<Integer> occurrences = interval(C_INTEGER);
+			boolean anyAllowed = (in.get() & ANY_ALLOWED) != 0;
+			String annotation = string();
+
+			CObject cobj;
+			switch (kind) {
+			case C_COMPLEX_OBJECT:
+				int size = size();
+				List<CAttribute> attributes = new ArrayList<CAttribute>(size);
+				for (int i = 0; i < size; i++) {
+					attributes.add(cattribute());
+				}
+				cobj = new CComplexObject(path, rmTypeName, occurrences,
+						nodeId, anyAllowed && size == 0 ? null : attributes,
+						parent);
+				break;
+			case C_PRIMITIVE_OBJECT:
+				cobj = new CPrimitiveObject(path, occurrences, nodeId,
+						parent, cprimitive());
+				break;
+			case ARCHETYPE_SLOT:
+				Set<Assertion> includes = assertions();
+				Set<Assertion> excludes = assertions();
+				cobj = new ArchetypeSlot(path, rmTypeName, occurrences,
+						nodeId, parent, includes, excludes);
+				break;
+			case ARCHETYPE_INTERNAL_REF:
+				cobj = new ArchetypeInternalRef(path, rmTypeName,
+						occurrences, nodeId, parent, string());
+				break;
+			case CONSTRAINT_REF:
+				cobj = new ConstraintRef(path, rmTypeName, occurrences,
+						nodeId, parent, string());
+				break;
+			case C_CODE_PHRASE:
+				String terminologyId = string();
+				List<String> codeList = stringList();
+				CodePhrase defaultCode = codePhrase();
+				CodePhrase assumedCode = codePhrase();
+				cobj = new CCodePhrase(path, occurrences, nodeId, parent,
+						terminologyId == null ? null : new TerminologyID(
+								terminologyId), codeList, defaultCode,
+						assumedCode);
+				break;
+			case C_DV_ORDINAL:
+				Set<Ordinal> ordinals = null;
+				size = size();
+				if (size != NULL) {
+					ordinals = new LinkedHashSet<Ordinal>();
+					for (int i = 0; i < size; i++) {
+						ordinals.add(ordinal());
+					}
+				}
+				Ordinal defaultOrdinal = bool() ? ordinal() : null;
+				Ordinal assumedOrdinal = bool() ? ordinal() : null;
+				cobj = new CDvOrdinal(path, occurrences, nodeId, parent,
+						ordinals, defaultOrdinal, assumedOrdinal);
+				break;
+			case C_DV_QUANTITY:
+				List<CDvQuantityItem> items = null;
+				size = size();
+				if (size != NULL) {
+					items = new ArrayList<CDvQuantityItem>(size);
+					for (int i = 0; i < size; i++) {
+						Interval<Double> magnitude = interval(C_REAL);
+						Interval<Integer> precision = interval(C_INTEGER);
+						items.add(new CDvQuantityItem(magnitude, precision,
+								string()));
+					}
+				}
+				CodePhrase property = codePhrase();
+				DvQuantity defaultQuantity = quantity();
+				DvQuantity assumedQuantity = quantity();
+				cobj = new CDvQuantity(path, occurrences, nodeId, parent,
+						items, property, defaultQuantity, assumedQuantity);
+				break;
+			default:
+				throw new IllegalArgumentException("unknown node kind "
+						+ kind);
+			}
+			cobj.setAnyAllowed(anyAllowed);
+			cobj.setAnnotation(annotation);
+			return cobj;
+		}
+
+		CAttribute cattribute() {
+			boolean multiple = in.get() == C_MULTIPLE_ATTRIBUTE;
+			String path = string();
+			String rmAttributeName = string();
+			CAttribute.Existence existence = CAttribute.Existence
+					.valueOf(string());
+			boolean anyAllowed = bool();
+			String annotation = string();
+			Cardinality cardinality = null;
+			if (multiple) {
+				boolean ordered = bool();
+				boolean unique = bool();
+				cardinality = new Cardinality(ordered, unique,
+						interval(C_INTEGER));
+			}
+			List<CObject> children = null;
+			int size = size();
+			if (size != NULL) {
+				children = new ArrayList<CObject>(size);
+				for (int i = 0; i < size; i++) {
+					children.add(cobject(null));
+				}
+			}
+			if (anyAllowed && children != null && children.isEmpty()) {
+				children = null;
+			}
+			CAttribute attribute;
+			if (multiple) {
+				attribute = new CMultipleAttribute(path, rmAttributeName,
+						existence, cardinality, children);
+			} else {
+				attribute = new CSingleAttribute(path, rmAttributeName,
+						existence, children);
+			}
+			if (children != null) {
+				for (CObject child : children) {
+					child.setParent(attribute);
+				}
+			}
+			attribute.setAnyAllowed(anyAllowed);
+			attribute.setAnnotation(annotation);
+			return attribute;
+		}
+
+		CPrimitive cprimitive() {
+			byte kind = in.get();
+			switch (kind) {
+			case C_BOOLEAN:
+				boolean trueValid = bool();
+				boolean falseValid = bool();
+				boolean hasAssumed = bool();
+				boolean assumed = bool();
+				boolean hasDefault = bool();
+				boolean defaultValue = bool();
+				return new CBoolean(trueValid, falseValid, assumed,
+						hasAssumed, defaultValue, hasDefault);
+			case C_INTEGER:
+				Interval<Integer> integers = interval(C_INTEGER);
+				List<Integer> integerList = list(C_INTEGER);
+				Integer assumedInteger = (Integer) value(C_INTEGER);
+				Integer defaultInteger = (Integer) value(C_INTEGER);
+				return new CInteger(integers, integerList, assumedInteger,
+						defaultInteger);
+			case C_REAL:
+				Interval<Double> reals = interval(C_REAL);
+				List<Double> realList = list(C_REAL);
+				Double assumedReal = (Double) value(C_REAL);
+				Double defaultReal = (Double) value(C_REAL);
+				return new CReal(reals, realList, assumedReal, defaultReal);
+			case C_STRING:
+				String pattern = string();
+				List<String> stringList = stringList();
+				String assumedString = string();
+				String defaultString = string();
+				return new CString(pattern, stringList, assumedString,
+						defaultString);
+			case C_DATE:
+				pattern = string();
+				Interval<DvDate> dates = interval(C_DATE);
+				List<DvDate> dateList = list(C_DATE);
+				DvDate assumedDate = (DvDate) value(C_DATE);
+				DvDate defaultDate = (DvDate) value(C_DATE);
+				return new CDate(pattern, dates, dateList, assumedDate,
+						defaultDate);
+			case C_TIME:
+				pattern = string();
+				Interval<DvTime> times = interval(C_TIME);
+				List<DvTime> timeList = list(C_TIME);
+				DvTime assumedTime = (DvTime) value(C_TIME);
+				DvTime defaultTime = (DvTime) value(C_TIME);
+				return new CTime(pattern, times, timeList, assumedTime,
+						defaultTime);
+			case C_DATE_TIME:
+				pattern = string();
+				Interval<DvDateTime> dateTimes = interval(C_DATE_TIME);
+				List<DvDateTime> dateTimeList = list(C_DATE_TIME);
+				DvDateTime assumedDateTime = (DvDateTime) value(C_DATE_TIME);
+				DvDateTime defaultDateTime = (DvDateTime) value(C_DATE_TIME);
+				return new CDateTime(pattern, dateTimes, dateTimeList,
+						assumedDateTime, defaultDateTime);
+			case C_DURATION:
+				DvDuration value = (DvDuration) value(C_DURATION);
+				Interval<DvDuration> durations = interval(C_DURATION);
+				DvDuration assumedDuration = (DvDuration) value(C_DURATION);
+				pattern = string();
+				DvDuration defaultDuration = (DvDuration) value(C_DURATION);
+				return new CDuration(value, durations, assumedDuration,
+						pattern, defaultDuration);
+			default:
+				throw new IllegalArgumentException("unknown primitive kind "
+						+ kind);
+			}
+		}
+
+		ArchetypeOntology ontology() {
+			String primaryLanguage = string();
+			List<String> languages = stringList();
+			List<String> terminologies = stringList();
+			List<OntologyDefinitions> termDefinitions = definitions();
+			List<OntologyDefinitions> constraintDefinitions = definitions();
+			List<OntologyBinding> termBindings = bindings();
+			List<OntologyBinding> constraintBindings = bindings();
+			return new ArchetypeOntology(primaryLanguage, languages,
+					terminologies, termDefinitions, constraintDefinitions,
+					termBindings, constraintBindings);
+		}
+
+		List<OntologyDefinitions> definitions() {
+			int size = size();
+			if (size == NULL) {
+				return null;
+			}
+			List<OntologyDefinitions> list =
+				new ArrayList<OntologyDefinitions>(size);
+			for (int i = 0; i < size; i++) {
+				String language = string();
+				List<ArchetypeTerm> terms = null;
+				int count = size();
+				if (count != NULL) {
+					terms = new ArrayList<ArchetypeTerm>(count);
+					for (int j = 0; j < count; j++) {
+						ArchetypeTerm term = new ArchetypeTerm(string());
+						int items = size();
+						for (int k = 0; k < items; k++) {
+							term.addItem(string(), string());
+						}
+						terms.add(term);
+					}
+				}
+				list.add(new OntologyDefinitions(language, terms));
+			}
+			return list;
+		}
+
+		List<OntologyBinding> bindings() {
+			int size = size();
+			if (size == NULL) {
+				return null;
+			}
+			List<OntologyBinding> list = new ArrayList<OntologyBinding>(size);
+			for (int i = 0; i < size; i++) {
+				String terminology = string();
+				List<OntologyBindingItem> items = null;
+				int count = size();
+				if (count != NULL) {
+					items = new ArrayList<OntologyBindingItem>(count);
+					for (int j = 0; j < count; j++) {
+						byte kind = in.get();
+						String code = string();
+						if (kind == TERM_BINDING) {
+							items.add(new TermBindingItem(code, stringList()));
+						} else if (kind == QUERY_BINDING) {
+							items.add(new QueryBindingItem(code, new Query(
+									string())));
+						} else {
+							throw new IllegalArgumentException(
+									"unknown binding kind " + kind);
+						}
+					}
+				}
+				list.add(new OntologyBinding(terminology, items));
+			}
+			return list;
+		}
+
+		Set<Assertion> assertions() {
+			int size = size();
+			if (size == NULL) {
+				return null;
+			}
+			Set<Assertion> assertions = new LinkedHashSet<Assertion>();
+			for (int i = 0; i < size; i++) {
+				String tag = string();
+				String stringExpression = string();
+				ExpressionItem expression = expression();
+				List<AssertionVariable> variables = null;
+				int count = size();
+				if (count != NULL) {
+					variables = new ArrayList<AssertionVariable>(count);
+					for (int j = 0; j < count; j++) {
+						variables.add(new AssertionVariable(string(),
+								string()));
+					}
+				}
+				assertions.add(new Assertion(tag, expression,
+						stringExpression, variables));
+			}
+			return assertions;
+		}
+
+		ExpressionItem expression() {
+			byte kind = in.get();
+			String type = string();
+			switch (kind) {
+			case EXPRESSION_LEAF:
+				Object item = leafValue();
+				String referenceType = string();
+				return new ExpressionLeaf(type, item, referenceType == null
+						? null : ExpressionLeaf.ReferenceType
+								.valueOf(referenceType));
+			case EXPRESSION_UNARY:
+				OperatorKind operator = OperatorKind.valueOf(string());
+				boolean precedenceOverridden = bool();
+				return new ExpressionUnaryOperator(type, operator,
+						precedenceOverridden, expression());
+			case EXPRESSION_BINARY:
+				operator = OperatorKind.valueOf(string());
+				precedenceOverridden = bool();
+				ExpressionItem left = expression();
+				ExpressionItem right = expression();
+				return new ExpressionBinaryOperator(type, operator,
+						precedenceOverridden, left, right);
+			default:
+				throw new IllegalArgumentException("unknown expression kind "
+						+ kind);
+			}
+		}
+
+		Object leafValue() {
+			byte kind = in.get();
+			switch (kind) {
+			case VALUE_NULL:
+				return null;
+			case VALUE_STRING:
+				return string();
+			case VALUE_INTEGER:
+				return Integer.valueOf(in.getInt());
+			case VALUE_LONG:
+				return Long.valueOf(in.getLong());
+			case VALUE_DOUBLE:
+				return Double.valueOf(in.getDouble());
+			case VALUE_BOOLEAN:
+				return Boolean.valueOf(bool());
+			case VALUE_C_PRIMITIVE:
+				return cprimitive();
+			default:
+				throw new IllegalArgumentException("unknown value kind "
+						+ kind);
+			}
+		}
+
+		Ordinal ordinal() {
+			int value = in.getInt();
+			return new Ordinal(value, codePhrase());
+		}
+
+		DvQuantity quantity() {
+			if (!bool()) {
+				return null;
+			}
+			String units = string();
+			double magnitude = in.getDouble();
+			int precision = in.getInt();
+			return new DvQuantity(units, magnitude, precision,
+					measurementService);
+		}
+
+		CodePhrase codePhrase() {
+			String terminologyId = string();
+			return terminologyId == null ? null : new CodePhrase(
+					terminologyId, string());
+		}
+
+		Interval interval(byte kind) {
+			byte flags = in.get();
+			if ((flags & INTERVAL_NULL) != 0) {
+				return null;
+			}
+			Comparable lower = (flags & INTERVAL_LOWER) != 0 ? bound(kind)
+					: null;
+			Comparable upper = (flags & INTERVAL_UPPER) != 0 ? bound(kind)
+					: null;
+			return new Interval(lower, upper,
+					(flags & INTERVAL_LOWER_INCLUDED) != 0,
+					(flags & INTERVAL_UPPER_INCLUDED) != 0);
+		}
+
+		List list(byte kind) {
+			int size = size();
+			if (size == NULL) {
+				return null;
+			}
+			List<Object> list = new ArrayList<Object>(size);
+			for (int i = 0; i < size; i++) {
+				list.add(bound(kind));
+			}
+			return list;
+		}
+
+		/* an optional value of given kind */
+		Object value(byte kind) {
+			return bool() ? bound(kind) : null;
+		}
+
+		/* a value of given kind */
+		Comparable bound(byte kind) {
+			switch (kind) {
+			case C_INTEGER:
+				return Integer.valueOf(in.getInt());
+			case C_REAL:
+				return Double.valueOf(in.getDouble());
+			case C_DATE:
+				return new DvDate(string());
+			case C_TIME:
+				return new DvTime(string());
+			case C_DATE_TIME:
+				return new DvDateTime(string());
+			case C_DURATION:
+				return DvDuration.getInstance(string());
+			default:
+				throw new IllegalArgumentException("unknown value kind "
+						+ kind);
+			}
+		}
+
+		List<String> stringList() {
+			int size = size();
+			if (size == NULL) {
+				return null;
+			}
+			List<String> list = new ArrayList<String>(size);
+			for (int i = 0; i < size; i++) {
+				list.add(string());
+			}
+			return list;
+		}
+
+		Map<String, String> stringMap() {
+			int size = size();
+			if (size == NULL) {
+				return null;
+			}
+			Map<String, String> map = new LinkedHashMap<String, String>();
+			for (int i = 0; i < size; i++) {
+				String key = string();
+				map.put(key, string());
+			}
+			return map;
+		}
+
+		/*
+		 * The number of items that follow, or NULL; each item takes at
+		 * least one byte, which bounds what is allocated for them
+		 */
+		int size() {
+			int size = in.getInt();
+			if (size != NULL && (size < 0 || size > in.remaining())) {
+				throw new IllegalArgumentException("bad size " + size);
+			}
+			return size;
+		}
+
+		boolean bool() {
+			return in.get() != 0;
+		}
+
+		String string() {
+			int index = in.getInt();
+			return index == NULL ? null : strings[index];
+		}
+
+		/* fields */
+		private final ByteBuffer in;
+	}
+
+	private static final String UTF8 = "UTF-8";
+
+	/* fields */
+	private final ByteBuffer buffer;
+	private final int version;
+	private final String archetypeId;
+	private final String[] strings;
+	private final int nodeTable;
+	private final int nodeCount;
+	private final int record;
+	private volatile Map<String, Integer> nodes;
+	private final TerminologyService terminologyService;
+	private final MeasurementService measurementService =
+		SimpleMeasurementService.getInstance();
+}
+/*
+ * ***** BEGIN LICENSE BLOCK ***** Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the 'License'); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is BinaryArchetypeReader.java
+ *
+ * ***** END LICENSE BLOCK *****
+ */
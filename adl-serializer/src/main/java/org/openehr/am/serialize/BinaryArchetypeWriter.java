@@ -0,0 +1,679 @@
+/*
+ * component:   "openEHR Reference Implementation"
+ * description: "Class BinaryArchetypeWriter"
+ * keywords:    "archetype"
+ *
+ * license:     "See notice at bottom of class"
+ *
+ * file:        "$URL$"
+ * revision:    "$LastChangedRevision$"
+ * last_change: "$LastChangedDate$"
+ */
+package org.openehr.am.serialize;
+
+import static org.openehr.am.serialize.BinaryArchetypeFormat.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.openehr.am.archetype.Archetype;
+import org.openehr.am.archetype.assertion.*;
+import org.openehr.am.archetype.constraintmodel.*;
+import org.openehr.am.archetype.constraintmodel.primitive.*;
+import org.openehr.am.archetype.ontology.*;
+import org.openehr.am.openehrprofile.datatypes.quantity.CDvOrdinal;
+import org.openehr.am.openehrprofile.datatypes.quantity.CDvQuantity;
+import org.openehr.am.openehrprofile.datatypes.quantity.CDvQuantityItem;
+import org.openehr.am.openehrprofile.datatypes.quantity.Ordinal;
+import org.openehr.am.openehrprofile.datatypes.text.CCodePhrase;
+import org.openehr.rm.common.resource.ResourceDescription;
+import org.openehr.rm.common.resource.ResourceDescriptionItem;
+import org.openehr.rm.common.resource.TranslationDetails;
+import org.openehr.rm.datatypes.quantity.DvQuantity;
+import org.openehr.rm.datatypes.quantity.datetime.DvDuration;
+import org.openehr.rm.datatypes.quantity.datetime.DvTemporal;
+import org.openehr.rm.datatypes.text.CodePhrase;
+import org.openehr.rm.support.basic.Interval;
+
+/**
+ * Writes archetypes in the binary format of {@link BinaryArchetypeFormat},
+ * to be loaded by {@link BinaryArchetypeReader} much faster than parsing
+ * their ADL again.
+ * <p>
+ * All of the archetype model produced by the ADL parser is written, except
+ * revision history and state machine constraints, which are rejected. A
+ * writer holds no state between archetypes and can be shared.
+ *
+ * @version 1.0
+ */
+public class BinaryArchetypeWriter {
+
+	/**
+	 * Writes given archetype to given file
+	 *
+	 * @param archetype not null
+	 * @param file not null
+	 * @throws IOException if fails to write
+	 * @throws IllegalArgumentException if the archetype has content not
+	 *             supported by the format
+	 */
+	public void write(Archetype archetype, File file) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			write(archetype, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes given archetype to given stream, which is not closed
+	 *
+	 * @param archetype not null
+	 * @param out not null
+	 * @throws IOException if fails to write
+	 * @throws IllegalArgumentException if the archetype has content not
+	 *             supported by the format
+	 */
+	public void write(Archetype archetype, OutputStream out)
+			throws IOException {
+		out.write(toBytes(archetype));
+		out.flush();
+	}
+
+	/**
+	 * Writes given archetype to a byte array
+	 *
+	 * @param archetype not null
+	 * @return the bytes of the archetype
+	 * @throws IllegalArgumentException if the archetype has content not
+	 *             supported by the format
+	 */
+	public byte[] toBytes(Archetype archetype) {
+		try {
+			Encoder body = new Encoder();
+			body.archetype(archetype);
+
+			ByteArrayOutputStream strings = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(strings);
+			for (String string : body.strings) {
+				byte[] bytes = string.getBytes(UTF8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+			out.flush();
+
+			int stringTable = HEADER_SIZE;
+			int nodeTable = stringTable + strings.size();
+			int nodeCount = body.nodePaths.size();
+			int record = nodeTable + nodeCount * 8;
+
+			ByteArrayOutputStream file = new ByteArrayOutputStream(record
+					+ body.bytes.size());
+			out = new DataOutputStream(file);
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeShort(0);
+			out.writeInt(body.stringIndex(archetype.getArchetypeId()
+					.toString()));
+			out.writeInt(stringTable);
+			out.writeInt(body.strings.size());
+			out.writeInt(nodeTable);
+			out.writeInt(nodeCount);
+			out.writeInt(record);
+			strings.writeTo(out);
+			for (int i = 0; i < nodeCount; i++) {
+				out.writeInt(body.nodePaths.get(i));
+				out.writeInt(record + body.nodeOffsets.get(i));
+			}
+			body.bytes.writeTo(out);
+			out.flush();
+			return file.toByteArray();
+		} catch (IOException e) {
+			// not thrown by byte array streams
+			throw new IllegalStateException(e.getMessage());
+		}
+	}
+
+	/*
+	 * Encodes the records of one archetype, collecting its strings and the
+	 * offsets of its object nodes
+	 */
+	private static final class Encoder {
+
+		void archetype(Archetype archetype) throws IOException {
+			if (archetype.getRevisionHistory() != null) {
+				throw new IllegalArgumentException(
+						"revision history not supported");
+			}
+			string(archetype.getAdlVersion());
+			string(archetype.getArchetypeId().toString());
+			string(archetype.getParentArchetypeId() == null ? null
+					: archetype.getParentArchetypeId().toString());
+			string(archetype.getConcept());
+			string(archetype.getUid() == null ? null : archetype.getUid()
+					.toString());
+			out.writeBoolean(archetype.isControlled());
+			codePhrase(archetype.getOriginalLanguage());
+
+			Map<String, TranslationDetails> translations =
+				archetype.getTranslations();
+			size(translations == null ? null : translations.keySet());
+			if (translations != null) {
+				for (Map.Entry<String, TranslationDetails> e : translations
+						.entrySet()) {
+					string(e.getKey());
+					TranslationDetails td = e.getValue();
+					codePhrase(td.getLanguage());
+					stringMap(td.getAuthor());
+					string(td.getAccreditation());
+					stringMap(td.getOtherDetails());
+				}
+			}
+			description(archetype.getDescription());
+			cobject(archetype.getDefinition());
+			ontology(archetype.getOntology());
+			assertions(archetype.getInvariants());
+		}
+
+		void description(ResourceDescription description) throws IOException {
+			out.writeBoolean(description != null);
+			if (description == null) {
+				return;
+			}
+			stringMap(description.getOriginalAuthor());
+			stringList(description.getOtherContributors());
+			string(description.getLifecycleState());
+			List<ResourceDescriptionItem> details = description.getDetails();
+			size(details);
+			if (details != null) {
+				for (ResourceDescriptionItem item : details) {
+					codePhrase(item.getLanguage());
+					string(item.getPurpose());
+					stringList(item.getKeywords());
+					string(item.getUse());
+					string(item.getMisuse());
+					string(item.getCopyright());
+					stringMap(item.getOriginalResourceUri());
+					stringMap(item.getOtherDetails());
+				}
+			}
+			string(description.getResourcePackageUri());
+			stringMap(description.getOtherDetails());
+		}
+
+		void cobject(CObject cobj) throws IOException {
+			byte kind;
+			if (cobj instanceof CComplexObject) {
+				kind = C_COMPLEX_OBJECT;
+			} else if (cobj instanceof CPrimitiveObject) {
+				kind = C_PRIMITIVE_OBJECT;
+			} else if (cobj instanceof ArchetypeSlot) {
+				kind = ARCHETYPE_SLOT;
+			} else if (cobj instanceof ArchetypeInternalRef) {
+				kind = ARCHETYPE_INTERNAL_REF;
+			} else if (cobj instanceof ConstraintRef) {
+				kind = CONSTRAINT_REF;
+			} else if (cobj instanceof CCodePhrase) {
+				kind = C_CODE_PHRASE;
+			} else if (cobj instanceof CDvOrdinal) {
+				kind = C_DV_ORDINAL;
+			} else if (cobj instanceof CDvQuantity) {
+				kind = C_DV_QUANTITY;
+			} else {
+				throw new IllegalArgumentException("unsupported constraint "
+						+ cobj.getClass().getName() + " at " + cobj.path());
+			}
+			nodePaths.add(stringIndex(cobj.path()));
+			nodeOffsets.add(bytes.size());
+
+			out.writeByte(kind);
+			string(cobj.path());
+			string(cobj.getRmTypeName());
+			string(cobj.getNodeId());
+			interval(cobj.getOccurrences(), C_INTEGER);
+			out.writeByte(cobj.isAnyAllowed() ? ANY_ALLOWED : 0);
+			string(cobj.getAnnotation());
+
+			switch (kind) {
+			case C_COMPLEX_OBJECT:
+				List<CAttribute> attributes = ((CComplexObject) cobj)
+						.getAttributes();
+				size(attributes);
+				for (CAttribute attribute : attributes) {
+					cattribute(attribute);
+				}
+				break;
+			case C_PRIMITIVE_OBJECT:
+				cprimitive(((CPrimitiveObject) cobj).getItem());
+				break;
+			case ARCHETYPE_SLOT:
+				ArchetypeSlot slot = (ArchetypeSlot) cobj;
+				assertions(slot.getIncludes());
+				assertions(slot.getExcludes());
+				break;
+			case ARCHETYPE_INTERNAL_REF:
+				string(((ArchetypeInternalRef) cobj).getTargetPath());
+				break;
+			case CONSTRAINT_REF:
+				string(((ConstraintRef) cobj).getReference());
+				break;
+			case C_CODE_PHRASE:
+				CCodePhrase ccp = (CCodePhrase) cobj;
+				string(ccp.getTerminologyId() == null ? null : ccp
+						.getTerminologyId().getValue());
+				stringList(ccp.getCodeList());
+				codePhrase(ccp.getDefaultValue());
+				codePhrase(ccp.getAssumedValue());
+				break;
+			case C_DV_ORDINAL:
+				CDvOrdinal ordinal = (CDvOrdinal) cobj;
+				size(ordinal.getList());
+				if (ordinal.getList() != null) {
+					for (Ordinal o : ordinal.getList()) {
+						ordinal(o);
+					}
+				}
+				out.writeBoolean(ordinal.getDefaultValue() != null);
+				if (ordinal.getDefaultValue() != null) {
+					ordinal(ordinal.getDefaultValue());
+				}
+				out.writeBoolean(ordinal.getAssumedValue() != null);
+				if (ordinal.getAssumedValue() != null) {
+					ordinal(ordinal.getAssumedValue());
+				}
+				break;
+			case C_DV_QUANTITY:
+				CDvQuantity quantity = (CDvQuantity) cobj;
+				size(quantity.getList());
+				if (quantity.getList() != null) {
+					for (CDvQuantityItem item : quantity.getList()) {
+						interval(item.getMagnitude(), C_REAL);
+						interval(item.getPrecision(), C_INTEGER);
+						string(item.getUnits());
+					}
+				}
+				codePhrase(quantity.getProperty());
+				quantity(quantity.getDefaultValue());
+				quantity(quantity.getAssumedValue());
+				break;
+			}
+		}
+
+		void cattribute(CAttribute attribute) throws IOException {
+			boolean multiple = attribute instanceof CMultipleAttribute;
+			out.writeByte(multiple ? C_MULTIPLE_ATTRIBUTE
+					: C_SINGLE_ATTRIBUTE);
+			string(attribute.path());
+			string(attribute.getRmAttributeName());
+			string(attribute.getExistence().name());
+			out.writeBoolean(attribute.isAnyAllowed());
+			string(attribute.getAnnotation());
+			if (multiple) {
+				Cardinality cardinality = ((CMultipleAttribute) attribute)
+						.getCardinality();
+				out.writeBoolean(cardinality.isOrdered());
+				out.writeBoolean(cardinality.isUnique());
+				interval(cardinality.getInterval(), C_INTEGER);
+			}
+			List<CObject> children = attribute.getChildren();
+			size(children);
+			if (children != null) {
+				for (CObject child : children) {
+					cobject(child);
+				}
+			}
+		}
+
+		void cprimitive(CPrimitive item) throws IOException {
+			if (item instanceof CBoolean) {
+				CBoolean b = (CBoolean) item;
+				out.writeByte(C_BOOLEAN);
+				out.writeBoolean(b.isTrueValid());
+				out.writeBoolean(b.isFalseValid());
+				out.writeBoolean(b.hasAssumedValue());
+				out.writeBoolean(b.hasAssumedValue()
+						&& b.assumedValue().booleanValue());
+				out.writeBoolean(b.hasDefaultValue());
+				out.writeBoolean(b.hasDefaultValue()
+						&& b.defaultValue().getValue());
+			} else if (item instanceof CInteger) {
+				CInteger i = (CInteger) item;
+				out.writeByte(C_INTEGER);
+				interval(i.getInterval(), C_INTEGER);
+				list(i.getList(), C_INTEGER);
+				value(i.assumedValue(), C_INTEGER);
+				value(i.defaultValue(), C_INTEGER);
+			} else if (item instanceof CReal) {
+				CReal r = (CReal) item;
+				out.writeByte(C_REAL);
+				interval(r.getInterval(), C_REAL);
+				list(r.getList(), C_REAL);
+				value(r.assumedValue(), C_REAL);
+				value(r.defaultValue(), C_REAL);
+			} else if (item instanceof CString) {
+				CString s = (CString) item;
+				out.writeByte(C_STRING);
+				string(s.getPattern());
+				stringList(s.getList());
+				string((String) s.assumedValue());
+				string(s.defaultValue());
+			} else if (item instanceof CDate) {
+				CDate d = (CDate) item;
+				out.writeByte(C_DATE);
+				string(d.getPattern());
+				interval(d.getInterval(), C_DATE);
+				list(d.getList(), C_DATE);
+				value(d.assumedValue(), C_DATE);
+				value(d.defaultValue(), C_DATE);
+			} else if (item instanceof CTime) {
+				CTime t = (CTime) item;
+				out.writeByte(C_TIME);
+				string(t.getPattern());
+				interval(t.getInterval(), C_TIME);
+				list(t.getList(), C_TIME);
+				value(t.assumedValue(), C_TIME);
+				value(t.defaultValue(), C_TIME);
+			} else if (item instanceof CDateTime) {
+				CDateTime dt = (CDateTime) item;
+				out.writeByte(C_DATE_TIME);
+				string(dt.getPattern());
+				interval(dt.getInterval(), C_DATE_TIME);
+				list(dt.getList(), C_DATE_TIME);
+				value(dt.assumedValue(), C_DATE_TIME);
+				value(dt.defaultValue(), C_DATE_TIME);
+			} else if (item instanceof CDuration) {
+				CDuration d = (CDuration) item;
+				out.writeByte(C_DURATION);
+				value(d.getValue(), C_DURATION);
+				interval(d.getInterval(), C_DURATION);
+				value(d.assumedValue(), C_DURATION);
+				string(d.getPattern());
+				value(d.defaultValue(), C_DURATION);
+			} else {
+				throw new IllegalArgumentException("unsupported primitive "
+						+ item.getClass().getName());
+			}
+		}
+
+		void ontology(ArchetypeOntology ontology) throws IOException {
+			string(ontology.getPrimaryLanguage());
+			stringList(ontology.getLanguages());
+			stringList(ontology.getTerminologies());
+			definitions(ontology.getTermDefinitionsList());
+			definitions(ontology.getConstraintDefinitionsList());
+			bindings(ontology.getTermBindingList());
+			bindings(ontology.getConstraintBindingList());
+		}
+
+		void definitions(List<OntologyDefinitions> list) throws IOException {
+			size(list);
+			if (list == null) {
+				return;
+			}
+			for (OntologyDefinitions defs : list) {
+				string(defs.getLanguage());
+				size(defs.getDefinitions());
+				if (defs.getDefinitions() != null) {
+					for (ArchetypeTerm term : defs.getDefinitions()) {
+						string(term.getCode());
+						stringMap(term.getItems());
+					}
+				}
+			}
+		}
+
+		void bindings(List<OntologyBinding> list) throws IOException {
+			size(list);
+			if (list == null) {
+				return;
+			}
+			for (OntologyBinding binding : list) {
+				string(binding.getTerminology());
+				List<OntologyBindingItem> items = binding.getBindingList();
+				size(items);
+				if (items == null) {
+					continue;
+				}
+				for (OntologyBindingItem item : items) {
+					if (item instanceof TermBindingItem) {
+						out.writeByte(TERM_BINDING);
+						string(item.getCode());
+						stringList(((TermBindingItem) item).getTerms());
+					} else if (item instanceof QueryBindingItem) {
+						out.writeByte(QUERY_BINDING);
+						string(item.getCode());
+						string(((QueryBindingItem) item).getQuery().getUrl());
+					} else {
+						throw new IllegalArgumentException(
+								"unsupported binding item "
+										+ item.getClass().getName());
+					}
+				}
+			}
+		}
+
+		void assertions(Set<Assertion> assertions) throws IOException {
+			size(assertions);
+			if (assertions == null) {
+				return;
+			}
+			for (Assertion assertion : assertions) {
+				string(assertion.getTag());
+				string(assertion.getStringExpression());
+				expression(assertion.getExpression());
+				List<AssertionVariable> variables = assertion.getVariables();
+				size(variables);
+				if (variables != null) {
+					for (AssertionVariable variable : variables) {
+						string(variable.getName());
+						string(variable.getDefinition());
+					}
+				}
+			}
+		}
+
+		void expression(ExpressionItem item) throws IOException {
+			if (item instanceof ExpressionLeaf) {
+				ExpressionLeaf leaf = (ExpressionLeaf) item;
+				out.writeByte(EXPRESSION_LEAF);
+				string(leaf.getType());
+				leafValue(leaf.getItem());
+				string(leaf.getReferenceType() == null ? null : leaf
+						.getReferenceType().name());
+			} else if (item instanceof ExpressionUnaryOperator) {
+				ExpressionUnaryOperator op = (ExpressionUnaryOperator) item;
+				out.writeByte(EXPRESSION_UNARY);
+				string(op.getType());
+				string(op.getOperator().name());
+				out.writeBoolean(op.isPrecedenceOverridden());
+				expression(op.getOperand());
+			} else if (item instanceof ExpressionBinaryOperator) {
+				ExpressionBinaryOperator op = (ExpressionBinaryOperator) item;
+				out.writeByte(EXPRESSION_BINARY);
+				string(op.getType());
+				string(op.getOperator().name());
+				out.writeBoolean(op.isPrecedenceOverridden());
+				expression(op.getLeftOperand());
+				expression(op.getRightOperand());
+			} else {
+				throw new IllegalArgumentException("unsupported expression "
+						+ item);
+			}
+		}
+
+		void leafValue(Object value) throws IOException {
+			if (value == null) {
+				out.writeByte(VALUE_NULL);
+			} else if (value instanceof String) {
+				out.writeByte(VALUE_STRING);
+				string((String) value);
+			} else if (value instanceof Integer) {
+				out.writeByte(VALUE_INTEGER);
+				out.writeInt(((Integer) value).intValue());
+			} else if (value instanceof Long) {
+				out.writeByte(VALUE_LONG);
+				out.writeLong(((Long) value).longValue());
+			} else if (value instanceof Double) {
+				out.writeByte(VALUE_DOUBLE);
+				out.writeDouble(((Double) value).doubleValue());
+			} else if (value instanceof Boolean) {
+				out.writeByte(VALUE_BOOLEAN);
+				out.writeBoolean(((Boolean) value).booleanValue());
+			} else if (value instanceof CPrimitive) {
+				out.writeByte(VALUE_C_PRIMITIVE);
+				cprimitive((CPrimitive) value);
+			} else {
+				throw new IllegalArgumentException("unsupported value "
+						+ value.getClass().getName());
+			}
+		}
+
+		void ordinal(Ordinal ordinal) throws IOException {
+			out.writeInt(ordinal.getValue());
+			codePhrase(ordinal.getSymbol());
+		}
+
+		void quantity(DvQuantity quantity) throws IOException {
+			out.writeBoolean(quantity != null);
+			if (quantity != null) {
+				string(quantity.getUnits());
+				out.writeDouble(quantity.getMagnitude().doubleValue());
+				out.writeInt(quantity.getPrecision());
+			}
+		}
+
+		void codePhrase(CodePhrase code) throws IOException {
+			if (code == null) {
+				string(null);
+			} else {
+				string(code.getTerminologyId().getValue());
+				string(code.getCodeString());
+			}
+		}
+
+		void interval(Interval interval, byte kind) throws IOException {
+			if (interval == null) {
+				out.writeByte(INTERVAL_NULL);
+				return;
+			}
+			int flags = 0;
+			if (interval.getLower() != null) {
+				flags |= INTERVAL_LOWER;
+			}
+			if (interval.getUpper() != null) {
+				flags |= INTERVAL_UPPER;
+			}
+			if (interval.isLowerIncluded()) {
+				flags |= INTERVAL_LOWER_INCLUDED;
+			}
+			if (interval.isUpperIncluded()) {
+				flags |= INTERVAL_UPPER_INCLUDED;
+			}
+			out.writeByte(flags);
+			if (interval.getLower() != null) {
+				bound(interval.getLower(), kind);
+			}
+			if (interval.getUpper() != null) {
+				bound(interval.getUpper(), kind);
+			}
+		}
+
+		void list(List list, byte kind) throws IOException {
+			size(list);
+			if (list != null) {
+				for (Object value : list) {
+					bound(value, kind);
+				}
+			}
+		}
+
+		/* an optional value of given kind */
+		void value(Object value, byte kind) throws IOException {
+			out.writeBoolean(value != null);
+			if (value != null) {
+				bound(value, kind);
+			}
+		}
+
+		/* a value of given kind */
+		void bound(Object value, byte kind) throws IOException {
+			switch (kind) {
+			case C_INTEGER:
+				out.writeInt(((Integer) value).intValue());
+				break;
+			case C_REAL:
+				out.writeDouble(((Double) value).doubleValue());
+				break;
+			case C_DURATION:
+				string(((DvDuration) value).getValue());
+				break;
+			default:
+				string(((DvTemporal) value).getValue());
+			}
+		}
+
+		void stringList(List<String> list) throws IOException {
+			size(list);
+			if (list != null) {
+				for (String s : list) {
+					string(s);
+				}
+			}
+		}
+
+		void stringMap(Map<String, String> map) throws IOException {
+			size(map == null ? null : map.keySet());
+			if (map != null) {
+				for (Map.Entry<String, String> e : map.entrySet()) {
+					string(e.getKey());
+					string(e.getValue());
+				}
+			}
+		}
+
+		void size(Collection collection) throws IOException {
+			out.writeInt(collection == null ? NULL : collection.size());
+		}
+
+		void string(String value) throws IOException {
+			out.writeInt(value == null ? NULL : stringIndex(value));
+		}
+
+		int stringIndex(String value) {
+			Integer index = stringIndexes.get(value);
+			if (index == null) {
+				index = strings.size();
+				strings.add(value);
+				stringIndexes.put(value, index);
+			}
+			return index;
+		}
+
+		/* fields */
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+		final DataOutputStream out = new DataOutputStream(bytes);
+		final List<String> strings = new ArrayList<String>();
+		final Map<String, Integer> stringIndexes =
+			new HashMap<String, Integer>();
+		final List<Integer> nodePaths = new ArrayList<Integer>();
+		final List<Integer> nodeOffsets = new ArrayList<Integer>();
+	}
+
+	private static final String UTF8 = "UTF-8";
+}
+/*
+ * ***** BEGIN LICENSE BLOCK ***** Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the 'License'); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is BinaryArchetypeWriter.java
+ *
+ * ***** END LICENSE BLOCK *****
+ */
@@ -0,0 +1,136 @@
+package org.openehr.am.serialize;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.openehr.am.archetype.Archetype;
+
+import se.acode.openehr.parser.ADLParser;
+import se.acode.openehr.parser.TokenMgrError;
+
+/**
+ * Compares loading archetypes by parsing their ADL, by Java serialization
+ * with {@link ObjectInputStream} and by {@link BinaryArchetypeReader}, all
+ * from content already in memory.
+ * <p>
+ * Usage: BinaryArchetypeBenchmark [directory [rounds]]
+ *
+ * @version 1.0
+ */
+public class BinaryArchetypeBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		File directory = new File(args.length > 0 ? args[0] : ".."
+				+ File.separator + "adl-parser" + File.separator + "src"
+				+ File.separator + "test" + File.separator + "resources");
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+		List<byte[]> adl = new ArrayList<byte[]>();
+		List<byte[]> serialized = new ArrayList<byte[]>();
+		List<byte[]> binary = new ArrayList<byte[]>();
+		BinaryArchetypeWriter writer = new BinaryArchetypeWriter();
+		int skipped = 0;
+		for (File file : directory.listFiles()) {
+			if (!file.getName().endsWith(".adl")) {
+				continue;
+			}
+			byte[] content = FileUtils.readFileToByteArray(file);
+			Archetype archetype = parse(content);
+			if (archetype == null) {
+				continue; // not a complete archetype
+			}
+			byte[] bytes;
+			try {
+				bytes = serialize(archetype);
+			} catch (NotSerializableException e) {
+				skipped++; // only archetypes all three can load are compared
+				continue;
+			}
+			adl.add(content);
+			serialized.add(bytes);
+			binary.add(writer.toBytes(archetype));
+		}
+
+		for (int warmup = 0; warmup < 2; warmup++) {
+			parse(adl, rounds / 10);
+			deserialize(serialized, rounds / 10);
+			read(binary, rounds / 10);
+		}
+
+		long parseTime = parse(adl, rounds);
+		long deserializeTime = deserialize(serialized, rounds);
+		long readTime = read(binary, rounds);
+		System.out.println(rounds * adl.size() + " archetypes, " + skipped
+				+ " files not serializable skipped");
+		System.out.println("ADL parse: " + parseTime + " ms, "
+				+ size(adl) + " bytes");
+		System.out.println("ObjectInputStream: " + deserializeTime + " ms, "
+				+ size(serialized) + " bytes");
+		System.out.println("binary read: " + readTime + " ms, "
+				+ size(binary) + " bytes");
+	}
+
+	private static Archetype parse(byte[] content) {
+		try {
+			return new ADLParser(new ByteArrayInputStream(content), "UTF-8")
+					.parse();
+		} catch (Exception e) {
+			return null;
+		} catch (TokenMgrError e) {
+			return null;
+		}
+	}
+
+	private static byte[] serialize(Archetype archetype) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(archetype);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static long parse(List<byte[]> contents, int rounds) {
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < rounds; i++) {
+			for (byte[] content : contents) {
+				parse(content);
+			}
+		}
+		return System.currentTimeMillis() - start;
+	}
+
+	private static long deserialize(List<byte[]> contents, int rounds)
+			throws Exception {
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < rounds; i++) {
+			for (byte[] content : contents) {
+				ObjectInputStream in = new ObjectInputStream(
+						new ByteArrayInputStream(content));
+				in.readObject();
+				in.close();
+			}
+		}
+		return System.currentTimeMillis() - start;
+	}
+
+	private static long read(List<byte[]> contents, int rounds)
+			throws IOException {
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < rounds; i++) {
+			for (byte[] content : contents) {
+				new BinaryArchetypeReader(content).readArchetype();
+			}
+		}
+		return System.currentTimeMillis() - start;
+	}
+
+	private static long size(List<byte[]> contents) {
+		long size = 0;
+		for (byte[] content : contents) {
+			size += content.length;
+		}
+		return size;
+	}
+}
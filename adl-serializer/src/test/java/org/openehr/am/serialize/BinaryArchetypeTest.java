@@ -0,0 +1,205 @@
+package org.openehr.am.serialize;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.openehr.am.archetype.Archetype;
+import org.openehr.am.archetype.constraintmodel.CAttribute;
+import org.openehr.am.archetype.constraintmodel.CComplexObject;
+import org.openehr.am.archetype.constraintmodel.CObject;
+
+import se.acode.openehr.parser.ADLParser;
+import se.acode.openehr.parser.TokenMgrError;
+
+public class BinaryArchetypeTest extends SerializerTestBase {
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		writer = new BinaryArchetypeWriter();
+	}
+
+	public void testRoundTripAllTestArchetypes() throws Exception {
+		int count = 0;
+		for (File file : TEST_ARCHETYPES.listFiles()) {
+			if (!file.getName().endsWith(".adl")) {
+				continue;
+			}
+			Archetype archetype;
+			try {
+				archetype = new ADLParser(file).parse();
+			} catch (Exception e) {
+				continue; // not a complete archetype
+			} catch (TokenMgrError e) {
+				continue;
+			}
+			Archetype read = new BinaryArchetypeReader(writer
+					.toBytes(archetype)).readArchetype();
+			assertSameArchetype(file.getName(), archetype, read);
+			count++;
+		}
+		assertEquals(56, count);
+	}
+
+	public void testReadMappedFile() throws Exception {
+		Archetype archetype = parse(EVALUATION);
+		File file = File.createTempFile("archetype", ".aom");
+		try {
+			writer.write(archetype, file);
+			BinaryArchetypeReader reader = new BinaryArchetypeReader(file);
+			assertEquals(archetype.getArchetypeId().toString(), reader
+					.getArchetypeId());
+			assertEquals(1, reader.getVersion());
+			assertSameArchetype(EVALUATION, archetype, reader
+					.readArchetype());
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testReadNode() throws Exception {
+		Archetype archetype = parse(EVALUATION);
+		BinaryArchetypeReader reader = new BinaryArchetypeReader(writer
+				.toBytes(archetype));
+		assertEquals(archetype.getPathNodeMap().keySet(), reader
+				.getNodePaths());
+		for (String path : reader.getNodePaths()) {
+			CObject expected = (CObject) archetype.node(path);
+			CObject actual = reader.readNode(path);
+			assertEquals(path, expected.getClass(), actual.getClass());
+			assertEquals(path, expected.getRmTypeName(), actual
+					.getRmTypeName());
+			assertEquals(path, expected.getNodeId(), actual.getNodeId());
+			assertNull(actual.getParent());
+			if (expected instanceof CComplexObject) {
+				CComplexObject object = (CComplexObject) actual;
+				assertEquals(path, ((CComplexObject) expected)
+						.getAttributes().size(), object.getAttributes().size());
+				for (CAttribute attribute : object.getAttributes()) {
+					for (CObject child : attribute.getChildren()) {
+						assertSame(attribute, child.getParent());
+					}
+				}
+			}
+		}
+		assertNull(reader.readNode("/no_such_path"));
+	}
+
+	public void testStringsShared() throws Exception {
+		Archetype archetype = new BinaryArchetypeReader(writer.toBytes(
+				parse(EVALUATION))).readArchetype();
+		CComplexObject definition = archetype.getDefinition();
+		CObject child = definition.getAttributes().get(0).getChildren().get(0);
+		assertSame(definition.getRmTypeName(), ((CObject) archetype.node(
+				definition.path())).getRmTypeName());
+		assertSame(child.path(), ((CObject) archetype.node(
+				child.path())).path());
+	}
+
+	public void testBufferPosition() throws Exception {
+		byte[] bytes = writer.toBytes(parse(EVALUATION));
+		ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 3);
+		buffer.put(new byte[3]).put(bytes).position(3);
+		assertEquals("openEHR-EHR-EVALUATION.test_concept.v1",
+				new BinaryArchetypeReader(buffer).readArchetype()
+						.getArchetypeId().toString());
+		assertEquals(3, buffer.position());
+	}
+
+	public void testRejectsOtherFiles() throws Exception {
+		byte[] bytes = writer.toBytes(parse(EVALUATION));
+		bytes[5]++;
+		try {
+			new BinaryArchetypeReader(bytes);
+			fail("exception should be thrown");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().indexOf("version") > 0);
+		}
+		File file = File.createTempFile("archetype", ".adl");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			out.write("archetype (adl_version=1.4)".getBytes("UTF-8"));
+			out.close();
+			new BinaryArchetypeReader(file);
+			fail("exception should be thrown");
+		} catch (IOException e) {
+			// expected
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testRejectsTruncated() throws Exception {
+		byte[] bytes = writer.toBytes(parse(EVALUATION));
+		byte[] truncated = new byte[bytes.length - 10];
+		System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+		try {
+			new BinaryArchetypeReader(truncated).readArchetype();
+			fail("exception should be thrown");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testRejectsCorruptHeader() throws Exception {
+		byte[] bytes = writer.toBytes(parse(EVALUATION));
+		ByteBuffer header = ByteBuffer.wrap(bytes);
+		int stringTable = header.getInt(STRING_TABLE);
+		header.putInt(STRING_TABLE, header.getInt(NODE_TABLE));
+		header.putInt(NODE_TABLE, stringTable);
+		try {
+			new BinaryArchetypeReader(bytes);
+			fail("exception should be thrown");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testRejectsCorruptContent() throws Exception {
+		byte[] bytes = writer.toBytes(parse(EVALUATION));
+		for (int i = 0; i + 4 <= bytes.length; i++) {
+			for (int value : new int[] { Integer.MAX_VALUE, -2 }) {
+				byte[] corrupt = bytes.clone();
+				ByteBuffer.wrap(corrupt).putInt(i, value);
+				try {
+					BinaryArchetypeReader reader =
+						new BinaryArchetypeReader(corrupt);
+					reader.readArchetype();
+					reader.getNodePaths();
+				} catch (IOException e) {
+					// expected for most positions
+				}
+			}
+		}
+	}
+
+	private Archetype parse(String adl) throws Exception {
+		return new ADLParser(getClass().getClassLoader().getResourceAsStream(
+				adl)).parse();
+	}
+
+	private void assertSameArchetype(String name, Archetype expected,
+			Archetype actual) throws Exception {
+		assertEquals(name, outputter.output(expected), outputter
+				.output(actual));
+		assertEquals(name, expected.getDefinition(), actual.getDefinition());
+		assertEquals(name, expected.getOntology(), actual.getOntology());
+		assertEquals(name, expected.getPathNodeMap().keySet(), actual
+				.getPathNodeMap().keySet());
+	}
+
+	private static final String EVALUATION =
+		"openEHR-EHR-EVALUATION.test_concept.v1.adl";
+
+	/* the test archetypes of the parser, relative to this module */
+	private static final File TEST_ARCHETYPES = new File(".." + File.separator
+			+ "adl-parser" + File.separator + "src" + File.separator + "test"
+			+ File.separator + "resources");
+
+	/* offsets of header fields */
+	private static final int STRING_TABLE = 12;
+	private static final int NODE_TABLE = 20;
+
+	private BinaryArchetypeWriter writer;
+}
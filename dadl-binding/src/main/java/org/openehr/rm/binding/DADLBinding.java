@@ -13,26 +13,30 @@
  */
 package org.openehr.rm.binding;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.openehr.am.parser.AttributeValue;
 import org.openehr.am.parser.ComplexObjectBlock;
 import org.openehr.am.parser.ContentObject;
+import org.openehr.am.parser.DADLParser;
 import org.openehr.am.parser.KeyedObject;
 import org.openehr.am.parser.MultipleAttributeObjectBlock;
 import org.openehr.am.parser.ObjectBlock;
+import org.openehr.am.parser.ParseException;
 import org.openehr.am.parser.PrimitiveObjectBlock;
 import org.openehr.am.parser.SimpleValue;
 import org.openehr.am.parser.SingleAttributeObjectBlock;
@@ -93,6 +97,33 @@ public class DADLBinding {
 		}
 	}
 
+	/**
+	 * Parses the DADL input of given parser and binds it to RM objects as
+	 * it is parsed, without building the parse tree first
+	 * 
+	 * @param parser not null
+	 * @return the bound object, the same as bind(parser.parse())
+	 * @throws ParseException if the input cannot be parsed
+	 * @throws DADLBindingException if the input cannot be bound
+	 * @throws RMObjectBuildingException if a RM object cannot be built
+	 */
+	public Object bind(DADLParser parser) throws ParseException, 
+			DADLBindingException, RMObjectBuildingException {
+		DADLEventBinder binder = new DADLEventBinder(this);
+		try {
+			parser.parse(binder);
+		} catch (ParseException e) {
+			Exception failure = binder.getFailure();
+			if (failure instanceof DADLBindingException) {
+				throw (DADLBindingException) failure;
+			} else if (failure instanceof RMObjectBuildingException) {
+				throw (RMObjectBuildingException) failure;
+			}
+			throw e;
+		}
+		return binder.getResult();
+	}
+
 	RMObject bindAttributes(String type, List<AttributeValue> attributes)
 			throws DADLBindingException, RMObjectBuildingException {
 
@@ -193,16 +224,14 @@ public class DADLBinding {
 	
 	public List<String> toDADL(Object obj, int indent, List<String> lines) throws Exception {		
 		
+		if(log.isDebugEnabled()) {
+			log.debug("toDADL on obj.getClass: " + obj.getClass().getCanonicalName()
+					+ ", indent: " + indent + ", line.size: "  + lines.size());
+		}
 		
-		log.debug("toDADL on obj.getClass: " + obj.getClass().getCanonicalName()
-				+ ", indent: " + indent + ", line.size: "  + lines.size());
-		
-		Class klass = obj.getClass();		
-		
-		String className = klass.getSimpleName();
-		String rmName = toUnderscoreSeparated(className).toUpperCase();
+		Plan plan = plan(obj.getClass());
 	
-		String typeHeader = "(" + rmName + ") <";
+		String typeHeader = "(" + plan.rmName + ") <";
 		int size = lines.size();
 		if(size == 0) {
 			lines.add(typeHeader); 
@@ -212,78 +241,62 @@ public class DADLBinding {
 			lines.set(size -1, l);
 		}	
 		
-		SortedMap<String, Attribute> attributes = attributeMap(obj.getClass());
-		String name = null;
 		Object value = null;
 		StringBuffer buf = null;
-		for(Iterator<String> names = attributes.keySet().iterator(); names.hasNext();) {	
-			name = names.next();
-			
-			Attribute attribute = attributes.get(name);
-			if(attribute.system()) {
-				continue;
-			}
-			
-			if("parent".equals(attribute.name())) {
-				continue; // causing dead-loops
-			}
+		for(Property property : plan.properties) {
+			value = property.getter.invoke(obj);
+			buf = new StringBuffer();
+			if(value != null ) {
+				for(int i = 0; i < indent; i++) {
+					buf.append("\t");
+				}
+				buf.append(property.dadlName);
+				buf.append(" = ");
+				
+				if(isOpenEHRRMClass(value) && !(value instanceof ProportionKind)) {
+				
+					lines.add(buf.toString());
+					
+					log.debug("fetching attribute: " + property.name);
+					
+					toDADL(value, indent + 1, lines);						
 			
-			Method getter = getter(name, obj.getClass());
-			if(getter != null) { 
-				value = getter.invoke(obj, null);
-				buf = new StringBuffer();
-				if(value != null ) {
-					for(int i = 0; i < indent; i++) {
-						buf.append("\t");
-					}
-					buf.append(toUnderscoreSeparated(name));
-					buf.append(" = ");
+				} else if(value instanceof List) {
 					
-					if(isOpenEHRRMClass(value) && !(value instanceof ProportionKind)) {
+					buf.append("<");
+					lines.add(buf.toString());
 					
-						lines.add(buf.toString());
-						
-						log.debug("fetching attribute: " + name);
-						
-						toDADL(value, indent + 1, lines);						
-				
-					} else if(value instanceof List) {
-						
-						buf.append("<");
-						lines.add(buf.toString());
-						
-						List list = (List) value;
-						for(int i = 0, j = list.size(); i < j; i++) {
-							buf = new StringBuffer();
-							for(int k = 0; k < indent + 1; k++) {
-								buf.append("\t");
-							}
-							lines.add(buf.toString() + "[" + (i+1) + "] = ");
-							toDADL(list.get(i), indent + 2, lines);
-						}
-						
+					List list = (List) value;
+					for(int i = 0, j = list.size(); i < j; i++) {
 						buf = new StringBuffer();
-						for(int i = 0; i < indent; i++) {
+						for(int k = 0; k < indent + 1; k++) {
 							buf.append("\t");
 						}
-						buf.append(">");
-						lines.add(buf.toString());
-						
-					} else {
-						
-						buf.append("<");
-						if(value instanceof String || value instanceof Boolean) {							
-							buf.append("\"");
-							buf.append(value);
-							buf.append("\"");						
-						} else {
-							buf.append(value.toString());
-						}
-						buf.append(">");
-						lines.add(buf.toString());
+						lines.add(buf.toString() + "[" + (i+1) + "] = ");
+						toDADL(list.get(i), indent + 2, lines);
 					}
 					
+					buf = new StringBuffer();
+					for(int i = 0; i < indent; i++) {
+						buf.append("\t");
+					}
+					buf.append(">");
+					lines.add(buf.toString());
+					
+				} else {
+					
+					buf.append("<");
+					if(value instanceof String || value instanceof Boolean) {							
+						buf.append("\"");
+						buf.append(value);
+						buf.append("\"");						
+					} else {
+						buf.append(value.toString());
+					}
+					buf.append(">");
+					lines.add(buf.toString());
 				}
+				
 			}
 		}
 		buf = new StringBuffer();
@@ -295,7 +308,148 @@ public class DADLBinding {
 		return lines;
 	}
 	
-	private Method getter(String attributeName, Class klass) {
+	/**
+	 * Writes given RM object in DADL to given writer as the lines are
+	 * produced, without keeping them in memory. The output is the lines of
+	 * {@link #toDADL(Object)}, each followed by a line return.
+	 * 
+	 * @param obj not null
+	 * @param out not null, neither flushed nor closed
+	 * @throws Exception if an attribute cannot be read or written
+	 */
+	public void toDADL(Object obj, Writer out) throws Exception {
+		writeDADL(obj, 1, out);
+	}
+	
+	/*
+	 * Writes the type header of an object, the rest of the line is already
+	 * written, followed by its attributes and closing line
+	 */
+	private void writeDADL(Object obj, int indent, Writer out) 
+			throws Exception {
+		Plan plan = plan(obj.getClass());
+		out.write("(");
+		out.write(plan.rmName);
+		out.write(") <");
+		out.write(LINE_RETURN);
+		
+		for(Property property : plan.properties) {
+			Object value = property.getter.invoke(obj);
+			if(value == null) {
+				continue;
+			}
+			tabs(out, indent);
+			out.write(property.dadlName);
+			out.write(" = ");
+			
+			if(isOpenEHRRMClass(value) && !(value instanceof ProportionKind)) {
+				
+				writeDADL(value, indent + 1, out);
+				
+			} else if(value instanceof List) {
+				
+				out.write("<");
+				out.write(LINE_RETURN);
+				
+				List list = (List) value;
+				for(int i = 0, j = list.size(); i < j; i++) {
+					tabs(out, indent + 1);
+					out.write("[");
+					out.write(Integer.toString(i + 1));
+					out.write("] = ");
+					writeDADL(list.get(i), indent + 2, out);
+				}
+				tabs(out, indent);
+				out.write(">");
+				out.write(LINE_RETURN);
+				
+			} else {
+				
+				out.write("<");
+				if(value instanceof String || value instanceof Boolean) {
+					out.write("\"");
+					out.write(value.toString());
+					out.write("\"");
+				} else {
+					out.write(value.toString());
+				}
+				out.write(">");
+				out.write(LINE_RETURN);
+			}
+		}
+		tabs(out, indent - 1);
+		out.write(">");
+		out.write(LINE_RETURN);
+	}
+	
+	private static void tabs(Writer out, int count) throws IOException {
+		for(int i = 0; i < count; i++) {
+			out.write('\t');
+		}
+	}
+	
+	/*
+	 * Returns the cached plan of given class, creating it on first use
+	 */
+	private Plan plan(Class klass) {
+		Plan plan = plans.get(klass);
+		if(plan == null) {
+			plan = new Plan(klass);
+			plans.put(klass, plan);
+		}
+		return plan;
+	}
+	
+	/*
+	 * The DADL type name and the attributes written of a RM class, with
+	 * their getters, in order of attribute name
+	 */
+	private static final class Plan {
+		
+		Plan(Class klass) {
+			rmName = underscoreSeparated(klass.getSimpleName()).toUpperCase();
+			
+			SortedMap<String, Attribute> attributes = attributeMap(klass);
+			List<Property> list = new ArrayList<Property>();
+			for(Map.Entry<String, Attribute> entry : attributes.entrySet()) {
+				String name = entry.getKey();
+				Attribute attribute = entry.getValue();
+				if(attribute.system()) {
+					continue;
+				}
+				if("parent".equals(attribute.name())) {
+					continue; // causing dead-loops
+				}
+				Method getter = getter(name, klass);
+				if(getter != null) {
+					list.add(new Property(name, underscoreSeparated(name), 
+							getter));
+				}
+			}
+			properties = list.toArray(new Property[list.size()]);
+		}
+		
+		final String rmName;
+		final Property[] properties;
+	}
+	
+	/*
+	 * An attribute written with the getter reading it
+	 */
+	private static final class Property {
+		
+		Property(String name, String dadlName, Method getter) {
+			this.name = name;
+			this.dadlName = dadlName;
+			this.getter = getter;
+		}
+		
+		final String name;
+		final String dadlName;
+		final Method getter;
+	}
+	
+	private static Method getter(String attributeName, Class klass) {
 		Method[] methods = klass.getMethods();
 		String name = "get" + attributeName.substring(0, 1).toUpperCase() +
 						attributeName.substring(1);
@@ -320,7 +474,7 @@ public class DADLBinding {
 	 * @param rmClass
 	 * @return
 	 */
-	private SortedMap<String, Attribute> attributeMap(Class rmClass) {
+	private static SortedMap<String, Attribute> attributeMap(Class rmClass) {
 		SortedMap<String, Attribute> map = new TreeMap<String, Attribute>();
 		Constructor constructor = fullConstructor(rmClass);
 		
@@ -356,6 +510,10 @@ public class DADLBinding {
 	}	
 	
 	public String toUnderscoreSeparated(String camelCase) {
+		return underscoreSeparated(camelCase);
+	}
+	
+	private static String underscoreSeparated(String camelCase) {
 		String[] array = StringUtils.splitByCharacterTypeCamelCase(camelCase);
 		StringBuffer buf = new StringBuffer();
 		for (int i = 0; i < array.length; i++) {
@@ -378,6 +536,10 @@ public class DADLBinding {
 	private static Logger log = Logger.getLogger(DADLBinding.class);
 	private static final String OPENEHR_RM_PACKAGE = "org.openehr.rm.";
 	private static final String LINE_RETURN = "\r\n";
+	
+	/* plans of the RM classes written */
+	private static final Map<Class, Plan> plans = 
+		new ConcurrentHashMap<Class, Plan>();
 
 }
 /*
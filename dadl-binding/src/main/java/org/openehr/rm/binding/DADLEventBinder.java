@@ -0,0 +1,163 @@
+/*
+ * component:   "openEHR Java Reference Implementation"
+ * description: "Class DADLEventBinder"
+ * keywords:    "binding"
+ *
+ * license:     "See notice at bottom of class"
+ *
+ * file:        "$URL$"
+ * revision:    "$LastChangedRevision$"
+ * last_change: "$LastChangedDate$"
+ */
+package org.openehr.rm.binding;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openehr.am.parser.DADLHandler;
+import org.openehr.am.parser.ParseException;
+import org.openehr.build.RMObjectBuildingException;
+import org.openehr.rm.support.basic.Interval;
+
+/**
+ * Builds RM objects from the events of the DADL parser as they arrive, the
+ * same objects {@link DADLBinding#bind(org.openehr.am.parser.ContentObject)}
+ * builds from the parse tree of the same input.
+ * <p>
+ * Only the objects still open are held, each with the values of its
+ * attributes read so far. A binding failure stops the parser with a
+ * {@link ParseException}; the failure itself is kept to be rethrown by
+ * {@link DADLBinding#bind(org.openehr.am.parser.DADLParser)}.
+ */
+class DADLEventBinder implements DADLHandler {
+
+	DADLEventBinder(DADLBinding binding) {
+		this.binding = binding;
+	}
+
+	public void startObject(String type) {
+		stack.add(new Frame(type));
+	}
+
+	public void attribute(String name) {
+		top().attribute = name;
+	}
+
+	public void key(Object key) {
+		Frame frame = top();
+		if (frame.items == null) {
+			frame.items = new ArrayList<Object>();
+		}
+	}
+
+	public void primitiveValue(Object value) {
+		if (value instanceof Interval) {
+			// TODO as bind(ContentObject), intervals are not bound
+			value = null;
+		}
+		top().add(value);
+	}
+
+	public void endObject() throws ParseException {
+		Frame frame = stack.remove(stack.size() - 1);
+		Object value;
+		if (frame.items != null) {
+			value = frame.items;
+
+		// a special case to deal with empty attribute list
+		} else if ("LIST".equalsIgnoreCase(frame.type)
+				&& frame.values.isEmpty()) {
+			value = new ArrayList();
+
+		} else {
+			try {
+				value = binding.invokeRMObjectBuilder(frame.type,
+						frame.values);
+			} catch (DADLBindingException e) {
+				throw stop(e);
+			} catch (RMObjectBuildingException e) {
+				throw stop(e);
+			}
+		}
+		if (stack.isEmpty()) {
+			result = value;
+		} else {
+			top().add(value);
+		}
+	}
+
+	/**
+	 * The object bound from the whole input
+	 *
+	 * @return null if parsing is not complete
+	 */
+	Object getResult() {
+		return result;
+	}
+
+	/**
+	 * The binding failure that stopped the parser
+	 *
+	 * @return null if none
+	 */
+	Exception getFailure() {
+		return failure;
+	}
+
+	private Frame top() {
+		return stack.get(stack.size() - 1);
+	}
+
+	private ParseException stop(Exception e) {
+		failure = e;
+		return new ParseException("failed to bind: " + e.getMessage());
+	}
+
+	/*
+	 * An object being read, with the values of its attributes or keyed
+	 * items so far
+	 */
+	private static final class Frame {
+
+		Frame(String type) {
+			this.type = type;
+		}
+
+		void add(Object value) {
+			if (items != null) {
+				items.add(value);
+			} else {
+				values.put(attribute, value);
+			}
+		}
+
+		/* fields */
+		final String type;
+		final Map<String, Object> values = new HashMap<String, Object>();
+		List<Object> items;
+		String attribute;
+	}
+
+	/* fields */
+	private final DADLBinding binding;
+	private final List<Frame> stack = new ArrayList<Frame>();
+	private Object result;
+	private Exception failure;
+}
+/*
+ * ***** BEGIN LICENSE BLOCK ***** Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the 'License'); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is DADLEventBinder.java
+ *
+ * ***** END LICENSE BLOCK *****
+ */
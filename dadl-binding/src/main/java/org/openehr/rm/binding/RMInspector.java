@@ -7,6 +7,7 @@ import java.util.*;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 
+import org.openehr.build.RMClassIndex;
 import org.openehr.rm.Attribute;
 import org.openehr.rm.FullConstructor;
 import org.openehr.rm.common.archetyped.Archetyped;
@@ -191,6 +192,15 @@ public class RMInspector {
 			typeMap.put(name, klass);
 			upperCaseMap.put(name.toUpperCase(), klass);
 		}
+
+		List<Class> matchingClasses = new ArrayList<Class>();
+		List simpleTypes = Arrays.asList(SKIPPED_TYPES_IN_MATCHING);
+		for (Class klass : typeMap.values()) {
+			if (!simpleTypes.contains(klass.getSimpleName())) {
+				matchingClasses.add(klass);
+			}
+		}
+		matchingIndex = new RMClassIndex(matchingClasses);
 		return typeMap;
 	}
 
@@ -384,94 +394,22 @@ public class RMInspector {
 	 * @return null if no match RM class is found
 	 */
 	public String findMatchingRMClass(Map<String, Object> valueMap) {
-		List simpleTypes = Arrays.asList(SKIPPED_TYPES_IN_MATCHING);
-
-		for (Class rmClass : typeMap.values()) {
-
-			log.debug("matching rmClass: " + rmClass.getName());
-
-			if (simpleTypes.contains(rmClass.getSimpleName())) {
-				continue; // skip simple value types
-			}
-
-			// replace underscore separated names with camel case
-			Map<String, Object> filteredMap = new HashMap<String, Object>();
-			for (String name : valueMap.keySet()) {
-				filteredMap.put(toCamelCase(name), valueMap.get(name));
-			}
-
-			Constructor constructor = fullConstructor(rmClass);
-			if (constructor == null) {
-				throw new RuntimeException("annotated constructor missing for "
-						+ rmClass);
-			}
-			Annotation[][] annotations = constructor.getParameterAnnotations();
-			if (annotations == null || annotations.length == 0) {
-				throw new RuntimeException("attribute annotations missing for "
-						+ rmClass);
-			}
-			Class[] types = constructor.getParameterTypes();
-			boolean matched = true;
-			Set<String> attributes = new HashSet<String>();
-
-			for (int i = 0; i < types.length; i++) {
-				if (annotations[i].length == 0) {
-					throw new RuntimeException(
-							"attribute annotation missing for" + rmClass);
-				}
-				Attribute attribute = (Attribute) annotations[i][0];
-				attributes.add(attribute.name());
-
-				log.debug("checking attribute: " + attribute.name());
-
-				String attrName = attribute.name();
-				Object attrValue = filteredMap.get(attrName);
-
-				if (attribute.required() && attrValue == null) {
 
-					log.debug("missing required attribute..");
-
-					matched = false;
-					break;
-
-				} else if (attrValue != null) {
-					if (((attrValue instanceof Boolean) && types[i] != boolean.class)
-							|| ((attrValue instanceof Integer) && types[i] != Integer.class)
-							|| ((attrValue instanceof Double) && types[i] != double.class)) {
-
-						log.debug("wrong primitive value type for attribute..");
-						matched = false;
-						break;
-
-					} else if (!types[i].isPrimitive()
-							&& !types[i].isInstance(attrValue)) {
-						log.debug("wrong value type for attribute..");
-						matched = false;
-						break;
-
-					}
-				}
-			}
-
-			for (String attr : filteredMap.keySet()) {
-				if (!attributes.contains(attr)) {
+		// replace underscore separated names with camel case
+		Map<String, Object> filteredMap = new HashMap<String, Object>();
+		for (String name : valueMap.keySet()) {
+			filteredMap.put(toCamelCase(name), valueMap.get(name));
+		}
 
-					log.debug("unknown attribute: " + attr);
+		Class rmClass = matchingIndex.findMatchingRMClass(filteredMap);
+		if (rmClass == null) {
+			return null;
+		}
+		String className = rmClass.getSimpleName();
 
-					matched = false;
-				}
-			}
+		log.debug(">>> MATCHING FOUND: " + className);
 
-			// matching found
-			if (matched) {
-				String className = rmClass.getSimpleName();
-				
-				log.debug(">>> MATCHING FOUND: " + className);
-				
-				return className;
-			}
-		}
-		return null;
+		return className;
 	}
 
 	// todo: isn't there any support from java api on this?
@@ -515,6 +453,7 @@ public class RMInspector {
 	// loaded rm type map
 	private Map<String, Class> typeMap;
 	private Map<String, Class> upperCaseMap;
+	private RMClassIndex matchingIndex;
 	private static final Set<String> stringParsingTypes;
 	private static final RMInspector soleInstance = new RMInspector();
 
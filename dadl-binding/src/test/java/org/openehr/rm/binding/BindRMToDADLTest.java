@@ -121,6 +121,37 @@ public class BindRMToDADLTest extends DADLBindingTestBase {
 		assertLinesEqual(actual, afterRoundTrip);
 	}
 	
+	public void testWriteSameAsLines() throws Exception {
+		Object[] objects = new Object[] {
+			new DvText("sitting"),
+			new DvBoolean("true"),
+			new DvQuantity("mmHg", 120.0, 1),
+			bind("point_event2.dadl"),
+			bind("history.dadl"),
+			bind("observation.dadl")
+		};
+		for(Object obj : objects) {
+			StringBuffer buf = new StringBuffer();
+			for(String line : binding.toDADL(obj)) {
+				buf.append(line);
+				buf.append("\r\n");
+			}
+			StringWriter writer = new StringWriter();
+			binding.toDADL(obj, writer);
+			assertEquals(buf.toString(), writer.toString());
+		}
+	}
+	
+	public void testWriteRoundTrip() throws Exception {
+		Object obs = bind("observation.dadl");
+		StringWriter writer = new StringWriter();
+		binding.toDADL(obs, writer);
+		
+		rmObj = bindString(writer.toString());
+		assertTrue(rmObj instanceof Observation);
+		assertEquals(binding.toDADL(obs), binding.toDADL(rmObj));
+	}
+	
 	private List<String> readLines(String name) throws Exception {
 		List<String> lines = new ArrayList<String>();
 		BufferedReader reader = 
@@ -0,0 +1,71 @@
+package org.openehr.rm.binding;
+
+import java.io.File;
+import java.util.List;
+
+import org.openehr.am.parser.DADLParser;
+import org.openehr.build.RMObjectBuildingException;
+import org.openehr.rm.datastructure.itemstructure.representation.Element;
+import org.openehr.rm.datatypes.text.DvText;
+
+public class DADLEventBinderTest extends DADLBindingTestBase {
+
+	public void testSameAsParseTree() throws Exception {
+		File dir = new File(getClass().getClassLoader().getResource(
+				"observation.dadl").toURI()).getParentFile();
+		int bound = 0;
+		for (File file : dir.listFiles()) {
+			if (!file.getName().endsWith(".dadl")) {
+				continue;
+			}
+			Object expected;
+			try {
+				expected = binding.bind(new DADLParser(file).parse());
+			} catch (Exception e) {
+				try {
+					binding.bind(new DADLParser(file));
+					fail("exception should be thrown for " + file.getName());
+				} catch (Exception expectedToo) {
+					assertEquals(file.getName(), e.getClass(), 
+							expectedToo.getClass());
+				}
+				continue;
+			}
+			Object actual = binding.bind(new DADLParser(file));
+			assertEquals(file.getName(), toDADL(expected), toDADL(actual));
+			bound++;
+		}
+		assertTrue(bound > 30);
+	}
+
+	public void testBindElement() throws Exception {
+		rmObj = binding.bind(new DADLParser(fromClasspath("element.dadl")));
+		assertTrue(rmObj instanceof Element);
+		assertEquals(bind("element.dadl"), rmObj);
+	}
+
+	public void testBindString() throws Exception {
+		rmObj = binding.bind(new DADLParser("(DV_TEXT) <value = <\"text\">>"));
+		assertEquals(new DvText("text"), rmObj);
+	}
+
+	public void testBuildingFailure() throws Exception {
+		try {
+			binding.bind(new DADLParser("(DV_TEXT) <value = <1>>"));
+			fail("exception should be thrown");
+		} catch (RMObjectBuildingException e) {
+			// expected
+		}
+	}
+
+	private String toDADL(Object obj) throws Exception {
+		if (obj instanceof List) {
+			StringBuffer buf = new StringBuffer("[");
+			for (Object item : (List) obj) {
+				buf.append(toDADL(item)).append(",");
+			}
+			return buf.append("]").toString();
+		}
+		return obj == null ? null : binding.toDADL(obj).toString();
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * component:   "openEHR Reference Implementation"
+ * description: "Class DADLHandler"
+ * keywords:    "dadl"
+ *
+ * license:     "See notice at bottom of class"
+ */
+package org.openehr.am.parser;
+
+/**
+ * Receives the content of DADL input as it is parsed by
+ * {@link DADLParser#parse(DADLHandler)}, instead of a tree of parsed
+ * objects.
+ * <p>
+ * Every complex object block is reported by {@link #startObject(String)}
+ * and {@link #endObject()}, with its content in between. Each attribute
+ * of a single attribute block is announced by {@link #attribute(String)}
+ * and each item of a multiple attribute block by {@link #key(Object)}; the
+ * value that follows is either one primitive value or one complex object.
+ * Input that is a plain list of attribute values is reported as an object
+ * without type.
+ *
+ * @version 1.0
+ */
+public interface DADLHandler {
+
+	/**
+	 * Start of a complex object block
+	 *
+	 * @param type the type identifier, null if not given
+	 * @throws ParseException to stop parsing
+	 */
+	void startObject(String type) throws ParseException;
+
+	/**
+	 * Start of an attribute value of the current object
+	 *
+	 * @param name the attribute identifier
+	 * @throws ParseException to stop parsing
+	 */
+	void attribute(String name) throws ParseException;
+
+	/**
+	 * Start of a keyed item of the current object
+	 *
+	 * @param key the key value, e.g. Integer or String
+	 * @throws ParseException to stop parsing
+	 */
+	void key(Object key) throws ParseException;
+
+	/**
+	 * The value of a primitive object block: a simple value, a list of
+	 * simple values, an interval, a term code or a list of term codes
+	 *
+	 * @param value not null
+	 * @throws ParseException to stop parsing
+	 */
+	void primitiveValue(Object value) throws ParseException;
+
+	/**
+	 * End of the current complex object block
+	 *
+	 * @throws ParseException to stop parsing
+	 */
+	void endObject() throws ParseException;
+}
+
+/*
+ *  ***** BEGIN LICENSE BLOCK *****
+ *  Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ *  The contents of this file are subject to the Mozilla Public License Version
+ *  1.1 (the 'License'); you may not use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *  http://www.mozilla.org/MPL/
+ *
+ *  Software distributed under the License is distributed on an 'AS IS' basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ *  for the specific language governing rights and limitations under the
+ *  License.
+ *
+ *  The Original Code is DADLHandler.java
+ *
+ *  ***** END LICENSE BLOCK *****
+ */
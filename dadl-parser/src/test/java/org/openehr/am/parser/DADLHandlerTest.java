@@ -0,0 +1,91 @@
+package org.openehr.am.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DADLHandlerTest extends ParserTestBase {
+
+	public void testEventsOfTypedObject() throws Exception {
+		assertEvents("(DV_TEXT) <value = <\"text\">>", "start DV_TEXT",
+				"attribute value", "value text", "end");
+	}
+
+	public void testEventsOfAttributeList() throws Exception {
+		assertEvents("name = <\"x\"> count = <1, 2>", "start null",
+				"attribute name", "value x", "attribute count",
+				"value [1, 2]", "end");
+	}
+
+	public void testEventsOfKeyedObjects() throws Exception {
+		assertEvents("items = <[1] = <name = <\"a\">> [2] = <\"b\">>",
+				"start null", "attribute items", "start null", "key 1",
+				"start null", "attribute name", "value a", "end", "key 2",
+				"value b", "end", "end");
+	}
+
+	public void testEventsOfEmptyObject() throws Exception {
+		assertEvents("items = (LIST) <>", "start null", "attribute items",
+				"start LIST", "end", "end");
+	}
+
+	public void testEventsOfFile() throws Exception {
+		DADLParser parser = new DADLParser(loadFromClasspath(
+				"keyed_objects.dadl"));
+		Recorder recorder = new Recorder();
+		parser.parse(recorder);
+		assertEquals(Arrays.asList("start null", "attribute items",
+				"start null", "key 1", "start null", "attribute name",
+				"value systolic", "end", "key 2", "start null",
+				"attribute name", "value diastolic", "end", "end", "end"),
+				recorder.events);
+	}
+
+	public void testHandlerNotKeptAfterParse() throws Exception {
+		DADLParser parser = new DADLParser(loadFromClasspath(
+				"keyed_objects.dadl"));
+		Recorder recorder = new Recorder();
+		parser.parse(recorder);
+		int events = recorder.events.size();
+
+		parser.reInit(loadFromClasspath("keyed_objects.dadl"));
+		ContentObject content = parser.parse();
+		assertEquals(events, recorder.events.size());
+		assertEquals(1, content.getAttributeValues().size());
+		MultipleAttributeObjectBlock items = (MultipleAttributeObjectBlock)
+				content.getAttributeValues().get(0).getValue();
+		assertEquals(2, items.getKeyObjects().size());
+	}
+
+	private void assertEvents(String dadl, String... expected)
+			throws Exception {
+		Recorder recorder = new Recorder();
+		new DADLParser(dadl).parse(recorder);
+		assertEquals(Arrays.asList(expected), recorder.events);
+	}
+
+	private static class Recorder implements DADLHandler {
+
+		public void startObject(String type) {
+			events.add("start " + type);
+		}
+
+		public void attribute(String name) {
+			events.add("attribute " + name);
+		}
+
+		public void key(Object key) {
+			events.add("key " + key);
+		}
+
+		public void primitiveValue(Object value) {
+			events.add("value " + value);
+		}
+
+		public void endObject() {
+			events.add("end");
+		}
+
+		List<String> events = new ArrayList<String>();
+	}
+}
@@ -0,0 +1,110 @@
+package org.openehr.am.parser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+public class MappedCharStreamTest extends ParserTestBase {
+
+	public void testSameTokensAsDefaultStream() throws Exception {
+		File dir = new File(getClass().getClassLoader().getResource(
+				"person_001.dadl").toURI()).getParentFile();
+		int count = 0;
+		for (File file : dir.listFiles()) {
+			if (file.getName().endsWith(".dadl")) {
+				assertSameTokens(file);
+				count++;
+			}
+		}
+		assertTrue(count > 5);
+	}
+
+	public void testSameTokensWithLineBreaksAndTabs() throws Exception {
+		File file = File.createTempFile("mapped", ".dadl");
+		try {
+			Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+					"UTF-8");
+			try {
+				writer.write("name = <\"a\">\r\n\tcount = <1>\r\r\n"
+						+ "  \t-- comment\n\ttext = <\"åäö\">\r");
+			} finally {
+				writer.close();
+			}
+			assertSameTokens(file);
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testParse() throws Exception {
+		File file = new File(getClass().getClassLoader().getResource(
+				"person_001.dadl").toURI());
+		DADLParser parser = new DADLParser(new MappedCharStream(file));
+		ContentObject content = parser.parse();
+		assertNotNull(content.getComplexObjectBlock());
+
+		parser.reInit(new MappedCharStream(file));
+		assertNotNull(parser.parse().getComplexObjectBlock());
+	}
+
+	public void testAdjustBeginLineColumn() throws Exception {
+		File file = File.createTempFile("mapped", ".txt");
+		try {
+			Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+					"UTF-8");
+			try {
+				writer.write("ab\ncd ef\r\ngh\rij\n\nkl mn op");
+			} finally {
+				writer.close();
+			}
+			// positions of the two-character tokens, with the begin of
+			// tokens 1, 5 and 7 moved, as "line:column-line:column"
+			String[] positions = { "1:1-1:2", "10:3-11:1", "11:2-11:3",
+					"11:4-11:5", "11:6-11:7", "50:7-50:8", "50:9-51:1",
+					"70:9-70:10", "71:1-72:1", "72:2-72:3", "72:4-72:5",
+					"72:6-72:7" };
+			MappedCharStream stream = new MappedCharStream(file);
+			for (int i = 0; i < positions.length; i++) {
+				stream.BeginToken();
+				stream.readChar();
+				if (i == 3) {
+					stream.readChar();
+					stream.backup(1);
+				}
+				if (i == 1 || i == 5 || i == 7) {
+					stream.adjustBeginLineColumn(10 * i, i + 2);
+				}
+				// end asked first, so that the begin is scanned again
+				String end = stream.getEndLine() + ":" + stream.getEndColumn();
+				assertEquals("token " + i, positions[i], stream.getBeginLine()
+						+ ":" + stream.getBeginColumn() + "-" + end);
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	private void assertSameTokens(File file) throws Exception {
+		DADLParserTokenManager expected = new DADLParserTokenManager(
+				new SimpleCharStream(new java.io.FileInputStream(file),
+						"UTF-8"));
+		DADLParserTokenManager actual = new DADLParserTokenManager(
+				new MappedCharStream(file));
+		while (true) {
+			Token e = expected.getNextToken();
+			Token a = actual.getNextToken();
+			String name = file.getName() + " " + e.beginLine + ":"
+					+ e.beginColumn;
+			assertEquals(name, e.kind, a.kind);
+			assertEquals(name, e.image, a.image);
+			assertEquals(name, e.beginLine, a.beginLine);
+			assertEquals(name, e.beginColumn, a.beginColumn);
+			assertEquals(name, e.endLine, a.endLine);
+			assertEquals(name, e.endColumn, a.endColumn);
+			if (e.kind == DADLParserConstants.EOF) {
+				break;
+			}
+		}
+	}
+}
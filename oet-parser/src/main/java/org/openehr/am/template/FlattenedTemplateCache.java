@@ -0,0 +1,411 @@
+/*
+ * component:   "openEHR Java Reference Implementation"
+ * description: "Class FlattenedTemplateCache"
+ * keywords:    "oet-parser"
+ *
+ * license:     "See notice at bottom of class"
+ *
+ * file:        "$URL$"
+ * revision:    "$LastChangedRevision$"
+ * last_change: "$LastChangedDate$"
+ */
+
+package org.openehr.am.template;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import openEHR.v1.template.TEMPLATE;
+
+import org.apache.log4j.Logger;
+import org.openehr.am.archetype.Archetype;
+
+/**
+ * Thread-safe cache of flattened templates by template id.
+ * <p/>
+ * For each flattened template the ids of all archetypes and templates
+ * read while flattening it are recorded, which covers nested templates
+ * and archetypes filling slots. When an archetype or template is updated
+ * or removed, only the flattened templates depending on it are evicted.
+ * <p/>
+ * Threads asking for a template being flattened wait for that run instead
+ * of starting their own. An update detaches the runs in progress, so
+ * requests made after it start a new run. A run that overlaps an update
+ * of one of its dependencies returns its result to the threads already
+ * waiting for it but does not cache it. Failed runs are not cached.
+ * <p/>
+ * The flattened archetypes returned are shared and must not be modified.
+ */
+public class FlattenedTemplateCache {
+
+	/**
+	 * Creates a cache over given archetypes and templates, which are
+	 * copied so later changes of the maps are not seen
+	 *
+	 * @param archetypeMap archetypes by id, not null
+	 * @param templateMap templates by id, null if none
+	 */
+	public FlattenedTemplateCache(Map<String, Archetype> archetypeMap,
+			Map<String, TEMPLATE> templateMap) {
+
+		if(archetypeMap == null) {
+			throw new IllegalArgumentException("null archetypeMap");
+		}
+		this.archetypeMap = new ConcurrentHashMap<String, Archetype>(
+				archetypeMap);
+		this.templateMap = new ConcurrentHashMap<String, TEMPLATE>();
+		if(templateMap != null) {
+			this.templateMap.putAll(templateMap);
+		}
+	}
+
+	/**
+	 * Gets the flattened archetype of given template, flattening it if
+	 * not cached
+	 *
+	 * @param templateId not null
+	 * @return flattened archetype, not to be modified
+	 * @throws UnknownTemplateException if template unknown
+	 * @throws FlatteningException if fails to flatten
+	 */
+	public Archetype getFlattened(final String templateId)
+			throws FlatteningException {
+
+		if(templateId == null) {
+			throw new IllegalArgumentException("null templateId");
+		}
+		Entry entry;
+		synchronized(cache) {
+			entry = cache.get(templateId);
+		}
+		if(entry != null) {
+			hits.incrementAndGet();
+			return entry.flattened;
+		}
+		FutureTask<Archetype> task = new FutureTask<Archetype>(
+				new Callable<Archetype>() {
+			public Archetype call() throws Exception {
+				return flatten(templateId);
+			}
+		});
+		FutureTask<Archetype> running = flattening.putIfAbsent(templateId,
+				task);
+		if(running == null) {
+			running = task;
+			try {
+				task.run();
+			} finally {
+				flattening.remove(templateId, task);
+			}
+		}
+		try {
+			return running.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new FlatteningException(
+					"interrupted while flattening " + templateId);
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof FlatteningException) {
+				throw (FlatteningException) cause;
+			}
+			if(cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw (RuntimeException) cause;
+		}
+	}
+
+	/**
+	 * Adds or replaces an archetype, evicting the flattened templates
+	 * depending on it
+	 *
+	 * @param archetype not null
+	 */
+	public void updateArchetype(Archetype archetype) {
+		String id = archetype.getArchetypeId().toString();
+		archetypeMap.put(id, archetype);
+		invalidate(id, false);
+	}
+
+	/**
+	 * Removes an archetype, evicting the flattened templates depending
+	 * on it
+	 *
+	 * @param archetypeId not null
+	 */
+	public void removeArchetype(String archetypeId) {
+		archetypeMap.remove(archetypeId);
+		invalidate(archetypeId, false);
+	}
+
+	/**
+	 * Adds or replaces a template, evicting the flattened templates
+	 * depending on it, including its own
+	 *
+	 * @param template not null
+	 */
+	public void updateTemplate(TEMPLATE template) {
+		String id = template.getId();
+		templateMap.put(id, template);
+		invalidate(id, true);
+	}
+
+	/**
+	 * Removes a template, evicting the flattened templates depending
+	 * on it, including its own
+	 *
+	 * @param templateId not null
+	 */
+	public void removeTemplate(String templateId) {
+		templateMap.remove(templateId);
+		invalidate(templateId, true);
+	}
+
+	/**
+	 * Evicts all flattened templates
+	 */
+	public void clear() {
+		synchronized(cache) {
+			stamp++;
+			cache.clear();
+			flattening.clear();
+		}
+	}
+
+	/**
+	 * Ids of the archetypes given cached template depends on
+	 *
+	 * @param templateId
+	 * @return unmodifiable set, null if not cached
+	 */
+	public Set<String> getArchetypeDependencies(String templateId) {
+		synchronized(cache) {
+			Entry entry = cache.get(templateId);
+			return entry == null ? null : entry.archetypeIds;
+		}
+	}
+
+	/**
+	 * Ids of the templates given cached template depends on, including
+	 * its own
+	 *
+	 * @param templateId
+	 * @return unmodifiable set, null if not cached
+	 */
+	public Set<String> getTemplateDependencies(String templateId) {
+		synchronized(cache) {
+			Entry entry = cache.get(templateId);
+			return entry == null ? null : entry.templateIds;
+		}
+	}
+
+	/**
+	 * Number of flattened templates cached
+	 *
+	 * @return size
+	 */
+	public int size() {
+		synchronized(cache) {
+			return cache.size();
+		}
+	}
+
+	/**
+	 * Number of requests answered from the cache
+	 *
+	 * @return hit count
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Number of flattening runs
+	 *
+	 * @return flatten count
+	 */
+	public long getFlattenCount() {
+		return runs.get();
+	}
+
+	/*
+	 * Flattens given template with a new flattener, recording the ids
+	 * read from the maps, and caches the result unless a dependency was
+	 * updated meanwhile
+	 */
+	private Archetype flatten(String templateId) throws FlatteningException {
+		long started;
+		synchronized(cache) {
+			// cached by a run that finished after the lookup
+			Entry entry = cache.get(templateId);
+			if(entry != null) {
+				return entry.flattened;
+			}
+			started = stamp;
+		}
+		runs.incrementAndGet();
+
+		RecordingMap<Archetype> archetypes =
+			new RecordingMap<Archetype>(archetypeMap);
+		RecordingMap<TEMPLATE> templates =
+			new RecordingMap<TEMPLATE>(templateMap);
+
+		TEMPLATE template = templates.get(templateId);
+		if(template == null) {
+			throw new UnknownTemplateException(templateId);
+		}
+		Archetype flattened = newFlattener().toFlattenedArchetype(template,
+				archetypes, templates);
+
+		Entry entry = new Entry(flattened, archetypes.ids(), templates.ids());
+		synchronized(cache) {
+			if(isCurrent(entry, started)) {
+				cache.put(templateId, entry);
+			} else {
+				log.debug("not caching " + templateId
+						+ ", dependency updated while flattening");
+			}
+		}
+		return flattened;
+	}
+
+	/*
+	 * True if no dependency of given entry was updated after given stamp,
+	 * called with the lock held
+	 */
+	private boolean isCurrent(Entry entry, long started) {
+		for(String id : entry.archetypeIds) {
+			Long updated = archetypeStamps.get(id);
+			if(updated != null && updated > started) {
+				return false;
+			}
+		}
+		for(String id : entry.templateIds) {
+			Long updated = templateStamps.get(id);
+			if(updated != null && updated > started) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates the flattener of one run
+	 *
+	 * @return a new flattener
+	 */
+	protected Flattener newFlattener() {
+		return new Flattener();
+	}
+
+	/*
+	 * Evicts the flattened templates depending on given id and detaches
+	 * the runs in progress, which may have read the old version of it
+	 */
+	private void invalidate(String id, boolean template) {
+		synchronized(cache) {
+			stamp++;
+			(template ? templateStamps : archetypeStamps).put(id, stamp);
+			flattening.clear();
+
+			for(Iterator<Map.Entry<String, Entry>> it =
+					cache.entrySet().iterator(); it.hasNext();) {
+				Entry entry = it.next().getValue();
+				if((template ? entry.templateIds : entry.archetypeIds)
+						.contains(id)) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	/*
+	 * A flattened template with the ids it depends on
+	 */
+	private static final class Entry {
+
+		Entry(Archetype flattened, Set<String> archetypeIds,
+				Set<String> templateIds) {
+			this.flattened = flattened;
+			this.archetypeIds = Collections.unmodifiableSet(archetypeIds);
+			this.templateIds = Collections.unmodifiableSet(templateIds);
+		}
+
+		final Archetype flattened;
+		final Set<String> archetypeIds;
+		final Set<String> templateIds;
+	}
+
+	/*
+	 * Read-only view of a map recording the keys asked for
+	 */
+	private static final class RecordingMap<V> extends AbstractMap<String, V> {
+
+		RecordingMap(Map<String, V> map) {
+			this.map = map;
+		}
+
+		public V get(Object key) {
+			if(key == null) {
+				return null;
+			}
+			synchronized(ids) {
+				ids.add((String) key);
+			}
+			return map.get(key);
+		}
+
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		public Set<Map.Entry<String, V>> entrySet() {
+			return Collections.unmodifiableMap(map).entrySet();
+		}
+
+		Set<String> ids() {
+			synchronized(ids) {
+				return new HashSet<String>(ids);
+			}
+		}
+
+		private final Map<String, V> map;
+		private final Set<String> ids = new HashSet<String>();
+	}
+
+	private static Logger log = Logger.getLogger(FlattenedTemplateCache.class);
+
+	/* fields */
+	private final Map<String, Archetype> archetypeMap;
+	private final Map<String, TEMPLATE> templateMap;
+	private final Map<String, Entry> cache = new HashMap<String, Entry>();
+	private final Map<String, Long> archetypeStamps =
+		new HashMap<String, Long>();
+	private final Map<String, Long> templateStamps =
+		new HashMap<String, Long>();
+	private final ConcurrentHashMap<String, FutureTask<Archetype>> flattening =
+		new ConcurrentHashMap<String, FutureTask<Archetype>>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong runs = new AtomicLong();
+	private long stamp;
+}
+/*
+ * ***** BEGIN LICENSE BLOCK ***** Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the 'License'); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is FlattenedTemplateCache.java
+ *
+ * ***** END LICENSE BLOCK *****
+ */
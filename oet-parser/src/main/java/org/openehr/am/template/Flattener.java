@@ -17,6 +17,11 @@ package org.openehr.am.template;
 import java.math.BigInteger;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.log4j.Logger;
 
@@ -56,18 +61,41 @@ import org.openehr.rm.support.basic.Interval;
  * OET-template parser and join constraints from the parent archetype and
  * all included children archetypes, and output the combined constraints
  * in pure AOM instance.
- * 
+ * <p/>
+ * Each flattening runs on its own copy of this flattener holding the
+ * archetype/template maps, the collected terms and the node id counter,
+ * so one flattener can be shared by several threads. The terms collected
+ * by finished runs are added to the term map of this flattener.
+ * <p/>
+ * With an executor, the content items of a composition or section are
+ * flattened concurrently, each on a run of its own, and bound to their
+ * parent in template order, so the result, node ids numbered with
+ * adjustNodeIds included, is the same as when flattened one by one. A
+ * thread waiting for the content items runs those the
+ * executor hasn't started yet itself, so nested sections never wait for
+ * a free thread.
+ *
  * @author rong.chen
  *
  */
-public class Flattener {
-	
+public class Flattener implements Cloneable {
+
 	/**
 	 * Constructor
 	 */
 	public Flattener() {
-		archetypeMap = new HashMap<String, Archetype>();		
+		this(null);
+	}
+
+	/**
+	 * Creates a flattener flattening content items concurrently with
+	 * given executor, which is not shut down by this flattener
+	 *
+	 * @param executor null to flatten content items one by one
+	 */
+	public Flattener(ExecutorService executor) {
 		termMap = new TermMap();
+		this.executor = executor;
 	}
 	
 	/**
@@ -102,27 +130,44 @@ public class Flattener {
 			throw new FlatteningException("null archetypeMap");
 		}		
 		
-		// make a internal copy of archetypeMap
-		this.archetypeMap.clear();
-		for(String id : archetypeMap.keySet()) {
-			Archetype a = archetypeMap.get(id);
-			if(a != null) {
-				a = a.copy();
-				this.archetypeMap.put(id, a);
-			}
+		// no need to copy archetypeMap, archetypes are copied one by one
+		// when retrieved so only those used by the template are touched
+		// and the given ones are never modified
+		Flattener run = newRun(archetypeMap, templateMap);
+		run.nodeCount = 0;
+
+		log.debug("Loaded archetype/template maps, total archetypes: " +
+				archetypeMap.size() + ", total templates: " +
+				(templateMap == null ? 0 : templateMap.size()));
+
+		Archetype flattened = run.toFlattenedArchetype(template);
+		synchronized(termMap) {
+			termMap.addAll(run.termMap);
 		}
-		// no need to copy templateMap
-		this.templateMap = templateMap;
-		
-		log.debug("Loaded archetype/template maps, total archetypes: " + 
-				archetypeMap.size() + ", total templates: " + 
-				(templateMap == null ? 0 : templateMap.size()));		
-		
-		return toFlattenedArchetype(template);
+		return flattened;
 	}
-	
+
+	/*
+	 * Copy of this flattener for one run over given maps, with its own
+	 * term map and a node id counter going on from the count of this one
+	 */
+	private Flattener newRun(Map<String, Archetype> archetypeMap,
+			Map<String, TEMPLATE> templateMap) {
+
+		Flattener run;
+		try {
+			run = (Flattener) clone();
+		} catch(CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+		run.archetypeMap = archetypeMap;
+		run.templateMap = templateMap;
+		run.termMap = new TermMap();
+		return run;
+	}
+
 	/*
-	 * Only used when archetype/template maps are initialized!
+	 * Only used on a run with archetype/template maps initialized!
 	 */
 	private Archetype toFlattenedArchetype(TEMPLATE template) 
 			throws FlatteningException {
@@ -218,14 +263,11 @@ public class Flattener {
 						Existence.OPTIONAL,	Cardinality.LIST, alternatives);
 				archetype.getDefinition().addAttribute(contentAttribute);
 			}
-			
-			for(ContentItem item : items) {
-				
-				log.debug("flattening composition.content..");
-				
-				flattenContentItem(archetype, item);								
-			}
-		}		
+
+			log.debug("flattening composition.content..");
+
+			flattenContentItems(archetype, items);
+		}
 		
 		// TODO handle "/context" attribute	
 		// log.warn("flattening composition.context..not implemented");
@@ -237,12 +279,116 @@ public class Flattener {
 		return archetype;
 	}
 	
-	private Archetype flattenContentItem(Archetype parentArchetype, 
+	/*
+	 * Flatten the content items of a composition or section and bind them
+	 * to the parent archetype in the given order.
+	 * 
+	 * Each item is built by its own run, numbering node ids on from the
+	 * count of this run before the items. An item that numbered node ids
+	 * after an earlier item also did is built again from the count left by
+	 * the earlier items, so node ids are the same as when the items are
+	 * flattened one by one.
+	 */
+	private void flattenContentItems(Archetype parentArchetype,
+			ContentItem[] items) throws FlatteningException {
+
+		if(executor == null || items.length < 2) {
+			for(ContentItem item : items) {
+				flattenContentItem(parentArchetype, item);
+			}
+			return;
+		}
+
+		long start = nodeCount;
+		List<Flattener> runs = new ArrayList<Flattener>();
+		List<FutureTask<Archetype>> tasks = new ArrayList<FutureTask<Archetype>>();
+		for(final ContentItem item : items) {
+			final Flattener run = newRun(archetypeMap, templateMap);
+			FutureTask<Archetype> task = new FutureTask<Archetype>(
+					new Callable<Archetype>() {
+				public Archetype call() throws Exception {
+					return run.buildContentItem(item);
+				}
+			});
+			runs.add(run);
+			tasks.add(task);
+			try {
+				executor.execute(task);
+			} catch(RejectedExecutionException e) {
+				// run below by this thread
+			}
+		}
+		try {
+			for(int i = 0; i < items.length; i++) {
+				FutureTask<Archetype> task = tasks.get(i);
+
+				// no-op if already started by the executor
+				task.run();
+
+				Archetype archetype = getResult(task);
+				Flattener run = runs.get(i);
+				if(run.nodeCount != start) {
+					if(nodeCount != start) {
+						// numbered from a count since moved by earlier items
+						run = newRun(archetypeMap, templateMap);
+						archetype = run.buildContentItem(items[i]);
+					}
+					nodeCount = run.nodeCount;
+				}
+				termMap.addAll(run.termMap);
+				fillArchetypeSlot(parentArchetype, archetype,
+						items[i].getPath(), items[i].getName());
+			}
+		} finally {
+			for(FutureTask<Archetype> task : tasks) {
+				task.cancel(false);
+			}
+		}
+	}
+
+	private Archetype getResult(FutureTask<Archetype> task)
+			throws FlatteningException {
+
+		try {
+			return task.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new FlatteningException(
+					"interrupted while flattening content items");
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof FlatteningException) {
+				throw (FlatteningException) cause;
+			}
+			if(cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw (RuntimeException) cause;
+		}
+	}
+
+	private Archetype flattenContentItem(Archetype parentArchetype,
 			ContentItem definition)	throws FlatteningException {
-		
-		log.debug("flattening content_item on archetype: " + 
+
+		Archetype archetype = buildContentItem(definition);
+
+		// bind current archetype to the parent
+		fillArchetypeSlot(parentArchetype, archetype, definition.getPath(),
+				definition.getName());
+
+		return archetype;
+	}
+
+	/*
+	 * Flatten a content item with everything below it, without binding
+	 * it to its parent
+	 */
+	private Archetype buildContentItem(ContentItem definition)
+			throws FlatteningException {
+
+		log.debug("flattening content_item on archetype: " +
 				definition.getArchetypeId() + " on path: " + definition.getPath());
-		
+
 		Archetype archetype = null;
 		String templateId = definition.getTemplateId();
 		
@@ -261,11 +407,11 @@ public class Flattener {
 		
 		if(definition instanceof ENTRY) {
 	
-			flattenEntry(parentArchetype, archetype, (ENTRY) definition);
-		
+			flattenEntry(archetype, (ENTRY) definition);
+
 		} else if(definition instanceof SECTION) {
-		
-			flattenSection(parentArchetype, archetype, (SECTION) definition);
+
+			flattenSection(archetype, (SECTION) definition);
 			
 		} else {
 			throw new FlatteningException(
@@ -431,48 +577,37 @@ public class Flattener {
 		return nodeId + " and name/value='" + name + "'";
 	}
 	
-	private Archetype flattenSection(Archetype parentArchetype, 
-			Archetype archetype, SECTION section) throws FlatteningException {
-		
-		log.debug("flattening section on archetype " + section.getArchetypeId() 
+	private Archetype flattenSection(Archetype archetype, SECTION section)
+			throws FlatteningException {
+
+		log.debug("flattening section on archetype " + section.getArchetypeId()
 				+ " at path " + section.getPath());
-		
+
 		ContentItem[] items = section.getItemArray();
-		String path = section.getPath();		
 		CComplexObject root = archetype.getDefinition();
-		
-		fillArchetypeSlot(parentArchetype, archetype, path, section.getName());
-				
+
 		CAttribute itemsAttribute = root.getAttribute(ITEMS);
-		
-		// handle SECTION.items		
-		if(items != null && items.length > 0) {			
-			
+
+		// handle SECTION.items
+		if(items != null && items.length > 0) {
+
 			// TODO shouldn't be necessary if the archetype has
 			// proper archetype_slots
 			if(itemsAttribute == null) {
-				
-				if(parentArchetype == null) {
-					path = ""; 
-				} else {
-					path = root.path(); 
-				}
-				path += "/" + ITEMS;
-				
+
+				// not yet bound to the parent, prefixed when it is
+				String path = "/" + ITEMS;
+
 				List<CObject> alternatives = new ArrayList<CObject>();
-				itemsAttribute = new CMultipleAttribute(path, ITEMS, 
+				itemsAttribute = new CMultipleAttribute(path, ITEMS,
 						Existence.OPTIONAL,	Cardinality.LIST, alternatives);
 				root.addAttribute(itemsAttribute);
-			}			
-			
-			// flatten each item in the list
-			for(ContentItem item : items) {
-				
-				log.debug("flattening section.items.. ");
-				
-				flattenContentItem(archetype, item);					
-			}	
-		}		
+			}
+
+			log.debug("flattening section.items.. ");
+
+			flattenContentItems(archetype, items);
+		}
 		return archetype;
 	}
 	
@@ -528,6 +663,7 @@ public class Flattener {
 	}
 	
 	// TODO until this is in sync with pathNodeMap, this shouldn't be used
+	// the counter is per run, see flattenContentItems for concurrent runs
 	protected void adjustNodeIds(CObject root) throws FlatteningException {
 		this.nodeCount = adjustNodeIds(root, this.nodeCount);
 	}
@@ -546,17 +682,12 @@ public class Flattener {
 		return attr;
 	}
 	
-	private Archetype flattenEntry(Archetype parentArchetype, 
-			Archetype archetype, ENTRY definition) throws FlatteningException {
-		
+	private Archetype flattenEntry(Archetype archetype, ENTRY definition)
+			throws FlatteningException {
+
 		log.debug("flattening entry on archetype: "	+ definition.getArchetypeId()
 				+ ", path: " + ((ENTRY) definition).getPath());
-				
-		String path = definition.getPath();
-				
-		// bind current archetype to the parent 
-		fillArchetypeSlot(parentArchetype, archetype, path, definition.getName());
-		
+
 		// common part for all entries
 		ENTRY entry = (ENTRY) definition;
 		ITEM[] items = entry.getItemsArray();
@@ -579,8 +710,7 @@ public class Flattener {
 			
 			// TODO handle description item
 			ACTION action = (ACTION) definition;
-			
-			parentArchetype = retrieveArchetype(action.getArchetypeId());
+
 			ITEMSTRUCTURE description = action.getDescription();
 			if(description != null) {
 				flattenItemStructure(archetype, description);
@@ -588,7 +718,7 @@ public class Flattener {
 		
 		} else if(definition instanceof INSTRUCTION) {
 			
-			flattenInstruction(parentArchetype, archetype, (INSTRUCTION) definition);
+			flattenInstruction(archetype, (INSTRUCTION) definition);
 		
 		} else if(definition instanceof ADMINENTRY) {
 			
@@ -662,9 +792,8 @@ public class Flattener {
 		return attribute;
 	}
 	
-	private void flattenInstruction(Archetype parentArchetype, 
-			Archetype archetype, INSTRUCTION instruction) 
-			throws FlatteningException {
+	private void flattenInstruction(Archetype archetype,
+			INSTRUCTION instruction) throws FlatteningException {
 		
 		log.debug("flattening instruction on archetype: "	+ instruction.getArchetypeId()
 				+ ", path: " + ((ENTRY) instruction).getPath());
@@ -1238,8 +1367,10 @@ public class Flattener {
 		} if(vc instanceof QuantityConstraint) {
 			
 			QuantityConstraint tc = (QuantityConstraint) vc;
-			applyQuantityConstraint(ccobj, tc);			
-			archetype.updatePathNodeMapRecursively(ccobj);
+			applyQuantityConstraint(ccobj, tc);
+
+			// drops the paths of the replaced value constraints
+			archetype.reloadNodeMaps(ccobj);
 		
 		} else if(vc instanceof MultipleConstraint) {
 		
@@ -1398,7 +1529,9 @@ public class Flattener {
 				code = value.substring(i + 2, j);
 				text = value.substring(j + 2);				
 				codeList.add(code);				
-				termMap.addTerm(terminology, code, text, valuePath);
+				synchronized(termMap) {
+					termMap.addTerm(terminology, code, text, valuePath);
+				}
 			}
 			
 			CCodePhrase ccp = CCodePhrase.singleRequired(definingCodePath, 
@@ -1511,20 +1644,18 @@ public class Flattener {
 	 * Returns next unique nodeId in "at0001" format
 	 */
 	protected String formatNodeId(long count) {
+		// DecimalFormat is not thread-safe, so not shared between runs
+		DecimalFormat format = new DecimalFormat("####");
+		
+		// number of digits is not limited according to the specs
+		// using 4 as minimum is by convention
+		format.setMinimumIntegerDigits(4);
+		format.setMaximumIntegerDigits(8);
+		
 		String nextId = AT + format.format(count);
 		return nextId;
 	}
 	
-	/*
-	 * Gets next unique id and increase the counter
-	 */
-	private String nextNodeId() {
-		nodeCount++;
-		String nextId = formatNodeId(nodeCount);	
-		//log.debug("next nodeId: " + nextId);
-		return nextId;
-	}
-	
 	/*
 	 * Parse coded text like 'SNOMED-CT::258835005::mg/dygn'
 	 * the last segment of actual text value 
@@ -1545,7 +1676,9 @@ public class Flattener {
 		String text = value.substring(j + 2);
 		CodePhrase codePhrase = new CodePhrase(terminology, code);
 		
-		termMap.addTerm(terminology, code, text, path);		
+		synchronized(termMap) {
+			termMap.addTerm(terminology, code, text, path);
+		}
 		return codePhrase;
 	}
 	
@@ -1598,7 +1731,7 @@ public class Flattener {
 		if(archetype == null) {
 			throw new UnknownArchetypeException(archetypeId);
 		}
-		// make a deep copy
+		// make a deep copy, each use of an archetype is modified separately
 		archetype = archetype.copy();
 		return archetype;
 	}
@@ -1671,8 +1804,18 @@ public class Flattener {
 		return null;
 	}
 	
+	/**
+	 * Gets the terms collected by the finished flattening runs and the
+	 * constraints applied directly on this flattener
+	 *
+	 * @return copy of the term map, not changed by later runs
+	 */
 	public TermMap getTermMap() {
-		return termMap;
+		TermMap copy = new TermMap();
+		synchronized(termMap) {
+			copy.addAll(termMap);
+		}
+		return copy;
 	}	
 	
 	/* constant values */
@@ -1689,17 +1832,10 @@ public class Flattener {
 	private static final String DATA_TYPES_PREFIX = "DV_";
 	
 	/* static fields */
-	private static DecimalFormat format = new DecimalFormat("####");
-	static {
-		// number of digits is not limited according to the specs
-		// using 4 as minimum is by convention
-		format.setMinimumIntegerDigits(4);
-		format.setMaximumIntegerDigits(8);
-	}
-	
 	private static Logger log = Logger.getLogger(Flattener.class);
 	
 	/* fields */
+	private final ExecutorService executor;
 	private Map<String, Archetype> archetypeMap;
 	private Map<String, TEMPLATE> templateMap;
 	private TermMap termMap;
@@ -133,6 +133,25 @@ public class TermMap {
 		}
 	}
 	
+	/**
+	 * Adds all terms of given termMap into this termMap
+	 *
+	 * @param other
+	 */
+	public void addAll(TermMap other) {
+		for(Map.Entry<String, Map<String, Map<String, String>>> terms :
+				other.termMap.entrySet()) {
+			for(Map.Entry<String, Map<String, String>> paths :
+					terms.getValue().entrySet()) {
+				for(Map.Entry<String, String> text :
+						paths.getValue().entrySet()) {
+					addTerm(terms.getKey(), paths.getKey(), text.getValue(),
+							text.getKey());
+				}
+			}
+		}
+	}
+
 	/**
 	 * Clears all terms from this termMap
 	 * 
@@ -0,0 +1,69 @@
+package org.openehr.am.template;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+
+import org.openehr.am.archetype.Archetype;
+import org.openehr.am.archetype.DefinitionLoader;
+import org.openehr.am.archetype.constraintmodel.CComplexObject;
+
+import se.acode.openehr.parser.ADLDefinitionLoader;
+import se.acode.openehr.parser.ADLParser;
+
+public class ArchetypeMapTest extends TemplateTestBase {
+
+	/*
+	 * Only the archetypes used by the template are copied, so the
+	 * definitions of the others are never needed
+	 */
+	public void testOnlyUsedArchetypesTouched() throws Exception {
+		final Set<String> loaded = new HashSet<String>();
+		Map<String, Archetype> headers = new HashMap<String, Archetype>();
+		for(String id : archetypeMap.keySet()) {
+			String adl = read("archetypes/" + id + ".adl");
+			final DefinitionLoader loader = new ADLDefinitionLoader(adl);
+			Archetype header = new ADLParser(adl).parse(
+					new DefinitionLoader() {
+						public CComplexObject loadDefinition(
+								Archetype archetype) throws Exception {
+							loaded.add(archetype.getArchetypeId().toString());
+							return loader.loadDefinition(archetype);
+						}
+					});
+			headers.put(id, header);
+		}
+
+		flattened = flattener.toFlattenedArchetype(
+				loadTemplate("test_text_name.oet"), headers, templateMap);
+
+		assertNotNull(flattened.node("/data[at0001]/items[at0002]"));
+		assertEquals(1, loaded.size());
+		assertTrue(loaded.contains(
+				"openEHR-EHR-EVALUATION.review_of_procedures.v1"));
+	}
+
+	public void testGivenArchetypesNotModified() throws Exception {
+		flattenTemplate("test_named_path.oet");
+		flattenTemplate("test_text_name.oet");
+
+		for(String id : archetypeMap.keySet()) {
+			Archetype original = loadArchetype(id + ".adl");
+			assertEquals(id, original.getDefinition(),
+					archetypeMap.get(id).getDefinition());
+			assertEquals(id, original.getPathNodeMap().keySet(),
+					archetypeMap.get(id).getPathNodeMap().keySet());
+		}
+	}
+
+	private String read(String name) throws Exception {
+		Scanner scanner = new Scanner(fromClasspath(name), "UTF-8");
+		try {
+			return scanner.useDelimiter("\\A").next();
+		} finally {
+			scanner.close();
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package org.openehr.am.template;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import openEHR.v1.template.TEMPLATE;
+
+import org.openehr.am.archetype.Archetype;
+
+public class FlattenedTemplateCacheTest extends TemplateTestBase {
+
+	public void setUp() throws Exception {
+		super.setUp();
+		templates = new HashMap<String, TEMPLATE>();
+		textName = add(loadTemplate("test_text_name.oet"));
+		composition = add(loadTemplate("test_composition.oet"));
+		cache = new FlattenedTemplateCache(archetypeMap, templates);
+	}
+
+	public void testCached() throws Exception {
+		Archetype flattened = cache.getFlattened(textName);
+		assertSame(flattened, cache.getFlattened(textName));
+		assertEquals(1, cache.getFlattenCount());
+		assertEquals(1, cache.getHitCount());
+		assertNotNull(flattened.node("/data[at0001]/items[at0002]/items" +
+				"[at0003 and name/value='Typ']"));
+	}
+
+	public void testDependencies() throws Exception {
+		cache.getFlattened(composition);
+		assertEquals(set("openEHR-EHR-COMPOSITION.test.v1",
+				"openEHR-EHR-SECTION.ad_hoc_heading.v1"),
+				cache.getArchetypeDependencies(composition));
+		assertEquals(set(composition),
+				cache.getTemplateDependencies(composition));
+	}
+
+	public void testOnlyDependentTemplatesEvicted() throws Exception {
+		Archetype first = cache.getFlattened(textName);
+		Archetype other = cache.getFlattened(composition);
+
+		cache.updateArchetype(loadArchetype(
+				"openEHR-EHR-EVALUATION.review_of_procedures.v1.adl"));
+		assertEquals(1, cache.size());
+		assertSame(other, cache.getFlattened(composition));
+
+		Archetype second = cache.getFlattened(textName);
+		assertNotSame(first, second);
+		assertEquals(3, cache.getFlattenCount());
+
+		cache.removeArchetype("openEHR-EHR-SECTION.ad_hoc_heading.v1");
+		assertEquals(1, cache.size());
+		try {
+			cache.getFlattened(composition);
+			fail("exception should be thrown");
+		} catch(UnknownArchetypeException e) {
+			// expected
+		}
+		assertEquals(1, cache.size());
+	}
+
+	public void testNestedTemplate() throws Exception {
+		String child = add(parse("<id>child</id><name>Child</name>"
+				+ "<definition xsi:type=\"SECTION\" archetype_id=\""
+				+ "openEHR-EHR-SECTION.ad_hoc_heading.v1\"/>"));
+		String parent = add(parse("<id>parent</id><name>Parent</name>"
+				+ "<definition xsi:type=\"COMPOSITION\" archetype_id=\""
+				+ "openEHR-EHR-COMPOSITION.test.v1\"><Content "
+				+ "xsi:type=\"SECTION\" archetype_id=\""
+				+ "openEHR-EHR-SECTION.ad_hoc_heading.v1\" template_id=\""
+				+ "child\" path=\"/content\"/></definition>"));
+		cache = new FlattenedTemplateCache(archetypeMap, templates);
+
+		cache.getFlattened(parent);
+		cache.getFlattened(composition);
+		assertEquals(set(parent, child),
+				cache.getTemplateDependencies(parent));
+
+		cache.updateTemplate(templates.get(child));
+		assertNull(cache.getTemplateDependencies(parent));
+		assertNotNull(cache.getTemplateDependencies(composition));
+	}
+
+	public void testUnknownTemplate() throws Exception {
+		try {
+			cache.getFlattened("no-such-template");
+			fail("exception should be thrown");
+		} catch(UnknownTemplateException e) {
+			assertEquals("no-such-template", e.getTemplateId());
+		}
+		assertEquals(0, cache.size());
+	}
+
+	public void testConcurrentRequestsShareOneRun() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Archetype>> futures = new ArrayList<Future<Archetype>>();
+			for(int i = 0; i < 16; i++) {
+				futures.add(executor.submit(new Callable<Archetype>() {
+					public Archetype call() throws Exception {
+						return cache.getFlattened(composition);
+					}
+				}));
+			}
+			Archetype flattened = futures.get(0).get();
+			for(Future<Archetype> future : futures) {
+				assertSame(flattened, future.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(1, cache.getFlattenCount());
+	}
+
+	public void testRequestAfterUpdateNotJoiningOlderRun() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		cache = new FlattenedTemplateCache(archetypeMap, templates) {
+			protected Flattener newFlattener() {
+				if(started.getCount() == 0) {
+					return new Flattener();
+				}
+				// the first run waits after it started
+				return new Flattener() {
+					public Archetype toFlattenedArchetype(TEMPLATE template,
+							Map<String, Archetype> archetypeMap,
+							Map<String, TEMPLATE> templateMap)
+							throws FlatteningException {
+						started.countDown();
+						try {
+							release.await();
+						} catch(InterruptedException e) {
+							throw new FlatteningException("interrupted");
+						}
+						return super.toFlattenedArchetype(template,
+								archetypeMap, templateMap);
+					}
+				};
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Callable<Archetype> request = new Callable<Archetype>() {
+				public Archetype call() throws Exception {
+					return cache.getFlattened(composition);
+				}
+			};
+			Future<Archetype> before = executor.submit(request);
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+
+			cache.updateArchetype(loadArchetype(
+					"openEHR-EHR-SECTION.ad_hoc_heading.v1.adl"));
+			Future<Archetype> after = executor.submit(request);
+			Archetype flattened = after.get(10, TimeUnit.SECONDS);
+			release.countDown();
+
+			assertNotSame(flattened, before.get());
+			assertSame(flattened, cache.getFlattened(composition));
+		} finally {
+			release.countDown();
+			executor.shutdown();
+		}
+		assertEquals(2, cache.getFlattenCount());
+	}
+
+	private String add(TEMPLATE template) {
+		templates.put(template.getId(), template);
+		return template.getId();
+	}
+
+	private TEMPLATE parse(String content) throws Exception {
+		String xml = "<?xml version=\"1.0\"?><template xmlns:xsi=\""
+				+ "http://www.w3.org/2001/XMLSchema-instance\" xmlns=\""
+				+ "openEHR/v1/Template\">" + content + "</template>";
+		return parser.parseTemplate(new ByteArrayInputStream(
+				xml.getBytes("UTF-8"))).getTemplate();
+	}
+
+	private static java.util.Set<String> set(String... ids) {
+		return new java.util.HashSet<String>(java.util.Arrays.asList(ids));
+	}
+
+	private HashMap<String, TEMPLATE> templates;
+	private FlattenedTemplateCache cache;
+	private String textName;
+	private String composition;
+}
@@ -0,0 +1,145 @@
+package org.openehr.am.template;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import openEHR.v1.template.TEMPLATE;
+
+import org.openehr.am.archetype.Archetype;
+import org.openehr.am.archetype.constraintmodel.ArchetypeConstraint;
+import org.openehr.am.archetype.constraintmodel.CComplexObject;
+import org.openehr.am.archetype.constraintmodel.CObject;
+
+public class ParallelFlatteningTest extends TemplateTestBase {
+
+	public void setUp() throws Exception {
+		super.setUp();
+		executor = Executors.newFixedThreadPool(2);
+	}
+
+	public void tearDown() throws Exception {
+		executor.shutdown();
+		super.tearDown();
+	}
+
+	public void testSameResultAsSequential() throws Exception {
+		for(String name : TEMPLATES) {
+			TEMPLATE template = loadTemplate(name);
+			Flattener sequential = new Flattener();
+			Flattener parallel = new Flattener(executor);
+
+			Archetype expected = sequential.toFlattenedArchetype(template,
+					archetypeMap, templateMap);
+			Archetype actual = parallel.toFlattenedArchetype(template,
+					archetypeMap, templateMap);
+
+			assertEquals(name, expected.getDefinition(),
+					actual.getDefinition());
+			assertEquals(name, expected.getPathNodeMap().keySet(),
+					actual.getPathNodeMap().keySet());
+			assertEquals(name, sequential.getTermMap().getTermMap(),
+					parallel.getTermMap().getTermMap());
+		}
+	}
+
+	public void testSharedBetweenThreads() throws Exception {
+		final TEMPLATE template = loadTemplate("test_composition5.oet");
+		Archetype expected = new Flattener().toFlattenedArchetype(template,
+				archetypeMap, templateMap);
+
+		final Flattener shared = new Flattener(executor);
+		ExecutorService callers = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Archetype>> futures = new ArrayList<Future<Archetype>>();
+			for(int i = 0; i < 8; i++) {
+				futures.add(callers.submit(new Callable<Archetype>() {
+					public Archetype call() throws Exception {
+						return shared.toFlattenedArchetype(template,
+								archetypeMap, templateMap);
+					}
+				}));
+			}
+			for(Future<Archetype> future : futures) {
+				assertEquals(expected.getDefinition(),
+						future.get().getDefinition());
+			}
+		} finally {
+			callers.shutdown();
+		}
+	}
+
+	public void testFailureOfContentItem() throws Exception {
+		TEMPLATE template = loadTemplate("test_composition5.oet");
+		Map<String, Archetype> archetypes =
+			new HashMap<String, Archetype>(archetypeMap);
+		archetypes.remove("openEHR-EHR-SECTION.ad_hoc_heading.v1");
+		try {
+			new Flattener(executor).toFlattenedArchetype(template,
+					archetypes, templateMap);
+			fail("exception should be thrown");
+		} catch(UnknownArchetypeException e) {
+			assertEquals("openEHR-EHR-SECTION.ad_hoc_heading.v1",
+					e.getArchetypeId());
+		}
+	}
+
+	public void testSameNodeIdsAsSequential() throws Exception {
+		for(String name : TEMPLATES) {
+			TEMPLATE template = loadTemplate(name);
+			Archetype expected = new NumberingFlattener(null)
+					.toFlattenedArchetype(template, archetypeMap, templateMap);
+			Archetype actual = new NumberingFlattener(executor)
+					.toFlattenedArchetype(template, archetypeMap, templateMap);
+			assertEquals(name, annotations(expected), annotations(actual));
+		}
+	}
+
+	private static Map<String, String> annotations(Archetype archetype) {
+		Map<String, String> annotations = new TreeMap<String, String>();
+		for(Map.Entry<String, CObject> entry :
+				archetype.getPathNodeMap().entrySet()) {
+			if(entry.getValue().getAnnotation() != null) {
+				annotations.put(entry.getKey(),
+						entry.getValue().getAnnotation());
+			}
+		}
+		return annotations;
+	}
+
+	/*
+	 * Numbers the node ids of a copy of each content item, noting the
+	 * first one in the annotation of the item
+	 */
+	private static class NumberingFlattener extends Flattener {
+
+		NumberingFlattener(ExecutorService executor) {
+			super(executor);
+		}
+
+		protected void applyAnnotationConstraint(
+				ArchetypeConstraint constraint, String annotation) {
+			CObject copy = ((CComplexObject) constraint).copy();
+			try {
+				adjustNodeIds(copy);
+			} catch(FlatteningException e) {
+				throw new RuntimeException(e);
+			}
+			constraint.setAnnotation(copy.getNodeId());
+		}
+	}
+
+	private static final String[] TEMPLATES = {
+		"test_composition.oet", "test_composition3.oet",
+		"test_composition5.oet", "test_nested_section.oet",
+		"test_more_nested_section.oet", "prescription.oet"
+	};
+
+	private ExecutorService executor;
+}
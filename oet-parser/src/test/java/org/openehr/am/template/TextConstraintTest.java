@@ -62,6 +62,13 @@ public class TextConstraintTest extends TemplateTestBase {
 	
 	// <Rule path="/items[at0001]" default="SNOMED-CT::258835005::mg/dygn"/>
 	
+	public void testTermMapIsCopy() throws Exception {
+		TermMap before = flattener.getTermMap();
+		flattenTemplate("test_default_coded_name.oet");
+		assertEquals(0, before.countTerminologies());
+		assertEquals(1, flattener.getTermMap().countTerminologies());
+	}
+	
 	public void testSetDefaultCodedTextConstraint() throws Exception {
 		String defaultValue = "SNOMED-CT::258835005::mg/dygn";		
 		flattener.applyDefaultValueConstraint(constraint, defaultValue);
@@ -80,6 +80,55 @@ public Archetype(String adlVersion, String id, String parentId, String concept,
 			ArchetypeOntology ontology,	Set<Assertion> invariants,
 			TerminologyService terminologyService) {	
 		
+		this(adlVersion, id, parentId, concept, originalLanguage, translations,
+				description, revisionHistory, isControlled, uid, definition,
+				null, ontology, invariants, terminologyService);
+	}
+
+	/**
+	 * Constructs an Archetype whose definition is not yet known. The
+	 * definition is loaded by given loader when first needed, by
+	 * <code>getDefinition</code> or any of the path based methods.
+	 * <p/>
+	 * This allows archetypes to be indexed by their header and ontology
+	 * without building their constraint trees.
+	 *
+	 * @param adlVersion null if unspecified
+	 * @param id
+	 * @param parentId
+	 * @param concept
+	 * @param originalLanguage
+	 * @param translations
+	 * @param description
+	 * @param revisionHistory
+	 * @param isControlled
+	 * @param uid
+	 * @param definitionLoader
+	 * @param ontology
+	 * @throws IllegalArgumentException if ontology null or
+	 * 			definitionLoader null
+	 */
+	public Archetype(String adlVersion, String id, String parentId,
+			String concept, CodePhrase originalLanguage,
+			Map<String, TranslationDetails> translations,
+			ResourceDescription description, RevisionHistory revisionHistory,
+			boolean isControlled, HierObjectID uid,
+			DefinitionLoader definitionLoader, ArchetypeOntology ontology,
+			Set<Assertion> invariants, TerminologyService terminologyService) {
+
+		this(adlVersion, id, parentId, concept, originalLanguage, translations,
+				description, revisionHistory, isControlled, uid, null,
+				definitionLoader, ontology, invariants, terminologyService);
+	}
+
+	private Archetype(String adlVersion, String id, String parentId,
+			String concept, CodePhrase originalLanguage,
+			Map<String, TranslationDetails> translations,
+			ResourceDescription description, RevisionHistory revisionHistory,
+			boolean isControlled, HierObjectID uid, CComplexObject definition,
+			DefinitionLoader definitionLoader, ArchetypeOntology ontology,
+			Set<Assertion> invariants, TerminologyService terminologyService) {
+
 		super(originalLanguage, translations, description, revisionHistory,
 			isControlled, terminologyService);
 		
@@ -89,7 +138,7 @@ public Archetype(String adlVersion, String id, String parentId, String concept,
 		if (ontology == null) {
 			throw new IllegalArgumentException("ontology null");
 		}
-		if (definition == null) {
+		if (definition == null && definitionLoader == null) {
 			throw new IllegalArgumentException("definition null");
 		}
 		this.adlVersion = adlVersion;
@@ -98,14 +147,17 @@ public Archetype(String adlVersion, String id, String parentId, String concept,
 		this.concept = concept;
 		this.parentArchetypeId = (parentId == null ? null : new ArchetypeID(
 				parentId));
-		this.definition = definition;
+		this.definitionLoader = definitionLoader;
 		this.ontology = ontology;
 		this.invariants = invariants;
-		this.pathNodeMap = new HashMap<String, CObject>();
+		this.pathNodeMap = new PathIndex();
 		this.pathInputMap = new HashMap<String, String>();
 		this.inputPathMap = new HashMap<String, String>();
 		this.nodeIdPathMap = new HashMap<String, String>();
-		reloadNodeMaps();
+		if (definition != null) {
+			loadNodeMaps(definition);
+			this.definition = definition;
+		}
 	}
 
 	public Archetype copy() {
@@ -115,9 +167,8 @@ public Archetype(String adlVersion, String id, String parentId, String concept,
 		Archetype archetype = new Archetype(adlVersion, archetypeId.toString(), 
 				parentId, concept, getOriginalLanguage(), getTranslations(), 
 				null, getRevisionHistory(), isControlled(), uid,
-				(CComplexObject) definition.copy(),	ontology, invariants, null);
-		
-		reloadNodeMaps();
+				(CComplexObject) getDefinition().copy(), ontology, invariants,
+				null);
 		
 		// set c_obj.parent()?
 		
@@ -129,12 +180,84 @@ public Archetype(String adlVersion, String id, String parentId, String concept,
 	 * modified after it's constructed by the parser.
 	 */
 	public void reloadNodeMaps() {
+		loadNodeMaps(getDefinition());
+	}
+
+	/**
+	 * Reloads the node maps for the subtree of given node only, which is
+	 * enough after the subtree was replaced or modified. The paths under
+	 * the node are removed before those of the subtree are loaded again.
+	 * Internal references from outside the subtree into it are not
+	 * reloaded; use reloadNodeMaps() for those.
+	 *
+	 * @param cobj root of the subtree, not null
+	 */
+	public void reloadNodeMaps(CObject cobj) {
+		definition();
+		String path = cobj.path();
+		for (Map.Entry<String, CObject> e :
+				pathNodeMap.removeSubtree(path).entrySet()) {
+			String nodeId = e.getValue().getNodeId();
+			if (e.getKey().equals(nodeIdPathMap.get(nodeId))) {
+				nodeIdPathMap.remove(nodeId);
+
+				// fall back on another path of the node id, if any
+				for (String other : pathNodeMap.byNodeId(nodeId).keySet()) {
+					nodeIdPathMap.put(nodeId, other);
+				}
+			}
+		}
+		loadMaps(cobj, true);
+		loadInternalRefs(cobj, true, null, null);
+	}
+
+	private void loadNodeMaps(CComplexObject root) {
 		pathNodeMap.clear();
 		pathInputMap.clear();
 		inputPathMap.clear();
 		nodeIdPathMap.clear();
-		loadMaps(definition, true);
-		loadInternalRefs(definition, true, null, null);
+		loadMaps(root, true);
+		loadInternalRefs(root, true, null, null);
+	}
+
+	/*
+	 * Loads the definition if not done yet. The node maps are filled
+	 * before the definition is set, so a thread that sees the definition
+	 * also sees the maps.
+	 */
+	private CComplexObject definition() {
+		CComplexObject root = definition;
+		if (root != null) {
+			return root;
+		}
+		synchronized (this) {
+			if (definition == null) {
+				try {
+					root = definitionLoader.loadDefinition(this);
+				} catch (Exception e) {
+					throw new IllegalStateException(
+							"failed to load definition of " + archetypeId, e);
+				}
+				if (root == null) {
+					throw new IllegalStateException(
+							"null definition loaded for " + archetypeId);
+				}
+				loadNodeMaps(root);
+				definition = root;
+				definitionLoader = null;
+			}
+			return definition;
+		}
+	}
+
+	/**
+	 * True if the definition of this archetype is loaded, which is always
+	 * the case unless constructed with a definition loader.
+	 *
+	 * @return true if loaded
+	 */
+	public boolean isDefinitionLoaded() {
+		return definition != null;
 	}
 
 	/**
@@ -147,6 +270,7 @@ public Archetype(String adlVersion, String id, String parentId, String concept,
 	 * @return set of paths
 	 */
 	public Set<String> physicalPaths() {
+		definition();
 		return pathNodeMap.keySet();
 	}	
 	
@@ -199,10 +323,23 @@ public Archetype(String adlVersion, String id, String parentId, String concept,
 	}
 
 	public Map<String, CObject> getPathNodeMap() {
+		definition();
+		return pathNodeMap;
+	}
+
+	/**
+	 * Index of the object nodes by path, for queries by path prefix,
+	 * subtree, rm type and node id. Same instance as the path node map.
+	 *
+	 * @return path index
+	 */
+	public PathIndex getPathIndex() {
+		definition();
 		return pathNodeMap;
 	}
 
 	public String getPathByNodeId(String nodeId) {
+		definition();
 		return nodeIdPathMap.get(nodeId);
 	}
 
@@ -219,14 +356,14 @@ public Archetype(String adlVersion, String id, String parentId, String concept,
 		if (node instanceof ArchetypeInternalRef) {
 			ArchetypeInternalRef ref = (ArchetypeInternalRef) node;
 			
-			ArchetypeConstraint target = node(ref.getTargetPath());
+			ArchetypeConstraint target = pathNodeMap.get(ref.getTargetPath());
 			if(target instanceof CObject) {
      
 				String atpart ="";
 				if (!ref.path().endsWith("]" ) && ref.getTargetPath().endsWith("]")) {
 					atpart+= ref.getTargetPath().substring(ref.getTargetPath().lastIndexOf("["));
 				}
-				loadInternalRefs((CObject)node(ref.getTargetPath()), required
+				loadInternalRefs((CObject) target, required
 					&& node.isRequired(), ref.path()+atpart, ref.getTargetPath()); 
 			
 			}
@@ -329,7 +466,7 @@ public Archetype(String adlVersion, String id, String parentId, String concept,
 	 * @return definition
 	 */
 	public CComplexObject getDefinition() {
-		return definition;
+		return definition();
 	}
 
 	/**
@@ -384,6 +521,7 @@ public Archetype(String adlVersion, String id, String parentId, String concept,
 		// based on runtime object tree traverse. Map-based path retrieval
 		// need to be removed from the code
 	
+		definition();
 		return pathNodeMap.get(path);
 	}
 
@@ -393,6 +531,7 @@ public Archetype(String adlVersion, String id, String parentId, String concept,
 	 * @param cobj
 	 */
 	public void updatePathNodeMap(CObject cobj) {
+		definition();
 		if(cobj != null) {
 			pathNodeMap.put(cobj.path(), cobj);
 		}
@@ -405,6 +544,7 @@ public Archetype(String adlVersion, String id, String parentId, String concept,
 	 * @param cobj
 	 */
 	public void updatePathNodeMap(String path, CObject cobj) {
+		definition();
 		if(cobj != null && path != null) {
 			pathNodeMap.put(path, cobj);
 		}
@@ -450,6 +590,7 @@ public Archetype(String adlVersion, String id, String parentId, String concept,
 	 * @return null if path unknown
 	 */
 	public String inputByPath(String path) {
+		definition();
 		return pathInputMap.get(path);
 	}
 
@@ -460,9 +601,20 @@ public Archetype(String adlVersion, String id, String parentId, String concept,
 	 * @return null if input unknown
 	 */
 	public String pathByInput(String input) {
+		definition();
 		return inputPathMap.get(input);
 	}
 
+	/*
+	 * Loads the definition before writing, since the loader is not
+	 * serialized
+	 */
+	private void writeObject(java.io.ObjectOutputStream out)
+			throws java.io.IOException {
+		definition();
+		out.defaultWriteObject();
+	}
+
 	/* fields */
 	private final String adlVersion;
 
@@ -474,14 +626,16 @@ public Archetype(String adlVersion, String id, String parentId, String concept,
 
 	private final ArchetypeID parentArchetypeId;
 
-	private final CComplexObject definition;
+	private volatile CComplexObject definition;
+
+	private transient DefinitionLoader definitionLoader;
 
 	private final ArchetypeOntology ontology;
 
 	private final Set<Assertion> invariants;
 
 	/* calculated fields */
-	private final Map<String, CObject> pathNodeMap;
+	private final PathIndex pathNodeMap;
 
 	private final Map<String, String> pathInputMap;
 
@@ -0,0 +1,48 @@
+/*
+ * component:   "openEHR Reference Implementation"
+ * description: "Class DefinitionLoader"
+ * keywords:    "archetype"
+ *
+ * license:     "See notice at bottom of class"
+ *
+ * file:        "$URL$"
+ * revision:    "$LastChangedRevision$"
+ * last_change: "$LastChangedDate$"
+ */
+package org.openehr.am.archetype;
+
+import org.openehr.am.archetype.constraintmodel.CComplexObject;
+
+/**
+ * Loads the definition of an archetype constructed without one. Called at
+ * most once per archetype, on first access to its definition or paths.
+ *
+ * @version 1.0
+ */
+public interface DefinitionLoader {
+
+	/**
+	 * Loads the root node of the definition of given archetype
+	 *
+	 * @param archetype the archetype being loaded, whose definition is
+	 * 			not to be accessed
+	 * @return definition, not null
+	 * @throws Exception if fails to load
+	 */
+	CComplexObject loadDefinition(Archetype archetype) throws Exception;
+}
+/*
+ * ***** BEGIN LICENSE BLOCK ***** Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the 'License'); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is DefinitionLoader.java
+ *
+ * ***** END LICENSE BLOCK *****
+ */
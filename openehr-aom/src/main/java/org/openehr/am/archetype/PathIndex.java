@@ -0,0 +1,379 @@
+/*
+ * component:   "openEHR Reference Implementation"
+ * description: "Class PathIndex"
+ * keywords:    "archetype"
+ *
+ * license:     "See notice at bottom of class"
+ *
+ * file:        "$URL$"
+ * revision:    "$LastChangedRevision$"
+ * last_change: "$LastChangedDate$"
+ */
+package org.openehr.am.archetype;
+
+import java.io.Serializable;
+import java.util.*;
+
+import org.openehr.am.archetype.constraintmodel.CObject;
+
+/**
+ * Index of the object nodes of an archetype by path, kept as a trie of
+ * path segments, e.g. "data[at0001]" and "items[at0002]" for path
+ * "/data[at0001]/items[at0002]". Besides lookup by path it answers the
+ * nodes under a path, the nodes of paths starting with a string and the
+ * nodes of an rm type or node id without scanning all paths, and a
+ * subtree can be removed or replaced without rebuilding the whole index.
+ * <p>
+ * The index is a map from path to node whose views are read-only, so
+ * all changes go through put and remove and keep the trie up to date.
+ * Query results are in the order the paths were added. Not thread-safe.
+ *
+ * @version 1.0
+ */
+public class PathIndex extends AbstractMap<String, CObject>
+		implements Serializable {
+
+	/**
+	 * Creates an empty index
+	 */
+	public PathIndex() {
+		root = new Node();
+		nodes = new HashMap<String, CObject>();
+		rmTypePaths = new HashMap<String, Set<String>>();
+		nodeIdPaths = new HashMap<String, Set<String>>();
+	}
+
+	public CObject get(Object path) {
+		return nodes.get(path);
+	}
+
+	public boolean containsKey(Object path) {
+		return nodes.containsKey(path);
+	}
+
+	public int size() {
+		return nodes.size();
+	}
+
+	/**
+	 * Adds or replaces the node at given path
+	 *
+	 * @param path not null
+	 * @param cobj not null
+	 * @return node previously at the path, null if none
+	 */
+	public CObject put(String path, CObject cobj) {
+		if (path == null || cobj == null) {
+			throw new IllegalArgumentException("null path or node");
+		}
+		CObject previous = nodes.put(path, cobj);
+		if (previous != null) {
+			unindex(path, previous);
+		} else {
+			Node node = root;
+			for (String segment : segments(path)) {
+				node = node.child(segment, true);
+			}
+			node.path = path;
+		}
+		index(path, cobj);
+		return previous;
+	}
+
+	public CObject remove(Object path) {
+		CObject cobj = nodes.remove(path);
+		if (cobj == null) {
+			return null;
+		}
+		unindex((String) path, cobj);
+
+		List<Node> trail = new ArrayList<Node>();
+		List<String> segments = segments((String) path);
+		Node node = root;
+		for (String segment : segments) {
+			trail.add(node);
+			node = node.child(segment, false);
+		}
+		node.path = null;
+
+		// prune nodes left without paths
+		for (int i = segments.size() - 1; i >= 0 && node.path == null
+				&& node.children == null; i--) {
+			node = trail.get(i);
+			node.removeChild(segments.get(i));
+		}
+		return cobj;
+	}
+
+	public void clear() {
+		root = new Node();
+		nodes.clear();
+		rmTypePaths.clear();
+		nodeIdPaths.clear();
+	}
+
+	/**
+	 * Read-only view of the paths and nodes, changes being made with
+	 * put and remove
+	 */
+	public Set<Map.Entry<String, CObject>> entrySet() {
+		return Collections.unmodifiableMap(nodes).entrySet();
+	}
+
+	/**
+	 * Nodes at and under given path, the path being matched by whole
+	 * segments, so "/items[at0001]" does not match "/items[at00011]"
+	 *
+	 * @param path not null, "/" for all nodes
+	 * @return unmodifiable map of path to node, empty if none
+	 */
+	public Map<String, CObject> subtree(String path) {
+		Node node = find(segments(path));
+		Map<String, CObject> result = new LinkedHashMap<String, CObject>();
+		if (node != null) {
+			collect(node, result);
+		}
+		return Collections.unmodifiableMap(result);
+	}
+
+	/**
+	 * Nodes of the paths starting with given string, e.g. all nodes of
+	 * attribute "items" with prefix "/data[at0001]/items"
+	 *
+	 * @param prefix not null
+	 * @return unmodifiable map of path to node, empty if none
+	 */
+	public Map<String, CObject> withPrefix(String prefix) {
+		Map<String, CObject> result = new LinkedHashMap<String, CObject>();
+		List<String> segments = segments(prefix);
+		if (segments.isEmpty()) {
+			collect(root, result);
+			return Collections.unmodifiableMap(result);
+		}
+		String last = segments.remove(segments.size() - 1);
+		if (prefix.endsWith("/")) {
+			segments.add(last);
+			last = "";
+		}
+		Node node = find(segments);
+		if (node != null && node.children != null) {
+			for (Map.Entry<String, Node> e : node.children.entrySet()) {
+				if (e.getKey().startsWith(last)) {
+					collect(e.getValue(), result);
+				}
+			}
+		}
+		return Collections.unmodifiableMap(result);
+	}
+
+	/**
+	 * Nodes of given rm type
+	 *
+	 * @param rmTypeName not null
+	 * @return unmodifiable map of path to node, empty if none
+	 */
+	public Map<String, CObject> byRmType(String rmTypeName) {
+		return lookup(rmTypePaths.get(rmTypeName));
+	}
+
+	/**
+	 * Nodes of given node id
+	 *
+	 * @param nodeId not null
+	 * @return unmodifiable map of path to node, empty if none
+	 */
+	public Map<String, CObject> byNodeId(String nodeId) {
+		return lookup(nodeIdPaths.get(nodeId));
+	}
+
+	/**
+	 * Removes the nodes at and under given path
+	 *
+	 * @param path not null
+	 * @return unmodifiable map of the removed paths to nodes
+	 */
+	public Map<String, CObject> removeSubtree(String path) {
+		List<String> segments = segments(path);
+		Map<String, CObject> removed = new LinkedHashMap<String, CObject>(
+				subtree(path));
+		if (removed.isEmpty()) {
+			return Collections.unmodifiableMap(removed);
+		}
+		for (Map.Entry<String, CObject> e : removed.entrySet()) {
+			nodes.remove(e.getKey());
+			unindex(e.getKey(), e.getValue());
+		}
+		if (segments.isEmpty()) {
+			root = new Node();
+		} else {
+			// detach and prune nodes left without paths
+			List<Node> trail = new ArrayList<Node>();
+			Node node = root;
+			for (String segment : segments) {
+				trail.add(node);
+				node = node.child(segment, false);
+			}
+			for (int i = segments.size() - 1; i >= 0; i--) {
+				node = trail.get(i);
+				node.removeChild(segments.get(i));
+				if (node.path != null || node.children != null) {
+					break;
+				}
+			}
+		}
+		return Collections.unmodifiableMap(removed);
+	}
+
+	/*
+	 * Splits given path into segments on the slashes outside node
+	 * predicates, so "/items[at0001 and name/value='x']" is one segment
+	 */
+	static List<String> segments(String path) {
+		List<String> segments = new ArrayList<String>();
+		int depth = 0;
+		boolean quoted = false;
+		int start = 0;
+		for (int i = 0, n = path.length(); i < n; i++) {
+			char c = path.charAt(i);
+			if (c == '\'' && depth > 0) {
+				quoted = !quoted;
+			} else if (quoted) {
+				continue;
+			} else if (c == '[') {
+				depth++;
+			} else if (c == ']') {
+				depth--;
+			} else if (c == '/' && depth == 0) {
+				if (i > start) {
+					segments.add(path.substring(start, i));
+				}
+				start = i + 1;
+			}
+		}
+		if (start < path.length()) {
+			segments.add(path.substring(start));
+		}
+		return segments;
+	}
+
+	private Node find(List<String> segments) {
+		Node node = root;
+		for (Iterator<String> it = segments.iterator();
+				node != null && it.hasNext();) {
+			node = node.child(it.next(), false);
+		}
+		return node;
+	}
+
+	private void collect(Node node, Map<String, CObject> result) {
+		if (node.path != null) {
+			result.put(node.path, nodes.get(node.path));
+		}
+		if (node.children != null) {
+			for (Node child : node.children.values()) {
+				collect(child, result);
+			}
+		}
+	}
+
+	private Map<String, CObject> lookup(Set<String> paths) {
+		if (paths == null) {
+			return Collections.emptyMap();
+		}
+		Map<String, CObject> result = new LinkedHashMap<String, CObject>();
+		for (String path : paths) {
+			result.put(path, nodes.get(path));
+		}
+		return Collections.unmodifiableMap(result);
+	}
+
+	private void index(String path, CObject cobj) {
+		add(rmTypePaths, cobj.getRmTypeName(), path);
+		add(nodeIdPaths, cobj.getNodeId(), path);
+	}
+
+	private void unindex(String path, CObject cobj) {
+		remove(rmTypePaths, cobj.getRmTypeName(), path);
+		remove(nodeIdPaths, cobj.getNodeId(), path);
+	}
+
+	private static void add(Map<String, Set<String>> map, String key,
+			String path) {
+		if (key == null) {
+			return;
+		}
+		Set<String> paths = map.get(key);
+		if (paths == null) {
+			paths = new LinkedHashSet<String>();
+			map.put(key, paths);
+		}
+		paths.add(path);
+	}
+
+	private static void remove(Map<String, Set<String>> map, String key,
+			String path) {
+		if (key == null) {
+			return;
+		}
+		Set<String> paths = map.get(key);
+		if (paths != null) {
+			paths.remove(path);
+			if (paths.isEmpty()) {
+				map.remove(key);
+			}
+		}
+	}
+
+	/*
+	 * A path segment with the full path if a node is indexed at it
+	 */
+	private static final class Node implements Serializable {
+
+		Node child(String segment, boolean create) {
+			Node child = children == null ? null : children.get(segment);
+			if (child == null && create) {
+				if (children == null) {
+					children = new LinkedHashMap<String, Node>();
+				}
+				child = new Node();
+				children.put(segment, child);
+			}
+			return child;
+		}
+
+		void removeChild(String segment) {
+			children.remove(segment);
+			if (children.isEmpty()) {
+				children = null;
+			}
+		}
+
+		String path;
+		Map<String, Node> children;
+
+		private static final long serialVersionUID = 1L;
+	}
+
+	private static final long serialVersionUID = 1L;
+
+	/* fields */
+	private Node root;
+	private final Map<String, CObject> nodes;
+	private final Map<String, Set<String>> rmTypePaths;
+	private final Map<String, Set<String>> nodeIdPaths;
+}
+/*
+ * ***** BEGIN LICENSE BLOCK ***** Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the 'License'); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PathIndex.java
+ *
+ * ***** END LICENSE BLOCK *****
+ */
@@ -17,11 +17,13 @@ package org.openehr.am.archetype.constraintmodel.primitive;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.apache.commons.lang.builder.ToStringBuilder;
+import org.openehr.rm.support.PatternCache;
 
 /**
  * Constraint on instances of String.
@@ -102,10 +104,23 @@ public final class CString extends CPrimitive {
     public boolean validValue(Object value) {
         String str = value.toString();
         return ( (pattern == null && list == null) 
-        		 || (pattern != null && str.matches(pattern)) 
+        		 || (pattern != null && compiledPattern().matcher(str).matches())
         		 || (list != null && list.contains(str)) );
     }
 
+    /*
+     * Compiled pattern, taken from the shared cache on first use so equal
+     * patterns of different constraints are compiled once
+     */
+    private Pattern compiledPattern() {
+        Pattern compiled = this.compiled;
+        if (compiled == null) {
+            compiled = PatternCache.compile(pattern);
+            this.compiled = compiled;
+        }
+        return compiled;
+    }
+
     /**
      * Regular expression pattern for proposed instances of String to match.
      *
@@ -213,6 +228,7 @@ public final class CString extends CPrimitive {
     private final List<String> list;
     private final String assumedValue;	
     private final String defaultValue;
+    private transient volatile Pattern compiled;
 }
 
 /*
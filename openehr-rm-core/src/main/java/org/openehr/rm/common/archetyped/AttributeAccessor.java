@@ -0,0 +1,184 @@
+/*
+ * component:   "openEHR Reference Implementation"
+ * description: "Class AttributeAccessor"
+ * keywords:    "common"
+ *
+ * license:     "See notice at bottom of class"
+ */
+package org.openehr.rm.common.archetyped;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Getter and setter of one attribute of a RM class, looked up once and
+ * shared through a registry keyed by class and attribute name.
+ * <p>
+ * Attribute names are given the way they appear in paths, either camel case
+ * or underscore separated, e.g. "archetype_details". The getter is the
+ * public no-argument method "get" + name, the setter the first public
+ * method named "set" + name.
+ */
+public final class AttributeAccessor {
+
+	/**
+	 * Returns the accessor of named attribute of given class. A node
+	 * predicate after the name, as in "items[at0001]", is ignored. Names
+	 * unknown to the class are kept as well, so a miss is looked up once.
+	 *
+	 * @param rmClass not null
+	 * @param attributeName not null
+	 * @return accessor, never null
+	 */
+	public static AttributeAccessor forAttribute(Class rmClass,
+			String attributeName) {
+		int i = attributeName.indexOf('[');
+		if (i >= 0) {
+			attributeName = attributeName.substring(0, i);
+		}
+		Map<String, AttributeAccessor> accessors = registry.get(rmClass);
+		if (accessors == null) {
+			accessors = new ConcurrentHashMap<String, AttributeAccessor>();
+			Map<String, AttributeAccessor> existing =
+				registry.putIfAbsent(rmClass, accessors);
+			if (existing != null) {
+				accessors = existing;
+			}
+		}
+		AttributeAccessor accessor = accessors.get(attributeName);
+		if (accessor == null) {
+			accessor = new AttributeAccessor(rmClass, attributeName);
+			accessors.put(attributeName, accessor);
+		}
+		return accessor;
+	}
+
+	private AttributeAccessor(Class rmClass, String attributeName) {
+		String name = toFirstUpperCaseCamelCase(attributeName);
+		Method getter = null;
+		try {
+			getter = rmClass.getMethod("get" + name);
+		} catch (NoSuchMethodException e) {
+			// no getter, values read as null
+		}
+		Method setter = null;
+		String setterName = "set" + name;
+		for (Method method : rmClass.getMethods()) {
+			if (setterName.equals(method.getName())) {
+				setter = method;
+				break;
+			}
+		}
+		this.rmClass = rmClass;
+		this.getter = getter;
+		this.setter = setter;
+		this.setterName = setterName;
+	}
+
+	/**
+	 * Reads the attribute value of given object
+	 *
+	 * @param obj instance of the class of this accessor
+	 * @return null if there is no getter
+	 * @throws RuntimeException thrown by the getter, or wrapping a checked
+	 * 		exception thrown by it
+	 */
+	public Object getValue(Object obj) {
+		if (getter == null) {
+			return null;
+		}
+		try {
+			return getter.invoke(obj);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException("getter " + getter.getName()
+					+ " failed for rmClass=" + rmClass, cause);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("getter " + getter.getName()
+					+ " not accessible for rmClass=" + rmClass, e);
+		}
+	}
+
+	/**
+	 * Sets the attribute value of given object
+	 *
+	 * @param obj instance of the class of this accessor
+	 * @param value
+	 * @throws IllegalArgumentException if there is no setter
+	 * @throws Exception if the setter failed
+	 */
+	public void setValue(Object obj, Object value) throws Exception {
+		if (setter == null) {
+			throw new IllegalArgumentException("unkown setter method: "
+					+ setterName + " for rmClass=" + rmClass);
+		}
+		setter.invoke(obj, value);
+	}
+
+	/**
+	 * True if the class has a getter for the attribute
+	 *
+	 * @return true if readable
+	 */
+	public boolean isReadable() {
+		return getter != null;
+	}
+
+	/*
+	 * Turns "archetype_details" or "archetypeDetails" into "ArchetypeDetails"
+	 */
+	static String toFirstUpperCaseCamelCase(String name) {
+		if (name.indexOf('_') >= 0) {
+			StringTokenizer tokens = new StringTokenizer(name, "_");
+			StringBuffer buf = new StringBuffer();
+			while (tokens.hasMoreTokens()) {
+				String word = tokens.nextToken();
+				if (buf.length() == 0) {
+					buf.append(word);
+				} else {
+					buf.append(word.substring(0, 1).toUpperCase());
+					buf.append(word.substring(1));
+				}
+			}
+			name = buf.toString();
+		}
+		return name.substring(0, 1).toUpperCase() + name.substring(1);
+	}
+
+	/* accessors by attribute name by class */
+	private static final ConcurrentHashMap<Class, Map<String, AttributeAccessor>> registry =
+		new ConcurrentHashMap<Class, Map<String, AttributeAccessor>>();
+
+	/* fields */
+	private final Class rmClass;
+	private final Method getter;
+	private final Method setter;
+	private final String setterName;
+}
+
+/*
+ *  ***** BEGIN LICENSE BLOCK *****
+ *  Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ *  The contents of this file are subject to the Mozilla Public License Version
+ *  1.1 (the 'License'); you may not use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *  http://www.mozilla.org/MPL/
+ *
+ *  Software distributed under the License is distributed on an 'AS IS' basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ *  for the specific language governing rights and limitations under the
+ *  License.
+ *
+ *  The Original Code is AttributeAccessor.java
+ *
+ *  ***** END LICENSE BLOCK *****
+ */
@@ -0,0 +1,461 @@
+/*
+ * component:   "openEHR Reference Implementation"
+ * description: "Class ColumnarExtractor"
+ * keywords:    "common"
+ *
+ * license:     "See notice at bottom of class"
+ */
+package org.openehr.rm.common.archetyped;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openehr.rm.datatypes.quantity.DvQuantified;
+import org.openehr.rm.datatypes.quantity.datetime.DvTemporal;
+import org.openehr.rm.datatypes.text.CodePhrase;
+import org.openehr.rm.datatypes.text.DvCodedText;
+
+/**
+ * Extracts the values at a set of paths from many locatables into
+ * primitive column arrays, one row per locatable.
+ * <p>
+ * Each path is extracted as one of the column types: magnitudes of
+ * quantified values into a <code>double[]</code>, date/times as epoch
+ * milliseconds into a <code>long[]</code>, and code strings of coded texts
+ * dictionary-encoded into an <code>int[]</code>. Rows without a value of
+ * the expected type are marked in a null bitmap per column.
+ * <p>
+ * The locatables are divided into chunks of consecutive rows evaluated in
+ * parallel, each writing its own range of the arrays. Code dictionaries
+ * are built per chunk and merged in row order afterwards, so the codes do
+ * not depend on the number of threads.
+ */
+public final class ColumnarExtractor {
+
+	/**
+	 * Type of a column and the value extracted for it
+	 */
+	public enum ColumnType {
+		/** magnitude of a DV_QUANTIFIED or a number */
+		MAGNITUDE,
+		/** epoch milliseconds of a DV_TEMPORAL */
+		DATE_TIME,
+		/** code string of a DV_CODED_TEXT, CODE_PHRASE or a string */
+		CODE
+	}
+
+	/**
+	 * Creates an extractor of given columns using one thread per available
+	 * processor
+	 *
+	 * @param columns column types keyed by path, not null or empty
+	 * @throws IllegalArgumentException if columns null, empty or with null
+	 *             path or type
+	 */
+	public ColumnarExtractor(Map<String, ColumnType> columns) {
+		this(columns, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates an extractor of given columns
+	 *
+	 * @param columns column types keyed by path, not null or empty
+	 * @param threads number of threads, at least 1
+	 * @throws IllegalArgumentException if columns null, empty or with null
+	 *             path or type, or threads less than 1
+	 */
+	public ColumnarExtractor(Map<String, ColumnType> columns, int threads) {
+		if (columns == null || columns.isEmpty()) {
+			throw new IllegalArgumentException("null or empty columns");
+		}
+		if (threads < 1) {
+			throw new IllegalArgumentException("invalid threads: " + threads);
+		}
+		List<String> paths = new ArrayList<String>(columns.keySet());
+		this.types = new ColumnType[paths.size()];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = columns.get(paths.get(i));
+			if (types[i] == null) {
+				throw new IllegalArgumentException("null type of column: "
+						+ paths.get(i));
+			}
+		}
+		this.trie = new PathTrie(paths);
+		this.threads = threads;
+	}
+
+	/**
+	 * Extracts the columns from given locatables; a null locatable gives a
+	 * row with all values null
+	 *
+	 * @param locatables not null
+	 * @return extracted columns
+	 * @throws IllegalArgumentException if locatables null
+	 * @throws InterruptedException if interrupted while waiting for the
+	 *             worker threads
+	 */
+	public Columns extract(Iterable<? extends Locatable> locatables)
+			throws InterruptedException {
+		if (locatables == null) {
+			throw new IllegalArgumentException("null locatables");
+		}
+		List<Locatable> rows = new ArrayList<Locatable>();
+		for (Locatable locatable : locatables) {
+			rows.add(locatable);
+		}
+		Columns columns = new Columns(trie.getPaths(), types, rows.size());
+
+		int chunkSize = Math.max(MIN_CHUNK_SIZE,
+				(rows.size() + threads * CHUNKS_PER_THREAD - 1)
+						/ (threads * CHUNKS_PER_THREAD));
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		for (int from = 0; from < rows.size(); from += chunkSize) {
+			chunks.add(new Chunk(rows, columns, from,
+					Math.min(from + chunkSize, rows.size())));
+		}
+
+		if (threads == 1 || chunks.size() <= 1) {
+			for (Chunk chunk : chunks) {
+				chunk.call();
+			}
+		} else {
+			ExecutorService executor = Executors.newFixedThreadPool(
+					Math.min(threads, chunks.size()));
+			try {
+				for (Future<Chunk> future : executor.invokeAll(chunks)) {
+					try {
+						future.get();
+					} catch (ExecutionException e) {
+						Throwable cause = e.getCause();
+						if (cause instanceof RuntimeException) {
+							throw (RuntimeException) cause;
+						}
+						if (cause instanceof Error) {
+							throw (Error) cause;
+						}
+						throw new RuntimeException(cause);
+					}
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+
+		Map<String, Integer>[] codeIndexes = new Map[types.length];
+		for (int i = 0; i < types.length; i++) {
+			codeIndexes[i] = new HashMap<String, Integer>();
+		}
+		for (Chunk chunk : chunks) {
+			chunk.merge(codeIndexes);
+		}
+		return columns;
+	}
+
+	/*
+	 * Magnitude of a quantified value, null if none
+	 */
+	static Number magnitude(Object value) {
+		if (value instanceof DvQuantified) {
+			return ((DvQuantified) value).getMagnitude();
+		}
+		if (value instanceof Number) {
+			return (Number) value;
+		}
+		return null;
+	}
+
+	/*
+	 * Code string of a coded value, null if none
+	 */
+	static String codeString(Object value) {
+		if (value instanceof DvCodedText) {
+			value = ((DvCodedText) value).getDefiningCode();
+		}
+		if (value instanceof CodePhrase) {
+			return ((CodePhrase) value).getCodeString();
+		}
+		if (value instanceof String) {
+			return (String) value;
+		}
+		return null;
+	}
+
+	/**
+	 * Extracted column arrays, indexed by row
+	 */
+	public static final class Columns {
+
+		Columns(List<String> paths, ColumnType[] types, int rowCount) {
+			this.paths = paths;
+			this.types = types;
+			this.rowCount = rowCount;
+			this.values = new Object[types.length];
+			this.nulls = new BitSet[types.length];
+			this.dictionaries = new List[types.length];
+			for (int i = 0; i < types.length; i++) {
+				nulls[i] = new BitSet(rowCount);
+				switch (types[i]) {
+				case MAGNITUDE:
+					values[i] = new double[rowCount];
+					break;
+				case DATE_TIME:
+					values[i] = new long[rowCount];
+					break;
+				case CODE:
+					values[i] = new int[rowCount];
+					dictionaries[i] = new ArrayList<String>();
+					break;
+				}
+			}
+		}
+
+		/**
+		 * Number of rows, one per locatable
+		 *
+		 * @return row count
+		 */
+		public int getRowCount() {
+			return rowCount;
+		}
+
+		/**
+		 * Magnitudes of a MAGNITUDE column, 0 in null rows
+		 *
+		 * @param path
+		 * @return magnitudes by row
+		 * @throws IllegalArgumentException if no such column
+		 */
+		public double[] getMagnitudes(String path) {
+			return (double[]) values[column(path, ColumnType.MAGNITUDE)];
+		}
+
+		/**
+		 * Epoch milliseconds of a DATE_TIME column, 0 in null rows
+		 *
+		 * @param path
+		 * @return milliseconds by row
+		 * @throws IllegalArgumentException if no such column
+		 */
+		public long[] getMillis(String path) {
+			return (long[]) values[column(path, ColumnType.DATE_TIME)];
+		}
+
+		/**
+		 * Dictionary indexes of a CODE column, -1 in null rows
+		 *
+		 * @param path
+		 * @return codes by row
+		 * @throws IllegalArgumentException if no such column
+		 * @see #getDictionary(String)
+		 */
+		public int[] getCodes(String path) {
+			return (int[]) values[column(path, ColumnType.CODE)];
+		}
+
+		/**
+		 * Code strings of a CODE column in order of first occurrence
+		 *
+		 * @param path
+		 * @return unmodifiable list of code strings
+		 * @throws IllegalArgumentException if no such column
+		 */
+		public List<String> getDictionary(String path) {
+			return Collections.unmodifiableList(
+					dictionaries[column(path, ColumnType.CODE)]);
+		}
+
+		/**
+		 * Rows without a value in given column
+		 *
+		 * @param path
+		 * @return bitmap with bits of null rows set
+		 * @throws IllegalArgumentException if no such column
+		 */
+		public BitSet getNulls(String path) {
+			return (BitSet) nulls[column(path, null)].clone();
+		}
+
+		/**
+		 * True if given row has no value in given column
+		 *
+		 * @param path
+		 * @param row
+		 * @return true if null
+		 * @throws IllegalArgumentException if no such column
+		 */
+		public boolean isNull(String path, int row) {
+			return nulls[column(path, null)].get(row);
+		}
+
+		private int column(String path, ColumnType type) {
+			int index = paths.indexOf(path);
+			if (index < 0 || (type != null && types[index] != type)) {
+				throw new IllegalArgumentException("no " + type
+						+ " column of path: " + path);
+			}
+			return index;
+		}
+
+		/* fields */
+		private final List<String> paths;
+		private final ColumnType[] types;
+		private final int rowCount;
+		private final Object[] values;
+		private final BitSet[] nulls;
+		private final List<String>[] dictionaries;
+	}
+
+	/*
+	 * Consecutive rows evaluated by one worker, with null bitmaps and code
+	 * dictionaries of its own until merged
+	 */
+	private final class Chunk implements Callable<Chunk> {
+
+		Chunk(List<Locatable> rows, Columns columns, int from, int to) {
+			this.rows = rows;
+			this.columns = columns;
+			this.from = from;
+			this.to = to;
+			this.nulls = new BitSet[types.length];
+			this.dictionaries = new Map[types.length];
+		}
+
+		public Chunk call() {
+			Object[] found = new Object[types.length];
+			for (int i = 0; i < types.length; i++) {
+				nulls[i] = new BitSet(to - from);
+				if (types[i] == ColumnType.CODE) {
+					dictionaries[i] = new LinkedHashMap<String, Integer>();
+				}
+			}
+			for (int row = from; row < to; row++) {
+				Locatable locatable = rows.get(row);
+				if (locatable == null) {
+					Arrays.fill(found, null);
+				} else {
+					trie.evaluate(locatable, found);
+				}
+				for (int i = 0; i < types.length; i++) {
+					if (!store(i, row, found[i])) {
+						nulls[i].set(row - from);
+					}
+				}
+			}
+			return this;
+		}
+
+		/*
+		 * Stores the value of a column, false if it has none
+		 */
+		private boolean store(int column, int row, Object value) {
+			switch (types[column]) {
+			case MAGNITUDE:
+				Number magnitude = magnitude(value);
+				if (magnitude == null) {
+					return false;
+				}
+				((double[]) columns.values[column])[row] =
+					magnitude.doubleValue();
+				return true;
+
+			case DATE_TIME:
+				if (!(value instanceof DvTemporal)
+						|| ((DvTemporal) value).getDateTime() == null) {
+					return false;
+				}
+				((long[]) columns.values[column])[row] =
+					((DvTemporal) value).getDateTime().getMillis();
+				return true;
+
+			default:
+				int[] codes = (int[]) columns.values[column];
+				String code = codeString(value);
+				if (code == null) {
+					codes[row] = -1;
+					return false;
+				}
+				Map<String, Integer> dictionary = dictionaries[column];
+				Integer index = dictionary.get(code);
+				if (index == null) {
+					index = dictionary.size();
+					dictionary.put(code, index);
+				}
+				codes[row] = index;
+				return true;
+			}
+		}
+
+		/*
+		 * Copies the null bitmaps into the columns and maps the local code
+		 * indexes to the column dictionaries; chunks are merged in row order
+		 */
+		void merge(Map<String, Integer>[] codeIndexes) {
+			for (int i = 0; i < types.length; i++) {
+				BitSet columnNulls = columns.nulls[i];
+				for (int bit = nulls[i].nextSetBit(0); bit >= 0;
+						bit = nulls[i].nextSetBit(bit + 1)) {
+					columnNulls.set(from + bit);
+				}
+				if (types[i] != ColumnType.CODE) {
+					continue;
+				}
+				List<String> columnDictionary = columns.dictionaries[i];
+				int[] mapping = new int[dictionaries[i].size()];
+				int local = 0;
+				for (String code : dictionaries[i].keySet()) {
+					Integer index = codeIndexes[i].get(code);
+					if (index == null) {
+						index = columnDictionary.size();
+						columnDictionary.add(code);
+						codeIndexes[i].put(code, index);
+					}
+					mapping[local++] = index;
+				}
+				int[] codes = (int[]) columns.values[i];
+				for (int row = from; row < to; row++) {
+					if (codes[row] >= 0) {
+						codes[row] = mapping[codes[row]];
+					}
+				}
+			}
+		}
+
+		/* fields */
+		private final List<Locatable> rows;
+		private final Columns columns;
+		private final int from;
+		private final int to;
+		private final BitSet[] nulls;
+		private final Map<String, Integer>[] dictionaries;
+	}
+
+	/* minimum number of rows evaluated by one worker */
+	private static final int MIN_CHUNK_SIZE = 256;
+
+	/* chunks per thread, so that uneven chunks are balanced */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	/* fields */
+	private final PathTrie trie;
+	private final ColumnType[] types;
+	private final int threads;
+}
+
+/*
+ *  ***** BEGIN LICENSE BLOCK *****
+ *  Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ *  The contents of this file are subject to the Mozilla Public License Version
+ *  1.1 (the 'License'); you may not use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *  http://www.mozilla.org/MPL/
+ *
+ *  Software distributed under the License is distributed on an 'AS IS' basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ *  for the specific language governing rights and limitations under the
+ *  License.
+ *
+ *  The Original Code is ColumnarExtractor.java
+ *
+ *  ***** END LICENSE BLOCK *****
+ */
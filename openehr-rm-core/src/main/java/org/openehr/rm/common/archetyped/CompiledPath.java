@@ -0,0 +1,295 @@
+/*
+ * component:   "openEHR Reference Implementation"
+ * description: "Class CompiledPath"
+ * keywords:    "common"
+ *
+ * license:     "See notice at bottom of class"
+ */
+package org.openehr.rm.common.archetyped;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A path divided into segments with attribute names and predicates parsed
+ * once, so that it can be evaluated against any number of locatables
+ * without re-tokenising the path string.
+ * <p>
+ * Compiled paths are immutable. The ones created through
+ * {@link #compile(String)} are kept in a bounded cache keyed by the path
+ * string, which is read without locking and emptied when full.
+ *
+ * @see Locatable#itemAtPath(CompiledPath)
+ */
+public final class CompiledPath {
+
+	/**
+	 * Returns the compiled form of given path, from the cache if the same
+	 * path has been compiled before
+	 *
+	 * @param path not null
+	 * @return compiled path
+	 * @throws IllegalArgumentException if path null
+	 */
+	public static CompiledPath compile(String path) {
+		if (path == null) {
+			throw new IllegalArgumentException("invalid path: " + path);
+		}
+		CompiledPath compiled = cache.get(path);
+		if (compiled == null) {
+			compiled = new CompiledPath(path);
+			if (cache.size() >= CACHE_SIZE) {
+				// coarse eviction, the paths in use are soon compiled again
+				cache.clear();
+			}
+			cache.put(path, compiled);
+		}
+		return compiled;
+	}
+
+	/*
+	 * Number of paths cached
+	 */
+	static int cacheSize() {
+		return cache.size();
+	}
+
+	private CompiledPath(String path) {
+		this.path = path;
+		List<String> list = Locatable.dividePathIntoSegments(path);
+		this.segments = new Segment[list.size()];
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = new Segment(list.get(i));
+		}
+	}
+
+	/**
+	 * The path string this path is compiled from
+	 *
+	 * @return path
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Number of segments, zero for the root path
+	 *
+	 * @return size
+	 */
+	public int size() {
+		return segments.length;
+	}
+
+	/**
+	 * Segment at given position
+	 *
+	 * @param index
+	 * @return segment
+	 */
+	public Segment getSegment(int index) {
+		return segments[index];
+	}
+
+	public String toString() {
+		return path;
+	}
+
+	/**
+	 * One step of a path: an attribute name with an optional predicate,
+	 * e.g. <code>items[at0002, 'name']</code>. Only shortcut predicates on
+	 * archetype node id and name are supported.
+	 */
+	public static final class Segment {
+
+		Segment(String segment) {
+			this(segment, segment.indexOf("["));
+		}
+
+		private Segment(String segment, int index) {
+			// has [....] predicate expression
+			this(segment, index > 0 ? segment.substring(0, index) : segment,
+					index > 0 ? segment.substring(index + 1,
+							segment.indexOf("]")) : null);
+		}
+
+		Segment(String segment, String attributeName, String expression) {
+			this.segment = segment;
+			this.attributeName = attributeName;
+			this.expression = expression;
+
+			String[] predicate = parsePredicate(expression);
+			archetypeNodeId = predicate[0];
+			name = predicate[1];
+		}
+
+		/*
+		 * Parses a predicate expression into archetype node id and name,
+		 * either of which can be null
+		 */
+		static String[] parsePredicate(String expression) {
+			String name = null;
+			String archetypeNodeId = null;
+
+			if (expression == null) {
+				return new String[] { null, null };
+			}
+			expression = expression.trim();
+			int index;
+
+			// shortcut syntax, [at0001, 'standing']
+			if (expression.contains(",")
+					// avoid [at0001 and/value='status, 2nd']
+					&& expression.indexOf(",") < expression.indexOf("'")) {
+				index = expression.indexOf(",");
+				archetypeNodeId = expression.substring(0, index).trim();
+				name = expression.substring(expression.indexOf("'") + 1,
+						expression.lastIndexOf("'"));
+
+			// [at0006 and name/value='any event']
+			// [at0006 AND name/value='any event']
+			} else if (expression.contains(" AND ")
+					|| expression.contains(" and ")) {
+
+				// name containing 'AND' or 'and', i.e. 'MEDICINSK BEHANDLING'
+				if (expression.contains(" AND ")) {
+					index = expression.indexOf(" AND ");
+				} else {
+					index = expression.indexOf(" and ");
+				}
+				archetypeNodeId = expression.substring(0, index).trim();
+				name = expression.substring(expression.indexOf("'") + 1,
+						expression.lastIndexOf("'"));
+
+			// just name, ['standing']
+			} else if (expression.startsWith("'") && expression.endsWith("'")) {
+				name = expression.substring(1, expression.length() - 1);
+
+			// archetyped root node id or at-coded node
+			// [at0006] or [openEHR-EHR-OBSERVATION.laboratory-lipids.v1]
+			} else {
+				archetypeNodeId = expression;
+			}
+			return new String[] { archetypeNodeId, name };
+		}
+
+		/**
+		 * Attribute name as it appears in the path, e.g. "archetype_details"
+		 *
+		 * @return attribute name
+		 */
+		public String getAttributeName() {
+			return attributeName;
+		}
+
+		/**
+		 * True if the segment has a predicate
+		 *
+		 * @return true if predicate present
+		 */
+		public boolean hasPredicate() {
+			return expression != null;
+		}
+
+		/**
+		 * Archetype node id required by the predicate
+		 *
+		 * @return null if not constrained
+		 */
+		public String getArchetypeNodeId() {
+			return archetypeNodeId;
+		}
+
+		/**
+		 * Name value required by the predicate
+		 *
+		 * @return null if not constrained
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * True if given item meets the predicate; items that are not
+		 * locatable always match
+		 *
+		 * @param item
+		 * @return true if matches
+		 */
+		public boolean matches(Object item) {
+			if (item instanceof Locatable) {
+				Locatable locatable = (Locatable) item;
+				if (archetypeNodeId != null
+						&& !locatable.getArchetypeNodeId().equals(archetypeNodeId)) {
+					return false;
+				}
+				if (name != null && !locatable.getName().getValue().equals(name)) {
+					return false;
+				}
+			}
+			// TODO other non-locatable predicates!!
+			// e.g. time > 10:20:15
+			return true;
+		}
+
+		/**
+		 * Selects the first item of given value meeting the predicate; a
+		 * value that is not a container is treated as a single item
+		 *
+		 * @param value not null
+		 * @return null if there is no match
+		 */
+		public Object select(Object value) {
+			if (value instanceof Iterable) {
+				for (Object item : (Iterable) value) {
+					if (matches(item)) {
+						return item;
+					}
+				}
+				return null;
+			}
+			return matches(value) ? value : null;
+		}
+
+		public String toString() {
+			return segment;
+		}
+
+		/* fields */
+		private final String segment;
+		private final String attributeName;
+		private final String expression;
+		private final String archetypeNodeId;
+		private final String name;
+	}
+
+	/* maximum number of paths kept in the cache */
+	private static final int CACHE_SIZE = 1000;
+
+	/* compiled paths by path string */
+	private static final ConcurrentHashMap<String, CompiledPath> cache =
+		new ConcurrentHashMap<String, CompiledPath>();
+
+	/* fields */
+	private final String path;
+	private final Segment[] segments;
+}
+
+/*
+ *  ***** BEGIN LICENSE BLOCK *****
+ *  Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ *  The contents of this file are subject to the Mozilla Public License Version
+ *  1.1 (the 'License'); you may not use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *  http://www.mozilla.org/MPL/
+ *
+ *  Software distributed under the License is distributed on an 'AS IS' basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ *  for the specific language governing rights and limitations under the
+ *  License.
+ *
+ *  The Original Code is CompiledPath.java
+ *
+ *  ***** END LICENSE BLOCK *****
+ */
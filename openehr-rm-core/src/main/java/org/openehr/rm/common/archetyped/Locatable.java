@@ -20,7 +20,6 @@ import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.openehr.rm.support.identification.UIDBasedID;
 import org.openehr.rm.datatypes.text.DvText;
 
-import java.lang.reflect.Method;
 import java.util.*;
 
 /**
@@ -185,10 +184,10 @@ public abstract class Locatable extends Pathable implements Settable, Cloneable
     	StringTokenizer tokens = new StringTokenizer(path, "/");
     	while(tokens.hasMoreTokens()) {
     		String next = tokens.nextToken();
-    		if (next.matches(".+\\[.+[^\\]]$")) {
+    		if (hasUnclosedPredicate(next)) {
     			do {
     				next = next + "/" + tokens.nextToken();
-    			} while (!next.matches(".*]$"));
+    			} while (!next.endsWith("]"));
     		}
     		segments.add(next);
     	}
@@ -196,57 +195,16 @@ public abstract class Locatable extends Pathable implements Settable, Cloneable
     }
 
     /*
-     * generic path evaluation covers all rmClass
+     * True if the token opens a predicate it does not close, same as
+     * token.matches(".+\\[.+[^\\]]$") without compiling the regex
      */
-    private Object genericPathEvaluator(String path, Object object) {
-    	if(path == null || object == null) {
-    		return null;
+    private static boolean hasUnclosedPredicate(String token) {
+    	int length = token.length();
+    	if (length < 3 || token.charAt(length - 1) == ']') {
+    		return false;
     	}
-    	List<String> segments = dividePathIntoSegments(path);
-    	return evaluatePathSegment(segments, object);
-    }
-
-    /*
-     * Evaluate recursively the path segments 
-     */
-    private Object evaluatePathSegment(List<String> pathSegments,
-    		Object object) {
-    	if(pathSegments.isEmpty()) {
-    		return object;
-    	}
-    	String pathSegment = pathSegments.remove(0);
-    	Object value =  null;
-
-    	int index = pathSegment.indexOf("[");
-    	String expression = null;
-    	String attributeName = null;
-
-    	// has [....] predicate expression
-    	if(index > 0) {
-
-    		assert(pathSegment.indexOf("]") > index);
-
-    		attributeName = pathSegment.substring(0, index);
-    		expression = pathSegment.substring(index + 1,
-    				pathSegment.indexOf("]"));
-    	} else {
-    		attributeName = pathSegment;
-    	}
-
-    	value = getAttributeValue(object, attributeName);
-    	if(expression != null && value != null ) {
-    		value = processPredicate(expression, value);
-    	}
-        if(expression == null && value instanceof ArrayList && !pathSegments.isEmpty()) {
-            ArrayList arrayList = ((ArrayList)value);
-            if (!arrayList.isEmpty()){
-                value = arrayList.get(0);
-            }
-        }
-    	if(value != null) {
-    		return evaluatePathSegment(pathSegments, value);
-    	}
-    	return null;
+    	int index = token.indexOf('[', 1);
+    	return index > 0 && index <= length - 3;
     }
 
     public String toCamelCase(String underscoreSeparated) {
@@ -286,70 +244,8 @@ public abstract class Locatable extends Pathable implements Settable, Cloneable
      * @return null if there is no match
      */
     Object processPredicate(String expression, Object object) {
-    	String name = null;
-    	String archetypeNodeId = null;
-    	expression = expression.trim();
-    	int index;
-
-    	// shortcut syntax, [at0001, 'standing']
-    	if(expression.contains(",")
-    			// avoid [at0001 and/value='status, 2nd']
-    			&& expression.indexOf(",") < expression.indexOf("'")) {
-    		index = expression.indexOf(",");
-    		archetypeNodeId = expression.substring(0, index).trim();
-    		name = expression.substring(expression.indexOf("'") + 1,
-    				expression.lastIndexOf("'"));
-
-    	// [at0006 and name/value='any event']
-    	// [at0006 AND name/value='any event']
-    	} else if(expression.contains(" AND ")
-    			|| expression.contains(" and ")) {
-
-    		// OG - 20100401: Fixed bug where the name contained 'AND' or 'and',
-    		// i.e. 'MEDICINSK BEHANDLING'.
-    		if(expression.contains(" AND ")) {
-    			index = expression.indexOf(" AND ");
-    		} else {
-    			index = expression.indexOf(" and ");
-    		}
-    		archetypeNodeId = expression.substring(0, index).trim();
-    		name = expression.substring(expression.indexOf("'") + 1,
-    				expression.lastIndexOf("'"));
-    	// just name, ['standing']
-    	} else if (expression.startsWith("'") && expression.endsWith("'")) {
-    		name = expression.substring(1, expression.length() - 1);
-
-    	// archetyped root node id or at-coded node
-    	// [at0006] or [openEHR-EHR-OBSERVATION.laboratory-lipids.v1]
-    	} else {
-    		archetypeNodeId = expression;
-    	}
-
-    	Iterable collection = null;
-    	if(object instanceof Iterable) {
-    		collection = (Iterable) object;
-    	} else {
-    		List list = new ArrayList();
-    		list.add(object);
-    		collection = list;
-    	}
-
-    	for(Object item : collection) {
-    		if(item instanceof Locatable) {
-    			Locatable locatable = (Locatable) item;
-        		if(archetypeNodeId != null
-        				&& !locatable.archetypeNodeId.equals(archetypeNodeId)) {
-        			continue;
-        		}
-        		if(name != null && !locatable.name.getValue().equals(name)) {
-        			continue;
-        		}
-    		}
-    		// TODO other non-locatable predicates!!
-    		// e.g. time > 10:20:15
-    		return item; // found a match!
-    	}
-    	return null;
+    	return new CompiledPath.Segment(expression, null, expression)
+    			.select(object);
     }
 
     /**
@@ -366,42 +262,148 @@ public abstract class Locatable extends Pathable implements Settable, Cloneable
         if (Locatable.ROOT.equals(path) || path.equals(whole())) {
             return this;
         }
-        return genericPathEvaluator(path, this);
+        return itemAtPath(CompiledPath.compile(path));
+    }
+
+    /**
+     * The item at a compiled path that is relative to this item.
+     *
+     * @param path
+     * @return the item
+     * @throws IllegalArgumentException if path null
+     */
+    public Object itemAtPath(CompiledPath path) {
+    	if (path == null) {
+            throw new IllegalArgumentException("invalid path: " + path);
+        }
+    	Object value = this;
+    	int last = path.size() - 1;
+    	for(int i = 0; i <= last; i++) {
+    		CompiledPath.Segment segment = path.getSegment(i);
+    		value = getAttributeValue(value, segment.getAttributeName());
+    		if(value == null) {
+    			return null;
+    		}
+    		if(segment.hasPredicate()) {
+    			value = segment.select(value);
+    			if(value == null) {
+    				return null;
+    			}
+    		} else if(value instanceof ArrayList && i < last) {
+    			ArrayList arrayList = (ArrayList) value;
+    			if (!arrayList.isEmpty()) {
+    				value = arrayList.get(0);
+    			}
+    		}
+    	}
+    	return value;
+    }
+
+    /**
+     * The items at a number of paths relative to this item, extracted in
+     * a single traversal with segments shared by several paths visited once.
+     *
+     * @param paths
+     * @return items keyed by path, null for paths without an item
+     * @throws IllegalArgumentException if paths or any path null
+     * @see PathTrie
+     */
+    public Map<String, Object> itemsAtPaths(Collection<String> paths) {
+    	return new PathTrie(paths).evaluate(this);
+    }
+
+    /**
+     * Lazily iterates all items at a path relative to this item. Every
+     * element of a container meeting the predicate of its path segment is
+     * visited, and items are only looked up as the iterator advances.
+     *
+     * @param path
+     * @return iterator of the items
+     * @throws IllegalArgumentException if path null
+     */
+    public Iterator<Object> iterateItemsAtPath(String path) {
+    	if (path == null) {
+            throw new IllegalArgumentException("invalid path: " + path);
+        }
+        if (path.equals(whole())) {
+        	path = Locatable.ROOT;
+        }
+        return iterateItemsAtPath(CompiledPath.compile(path));
+    }
+
+    /**
+     * Lazily iterates all items at a compiled path relative to this item.
+     *
+     * @param path
+     * @return iterator of the items
+     * @throws IllegalArgumentException if path null
+     */
+    public Iterator<Object> iterateItemsAtPath(CompiledPath path) {
+    	if (path == null) {
+            throw new IllegalArgumentException("invalid path: " + path);
+        }
+    	return new PathIterator(this, path);
+    }
+
+    /**
+     * List of all items at a path relative to this item.
+     *
+     * @param path
+     * @return the items, empty if none
+     * @throws IllegalArgumentException if path null
+     */
+    public List<Object> itemsAtPath(String path) {
+    	List<Object> items = new ArrayList<Object>();
+    	for(Iterator<Object> it = iterateItemsAtPath(path); it.hasNext();) {
+    		items.add(it.next());
+    	}
+    	return items;
+    }
+
+    /**
+     * True if the path has at least one item relative to this item;
+     * evaluation stops at the first item found.
+     *
+     * @param path
+     * @return true if exists
+     * @throws IllegalArgumentException if path null
+     */
+    public boolean pathExists(String path) {
+    	return iterateItemsAtPath(path).hasNext();
+    }
+
+    /**
+     * True if the path has exactly one item relative to this item;
+     * evaluation stops at the second item found.
+     *
+     * @param path
+     * @return true if unique
+     * @throws IllegalArgumentException if path null
+     */
+    public boolean pathUnique(String path) {
+    	Iterator<Object> it = iterateItemsAtPath(path);
+    	if(!it.hasNext()) {
+    		return false;
+    	}
+    	it.next();
+    	return !it.hasNext();
     }
 
     /*
      * Retrieves the value of named attribute of given object
      */
     private Object getAttributeValue(Object obj, String attribute) {
-    	Class rmClass = obj.getClass();
-    	Object value = null;
-    	Method getter = null;
-    	String getterName = "get" + toFirstUpperCaseCamelCase(attribute);
-
-    	try {
-			getter = rmClass.getMethod(getterName, null);
-			value = getter.invoke(obj, null);
-
-    	} catch(Exception e) {
-			// TODO log as kernel warning
-			// e.printStackTrace();
-		}
-		return value;
+    	return AttributeAccessor.forAttribute(obj.getClass(), attribute)
+    			.getValue(obj);
     }
 
     /*
      * Sets the value of named attribute of given object
      */
     private void setAttributeValue(Object obj, String attribute, Object value) {
-    	Class rmClass = obj.getClass();
-    	String setterName = "set" + toFirstUpperCaseCamelCase(attribute);
-
     	try {
-			Method setter = getMethodByName(rmClass, setterName);
-			if(setter == null) {
-				throw new IllegalArgumentException("unkown setter method: " + setterName + " for rmClass=" + rmClass);
-			}
-			setter.invoke(obj, value);
+    		AttributeAccessor.forAttribute(obj.getClass(), attribute)
+    				.setValue(obj, value);
 
     	} catch(Exception e) {
     		// TODO log as kernel warning
@@ -409,17 +411,6 @@ public abstract class Locatable extends Pathable implements Settable, Cloneable
 		}
     }
 
-    private Method getMethodByName(Class klass, String method) {
-    	Method[] methods = klass.getMethods();
-    	for(Method m : methods) {
-    		if(method.equals(m.getName())) {
-    			return m;
-    		}
-    	}
-    	return null;
-    }
-
-
     public void set(String path, Object value) {
     	int i = path.lastIndexOf("/");
     	if(i < 0 || i == path.length()) {
@@ -0,0 +1,156 @@
+/*
+ * component:   "openEHR Reference Implementation"
+ * description: "Class PathIterator"
+ * keywords:    "common"
+ *
+ * license:     "See notice at bottom of class"
+ */
+package org.openehr.rm.common.archetyped;
+
+import java.util.*;
+
+/**
+ * Lazy depth-first iterator over all items matching a compiled path.
+ * <p>
+ * Unlike {@link Locatable#itemAtPath(CompiledPath)}, which follows the
+ * first match of every container, every element of a container attribute
+ * that meets the predicate of its segment is visited, including the
+ * elements of a container at the last segment. Items are only looked up
+ * when the iterator is advanced, and only one element iterator per path
+ * segment is held at any time.
+ * <p>
+ * The structure must not be modified while it is iterated.
+ */
+final class PathIterator implements Iterator<Object> {
+
+	PathIterator(Object root, CompiledPath path) {
+		this.path = path;
+		this.levels = new Iterator[path.size()];
+		if (levels.length == 0) {
+			next = root;
+			ready = true;
+			depth = -1;
+		} else {
+			levels[0] = candidates(root, path.getSegment(0));
+		}
+	}
+
+	public boolean hasNext() {
+		if (!ready) {
+			ready = advance();
+		}
+		return ready;
+	}
+
+	public Object next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Object item = next;
+		next = null;
+		ready = false;
+		return item;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("remove");
+	}
+
+	/*
+	 * Moves to the next item at the last segment, backtracking when the
+	 * items of a segment are exhausted
+	 */
+	private boolean advance() {
+		int last = levels.length - 1;
+		while (depth >= 0) {
+			if (!levels[depth].hasNext()) {
+				levels[depth] = null;
+				depth--;
+				continue;
+			}
+			Object item = levels[depth].next();
+			if (depth == last) {
+				next = item;
+				return true;
+			}
+			depth++;
+			levels[depth] = candidates(item, path.getSegment(depth));
+		}
+		return false;
+	}
+
+	/*
+	 * Items of the attribute of given segment meeting its predicate
+	 */
+	private static Iterator<Object> candidates(Object parent,
+			final CompiledPath.Segment segment) {
+
+		Object value = AttributeAccessor.forAttribute(parent.getClass(),
+				segment.getAttributeName()).getValue(parent);
+		if (value == null) {
+			return EMPTY;
+		}
+		if (!(value instanceof Iterable)) {
+			return segment.matches(value)
+					? Collections.singleton(value).iterator() : EMPTY;
+		}
+		final Iterator items = ((Iterable) value).iterator();
+		return new Iterator<Object>() {
+
+			public boolean hasNext() {
+				while (match == null && items.hasNext()) {
+					Object item = items.next();
+					if (item != null && segment.matches(item)) {
+						match = item;
+					}
+				}
+				return match != null;
+			}
+
+			public Object next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Object item = match;
+				match = null;
+				return item;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException("remove");
+			}
+
+			private Object match;
+		};
+	}
+
+	/* iterator without items */
+	private static final Iterator<Object> EMPTY =
+		Collections.<Object>emptyList().iterator();
+
+	/* fields */
+	private final CompiledPath path;
+	private final Iterator<Object>[] levels;
+	private int depth;
+	private Object next;
+	private boolean ready;
+}
+
+/*
+ *  ***** BEGIN LICENSE BLOCK *****
+ *  Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ *  The contents of this file are subject to the Mozilla Public License Version
+ *  1.1 (the 'License'); you may not use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *  http://www.mozilla.org/MPL/
+ *
+ *  Software distributed under the License is distributed on an 'AS IS' basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ *  for the specific language governing rights and limitations under the
+ *  License.
+ *
+ *  The Original Code is PathIterator.java
+ *
+ *  ***** END LICENSE BLOCK *****
+ */
@@ -0,0 +1,198 @@
+/*
+ * component:   "openEHR Reference Implementation"
+ * description: "Class PathTrie"
+ * keywords:    "common"
+ *
+ * license:     "See notice at bottom of class"
+ */
+package org.openehr.rm.common.archetyped;
+
+import java.util.*;
+
+/**
+ * A set of paths merged into a prefix trie of path segments, so that the
+ * values of all paths can be extracted from a locatable in a single
+ * depth-first traversal. Each intermediate node shared by several paths is
+ * only visited once.
+ * <p>
+ * The value found for every path is the same as the one returned by
+ * {@link Locatable#itemAtPath(String)}. A trie is immutable and can be
+ * reused for any number of locatables.
+ *
+ * @see Locatable#itemsAtPaths(Collection)
+ */
+public final class PathTrie {
+
+	/**
+	 * Creates a trie of given paths
+	 *
+	 * @param paths not null
+	 * @throws IllegalArgumentException if paths or any path null
+	 */
+	public PathTrie(Collection<String> paths) {
+		if (paths == null) {
+			throw new IllegalArgumentException("null paths");
+		}
+		this.paths = new ArrayList<String>(paths);
+		this.root = new Node(null);
+		for (int p = 0; p < this.paths.size(); p++) {
+			CompiledPath compiled = CompiledPath.compile(this.paths.get(p));
+			Node node = root;
+			for (int i = 0; i < compiled.size(); i++) {
+				node = node.child(compiled.getSegment(i));
+			}
+			node.addPath(p);
+		}
+	}
+
+	/**
+	 * The paths of this trie, in the order given
+	 *
+	 * @return unmodifiable list of paths
+	 */
+	public List<String> getPaths() {
+		return Collections.unmodifiableList(paths);
+	}
+
+	/**
+	 * Extracts the values of all paths of this trie from given locatable
+	 *
+	 * @param locatable not null
+	 * @return values keyed by path in the order of the paths, null for paths
+	 *         without a value
+	 * @throws IllegalArgumentException if locatable null
+	 */
+	public Map<String, Object> evaluate(Locatable locatable) {
+		Object[] found = new Object[paths.size()];
+		evaluate(locatable, found);
+
+		Map<String, Object> values = new LinkedHashMap<String, Object>();
+		for (int p = 0; p < found.length; p++) {
+			values.put(paths.get(p), found[p]);
+		}
+		return values;
+	}
+
+	/**
+	 * Extracts the values of all paths of this trie from given locatable
+	 * into an array indexed like the paths, so that the same array can be
+	 * reused for many locatables
+	 *
+	 * @param locatable not null
+	 * @param values array at least as long as the paths, entries of paths
+	 *        without a value are set to null
+	 * @throws IllegalArgumentException if locatable null or array too short
+	 */
+	public void evaluate(Locatable locatable, Object[] values) {
+		if (locatable == null) {
+			throw new IllegalArgumentException("null locatable");
+		}
+		if (values == null || values.length < paths.size()) {
+			throw new IllegalArgumentException("values array too short");
+		}
+		Arrays.fill(values, 0, paths.size(), null);
+		root.putValue(locatable, values);
+		evaluate(root, locatable, values);
+
+		String whole = locatable.whole();
+		for (int p = 0; p < paths.size(); p++) {
+			String path = paths.get(p);
+			if (Locatable.ROOT.equals(path) || path.equals(whole)) {
+				values[p] = locatable;
+			}
+		}
+	}
+
+	/*
+	 * Visits the children of given node with the value of the node
+	 */
+	private void evaluate(Node node, Object parent, Object[] found) {
+		for (Node child : node.children.values()) {
+			CompiledPath.Segment segment = child.segment;
+			Object value = AttributeAccessor.forAttribute(parent.getClass(),
+					segment.getAttributeName()).getValue(parent);
+			if (value != null && segment.hasPredicate()) {
+				value = segment.select(value);
+			}
+			if (value == null) {
+				continue;
+			}
+			child.putValue(value, found);
+			if (child.children.isEmpty()) {
+				continue;
+			}
+			Object next = value;
+			if (!segment.hasPredicate() && value instanceof ArrayList) {
+				ArrayList arrayList = (ArrayList) value;
+				if (!arrayList.isEmpty()) {
+					next = arrayList.get(0);
+				}
+			}
+			evaluate(child, next, found);
+		}
+	}
+
+	/*
+	 * A segment with the child segments following it and the paths
+	 * ending with it
+	 */
+	private static final class Node {
+
+		Node(CompiledPath.Segment segment) {
+			this.segment = segment;
+		}
+
+		Node child(CompiledPath.Segment segment) {
+			String key = segment.toString();
+			Node child = children.get(key);
+			if (child == null) {
+				child = new Node(segment);
+				children.put(key, child);
+			}
+			return child;
+		}
+
+		void addPath(int index) {
+			if (paths == null) {
+				paths = new ArrayList<Integer>(1);
+			}
+			paths.add(index);
+		}
+
+		void putValue(Object value, Object[] found) {
+			if (paths != null) {
+				for (int index : paths) {
+					found[index] = value;
+				}
+			}
+		}
+
+		/* fields */
+		final CompiledPath.Segment segment;
+		final Map<String, Node> children = new LinkedHashMap<String, Node>();
+		List<Integer> paths;
+	}
+
+	/* fields */
+	private final List<String> paths;
+	private final Node root;
+}
+
+/*
+ *  ***** BEGIN LICENSE BLOCK *****
+ *  Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ *  The contents of this file are subject to the Mozilla Public License Version
+ *  1.1 (the 'License'); you may not use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *  http://www.mozilla.org/MPL/
+ *
+ *  Software distributed under the License is distributed on an 'AS IS' basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ *  for the specific language governing rights and limitations under the
+ *  License.
+ *
+ *  The Original Code is PathTrie.java
+ *
+ *  ***** END LICENSE BLOCK *****
+ */
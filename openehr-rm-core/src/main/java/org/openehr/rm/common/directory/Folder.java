@@ -120,24 +120,6 @@ public class Folder extends Locatable {
         this.items = items;
     }
     //POJO ends
-    
-    @Override
-	public List<Object> itemsAtPath(String path) {
-		// TODO Auto-generated method stub
-		return null;
-	}
-
-	@Override
-	public boolean pathExists(String path) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
-	@Override
-	public boolean pathUnique(String path) {
-		// TODO Auto-generated method stub
-		return false;
-	}
 	
     /* fields */
     private List<Folder> folders;
@@ -261,24 +261,6 @@ public class History <T extends ItemStructure> extends DataStructure {
 		this.summary = summary;
 	}	
     // POJO end
-	
-	@Override
-	public List<Object> itemsAtPath(String path) {
-		// TODO Auto-generated method stub
-		return null;
-	}
-
-	@Override
-	public boolean pathExists(String path) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
-	@Override
-	public boolean pathUnique(String path) {
-		// TODO Auto-generated method stub
-		return false;
-	}
 
 	@Override
 	public Item asHierarchy() {
@@ -14,7 +14,6 @@
  */
 package org.openehr.rm.datastructure.history;
 
-import java.util.List;
 import java.util.Set;
 
 import org.openehr.rm.Attribute;
@@ -85,24 +84,6 @@ public final class PointEvent<T extends ItemStructure> extends Event<T> {
     PointEvent() {
     }
 
-	@Override
-	public List<Object> itemsAtPath(String path) {
-		// TODO Auto-generated method stub
-		return null;
-	}
-
-	@Override
-	public boolean pathExists(String path) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
-	@Override
-	public boolean pathUnique(String path) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
 }
 
 /*
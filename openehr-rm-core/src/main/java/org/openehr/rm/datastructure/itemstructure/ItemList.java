@@ -176,24 +176,6 @@ public final class ItemList extends ItemStructure {
     	                 .append(items, list.items)
     	                 .isEquals();
     }
-
-    @Override
-	public List<Object> itemsAtPath(String path) {
-		// TODO Auto-generated method stub
-		return null;
-	}
-
-	@Override
-	public boolean pathExists(String path) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
-	@Override
-	public boolean pathUnique(String path) {
-		// TODO Auto-generated method stub
-		return false;
-	}
 	
 	@Override
 	public Item asHierarchy() {
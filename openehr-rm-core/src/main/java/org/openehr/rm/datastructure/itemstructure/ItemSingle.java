@@ -108,24 +108,6 @@ public final class ItemSingle extends ItemStructure {
         return null;  // todo: implement this method
     }
 
-    @Override
-	public List<Object> itemsAtPath(String path) {
-		// TODO Auto-generated method stub
-		return null;
-	}
-
-	@Override
-	public boolean pathExists(String path) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
-	@Override
-	public boolean pathUnique(String path) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
     // POJO start
     ItemSingle() {
     }
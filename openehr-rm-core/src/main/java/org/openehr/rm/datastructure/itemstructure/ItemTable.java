@@ -335,24 +335,6 @@ public final class ItemTable extends ItemStructure {
         }
         return rows;
     }
-    
-    @Override
-	public List<Object> itemsAtPath(String path) {
-		// TODO Auto-generated method stub
-		return null;
-	}
-
-	@Override
-	public boolean pathExists(String path) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
-	@Override
-	public boolean pathUnique(String path) {
-		// TODO Auto-generated method stub
-		return false;
-	}
 
     // POJO start
     ItemTable() {
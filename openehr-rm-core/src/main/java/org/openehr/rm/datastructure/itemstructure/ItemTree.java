@@ -167,24 +167,6 @@ public final class ItemTree extends ItemStructure {
 		// TODO Auto-generated method stub
 		return null;
 	}
-    
-	@Override
-	public List<Object> itemsAtPath(String path) {
-		// TODO Auto-generated method stub
-		return null;
-	}
-
-	@Override
-	public boolean pathExists(String path) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
-	@Override
-	public boolean pathUnique(String path) {
-		// TODO Auto-generated method stub
-		return false;
-	}
 
     // POJO start
     ItemTree() { 
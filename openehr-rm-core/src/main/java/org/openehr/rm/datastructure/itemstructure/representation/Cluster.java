@@ -124,24 +124,6 @@ public final class Cluster extends Item {
     }
     // POJO end
 
-	@Override
-	public List<Object> itemsAtPath(String path) {
-		// TODO Auto-generated method stub
-		return null;
-	}
-
-	@Override
-	public boolean pathExists(String path) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
-	@Override
-	public boolean pathUnique(String path) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
 	/* fields */
     private List<Item> items;
 }
@@ -28,7 +28,6 @@ import org.openehr.rm.datatypes.text.DvCodedText;
 import org.openehr.rm.datatypes.text.DvText;
 import org.openehr.rm.support.terminology.TerminologyService;
 
-import java.util.List;
 import java.util.Set;
 
 /**
@@ -213,24 +212,6 @@ public final class Element extends Item {
         this.nullFlavour = nullFlavour; 
     }
     // POJO end
-
-	@Override
-	public List<Object> itemsAtPath(String path) {
-		// TODO Auto-generated method stub
-		return null;
-	}
-
-	@Override
-	public boolean pathExists(String path) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
-	@Override
-	public boolean pathUnique(String path) {
-		// TODO Auto-generated method stub
-		return false;
-	}
 	
 	/* fields */
     private DataValue value;
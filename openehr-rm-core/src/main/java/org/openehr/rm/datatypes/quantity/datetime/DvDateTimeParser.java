@@ -16,6 +16,8 @@ package org.openehr.rm.datatypes.quantity.datetime;
 
 import java.lang.IllegalArgumentException;
 import java.util.TimeZone;
+import java.util.regex.Pattern;
+
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.format.DateTimeFormat;
@@ -37,15 +39,20 @@ public class DvDateTimeParser {
     static final DateTimeFormatter timeFormatter = ISODateTimeFormat.basicTime().withOffsetParsed();
     static final DateTimeFormatter eTimeParser = ISODateTimeFormat.timeParser().withOffsetParsed(); //extended
     //static final DateTimeFormatter eTimePrinter = ISODateTimeFormat.time(); //extended printer
-    private static final String EXT_TIME =
-            "(\\d){2}(:(\\d){2}(:(\\d){2}((,|\\.)(\\d){1,})?)?)?(Z|(\\+|-)(\\d){2}((:)?(\\d){2})?)?";
-    private static final String BTIME_COMPLETE = "(\\d){6}((,|\\.)(\\d){1,})?(Z|(\\+|-)(\\d){2,4})?";
-    private static final String TIME_PARTIAL = "((\\d){2}|(\\d){4})(Z|(\\+|-)(\\d){2,4})?";
-    private static final String EXT_DATE = "(\\d){4}(-(\\d){2}(-(\\d){2})?)?";
-    private static final String BDATE = "(\\d){4}((\\d){2}((\\d){2})?)?";
-    private static final String BDATETIME = "(\\d){8}T((\\d){2}|(\\d){4}|(\\d){6}((,|\\.)(\\d){1,})?)(Z|(\\+|-)(\\d){2,4})?";
-    private static final String EXT_DATETIME = 
-       "(\\d){4}-(\\d){2}-(\\d){2}T(\\d){2}(:(\\d){2}(:(\\d){2}((,|\\.)(\\d){1,})?)?)?(Z|(\\+|-)(\\d){2}((:)?(\\d){2})?)?";
+    private static final Pattern EXT_TIME = Pattern.compile(
+            "(\\d){2}(:(\\d){2}(:(\\d){2}((,|\\.)(\\d){1,})?)?)?(Z|(\\+|-)(\\d){2}((:)?(\\d){2})?)?");
+    private static final Pattern BTIME_COMPLETE = Pattern.compile("(\\d){6}((,|\\.)(\\d){1,})?(Z|(\\+|-)(\\d){2,4})?");
+    private static final Pattern TIME_PARTIAL = Pattern.compile("((\\d){2}|(\\d){4})(Z|(\\+|-)(\\d){2,4})?");
+    private static final Pattern EXT_DATE = Pattern.compile("(\\d){4}(-(\\d){2}(-(\\d){2})?)?");
+    private static final Pattern BDATE = Pattern.compile("(\\d){4}((\\d){2}((\\d){2})?)?");
+    private static final Pattern BDATETIME = Pattern.compile("(\\d){8}T((\\d){2}|(\\d){4}|(\\d){6}((,|\\.)(\\d){1,})?)(Z|(\\+|-)(\\d){2,4})?");
+    private static final Pattern EXT_DATETIME = Pattern.compile(
+       "(\\d){4}-(\\d){2}-(\\d){2}T(\\d){2}(:(\\d){2}(:(\\d){2}((,|\\.)(\\d){1,})?)?)?(Z|(\\+|-)(\\d){2}((:)?(\\d){2})?)?");
+    private static final Pattern ZONE = Pattern.compile("(Z|\\+|-)");
+    private static final Pattern UTC_EXTENDED =
+            Pattern.compile("((.*\\+00:00)||(.*-00:00))");
+    private static final Pattern UTC_BASIC =
+            Pattern.compile("((.*\\+0000)||(.*-0000))");
     //For pasing date element
     
     
@@ -58,21 +65,21 @@ public class DvDateTimeParser {
             throw new IllegalArgumentException("null value");
         }
         DateTime dt = null;
-        if (value.matches(EXT_TIME)) {
+        if (EXT_TIME.matcher(value).matches()) {
             try { 
                 //dealing with extended format(complete and partial)               
                 dt = eTimeParser.parseDateTime(value);
             } catch (Exception e) {
                 throw new IllegalArgumentException("invalid value for time in extended format: " + value);
             }
-        } else if(value.matches(BTIME_COMPLETE)) {
+        } else if(BTIME_COMPLETE.matcher(value).matches()) {
             value = value.replace(",", ".");
             try {
                 dt = timeFormatter.parseDateTime(padTimeValue(value));
             } catch (Exception e) {
                 throw new IllegalArgumentException("invalid value for time in basic format: " + value);
             }
-        } else if(value.matches(TIME_PARTIAL)) {
+        } else if(TIME_PARTIAL.matcher(value).matches()) {
             DateTimeFormatter partial = null;
             int zonePosition = tZonePresent(value);            
             if(zonePosition > 0) {
@@ -110,7 +117,7 @@ public class DvDateTimeParser {
         if(value == null) {
             throw new IllegalArgumentException("null value for date");
         }
-        if (!value.matches(EXT_DATE) && !value.matches(BDATE)) {
+        if (!EXT_DATE.matcher(value).matches() && !BDATE.matcher(value).matches()) {
             throw new IllegalArgumentException("invalid pattern for date: " + value);
         }
         DateTime dt = null;
@@ -141,7 +148,7 @@ public class DvDateTimeParser {
         if(value == null) {
             throw new IllegalArgumentException("null value for datetime");
         }
-        if (!value.matches(EXT_DATETIME) && !value.matches(BDATETIME)) {
+        if (!EXT_DATETIME.matcher(value).matches() && !BDATETIME.matcher(value).matches()) {
             throw new IllegalArgumentException("invalid pattern for datetime: " + value);
         }
         DateTime dt = null;
@@ -175,8 +182,7 @@ public class DvDateTimeParser {
         } else {           
             if(value.indexOf("Z") > 0 || value.indexOf("+") > 0 ||
                value.indexOf("-") > 0 ) {
-                String zonePatt = "(Z|\\+|-)";
-                String[] splitStr = value.split(zonePatt);
+                String[] splitStr = ZONE.split(value);
                 return splitStr[0].length();
             }
             return -1;
@@ -312,9 +318,9 @@ public class DvDateTimeParser {
             }
         }
         String result = time.toString(patt);
-        if(result.matches("((.*\\+00:00)||(.*-00:00))")) {
+        if(UTC_EXTENDED.matcher(result).matches()) {
             result = result.substring(0, result.length()- 6) + "Z";
-        } else if (result.matches("((.*\\+0000)||(.*-0000))")) {
+        } else if (UTC_BASIC.matcher(result).matches()) {
             result = result.substring(0, result.length()- 5) + "Z";
         }
         return result;
@@ -351,9 +357,9 @@ public class DvDateTimeParser {
         }
         if(pattern.startsWith("yyyy")) {
             String result = time.toString(pattern);
-            if(result.matches("((.*\\+00:00)||(.*-00:00))")) {
+            if(UTC_EXTENDED.matcher(result).matches()) {
                 result = result.substring(0, result.length()- 6) + "Z";
-            } else if (result.matches("((.*\\+0000)||(.*-0000))")) {
+            } else if (UTC_BASIC.matcher(result).matches()) {
                 result = result.substring(0, result.length()- 5) + "Z";
             }
             return result;
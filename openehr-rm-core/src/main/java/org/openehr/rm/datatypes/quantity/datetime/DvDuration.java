@@ -15,6 +15,7 @@
 package org.openehr.rm.datatypes.quantity.datetime;
 
 import java.util.List;
+import java.util.regex.Pattern;
 
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
@@ -181,7 +182,7 @@ public final class DvDuration extends DvAmount<DvDuration> {
 			throw new IllegalArgumentException("null value");
 		}
 
-		if (!value.matches(PATTERN)) {
+		if (!Compiled.PATTERN.matcher(value).matches()) {
 			throw new IllegalArgumentException("Wrong duration format: "
 					+ value);
 		}
@@ -588,6 +589,14 @@ public final class DvDuration extends DvAmount<DvDuration> {
 	private static final String PATTERN = "(-)?P((\\d)+(y|Y))?((\\d)+(m|M))?((\\d)+(w|W))?((\\d)+(d|D))?"
 			+ "(T((\\d)+(h|H))?((\\d)+(m|M))?((\\d)+((,|\\.)(\\d){1,3})?(s|S))?)?";
 
+	/*
+	 * Compiled PATTERN, held apart since durations are created while
+	 * DataValue is initialised, before the static fields of this class
+	 */
+	private static final class Compiled {
+		static final Pattern PATTERN = Pattern.compile(DvDuration.PATTERN);
+	}
+
 	// private static String PATTERN_DATE =
 	// "(-)?P((\\d)*(y|Y))?((\\d)*(m|M))?((\\d)*(d|D))";
 	//private static PeriodFormatter formatter = ISOPeriodFormat.standard();
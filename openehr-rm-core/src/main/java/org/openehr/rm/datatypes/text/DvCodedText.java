@@ -15,6 +15,7 @@
 package org.openehr.rm.datatypes.text;
 
 import java.util.List;
+import java.util.regex.Pattern;
 
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.openehr.rm.Attribute;
@@ -162,11 +163,11 @@ public final class DvCodedText extends DvText {
     }
     
     public DvCodedText parse(String value){
-		String[] tokens = value.split("::");
+		String[] tokens = CODE_SEPARATOR.split(value);
 		if (tokens.length!=2){
 		    throw new IllegalArgumentException("failed to parse DvCodedText '"+value+"', wrong number of tokens.");
 		}
-		String[] tokens2 = tokens[1].split("\\|");
+		String[] tokens2 = TEXT_SEPARATOR.split(tokens[1]);
 		if (tokens2.length!=2){
 		    throw new IllegalArgumentException("failed to parse DvCodedText '"+value+"', wrong number of tokens.");
 		}
@@ -190,6 +191,9 @@ public final class DvCodedText extends DvText {
     }
     // POJO end
 
+    private static final Pattern CODE_SEPARATOR = Pattern.compile("::");
+    private static final Pattern TEXT_SEPARATOR = Pattern.compile("\\|");
+
     /* fields */
     private CodePhrase definingCode;
 }
@@ -0,0 +1,116 @@
+/*
+ * component:   "openEHR Reference Implementation"
+ * description: "Class PatternCache"
+ * keywords:    "support"
+ *
+ * license:     "See notice at bottom of class"
+ */
+package org.openehr.rm.support;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Shared cache of compiled regular expressions, for patterns only known at
+ * runtime such as those of string constraints, archetype slots and
+ * assertions. Fixed patterns are better compiled once into constants.
+ * <p>
+ * At most MAX_SIZE patterns are kept, the least recently used ones being
+ * evicted first. Compiled patterns are immutable and can be used by
+ * several threads at once.
+ */
+public final class PatternCache {
+
+	/**
+	 * Maximum number of patterns kept
+	 */
+	public static final int MAX_SIZE = 512;
+
+	/**
+	 * Returns the compiled form of given regular expression, compiling it
+	 * if not cached
+	 *
+	 * @param regex not null
+	 * @return compiled pattern
+	 * @throws java.util.regex.PatternSyntaxException if regex invalid
+	 */
+	public static Pattern compile(String regex) {
+		Pattern pattern;
+		synchronized (cache) {
+			pattern = cache.get(regex);
+		}
+		if (pattern == null) {
+			// compiled outside the lock, a concurrent compile of the same
+			// regex at worst being done twice
+			pattern = Pattern.compile(regex);
+			synchronized (cache) {
+				cache.put(regex, pattern);
+			}
+		}
+		return pattern;
+	}
+
+	/**
+	 * True if the whole of given input matches given regular expression,
+	 * same as String.matches but without compiling cached patterns again
+	 *
+	 * @param regex not null
+	 * @param input not null
+	 * @return true if matches
+	 * @throws java.util.regex.PatternSyntaxException if regex invalid
+	 */
+	public static boolean matches(String regex, CharSequence input) {
+		return compile(regex).matcher(input).matches();
+	}
+
+	/**
+	 * Number of patterns cached
+	 *
+	 * @return size
+	 */
+	public static int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	/**
+	 * Removes all patterns from the cache
+	 */
+	public static void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	private PatternCache() {
+	}
+
+	/* static fields */
+	private static final Map<String, Pattern> cache =
+		new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(
+					Map.Entry<String, Pattern> eldest) {
+				return size() > MAX_SIZE;
+			}
+		};
+}
+/*
+ *  ***** BEGIN LICENSE BLOCK *****
+ *  Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ *  The contents of this file are subject to the Mozilla Public License Version
+ *  1.1 (the 'License'); you may not use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *  http://www.mozilla.org/MPL/
+ *
+ *  Software distributed under the License is distributed on an 'AS IS' basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ *  for the specific language governing rights and limitations under the
+ *  License.
+ *
+ *  The Original Code is PatternCache.java
+ *
+ *  ***** END LICENSE BLOCK *****
+ */
@@ -14,6 +14,8 @@
  */
 package org.openehr.rm.support.identification;
 
+import java.util.regex.Pattern;
+
 import org.apache.commons.lang.StringUtils;
 import org.openehr.rm.Attribute;
 import org.openehr.rm.FullConstructor;
@@ -95,12 +97,12 @@ public class HierObjectID extends UIDBasedID {
         } else {
             rootStr = value;
         }
-        if (rootStr.matches(UUID.SIMPLE_UUID_PATTERN)) {
+        if (UUID.SIMPLE_UUID.matcher(rootStr).matches()) {
             root = new UUID(rootStr);
-        } else if (rootStr.matches("(\\d)+(\\.(\\d)+)*")) { //for ISO_OID
+        } else if (UUID.SIMPLE_ISO_OID.matcher(rootStr).matches()) { //for ISO_OID
             //System.out.println("in ISO");
             root = new ISO_OID(rootStr);
-        } else if (rootStr.matches("(\\w)+(\\.(\\w)+)*")){ //for InternetID, 
+        } else if (INTERNET_ID.matcher(rootStr).matches()){ //for InternetID, 
             root = new InternetID(rootStr);
         } else {
             throw new IllegalArgumentException("wrong format");
@@ -141,6 +143,9 @@ public class HierObjectID extends UIDBasedID {
     }
     // POJO end
 
+    private static final Pattern INTERNET_ID =
+            Pattern.compile("(\\w)+(\\.(\\w)+)*");
+
     /* fields */
     private UID root;   // mandatory
     private String extension;
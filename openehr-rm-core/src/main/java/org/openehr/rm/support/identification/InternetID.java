@@ -14,6 +14,8 @@
  */
 package org.openehr.rm.support.identification;
 
+import java.util.regex.Pattern;
+
 import org.openehr.rm.Attribute;
 import org.openehr.rm.FullConstructor;
 
@@ -32,7 +34,7 @@ public class InternetID extends UID {
 	@FullConstructor
     public InternetID(@Attribute(name = "value", required = true)String value) {
         super(value);
-        if (!value.matches(PATTERN)) {
+        if (!PATTERN.matcher(value).matches()) {
             throw new IllegalArgumentException("wrong format");
         }
                 /* or checking using java.net.URL ?
@@ -45,7 +47,8 @@ public class InternetID extends UID {
                  */
     }
     
-    private static String PATTERN = "[a-zA-Z]([a-zA-Z0-9-]*[a-zA-Z0-9])?(\\.[a-zA-Z]([a-zA-Z0-9-]*[a-zA-Z0-9])?)*";
+    private static final Pattern PATTERN = Pattern.compile(
+            "[a-zA-Z]([a-zA-Z0-9-]*[a-zA-Z0-9])?(\\.[a-zA-Z]([a-zA-Z0-9-]*[a-zA-Z0-9])?)*");
 }
 
 /*
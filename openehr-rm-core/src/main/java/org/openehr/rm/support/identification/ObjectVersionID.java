@@ -14,6 +14,8 @@
  */
 package org.openehr.rm.support.identification;
 
+import java.util.regex.Pattern;
+
 import org.apache.commons.lang.StringUtils;
 import org.openehr.rm.Attribute;
 import org.openehr.rm.FullConstructor;
@@ -66,7 +68,7 @@ public class ObjectVersionID extends UIDBasedID {
                 throw new IllegalArgumentException("bad format, missing objectId");
         }
         // 2. Check how many segments in the value
-        String[] splits = value.split("::");
+        String[] splits = SEPARATOR.split(value);
         int segments = splits.length;
         if(segments < 3) {
                 throw new IllegalArgumentException("bad format, missing creatingSystemId or versionTreeId");
@@ -77,11 +79,11 @@ public class ObjectVersionID extends UIDBasedID {
 		// 3. Construct objects for each segment
         //the patterns below are for sorting only, the correct syntax
         //checking is handled by the UID sublcasses.
-        if (splits[0].matches(UUID.SIMPLE_UUID_PATTERN)) { //pattern for UUID
+        if (UUID.SIMPLE_UUID.matcher(splits[0]).matches()) { //pattern for UUID
         		objectID = new UUID(value.substring(0, doubleColons));
-        } else if (splits[0].matches("(\\d)+(\\.(\\d)+)*")) { //for ISO_OID
+        } else if (UUID.SIMPLE_ISO_OID.matcher(splits[0]).matches()) { //for ISO_OID
         		objectID = new ISO_OID(value.substring(0, doubleColons));
-        } else if (splits[0].matches("(\\w|-)+(\\.(\\w|-)+)*")){ //for InternetID, 
+        } else if (INTERNET_ID.matcher(splits[0]).matches()){ //for InternetID, 
         		objectID = new InternetID(value.substring(0, doubleColons));
         } else {
         		throw new IllegalArgumentException("wrong format: " + splits[0]);
@@ -148,6 +150,10 @@ public class ObjectVersionID extends UIDBasedID {
     }
     // POJO end
       
+	private static final Pattern SEPARATOR = Pattern.compile("::");
+	private static final Pattern INTERNET_ID =
+			Pattern.compile("(\\w|-)+(\\.(\\w|-)+)*");
+
 	/* fields */
 	private UID objectID;
 	private VersionTreeID versionTreeID;
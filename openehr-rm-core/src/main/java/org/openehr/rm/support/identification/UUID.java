@@ -14,6 +14,8 @@
  */
 package org.openehr.rm.support.identification;
 
+import java.util.regex.Pattern;
+
 import org.openehr.rm.Attribute;
 import org.openehr.rm.FullConstructor;
 
@@ -32,6 +34,10 @@ public class UUID extends UID {
 	 * Simple UUID pattern
 	 */
 	public static final String SIMPLE_UUID_PATTERN = "([0-9a-fA-F])+(-([0-9a-fA-F])+)*";
+
+	/* compiled patterns telling the kinds of UID apart */
+	static final Pattern SIMPLE_UUID = Pattern.compile(SIMPLE_UUID_PATTERN);
+	static final Pattern SIMPLE_ISO_OID = Pattern.compile("(\\d)+(\\.(\\d)+)*");
 	
     /**
      * Constructs an UUID
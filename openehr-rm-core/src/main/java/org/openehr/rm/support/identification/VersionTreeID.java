@@ -14,6 +14,8 @@
  */
 package org.openehr.rm.support.identification;
 
+import java.util.regex.Pattern;
+
 import org.apache.commons.lang.StringUtils;
 import org.openehr.rm.Attribute;
 import org.openehr.rm.FullConstructor;
@@ -71,7 +73,7 @@ public class VersionTreeID extends RMObject {
     }
     
     private void loadValue(String value) {
-        if (!value.matches(PATTERN)) {
+        if (!PATTERN.matcher(value).matches()) {
             throw new IllegalArgumentException("wrong format");
         }
         int branch = value.indexOf(".");
@@ -80,7 +82,7 @@ public class VersionTreeID extends RMObject {
             this.trunkVersion = value;
             this.value = value;
         } else {
-            String[] entries = value.split("\\.");
+            String[] entries = DOT.split(value);
             //System.out.println("in loadValues, size of entries:" + entries.length);
             validateValues(Integer.parseInt(entries[0]), Integer.parseInt(entries[1]),
                     Integer.parseInt(entries[2]));
@@ -217,7 +219,9 @@ public class VersionTreeID extends RMObject {
     
     //POJO end
     
-    private String PATTERN = "[1-9](\\d)*(\\.(\\d)+\\.(\\d)+)?";
+    private static final Pattern PATTERN =
+            Pattern.compile("[1-9](\\d)*(\\.(\\d)+\\.(\\d)+)?");
+    private static final Pattern DOT = Pattern.compile("\\.");
     
     /* field */
     private String value;
@@ -0,0 +1,70 @@
+package org.openehr.rm.common.archetyped;
+
+import junit.framework.TestCase;
+
+import org.openehr.rm.datastructure.itemstructure.representation.Element;
+import org.openehr.rm.datatypes.text.DvText;
+
+public class AttributeAccessorTest extends TestCase {
+
+	public void testAccessorIsShared() throws Exception {
+		assertSame(AttributeAccessor.forAttribute(Element.class, "value"),
+				AttributeAccessor.forAttribute(Element.class, "value"));
+	}
+
+	public void testGetValue() throws Exception {
+		Element element = new Element("at0001", "element", new DvText("text"));
+		assertEquals("at0001", AttributeAccessor.forAttribute(Element.class,
+				"archetype_node_id").getValue(element));
+		assertEquals(new DvText("text"), AttributeAccessor.forAttribute(
+				Element.class, "value").getValue(element));
+	}
+
+	public void testUnknownAttribute() throws Exception {
+		Element element = new Element("at0001", "element", new DvText("text"));
+		AttributeAccessor accessor = AttributeAccessor.forAttribute(
+				Element.class, "unknown");
+		assertFalse(accessor.isReadable());
+		assertNull(accessor.getValue(element));
+		try {
+			accessor.setValue(element, "value");
+			fail("exception should be thrown");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testPredicateIgnored() throws Exception {
+		assertSame(AttributeAccessor.forAttribute(Element.class, "value"),
+				AttributeAccessor.forAttribute(Element.class, "value[at0002]"));
+	}
+
+	public void testUnknownAttributeShared() throws Exception {
+		assertSame(AttributeAccessor.forAttribute(Element.class, "unknown"),
+				AttributeAccessor.forAttribute(Element.class, "unknown"));
+	}
+
+	public void testGetterExceptionPropagated() throws Exception {
+		AttributeAccessor accessor = AttributeAccessor.forAttribute(
+				Failing.class, "value");
+		try {
+			accessor.getValue(new Failing());
+			fail("exception should be thrown");
+		} catch (UnsupportedOperationException e) {
+			assertEquals("no value", e.getMessage());
+		}
+	}
+
+	public void testSetValue() throws Exception {
+		Element element = new Element("at0001", "element", new DvText("text"));
+		AttributeAccessor.forAttribute(Element.class, "value").setValue(
+				element, new DvText("new text"));
+		assertEquals(new DvText("new text"), element.getValue());
+	}
+
+	public static class Failing {
+		public Object getValue() {
+			throw new UnsupportedOperationException("no value");
+		}
+	}
+}
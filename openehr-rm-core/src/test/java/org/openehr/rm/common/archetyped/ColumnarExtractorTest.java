@@ -0,0 +1,101 @@
+package org.openehr.rm.common.archetyped;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import org.openehr.rm.common.archetyped.ColumnarExtractor.ColumnType;
+import org.openehr.rm.common.archetyped.ColumnarExtractor.Columns;
+import org.openehr.rm.datastructure.itemstructure.ItemList;
+import org.openehr.rm.datastructure.itemstructure.representation.Element;
+import org.openehr.rm.datatypes.quantity.DvQuantity;
+import org.openehr.rm.datatypes.quantity.datetime.DvDateTime;
+import org.openehr.rm.datatypes.text.DvCodedText;
+import org.openehr.rm.datatypes.text.DvText;
+
+public class ColumnarExtractorTest extends TestCase {
+
+	public void setUp() throws Exception {
+		columns = new LinkedHashMap<String, ColumnType>();
+		columns.put(MAGNITUDE, ColumnType.MAGNITUDE);
+		columns.put(TIME, ColumnType.DATE_TIME);
+		columns.put(CODE, ColumnType.CODE);
+
+		lists = new ArrayList<ItemList>();
+		for (int i = 0; i < 1000; i++) {
+			List<Element> items = new ArrayList<Element>();
+			if (i % 10 != 0) {
+				items.add(new Element("at0001", "magnitude",
+						new DvQuantity("mmHg", i, 0)));
+			}
+			items.add(new Element("at0002", "time",
+					new DvDateTime("2005-12-03T09:22:00")));
+			items.add(new Element("at0003", "code",
+					new DvCodedText("code", "local", "at" + (i % 7))));
+			lists.add(new ItemList("at0000", "list", items));
+		}
+	}
+
+	public void testExtractColumns() throws Exception {
+		Columns result = new ColumnarExtractor(columns, 1).extract(lists);
+		assertEquals(1000, result.getRowCount());
+
+		double[] magnitudes = result.getMagnitudes(MAGNITUDE);
+		assertEquals(5.0, magnitudes[5], 0);
+		assertTrue(result.isNull(MAGNITUDE, 10));
+		assertEquals(100, result.getNulls(MAGNITUDE).cardinality());
+
+		long millis = new DvDateTime("2005-12-03T09:22:00").getDateTime()
+				.getMillis();
+		assertEquals(millis, result.getMillis(TIME)[999]);
+		assertTrue(result.getNulls(TIME).isEmpty());
+
+		int[] codes = result.getCodes(CODE);
+		List<String> dictionary = result.getDictionary(CODE);
+		assertEquals(7, dictionary.size());
+		assertEquals("at0", dictionary.get(0));
+		assertEquals("at3", dictionary.get(codes[10]));
+	}
+
+	public void testParallelSameAsSequential() throws Exception {
+		Columns sequential = new ColumnarExtractor(columns, 1).extract(lists);
+		Columns parallel = new ColumnarExtractor(columns, 4).extract(lists);
+		assertTrue(Arrays.equals(sequential.getMagnitudes(MAGNITUDE),
+				parallel.getMagnitudes(MAGNITUDE)));
+		assertEquals(sequential.getNulls(MAGNITUDE),
+				parallel.getNulls(MAGNITUDE));
+		assertTrue(Arrays.equals(sequential.getMillis(TIME),
+				parallel.getMillis(TIME)));
+		assertTrue(Arrays.equals(sequential.getCodes(CODE),
+				parallel.getCodes(CODE)));
+		assertEquals(sequential.getDictionary(CODE),
+				parallel.getDictionary(CODE));
+	}
+
+	public void testNullLocatable() throws Exception {
+		List<ItemList> rows = new ArrayList<ItemList>();
+		rows.add(null);
+		rows.add(new ItemList("at0000", new DvText("empty"),
+				new ArrayList<Element>()));
+		Columns result = new ColumnarExtractor(columns).extract(rows);
+		assertEquals(2, result.getNulls(CODE).cardinality());
+		assertEquals(-1, result.getCodes(CODE)[1]);
+	}
+
+	public void testWrongColumnType() throws Exception {
+		Columns result = new ColumnarExtractor(columns).extract(lists);
+		try {
+			result.getMagnitudes(CODE);
+			fail("exception should be thrown");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static final String MAGNITUDE = "/items[at0001]/value";
+	private static final String TIME = "/items[at0002]/value";
+	private static final String CODE = "/items[at0003]/value";
+
+	private Map<String, ColumnType> columns;
+	private List<ItemList> lists;
+}
@@ -0,0 +1,73 @@
+package org.openehr.rm.common.archetyped;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.openehr.rm.datastructure.itemstructure.ItemList;
+import org.openehr.rm.datastructure.itemstructure.representation.Element;
+import org.openehr.rm.datatypes.text.DvText;
+
+public class CompiledPathTest extends TestCase {
+
+	public void setUp() throws Exception {
+		List<Element> items = new ArrayList<Element>();
+		items.add(new Element("at0002", "first", new DvText("one")));
+		items.add(new Element("at0002", "Status, 2nd", new DvText("two")));
+		items.add(new Element("at0003", "third", new DvText("three")));
+		list = new ItemList("at0001", "list", items);
+	}
+
+	public void testCompileSegments() throws Exception {
+		CompiledPath path = CompiledPath.compile(
+				"/data[at0001]/events[at0006 and name/value='any/event']/time");
+		assertEquals(3, path.size());
+		assertEquals("data", path.getSegment(0).getAttributeName());
+		assertEquals("at0001", path.getSegment(0).getArchetypeNodeId());
+		assertNull(path.getSegment(0).getName());
+		assertEquals("events", path.getSegment(1).getAttributeName());
+		assertEquals("at0006", path.getSegment(1).getArchetypeNodeId());
+		assertEquals("any/event", path.getSegment(1).getName());
+		assertEquals("time", path.getSegment(2).getAttributeName());
+		assertFalse(path.getSegment(2).hasPredicate());
+	}
+
+	public void testCompiledPathIsCached() throws Exception {
+		String path = "/items[at0003]/value";
+		assertSame(CompiledPath.compile(path), CompiledPath.compile(path));
+	}
+
+	public void testCacheBounded() throws Exception {
+		for (int i = 0; i < 2500; i++) {
+			CompiledPath.compile("/items[at" + i + "]");
+		}
+		assertTrue(CompiledPath.cacheSize() <= 1000);
+		String path = "/items[at0001]/value";
+		assertSame(CompiledPath.compile(path), CompiledPath.compile(path));
+	}
+
+	public void testRootPath() throws Exception {
+		assertEquals(0, CompiledPath.compile("/").size());
+		assertSame(list, list.itemAtPath(CompiledPath.compile("/")));
+	}
+
+	public void testItemAtCompiledPath() throws Exception {
+		CompiledPath path = CompiledPath.compile(
+				"/items[at0002, 'Status, 2nd']/value/value");
+		assertEquals("two", list.itemAtPath(path));
+		assertEquals(list.itemAtPath(path.getPath()), list.itemAtPath(path));
+	}
+
+	public void testFirstMatchOfContainer() throws Exception {
+		assertEquals("one", list.itemAtPath("/items[at0002]/value/value"));
+		assertEquals("three", list.itemAtPath("/items['third']/value/value"));
+	}
+
+	public void testNoMatch() throws Exception {
+		assertNull(list.itemAtPath(CompiledPath.compile("/items[at0009]")));
+		assertNull(list.itemAtPath(CompiledPath.compile("/unknown/value")));
+	}
+
+	private ItemList list;
+}
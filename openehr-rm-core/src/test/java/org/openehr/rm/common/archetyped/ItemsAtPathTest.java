@@ -0,0 +1,74 @@
+package org.openehr.rm.common.archetyped;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import org.openehr.rm.datastructure.itemstructure.ItemTree;
+import org.openehr.rm.datastructure.itemstructure.representation.Cluster;
+import org.openehr.rm.datastructure.itemstructure.representation.Element;
+import org.openehr.rm.datastructure.itemstructure.representation.Item;
+import org.openehr.rm.datatypes.text.DvText;
+
+public class ItemsAtPathTest extends TestCase {
+
+	public void setUp() throws Exception {
+		List<Item> first = new ArrayList<Item>();
+		first.add(new Element("at0002", "one", new DvText("1")));
+		first.add(new Element("at0003", "two", new DvText("2")));
+		List<Item> second = new ArrayList<Item>();
+		second.add(new Element("at0002", "three", new DvText("3")));
+		List<Item> items = new ArrayList<Item>();
+		items.add(new Cluster("at0001", "first", first));
+		items.add(new Cluster("at0001", "second", second));
+		tree = new ItemTree("at0000", "tree", items);
+	}
+
+	public void testAllMatchesOfContainers() throws Exception {
+		assertEquals(Arrays.asList(new Object[] { "1", "3" }),
+				tree.itemsAtPath("/items[at0001]/items[at0002]/value/value"));
+		assertEquals(Arrays.asList(new Object[] { "1", "2", "3" }),
+				tree.itemsAtPath("/items/items/value/value"));
+		assertEquals(Arrays.asList(new Object[] { "3" }),
+				tree.itemsAtPath("/items['second']/items/value/value"));
+		assertEquals(2, tree.itemsAtPath("/items").size());
+	}
+
+	public void testNoMatch() throws Exception {
+		assertTrue(tree.itemsAtPath("/items[at0009]/items").isEmpty());
+		assertTrue(tree.itemsAtPath("/unknown").isEmpty());
+		assertFalse(tree.pathExists("/items/items[at0009]"));
+		assertFalse(tree.pathUnique("/items/items[at0009]"));
+	}
+
+	public void testRootPath() throws Exception {
+		assertEquals(Arrays.asList(new Object[] { tree }),
+				tree.itemsAtPath("/"));
+		assertTrue(tree.pathUnique("/"));
+	}
+
+	public void testPathExistsAndUnique() throws Exception {
+		assertTrue(tree.pathExists("/items[at0001]/items[at0003]"));
+		assertTrue(tree.pathUnique("/items[at0001]/items[at0003]"));
+		assertTrue(tree.pathExists("/items[at0001]/items[at0002]"));
+		assertFalse(tree.pathUnique("/items[at0001]/items[at0002]"));
+	}
+
+	public void testLazyIteration() throws Exception {
+		Iterator<Object> it = tree.iterateItemsAtPath("/items/items/name/value");
+		assertTrue(it.hasNext());
+		assertTrue(it.hasNext());
+		assertEquals("one", it.next());
+		assertEquals("two", it.next());
+		assertEquals("three", it.next());
+		assertFalse(it.hasNext());
+		try {
+			it.next();
+			fail("exception should be thrown");
+		} catch (NoSuchElementException e) {
+			// expected
+		}
+	}
+
+	private ItemTree tree;
+}
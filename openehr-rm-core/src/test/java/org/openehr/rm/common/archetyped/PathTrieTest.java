@@ -0,0 +1,63 @@
+package org.openehr.rm.common.archetyped;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import org.openehr.rm.datastructure.itemstructure.ItemList;
+import org.openehr.rm.datastructure.itemstructure.representation.Element;
+import org.openehr.rm.datatypes.text.DvText;
+
+public class PathTrieTest extends TestCase {
+
+	public void setUp() throws Exception {
+		List<Element> items = new ArrayList<Element>();
+		items.add(new Element("at0002", "first", new DvText("one")));
+		items.add(new Element("at0002", "Status, 2nd", new DvText("two")));
+		items.add(new Element("at0003", "third", new DvText("three")));
+		list = new ItemList("at0001", "list", items);
+	}
+
+	public void testSameValuesAsItemAtPath() throws Exception {
+		List<String> paths = Arrays.asList(
+				"/items[at0002]/value/value",
+				"/items[at0002, 'Status, 2nd']/value/value",
+				"/items[at0002, 'Status, 2nd']/value",
+				"/items['third']",
+				"/items/name/value",
+				"/items",
+				"/name/value",
+				"/",
+				"/items[at0009]/value",
+				"/unknown");
+		Map<String, Object> values = list.itemsAtPaths(paths);
+		assertEquals(paths, new ArrayList<String>(values.keySet()));
+		for (String path : paths) {
+			assertEquals(path, list.itemAtPath(path), values.get(path));
+		}
+		assertEquals("two", values.get(
+				"/items[at0002, 'Status, 2nd']/value/value"));
+		assertNull(values.get("/unknown"));
+	}
+
+	public void testTrieIsReusable() throws Exception {
+		PathTrie trie = new PathTrie(Arrays.asList("/items[at0003]/value/value",
+				"/archetype_node_id"));
+		assertEquals("three", trie.evaluate(list).get("/items[at0003]/value/value"));
+		ItemList other = new ItemList("at0004", "other", new ArrayList<Element>());
+		Map<String, Object> values = trie.evaluate(other);
+		assertNull(values.get("/items[at0003]/value/value"));
+		assertEquals("at0004", values.get("/archetype_node_id"));
+	}
+
+	public void testNullPath() throws Exception {
+		try {
+			new PathTrie(Arrays.asList("/items", null));
+			fail("exception should be thrown");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private ItemList list;
+}
@@ -0,0 +1,51 @@
+package org.openehr.rm.support;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import junit.framework.TestCase;
+
+public class PatternCacheTest extends TestCase {
+
+	public void setUp() {
+		PatternCache.clear();
+	}
+
+	public void tearDown() {
+		PatternCache.clear();
+	}
+
+	public void testCompiledOnce() throws Exception {
+		Pattern pattern = PatternCache.compile("[a-z]+");
+		assertSame(pattern, PatternCache.compile("[a-z]+"));
+		assertEquals(1, PatternCache.size());
+	}
+
+	public void testMatches() throws Exception {
+		assertTrue(PatternCache.matches("[a-z]+", "abc"));
+		assertFalse(PatternCache.matches("[a-z]+", "abc1"));
+		assertEquals("abc1".matches("[a-z]+\\d"),
+				PatternCache.matches("[a-z]+\\d", "abc1"));
+	}
+
+	public void testBounded() throws Exception {
+		Pattern first = PatternCache.compile("p0");
+		for(int i = 1; i <= PatternCache.MAX_SIZE; i++) {
+			PatternCache.compile("p" + i);
+		}
+		assertEquals(PatternCache.MAX_SIZE, PatternCache.size());
+
+		// least recently used one evicted and compiled again
+		assertNotSame(first, PatternCache.compile("p0"));
+	}
+
+	public void testInvalidPattern() throws Exception {
+		try {
+			PatternCache.compile("[a-");
+			fail("exception should be thrown");
+		} catch(PatternSyntaxException e) {
+			// expected
+		}
+		assertEquals(0, PatternCache.size());
+	}
+}
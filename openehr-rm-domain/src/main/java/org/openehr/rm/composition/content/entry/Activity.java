@@ -14,7 +14,6 @@
  */
 package org.openehr.rm.composition.content.entry;
 
-import java.util.List;
 import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
@@ -116,24 +115,6 @@ public class Activity extends Locatable {
 		return null;
 	}
 
-	@Override
-	public List<Object> itemsAtPath(String arg0) {
-		// TODO Auto-generated method stub
-		return null;
-	}
-
-	@Override
-	public boolean pathExists(String arg0) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
-	@Override
-	public boolean pathUnique(String arg0) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
 	//POJO start
 	Activity() {
 	};
@@ -97,24 +97,6 @@ public class AdminEntry extends Entry {
 		// TODO Auto-generated method stub
 		return null;
 	}
-
-	@Override
-	public List<Object> itemsAtPath(String arg0) {
-		// TODO Auto-generated method stub
-		return null;
-	}
-
-	@Override
-	public boolean pathExists(String arg0) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
-	@Override
-	public boolean pathUnique(String arg0) {
-		// TODO Auto-generated method stub
-		return false;
-	}
 	
 	//POJO start
 	AdminEntry() {
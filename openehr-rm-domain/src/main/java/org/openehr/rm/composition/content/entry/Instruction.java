@@ -183,24 +183,6 @@ public final class Instruction extends CareEntry {
 		// TODO Auto-generated method stub
 		return null;
 	}
-
-	@Override
-	public List<Object> itemsAtPath(String arg0) {
-		// TODO Auto-generated method stub
-		return null;
-	}
-
-	@Override
-	public boolean pathExists(String arg0) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
-	@Override
-	public boolean pathUnique(String arg0) {
-		// TODO Auto-generated method stub
-		return false;
-	}
 	
     // POJO start
     Instruction() {
@@ -27,7 +27,6 @@ import org.openehr.rm.Attribute;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.apache.commons.lang.builder.EqualsBuilder;
 
-import java.util.List;
 import java.util.Set;
 
 /**
@@ -148,24 +147,6 @@ public class Address extends Locatable {
 		return null;
 	}
 
-	@Override
-	public List<Object> itemsAtPath(String arg0) {
-		// TODO Auto-generated method stub
-		return null;
-	}
-
-	@Override
-	public boolean pathExists(String arg0) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
-	@Override
-	public boolean pathUnique(String arg0) {
-		// TODO Auto-generated method stub
-		return false;
-	}	
-
 	/* fields */
     private ItemStructure details;
 }
@@ -157,24 +157,6 @@ public class Contact extends Locatable {
 		return null;
 	}
 
-	@Override
-	public List<Object> itemsAtPath(String arg0) {
-		// TODO Auto-generated method stub
-		return null;
-	}
-
-	@Override
-	public boolean pathExists(String arg0) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
-	@Override
-	public boolean pathUnique(String arg0) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
     /* fields */
     private DvInterval<DvDate> timeValidity;
     private List<Address> addresses;	
@@ -26,7 +26,6 @@ import org.openehr.rm.datastructure.itemstructure.ItemStructure;
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 
-import java.util.List;
 import java.util.Set;
 
 /**
@@ -209,24 +208,6 @@ public abstract class Party extends Locatable {
 		return null;
 	}
 
-	@Override
-	public List<Object> itemsAtPath(String arg0) {
-		// TODO Auto-generated method stub
-		return null;
-	}
-
-	@Override
-	public boolean pathExists(String arg0) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
-	@Override
-	public boolean pathUnique(String arg0) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
     /* fields */
     private Set<PartyIdentity> identities;
     private Set<Contact> contacts;
@@ -14,7 +14,6 @@
  */
 package org.openehr.rm.integration;
 
-import java.util.List;
 import java.util.Set;
 
 import org.openehr.rm.Attribute;
@@ -99,24 +98,6 @@ public final class GenericEntry extends ContentItem {
 		return null;
 	}
 
-	@Override
-	public List<Object> itemsAtPath(String path) {
-		// TODO Auto-generated method stub
-		return null;
-	}
-
-	@Override
-	public boolean pathExists(String path) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
-	@Override
-	public boolean pathUnique(String path) {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
 	private final ItemTree data;
 }
 /*
@@ -0,0 +1,292 @@
+/*
+ * component:   "openEHR Java Reference Implementation"
+ * description: "Class CompiledConstructor"
+ * keywords:    "builder"
+ *
+ * file:        "$URL$"
+ * revision:    "$LastChangedRevision$"
+ * last_change: "$LastChangedDate$"
+ */
+package org.openehr.build;
+
+import java.lang.reflect.Constructor;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openehr.rm.datatypes.quantity.DvCount;
+import org.openehr.rm.datatypes.quantity.ProportionKind;
+
+/**
+ * Construction plan of a RM class with the value conversion of each
+ * constructor parameter resolved ahead of time.
+ * <p>
+ * The reflective path in <code>RMObjectBuilder.construct</code> decides how
+ * to convert every value by testing the parameter type against a chain of
+ * candidates on each call. Here that decision is taken once per class and
+ * stored as one converter per parameter slot, so that building an instance
+ * is a single pass over the slots followed by the constructor call.
+ */
+final class CompiledConstructor {
+
+	/**
+	 * Returns the compiled constructor of given RM class
+	 *
+	 * @param descriptor
+	 * @return compiled constructor
+	 */
+	static CompiledConstructor forDescriptor(RMClassDescriptor descriptor) {
+		CompiledConstructor compiled = cache.get(descriptor.getRMClass());
+		if (compiled == null) {
+			compiled = new CompiledConstructor(descriptor);
+			cache.put(descriptor.getRMClass(), compiled);
+		}
+		return compiled;
+	}
+
+	private CompiledConstructor(RMClassDescriptor descriptor) {
+		this.descriptor = descriptor;
+		this.constructor = descriptor.getConstructor();
+		this.constructor.setAccessible(true);
+		this.converters = new SlotConverter[descriptor.size()];
+
+		boolean dvCount = DvCount.class.equals(descriptor.getRMClass());
+		for (int i = 0; i < converters.length; i++) {
+			converters[i] = converter(descriptor.getType(i), dvCount);
+		}
+	}
+
+	/*
+	 * Selects the conversion of a parameter slot, following the same rules
+	 * as the reflective path of the builder
+	 */
+	private static SlotConverter converter(Class type, boolean dvCount) {
+		if (type.isEnum()) {
+			return new EnumConverter(type);
+		} else if (type == int.class) {
+			return dvCount ? LONG_TO_INT : PARSE_INT;
+		} else if (type == double.class) {
+			return dvCount ? FLOAT_TO_DOUBLE : PARSE_DOUBLE;
+		} else if (type == Integer.class) {
+			return PARSE_INTEGER;
+		} else if (type.isAssignableFrom(List.class)) {
+			return new ArrayConverter(type, true);
+		} else if (type.isAssignableFrom(Set.class)) {
+			return new ArrayConverter(type, false);
+		} else if (type.isPrimitive()) {
+			return PASS;
+		}
+		return new TypeChecker(type);
+	}
+
+	/**
+	 * Converts given values into the argument array of the constructor
+	 *
+	 * @param rmClassName used in error messages
+	 * @param values values keyed by camel case attribute names
+	 * @param systemValues
+	 * @param valueMap original values, used in error messages
+	 * @return arguments
+	 * @throws RMObjectBuildingException
+	 */
+	Object[] arguments(String rmClassName, Map<String, Object> values,
+			Map<SystemValue, Object> systemValues, Map<String, Object> valueMap)
+			throws RMObjectBuildingException {
+
+		Object[] arguments = new Object[converters.length];
+
+		for (int i = 0; i < converters.length; i++) {
+			String name = descriptor.getName(i);
+			Object value = values.get(name);
+
+			if (descriptor.isSystem(i)) {
+				SystemValue sysvalue = descriptor.getSystemValue(i);
+				if (sysvalue == null) {
+					throw new RMObjectBuildingException("unknonw system value"
+							+ "\"" + name + "\"");
+				}
+				value = systemValues.get(sysvalue);
+				if (value == null) {
+					throw new AttributeMissingException("missing value for "
+							+ "system attribute \"" + name + "\" in class: "
+							+ descriptor.getRMClass() + ", with valueMap: "
+							+ valueMap);
+				}
+			}
+
+			if (value == null) {
+				if (descriptor.isRequired(i)) {
+					throw new AttributeMissingException("missing value for "
+							+ "required attribute \"" + name + "\" of type "
+							+ descriptor.getType(i) + " while constructing "
+							+ descriptor.getRMClass() + " with valueMap: "
+							+ valueMap);
+				}
+				arguments[i] = descriptor.getDefaultValue(i);
+			} else {
+				arguments[i] = converters[i].convert(rmClassName, name, value);
+			}
+		}
+		return arguments;
+	}
+
+	/**
+	 * Creates a new instance with given arguments
+	 *
+	 * @param arguments
+	 * @return new instance
+	 * @throws Exception
+	 */
+	Object newInstance(Object[] arguments) throws Exception {
+		return constructor.newInstance(arguments);
+	}
+
+	/* conversion of a non-null value for one constructor parameter */
+	private static abstract class SlotConverter {
+		abstract Object convert(String rmClassName, String name, Object value)
+				throws RMObjectBuildingException;
+	}
+
+	private static class EnumConverter extends SlotConverter {
+		EnumConverter(Class type) {
+			this.type = type;
+		}
+
+		Object convert(String rmClassName, String name, Object value) {
+			if (value.getClass().isEnum()) {
+				return value;
+			}
+			if (type.equals(ProportionKind.class)) {
+				return ProportionKind.fromValue(
+						Integer.parseInt(value.toString()));
+			}
+			return Enum.valueOf(type, value.toString());
+		}
+
+		private final Class type;
+	}
+
+	private static class TypeChecker extends SlotConverter {
+		TypeChecker(Class type) {
+			this.type = type;
+		}
+
+		Object convert(String rmClassName, String name, Object value)
+				throws RMObjectBuildingException {
+			if (!(value instanceof String) && !type.isInstance(value)) {
+				throw new RMObjectBuildingException("Failed to construct: "
+						+ rmClassName + ", value for attribute '" + name
+						+ "' has wrong type, expected \"" + type
+						+ "\", but got \"" + value.getClass() + "\"");
+			}
+			return value;
+		}
+
+		final Class type;
+	}
+
+	private static class ArrayConverter extends TypeChecker {
+		ArrayConverter(Class type, boolean list) {
+			super(type);
+			this.list = list;
+		}
+
+		Object convert(String rmClassName, String name, Object value)
+				throws RMObjectBuildingException {
+			if (!value.getClass().isArray()) {
+				return super.convert(rmClassName, name, value);
+			}
+			Object[] array = (Object[]) value;
+			Collection collection = list ? new ArrayList(array.length)
+					: new HashSet();
+			for (Object o : array) {
+				collection.add(o);
+			}
+			return collection;
+		}
+
+		private final boolean list;
+	}
+
+	private static class NumberConverter extends SlotConverter {
+		NumberConverter(Class type, Class narrowFrom) {
+			this.type = type;
+			this.narrowFrom = narrowFrom;
+		}
+
+		Object convert(String rmClassName, String name, Object value)
+				throws RMObjectBuildingException {
+			if (value instanceof String) {
+				String str = (String) value;
+				try {
+					if (type == int.class) {
+						return Integer.parseInt(str);
+					} else if (type == double.class) {
+						return Double.parseDouble(str);
+					}
+					return new Integer(str);
+				} catch (NumberFormatException e) {
+					throw new AttributeFormatException("wrong format of "
+							+ "attribute " + name + ", expect " + type);
+				}
+			}
+			if (narrowFrom != null && value.getClass().equals(narrowFrom)) {
+				// values of DvCount given as Float or Long
+				if (type == int.class) {
+					return Integer.parseInt(value.toString());
+				}
+				return Double.parseDouble(value.toString());
+			}
+			if (!type.isPrimitive() && !type.isInstance(value)) {
+				throw new RMObjectBuildingException("Failed to construct: "
+						+ rmClassName + ", value for attribute '" + name
+						+ "' has wrong type, expected \"" + type
+						+ "\", but got \"" + value.getClass() + "\"");
+			}
+			return value;
+		}
+
+		private final Class type;
+		private final Class narrowFrom;
+	}
+
+	private static final SlotConverter PASS = new SlotConverter() {
+		Object convert(String rmClassName, String name, Object value) {
+			return value;
+		}
+	};
+	private static final SlotConverter PARSE_INT =
+		new NumberConverter(int.class, null);
+	private static final SlotConverter PARSE_DOUBLE =
+		new NumberConverter(double.class, null);
+	private static final SlotConverter PARSE_INTEGER =
+		new NumberConverter(Integer.class, null);
+	private static final SlotConverter LONG_TO_INT =
+		new NumberConverter(int.class, Long.class);
+	private static final SlotConverter FLOAT_TO_DOUBLE =
+		new NumberConverter(double.class, Float.class);
+
+	/* shared compiled constructors */
+	private static final Map<Class, CompiledConstructor> cache =
+		new ConcurrentHashMap<Class, CompiledConstructor>();
+
+	/* fields */
+	private final RMClassDescriptor descriptor;
+	private final Constructor constructor;
+	private final SlotConverter[] converters;
+}
+
+/*
+ * ***** BEGIN LICENSE BLOCK ***** Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the 'License'); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is CompiledConstructor.java
+ *
+ * ***** END LICENSE BLOCK *****
+ */
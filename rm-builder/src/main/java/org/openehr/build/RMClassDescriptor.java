@@ -0,0 +1,287 @@
+/*
+ * component:   "openEHR Java Reference Implementation"
+ * description: "Class RMClassDescriptor"
+ * keywords:    "builder"
+ *
+ * file:        "$URL$"
+ * revision:    "$LastChangedRevision$"
+ * last_change: "$LastChangedDate$"
+ */
+package org.openehr.build;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openehr.rm.Attribute;
+import org.openehr.rm.FullConstructor;
+
+/**
+ * Immutable description of the annotated full constructor of a RM class.
+ * <p>
+ * The constructor, the attribute names in parameter order, their types,
+ * annotations and default values are resolved once per class and shared by
+ * all builder instances, so that building a RM object no longer needs to
+ * scan constructors or read parameter annotations.
+ */
+public final class RMClassDescriptor {
+
+	/**
+	 * Returns the descriptor of given RM class
+	 *
+	 * @param rmClass
+	 * @return null if the class has no constructor annotated with
+	 *         <code>FullConstructor</code>
+	 * @throws IllegalArgumentException if any constructor parameter is not
+	 *         annotated with <code>Attribute</code>
+	 */
+	public static RMClassDescriptor forClass(Class rmClass) {
+		RMClassDescriptor descriptor = cache.get(rmClass);
+		if (descriptor == null) {
+			Constructor constructor = fullConstructor(rmClass);
+			if (constructor == null) {
+				return null;
+			}
+			descriptor = new RMClassDescriptor(rmClass, constructor);
+			cache.put(rmClass, descriptor);
+		}
+		return descriptor;
+	}
+
+	private RMClassDescriptor(Class rmClass, Constructor constructor) {
+		Annotation[][] annotations = constructor.getParameterAnnotations();
+		Class[] parameterTypes = constructor.getParameterTypes();
+
+		if (annotations.length != parameterTypes.length) {
+			throw new IllegalArgumentException("less annotations");
+		}
+		int size = parameterTypes.length;
+
+		this.rmClass = rmClass;
+		this.constructor = constructor;
+		this.names = new String[size];
+		this.types = parameterTypes;
+		this.attributes = new Attribute[size];
+		this.systemValues = new SystemValue[size];
+		this.defaultValues = new Object[size];
+
+		Map<String, Integer> indexMap = new HashMap<String, Integer>();
+		Map<String, Class> typeMap = new HashMap<String, Class>();
+		Set<String> required = new HashSet<String>();
+
+		for (int i = 0; i < size; i++) {
+			if (annotations[i].length == 0) {
+				throw new IllegalArgumentException(
+						"missing annotations of attribute " + i);
+			}
+			Attribute attribute = (Attribute) annotations[i][0];
+			String name = attribute.name();
+
+			names[i] = name;
+			attributes[i] = attribute;
+			defaultValues[i] = defaultValue(parameterTypes[i]);
+			if (attribute.system()) {
+				systemValues[i] = SystemValue.fromId(name);
+			}
+			if (attribute.required()) {
+				required.add(name);
+			}
+			indexMap.put(name, i);
+			typeMap.put(name, parameterTypes[i]);
+		}
+		this.indexMap = Collections.unmodifiableMap(indexMap);
+		this.typeMap = Collections.unmodifiableMap(typeMap);
+		this.requiredNames = Collections.unmodifiableSet(required);
+	}
+
+	private static Constructor fullConstructor(Class klass) {
+		Constructor[] array = klass.getConstructors();
+		for (Constructor constructor : array) {
+			if (constructor.isAnnotationPresent(FullConstructor.class)) {
+				return constructor;
+			}
+		}
+		return null;
+	}
+
+	// default value of primitive typed parameters, null for reference types
+	private static Object defaultValue(Class type) {
+		if (type == boolean.class) {
+			return Boolean.FALSE;
+		} else if (type == double.class) {
+			return new Double(0);
+		} else if (type == float.class) {
+			return new Float(0);
+		} else if (type == int.class) {
+			return new Integer(0);
+		} else if (type == short.class) {
+			return new Short((short) 0);
+		} else if (type == long.class) {
+			return new Long(0);
+		} else if (type == char.class) {
+			return new Character((char) 0);
+		} else if (type == byte.class) {
+			return new Byte((byte) 0);
+		}
+		return null;
+	}
+
+	/**
+	 * RM class described
+	 *
+	 * @return rm class
+	 */
+	public Class getRMClass() {
+		return rmClass;
+	}
+
+	/**
+	 * Constructor annotated with <code>FullConstructor</code>
+	 *
+	 * @return constructor
+	 */
+	public Constructor getConstructor() {
+		return constructor;
+	}
+
+	/**
+	 * Number of parameters of the full constructor
+	 *
+	 * @return size
+	 */
+	public int size() {
+		return names.length;
+	}
+
+	/**
+	 * Attribute name of the parameter at given position
+	 *
+	 * @param index
+	 * @return name
+	 */
+	public String getName(int index) {
+		return names[index];
+	}
+
+	/**
+	 * Type of the parameter at given position
+	 *
+	 * @param index
+	 * @return type
+	 */
+	public Class getType(int index) {
+		return types[index];
+	}
+
+	/**
+	 * Attribute annotation of the parameter at given position
+	 *
+	 * @param index
+	 * @return attribute
+	 */
+	public Attribute getAttribute(int index) {
+		return attributes[index];
+	}
+
+	/**
+	 * True if the parameter at given position is required
+	 *
+	 * @param index
+	 * @return true if required
+	 */
+	public boolean isRequired(int index) {
+		return attributes[index].required();
+	}
+
+	/**
+	 * True if the parameter at given position is supplied by the system
+	 *
+	 * @param index
+	 * @return true if system attribute
+	 */
+	public boolean isSystem(int index) {
+		return attributes[index].system();
+	}
+
+	/**
+	 * System value of the parameter at given position
+	 *
+	 * @param index
+	 * @return null if not a system attribute or unknown system value
+	 */
+	public SystemValue getSystemValue(int index) {
+		return systemValues[index];
+	}
+
+	/**
+	 * Value used when no value is given for the parameter at given position
+	 *
+	 * @param index
+	 * @return null unless the parameter is of primitive type
+	 */
+	public Object getDefaultValue(int index) {
+		return defaultValues[index];
+	}
+
+	/**
+	 * Position of the parameter with given attribute name
+	 *
+	 * @param name
+	 * @return -1 if unknown attribute
+	 */
+	public int indexOf(String name) {
+		Integer index = indexMap.get(name);
+		return index == null ? -1 : index.intValue();
+	}
+
+	/**
+	 * Unmodifiable map of attribute types indexed by attribute names
+	 *
+	 * @return map of types
+	 */
+	public Map<String, Class> getAttributeTypes() {
+		return typeMap;
+	}
+
+	/**
+	 * Unmodifiable set of names of required attributes
+	 *
+	 * @return set of names
+	 */
+	public Set<String> getRequiredNames() {
+		return requiredNames;
+	}
+
+	/* shared descriptors */
+	private static final Map<Class, RMClassDescriptor> cache =
+		new ConcurrentHashMap<Class, RMClassDescriptor>();
+
+	/* fields */
+	private final Class rmClass;
+	private final Constructor constructor;
+	private final String[] names;
+	private final Class[] types;
+	private final Attribute[] attributes;
+	private final SystemValue[] systemValues;
+	private final Object[] defaultValues;
+	private final Map<String, Integer> indexMap;
+	private final Map<String, Class> typeMap;
+	private final Set<String> requiredNames;
+}
+
+/*
+ * ***** BEGIN LICENSE BLOCK ***** Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the 'License'); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is RMClassDescriptor.java
+ *
+ * ***** END LICENSE BLOCK *****
+ */
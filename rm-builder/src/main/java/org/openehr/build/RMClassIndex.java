@@ -0,0 +1,172 @@
+/*
+ * component:   "openEHR Java Reference Implementation"
+ * description: "Class RMClassIndex"
+ * keywords:    "builder"
+ *
+ * file:        "$URL$"
+ * revision:    "$LastChangedRevision$"
+ * last_change: "$LastChangedDate$"
+ */
+package org.openehr.build;
+
+import java.util.*;
+
+import org.apache.log4j.Logger;
+import org.openehr.rm.Attribute;
+
+/**
+ * Index of RM classes by the names of their constructor attributes, used to
+ * find the RM class of values that come without a type name.
+ * <p>
+ * Every attribute name known to any indexed class is given a bit. For each
+ * attribute the index keeps the set of classes accepting it, and for each
+ * class the set of attributes it requires. A lookup intersects the class
+ * sets of the given attribute names, drops the classes with a required
+ * attribute missing from the values, and only runs the value type checks
+ * on the remaining candidates, in the order the classes were indexed.
+ */
+public final class RMClassIndex {
+
+	/**
+	 * Creates an index of given classes; the order of the classes decides
+	 * which class is returned when several of them match. Classes without a
+	 * constructor annotated with <code>FullConstructor</code> are ignored.
+	 *
+	 * @param classes
+	 */
+	public RMClassIndex(Collection<Class> classes) {
+		List<RMClassDescriptor> list = new ArrayList<RMClassDescriptor>();
+		for (Class klass : classes) {
+			RMClassDescriptor descriptor = RMClassDescriptor.forClass(klass);
+			if (descriptor != null && !list.contains(descriptor)) {
+				list.add(descriptor);
+			}
+		}
+		descriptors = list.toArray(new RMClassDescriptor[list.size()]);
+
+		attributeBits = new HashMap<String, Integer>();
+		for (RMClassDescriptor descriptor : descriptors) {
+			for (int i = 0; i < descriptor.size(); i++) {
+				String name = descriptor.getName(i);
+				if (!attributeBits.containsKey(name)) {
+					attributeBits.put(name, attributeBits.size());
+				}
+			}
+		}
+
+		classesByAttribute = new BitSet[attributeBits.size()];
+		for (int i = 0; i < classesByAttribute.length; i++) {
+			classesByAttribute[i] = new BitSet(descriptors.length);
+		}
+		requiredAttributes = new BitSet[descriptors.length];
+		for (int c = 0; c < descriptors.length; c++) {
+			RMClassDescriptor descriptor = descriptors[c];
+			requiredAttributes[c] = new BitSet(attributeBits.size());
+			for (int i = 0; i < descriptor.size(); i++) {
+				int bit = attributeBits.get(descriptor.getName(i));
+				classesByAttribute[bit].set(c);
+				if (descriptor.isRequired(i)) {
+					requiredAttributes[c].set(bit);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the first indexed class that accepts all given attributes, has
+	 * values for all its required attributes and whose parameter types are
+	 * compatible with the values
+	 *
+	 * @param values keyed by camel case attribute names
+	 * @return null if no class matches
+	 */
+	public Class findMatchingRMClass(Map<String, Object> values) {
+		BitSet candidates = new BitSet(descriptors.length);
+		candidates.set(0, descriptors.length);
+		BitSet present = new BitSet(attributeBits.size());
+
+		for (Map.Entry<String, Object> entry : values.entrySet()) {
+			Integer bit = attributeBits.get(entry.getKey());
+			if (bit == null) {
+				log.debug("unknown attribute: " + entry.getKey());
+				return null;
+			}
+			candidates.and(classesByAttribute[bit]);
+			if (entry.getValue() != null) {
+				present.set(bit);
+			}
+		}
+
+		for (int c = candidates.nextSetBit(0); c >= 0;
+				c = candidates.nextSetBit(c + 1)) {
+
+			BitSet missing = (BitSet) requiredAttributes[c].clone();
+			missing.andNot(present);
+			if (!missing.isEmpty()) {
+				continue;
+			}
+			if (typesMatch(descriptors[c], values)) {
+				return descriptors[c].getRMClass();
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Checks the values against the constructor parameter types
+	 */
+	private boolean typesMatch(RMClassDescriptor descriptor,
+			Map<String, Object> values) {
+
+		log.debug("matching rmClass: " + descriptor.getRMClass().getName());
+
+		for (int i = 0; i < descriptor.size(); i++) {
+			Attribute attribute = descriptor.getAttribute(i);
+			Object attrValue = values.get(attribute.name());
+			if (attrValue == null) {
+				continue;
+			}
+			Class type = descriptor.getType(i);
+			if (((attrValue instanceof Boolean) && type != boolean.class)
+					|| ((attrValue instanceof Integer) && type != Integer.class)
+					|| ((attrValue instanceof Double) && type != double.class)) {
+
+				log.debug("wrong primitive value type for attribute: "
+						+ attribute.name());
+				return false;
+
+			} else if (!type.isPrimitive() && !type.isInstance(attrValue)) {
+
+				log.debug("wrong value type for attribute: "
+						+ attribute.name());
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/* logger */
+	private static final Logger log = Logger.getLogger(RMClassIndex.class);
+
+	/* fields */
+	private final RMClassDescriptor[] descriptors;
+	private final Map<String, Integer> attributeBits;
+	private final BitSet[] classesByAttribute;
+	private final BitSet[] requiredAttributes;
+}
+
+/*
+ * ***** BEGIN LICENSE BLOCK ***** Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the 'License'); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is RMClassIndex.java
+ *
+ * ***** END LICENSE BLOCK *****
+ */
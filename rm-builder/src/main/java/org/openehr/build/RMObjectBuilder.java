@@ -36,8 +36,6 @@ import org.openehr.rm.datatypes.uri.*;
 import org.openehr.rm.demographic.*;
 import org.openehr.rm.support.identification.*;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Constructor;
 import java.util.*;
 
 /**
@@ -58,6 +56,19 @@ public class RMObjectBuilder {
 		return new RMObjectBuilder(systemValues);
 	}
 
+	/**
+	 * Factory method to create an instance of the RM builder, optionally
+	 * using compiled constructors
+	 * 
+	 * @param systemValues
+	 * @param compiled
+	 * @return
+	 */
+	public static RMObjectBuilder getInstance(Map<SystemValue, Object> systemValues,
+			boolean compiled) {
+		return new RMObjectBuilder(systemValues, compiled);
+	}
+
 	/**
 	 * Create a RMObjectBuilder
 	 * 
@@ -73,6 +84,23 @@ public class RMObjectBuilder {
 		this.systemValues = systemValues;
 	}
 
+	/**
+	 * Create a RMObjectBuilder
+	 * <p/>
+	 * When <code>compiled</code> is true, the conversion of values of each
+	 * RM class is resolved once and reused for every instance built, instead
+	 * of being worked out from the value and parameter types on each call.
+	 * 
+	 * @param systemValues
+	 * @param compiled
+	 */
+	public RMObjectBuilder(Map<SystemValue, Object> systemValues,
+			boolean compiled) {
+
+		this(systemValues);
+		this.compiled = compiled;
+	}
+
 	// for testing purpose
 	RMObjectBuilder() {
 		try {
@@ -168,96 +196,34 @@ public class RMObjectBuilder {
 			String name = klass.getSimpleName();
 			typeMap.put(name, klass);
 			upperCaseMap.put(name.toUpperCase(), klass);
+			
+			// resolve constructor and attribute metadata once per class
+			RMClassDescriptor.forClass(klass);
 		}
 		
+		List<Class> matchingClasses = new ArrayList<Class>();
+		for (Class klass : typeMap.values()) {
+			if (!SKIPPED_TYPES.contains(klass.getSimpleName())) {
+				matchingClasses.add(klass);
+			}
+		}
+		matchingIndex = new RMClassIndex(matchingClasses);
+		
 		return typeMap;
 	}
 
 	/*
-	 * Return a map with name as the key and index of position as the value for
-	 * required parameters of the full constructor in the RMObject
+	 * Return the descriptor of the full constructor of given RM class
 	 * 
 	 * @param rmClass @return
 	 */
-	private Map<String, Class> attributeType(Class rmClass) {
-
-		Map<String, Class> map = new HashMap<String, Class>();
-		Constructor constructor = fullConstructor(rmClass);
-		if (constructor == null) {
+	private RMClassDescriptor descriptor(Class rmClass) {
+		RMClassDescriptor descriptor = RMClassDescriptor.forClass(rmClass);
+		if (descriptor == null) {
 			throw new IllegalArgumentException("no annotated constructor of "
 					+ rmClass + ">");
 		}
-		Annotation[][] annotations = constructor.getParameterAnnotations();
-		Class[] types = constructor.getParameterTypes();
-
-		if (annotations.length != types.length) {
-			throw new IllegalArgumentException("less annotations");
-		}
-		for (int i = 0; i < types.length; i++) {
-			if (annotations[i].length == 0) {
-				throw new IllegalArgumentException(
-						"missing annotations of attribute " + i);
-			}
-			Attribute attribute = (Attribute) annotations[i][0];
-			map.put(attribute.name(), types[i]);
-		}
-		return map;
-	}
-
-	/**
-	 * Return a map with name as the key and index of position as the value for
-	 * all parameters of the full constructor in the RMObject
-	 * 
-	 * @param rmClass
-	 * @return
-	 */
-	private Map<String, Integer> attributeIndex(Class rmClass) {
-		Map<String, Integer> map = new HashMap<String, Integer>();
-		Constructor constructor = fullConstructor(rmClass);
-		Annotation[][] annotations = constructor.getParameterAnnotations();
-
-		for (int i = 0; i < annotations.length; i++) {
-			if (annotations[i].length == 0) {
-				throw new IllegalArgumentException(
-						"missing annotation at position " + i);
-			}
-			Attribute attribute = (Attribute) annotations[i][0];
-			map.put(attribute.name(), i);
-		}
-		return map;
-	}
-
-	/**
-	 * Return a map with name as the key and index of position as the value for
-	 * all parameters of the full constructor in the RMObject
-	 * 
-	 * @param rmClass
-	 * @return
-	 */
-	private Map<String, Attribute> attributeMap(Class rmClass) {
-		Map<String, Attribute> map = new HashMap<String, Attribute>();
-		Constructor constructor = fullConstructor(rmClass);
-		Annotation[][] annotations = constructor.getParameterAnnotations();
-
-		for (int i = 0; i < annotations.length; i++) {
-			if (annotations[i].length == 0) {
-				throw new IllegalArgumentException(
-						"missing annotation at position " + i);
-			}
-			Attribute attribute = (Attribute) annotations[i][0];
-			map.put(attribute.name(), attribute);
-		}
-		return map;
-	}
-
-	private static Constructor fullConstructor(Class klass) {
-		Constructor[] array = klass.getConstructors();
-		for (Constructor constructor : array) {
-			if (constructor.isAnnotationPresent(FullConstructor.class)) {
-				return constructor;
-			}
-		}
-		return null;
+		return descriptor;
 	}
 
 	/**
@@ -285,38 +251,37 @@ public class RMObjectBuilder {
 			throws RMObjectBuildingException {
 
 		Class rmClass = retrieveRMType(rmClassName);
+		RMClassDescriptor descriptor = descriptor(rmClass);
+		
+		if (compiled) {
+			CompiledConstructor constructor = 
+				CompiledConstructor.forDescriptor(descriptor);
+			Object[] arguments = constructor.arguments(rmClassName,
+					toCamelCaseKeys(valueMap), systemValues, valueMap);
+			try {
+				return (RMObject) constructor.newInstance(arguments);
+			} catch (Exception e) {
+				throw instantiationFailure(rmClassName, valueMap, e);
+			}
+		}
       
 		// replace underscore separated names with camel case
 		Map<String, Object> filteredMap = new HashMap<String, Object>();
 		for (String name : valueMap.keySet()) {
 			filteredMap.put(toCamelCase(name), valueMap.get(name));
 		}
-		Constructor constructor = fullConstructor(rmClass);
-		Map<String, Class> typeMap = attributeType(rmClass);
-		Map<String, Integer> indexMap = attributeIndex(rmClass);
-		Map<String, Attribute> attributeMap = attributeMap(rmClass);
-		Object[] valueArray = new Object[indexMap.size()];
+		Object[] valueArray = new Object[descriptor.size()];
 
-		for (String name : typeMap.keySet()) {
+		for (int index = 0; index < valueArray.length; index++) {
 			
+			String name = descriptor.getName(index);
+			Class type = descriptor.getType(index);
+			Attribute attribute = descriptor.getAttribute(index);
 			Object value = filteredMap.get(name);
-			
-			if (!typeMap.containsKey(name) || !attributeMap.containsKey(name)) {
-				throw new RMObjectBuildingException("unknown attribute " + name);
-			}
-			
-			Class type = typeMap.get(name);
-			Integer index = indexMap.get(name);
-
-			Attribute attribute = attributeMap.get(name);
-			if (index == null || type == null) {
-				throw new RMObjectBuildingException("unknown attribute \""
-						+ name + "\"");
-			}
 
 			// system supplied value
 			if (attribute.system()) {
-				SystemValue sysvalue = SystemValue.fromId(name);
+				SystemValue sysvalue = descriptor.getSystemValue(index);
 				if (sysvalue == null) {
 					throw new RMObjectBuildingException("unknonw system value"
 							+ "\"" + name + "\"");
@@ -348,7 +313,7 @@ public class RMObjectBuilder {
 
 			// in case of null, create a default value
 			else if (value == null) {
-				value = defaultValue(type);
+				value = descriptor.getDefaultValue(index);
 			}
 
 			// in case of string value, convert to right type if necessary
@@ -424,23 +389,47 @@ public class RMObjectBuilder {
 						valueArray[i] = Integer.parseInt(value.toString());
 				}
 			}	
-			ret = constructor.newInstance(valueArray);
+			ret = descriptor.getConstructor().newInstance(valueArray);
 		} catch (Exception e) {
-      
-			
-			if (stringParsingTypes.contains(rmClassName)) {
-				throw new AttributeFormatException("wrong format for type "
-						+ rmClassName);
-			}
-
-			throw new RMObjectBuildingException(
-					"failed to create new instance of  " + rmClassName
-							+ " with valueMap: " + toString(valueMap) + ", cause: "
-							+ e.getMessage(), e);
+			throw instantiationFailure(rmClassName, valueMap, e);
 		}
 		return (RMObject) ret;
 	}
 
+	/*
+	 * Returns the exception to throw when the constructor failed
+	 */
+	private RMObjectBuildingException instantiationFailure(String rmClassName,
+			Map<String, Object> valueMap, Exception e) {
+		
+		if (stringParsingTypes.contains(rmClassName)) {
+			return new AttributeFormatException("wrong format for type "
+					+ rmClassName);
+		}
+
+		return new RMObjectBuildingException(
+				"failed to create new instance of  " + rmClassName
+						+ " with valueMap: " + toString(valueMap) + ", cause: "
+						+ e.getMessage(), e);
+	}
+
+	/*
+	 * Returns given map if none of the keys is underscore separated,
+	 * otherwise a copy with all keys in camel case
+	 */
+	private Map<String, Object> toCamelCaseKeys(Map<String, Object> valueMap) {
+		for (String name : valueMap.keySet()) {
+			if (name.indexOf('_') >= 0) {
+				Map<String, Object> filteredMap = new HashMap<String, Object>();
+				for (String key : valueMap.keySet()) {
+					filteredMap.put(toCamelCase(key), valueMap.get(key));
+				}
+				return filteredMap;
+			}
+		}
+		return valueMap;
+	}
+
 	private String toString(Map<String,Object> map) {
 		StringBuffer buf = new StringBuffer();
 		buf.append("\n");
@@ -498,8 +487,7 @@ public class RMObjectBuilder {
 	public Map<String, Class> retrieveAttribute(String rmClassName)
 			throws RMObjectBuildingException {
 		Class rmClass = retrieveRMType(rmClassName);
-		Map<String, Class> map = attributeType(rmClass);
-		return map;
+		return descriptor(rmClass).getAttributeTypes();
 	}
 
 	private String toCamelCase(String underscoreSeparated) {
@@ -539,116 +527,22 @@ public class RMObjectBuilder {
 	 * @return null if no match RM class is found
 	 */
 	public String findMatchingRMClass(Map<String, Object> valueMap) {
-		List simpleTypes = Arrays.asList(SKIPPED_TYPES_IN_MATCHING);
-
-		for (Class rmClass : typeMap.values()) {
-
-			log.debug("matching rmClass: " + rmClass.getName());
-
-			if (simpleTypes.contains(rmClass.getSimpleName())) {
-				continue; // skip simple value types
-			}
-
-			// replace underscore separated names with camel case
-			Map<String, Object> filteredMap = new HashMap<String, Object>();
-			for (String name : valueMap.keySet()) {
-				filteredMap.put(toCamelCase(name), valueMap.get(name));
-			}
-
-			Constructor constructor = fullConstructor(rmClass);
-			if (constructor == null) {
-				throw new RuntimeException("annotated constructor missing for "
-						+ rmClass);
-			}
-			Annotation[][] annotations = constructor.getParameterAnnotations();
-			if (annotations == null || annotations.length == 0) {
-				throw new RuntimeException("attribute annotations missing for "
-						+ rmClass);
-			}
-			Class[] types = constructor.getParameterTypes();
-			boolean matched = true;
-			Set<String> attributes = new HashSet<String>();
-
-			for (int i = 0; i < types.length; i++) {
-				if (annotations[i].length == 0) {
-					throw new RuntimeException(
-							"attribute annotation missing for" + rmClass);
-				}
-				Attribute attribute = (Attribute) annotations[i][0];
-				attributes.add(attribute.name());
 
-				log.debug("checking attribute: " + attribute.name());
-
-				String attrName = attribute.name();
-				Object attrValue = filteredMap.get(attrName);
-
-				if (attribute.required() && attrValue == null) {
-
-					log.debug("missing required attribute..");
-
-					matched = false;
-					break;
-
-				} else if (attrValue != null) {
-					if (((attrValue instanceof Boolean) && types[i] != boolean.class)
-							|| ((attrValue instanceof Integer) && types[i] != Integer.class)
-							|| ((attrValue instanceof Double) && types[i] != double.class)) {
-
-						log.debug("wrong primitive value type for attribute..");
-						matched = false;
-						break;
-
-					} else if (!types[i].isPrimitive()
-							&& !types[i].isInstance(attrValue)) {
-						log.debug("wrong value type for attribute..");
-						matched = false;
-						break;
-
-					}
-				}
-			}
-
-			for (String attr : filteredMap.keySet()) {
-				if (!attributes.contains(attr)) {
-
-					log.debug("unknown attribute: " + attr);
-
-					matched = false;
-				}
-			}
-
-			// matching found
-			if (matched) {
-				String className = rmClass.getSimpleName();
-				
-				log.debug(">>> MATCHING FOUND: " + className);
-				
-				return className;
-			}
+		// replace underscore separated names with camel case
+		Map<String, Object> filteredMap = new HashMap<String, Object>();
+		for (String name : valueMap.keySet()) {
+			filteredMap.put(toCamelCase(name), valueMap.get(name));
 		}
-		return null;
-	}
 
-	// todo: isn't there any support from java api on this?
-	private Object defaultValue(Class type) {
-		if (type == boolean.class) {
-			return Boolean.FALSE;
-		} else if (type == double.class) {
-			return new Double(0);
-		} else if (type == float.class) {
-			return new Float(0);
-		} else if (type == int.class) {
-			return new Integer(0);
-		} else if (type == short.class) {
-			return new Short((short) 0);
-		} else if (type == long.class) {
-			return new Long(0);
-		} else if (type == char.class) {
-			return new Character((char) 0);
-		} else if (type == byte.class) {
-			return new Byte((byte) 0);
+		Class rmClass = matchingIndex.findMatchingRMClass(filteredMap);
+		if (rmClass == null) {
+			return null;
 		}
-		return null;
+		String className = rmClass.getSimpleName();
+
+		log.debug(">>> MATCHING FOUND: " + className);
+
+		return className;
 	}
 
 	/*
@@ -662,16 +556,20 @@ public class RMObjectBuilder {
 			"HierObjectID", "DvBoolean", "InternetID", "UUID",
 			"ObjectVersionID", "DvURI", "DvEHRURI"
 	};
+	private static final Set<String> SKIPPED_TYPES = new HashSet<String>(
+			Arrays.asList(SKIPPED_TYPES_IN_MATCHING));
 
 	/* logger */
 	private static final Logger log = Logger.getLogger(RMObjectBuilder.class);
 
 	/* fields */
 	private Map<SystemValue, Object> systemValues;
+	private boolean compiled;
 
 	// loaded rm type map
 	private Map<String, Class> typeMap;
 	private Map<String, Class> upperCaseMap;
+	private RMClassIndex matchingIndex;
 	private static final Set<String> stringParsingTypes; // These should be rm_type_names not Java class names.
 
 	static {
@@ -0,0 +1,102 @@
+package org.openehr.build;
+
+import java.util.*;
+
+import org.openehr.rm.datatypes.quantity.ProportionKind;
+import org.openehr.rm.datatypes.text.CodePhrase;
+import org.openehr.rm.datatypes.text.DvText;
+import org.openehr.rm.support.measurement.SimpleMeasurementService;
+import org.openehr.terminology.SimpleTerminologyService;
+
+/**
+ * Compares building RM objects with the reflective construction path of
+ * {@link RMObjectBuilder} against the compiled one, over the same value
+ * maps.
+ * <p>
+ * Usage: CompiledConstructorBenchmark [rounds]
+ *
+ * @version 1.0
+ */
+public class CompiledConstructorBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+		Map<SystemValue, Object> values = new HashMap<SystemValue, Object>();
+		CodePhrase lang = new CodePhrase("ISO_639-1", "en");
+		CodePhrase charset = new CodePhrase("IANA_character-sets", "UTF-8");
+		values.put(SystemValue.LANGUAGE, lang);
+		values.put(SystemValue.CHARSET, charset);
+		values.put(SystemValue.ENCODING, charset);
+		values.put(SystemValue.TERMINOLOGY_SERVICE,
+				SimpleTerminologyService.getInstance());
+		values.put(SystemValue.MEASUREMENT_SERVICE,
+				SimpleMeasurementService.getInstance());
+
+		RMObjectBuilder reflective = RMObjectBuilder.getInstance(values, false);
+		RMObjectBuilder compiled = RMObjectBuilder.getInstance(values, true);
+		List<String> types = new ArrayList<String>();
+		List<Map<String, Object>> valueMaps = valueMaps(types);
+
+		for (int warmup = 0; warmup < 2; warmup++) {
+			build(reflective, types, valueMaps, rounds / 10);
+			build(compiled, types, valueMaps, rounds / 10);
+		}
+
+		long reflectiveTime = build(reflective, types, valueMaps, rounds);
+		long compiledTime = build(compiled, types, valueMaps, rounds);
+		System.out.println(rounds * types.size() + " objects");
+		System.out.println("reflective: " + reflectiveTime + " ms");
+		System.out.println("compiled: " + compiledTime + " ms");
+		System.out.println("speed-up: " + (compiledTime == 0 ? 0
+				: (double) reflectiveTime / compiledTime));
+	}
+
+	/*
+	 * Value maps of a few common data values, with values given both as
+	 * strings and as objects
+	 */
+	private static List<Map<String, Object>> valueMaps(List<String> types) {
+		List<Map<String, Object>> valueMaps =
+			new ArrayList<Map<String, Object>>();
+
+		Map<String, Object> quantity = new HashMap<String, Object>();
+		quantity.put("units", "mmHg");
+		quantity.put("magnitude", "120.5");
+		quantity.put("precision", "1");
+		types.add("DvQuantity");
+		valueMaps.add(quantity);
+
+		Map<String, Object> count = new HashMap<String, Object>();
+		count.put("magnitude", new Long(12));
+		types.add("DvCount");
+		valueMaps.add(count);
+
+		Map<String, Object> proportion = new HashMap<String, Object>();
+		proportion.put("numerator", 1.0);
+		proportion.put("denominator", 2.0);
+		proportion.put("type", "" + ProportionKind.RATIO.getValue());
+		types.add("DV_PROPORTION");
+		valueMaps.add(proportion);
+
+		Map<String, Object> element = new HashMap<String, Object>();
+		element.put("archetype_node_id", "at0001");
+		element.put("name", new DvText("element"));
+		element.put("value", new DvText("value"));
+		types.add("ELEMENT");
+		valueMaps.add(element);
+
+		return valueMaps;
+	}
+
+	private static long build(RMObjectBuilder builder, List<String> types,
+			List<Map<String, Object>> valueMaps, int rounds) throws Exception {
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < rounds; i++) {
+			for (int j = 0, n = types.size(); j < n; j++) {
+				builder.construct(types.get(j), valueMaps.get(j));
+			}
+		}
+		return System.currentTimeMillis() - start;
+	}
+}
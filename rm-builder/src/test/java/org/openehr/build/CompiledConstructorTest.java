@@ -0,0 +1,101 @@
+package org.openehr.build;
+
+import java.util.*;
+
+import org.openehr.rm.RMObject;
+import org.openehr.rm.datastructure.itemstructure.ItemList;
+import org.openehr.rm.datastructure.itemstructure.representation.Element;
+import org.openehr.rm.datatypes.quantity.DvCount;
+import org.openehr.rm.datatypes.quantity.DvProportion;
+import org.openehr.rm.datatypes.quantity.DvQuantity;
+import org.openehr.rm.datatypes.quantity.ProportionKind;
+import org.openehr.rm.datatypes.text.DvText;
+
+/**
+ * Checks that the compiled construction path builds the same objects as the
+ * reflective one
+ */
+public class CompiledConstructorTest extends BuildTestBase {
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		Map<SystemValue, Object> values = new HashMap<SystemValue, Object>();
+		values.put(SystemValue.LANGUAGE, lang);
+		values.put(SystemValue.CHARSET, charset);
+		values.put(SystemValue.ENCODING, charset);
+		values.put(SystemValue.TERMINOLOGY_SERVICE, ts);
+		values.put(SystemValue.MEASUREMENT_SERVICE, ms);
+		compiledBuilder = RMObjectBuilder.getInstance(values, true);
+		valueMap = new HashMap<String, Object>();
+	}
+
+	public void testBuildDvQuantityFromStrings() throws Exception {
+		valueMap.put("units", "mmHg");
+		valueMap.put("magnitude", "120.5");
+		valueMap.put("precision", "1");
+		assertSameObject("DvQuantity", DvQuantity.class);
+	}
+
+	public void testBuildDvCountFromLong() throws Exception {
+		valueMap.put("magnitude", new Long(12));
+		valueMap.put("accuracy", new Float(0.5));
+		assertSameObject("DvCount", DvCount.class);
+	}
+
+	public void testBuildDvProportionWithKindAsString() throws Exception {
+		valueMap.put("numerator", 1.0);
+		valueMap.put("denominator", 2.0);
+		valueMap.put("type", "" + ProportionKind.RATIO.getValue());
+		assertSameObject("DV_PROPORTION", DvProportion.class);
+	}
+
+	public void testBuildItemListFromArray() throws Exception {
+		Element element = new Element("at0002", new DvText("element"),
+				new DvQuantity("mmHg", 120.0, ms));
+		valueMap.put("archetype_node_id", "at0001");
+		valueMap.put("name", text("test item list"));
+		valueMap.put("items", new Object[] { element });
+		assertSameObject("ITEM_LIST", ItemList.class);
+	}
+
+	public void testMissingRequiredAttribute() throws Exception {
+		valueMap.put("units", "mmHg");
+		try {
+			compiledBuilder.construct("DvQuantity", valueMap);
+			fail("attribute missing exception should be thrown here");
+		} catch (Exception e) {
+			assertTrue(e instanceof AttributeMissingException);
+		}
+	}
+
+	public void testBadStringValue() throws Exception {
+		valueMap.put("magnitude", "wrong type");
+		try {
+			compiledBuilder.construct("DvCount", valueMap);
+			fail("attribute format exception should be thrown here");
+		} catch (Exception e) {
+			assertTrue(e instanceof AttributeFormatException);
+		}
+	}
+
+	public void testWrongValueType() throws Exception {
+		valueMap.put("value", "text");
+		valueMap.put("language", new Integer(1));
+		try {
+			compiledBuilder.construct("DvText", valueMap);
+			fail("building exception should be thrown here");
+		} catch (RMObjectBuildingException e) {
+			assertFalse(e instanceof AttributeFormatException);
+		}
+	}
+
+	private void assertSameObject(String type, Class rmClass) throws Exception {
+		RMObject expected = builder.construct(type, valueMap);
+		RMObject actual = compiledBuilder.construct(type, valueMap);
+		assertTrue("failed to build " + rmClass, rmClass.isInstance(actual));
+		assertEquals(expected, actual);
+	}
+
+	private RMObjectBuilder compiledBuilder;
+	private Map<String, Object> valueMap;
+}
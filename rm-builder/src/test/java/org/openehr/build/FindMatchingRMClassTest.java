@@ -161,6 +161,25 @@ public class FindMatchingRMClassTest extends TestCase {
 		assertMatchedRMClass("Archetyped");
 	}
 	
+	public void testNoMatchWithUnknownAttribute() throws Exception {
+		valueMap.put("units", "mmHg");
+		valueMap.put("magnitude", 120.0);
+		valueMap.put("unknownAttribute", "value");
+		assertMatchedRMClass(null);
+	}
+
+	public void testNoMatchWithNullRequiredValue() throws Exception {
+		valueMap.put("terminologyId", new TerminologyID("openehr"));
+		valueMap.put("codeString", null);
+		assertMatchedRMClass(null);
+	}
+
+	public void testNoMatchWithWrongValueType() throws Exception {
+		valueMap.put("terminologyId", new TerminologyID("openehr"));
+		valueMap.put("codeString", new Integer(234));
+		assertMatchedRMClass(null);
+	}
+
 	private void assertMatchedRMClass(String expectedRMClass) {
 		String actualRMClass = builder.findMatchingRMClass(valueMap);
 		assertEquals("failed to match " + expectedRMClass, expectedRMClass,
@@ -0,0 +1,58 @@
+package org.openehr.build;
+
+import java.util.Map;
+
+import org.openehr.rm.datatypes.quantity.DvQuantity;
+import org.openehr.rm.datatypes.text.DvText;
+import org.openehr.rm.support.identification.TerminologyID;
+
+import junit.framework.TestCase;
+
+public class RMClassDescriptorTest extends TestCase {
+
+	public void testDescriptorIsSharedPerClass() throws Exception {
+		RMClassDescriptor descriptor = RMClassDescriptor.forClass(DvText.class);
+		assertNotNull("descriptor missing", descriptor);
+		assertSame("descriptor not cached", descriptor,
+				RMClassDescriptor.forClass(DvText.class));
+		assertEquals(DvText.class, descriptor.getRMClass());
+	}
+
+	public void testAttributesInConstructorOrder() throws Exception {
+		RMClassDescriptor descriptor = RMClassDescriptor.forClass(DvQuantity.class);
+		Class[] types = descriptor.getConstructor().getParameterTypes();
+		assertEquals("size", types.length, descriptor.size());
+		for (int i = 0; i < descriptor.size(); i++) {
+			String name = descriptor.getName(i);
+			assertEquals("type of " + name, types[i], descriptor.getType(i));
+			assertEquals("index of " + name, i, descriptor.indexOf(name));
+		}
+		assertEquals("unknown attribute", -1, descriptor.indexOf("unknown"));
+	}
+
+	public void testRequiredAndSystemAttributes() throws Exception {
+		RMClassDescriptor descriptor = RMClassDescriptor.forClass(DvQuantity.class);
+		int magnitude = descriptor.indexOf("magnitude");
+		assertTrue("magnitude required", descriptor.isRequired(magnitude));
+		assertTrue(descriptor.getRequiredNames().contains("magnitude"));
+		assertEquals("default magnitude", new Double(0),
+				descriptor.getDefaultValue(magnitude));
+
+		int service = descriptor.indexOf("measurementService");
+		assertTrue("measurementService system", descriptor.isSystem(service));
+		assertEquals(SystemValue.MEASUREMENT_SERVICE,
+				descriptor.getSystemValue(service));
+	}
+
+	public void testAttributeTypesUnmodifiable() throws Exception {
+		Map<String, Class> types = new RMObjectBuilder().retrieveAttribute(
+				"TerminologyID");
+		assertEquals(String.class, types.get("value"));
+		try {
+			types.put("extra", String.class);
+			fail("attribute types should be unmodifiable");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+}
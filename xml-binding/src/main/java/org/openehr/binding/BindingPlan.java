@@ -0,0 +1,453 @@
+/*
+ * component:   "openEHR Java Reference Implementation"
+ * description: "Class BindingPlan"
+ * keywords:    "XML binding"
+ *
+ * file:        "$URL$"
+ * revision:    "$LastChangedRevision$"
+ * last_change: "$LastChangedDate$"
+ */
+package org.openehr.binding;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.*;
+
+import javax.xml.namespace.QName;
+
+import org.apache.log4j.Logger;
+import org.apache.xmlbeans.SchemaLocalAttribute;
+import org.apache.xmlbeans.SchemaParticle;
+import org.apache.xmlbeans.SchemaType;
+import org.apache.xmlbeans.XmlOptions;
+import org.openehr.build.RMClassDescriptor;
+import org.openehr.rm.common.archetyped.AttributeAccessor;
+
+/**
+ * Reflection lookups needed to bind one class, resolved once and reused
+ * for every instance of the class.
+ * <p>
+ * {@link ToXML} holds the getters of a RM class with the matching setters
+ * and addNew methods of its XMLBeans class and the factory method creating
+ * the XMLBeans object. {@link ToRM} holds the getters of a XMLBeans class
+ * and the name of the RM class they are bound to. {@link ToStream} holds the
+ * schema type of a RM class with the getters of its XML attributes and
+ * elements in schema order.
+ */
+final class BindingPlan {
+
+	private BindingPlan() {
+	}
+
+	/**
+	 * Plan binding instances of a RM class to XMLBeans objects
+	 */
+	static final class ToXML {
+
+		/**
+		 * Resolves the plan of given RM class
+		 *
+		 * @param rmClass
+		 * @param attributeNames names of the RM attributes of the class
+		 * @param asDocument true if the object is the root of a document
+		 */
+		ToXML(Class rmClass, Set<String> attributeNames, boolean asDocument)
+				throws Exception {
+
+			String className = rmClass.getSimpleName();
+			Class xmlClass;
+			if (asDocument) {
+				// when serializing back to XML strings, XMLBeans needs a Document wrapper to be able to write a
+				// proper root element. If it doesn't have one, it will output an <xml-fragment/>
+				Class factoryClass;
+				try {
+					factoryClass = Class.forName(XML_BINDING_PACKAGE +
+									className + "Document$Factory");
+				} catch (ClassNotFoundException e) {
+					factoryClass = Class.forName(XML_BINDING_PACKAGE +
+									className.toUpperCase() + "Document$Factory");
+				}
+				factoryMethod = factoryClass.getMethod(NEW_INSTANCE,
+						XmlOptions.class);
+
+				Object documentObj = factoryMethod.invoke(null,
+						(XmlOptions) null);
+				Method addNew = null;
+				for (Method method : documentObj.getClass().getMethods()) {
+					if (method.getName().startsWith("addNew")) {
+						addNew = method;
+						break;
+					}
+				}
+				if (addNew == null) {
+					throw new XMLBindingException("Could not find XXXDocument.addNewXXX() method to invoke");
+				}
+				documentAddNew = addNew;
+				xmlClass = addNew.invoke(documentObj).getClass();
+
+			} else {
+				xmlClass = Class.forName(XML_BINDING_PACKAGE +
+								className.toUpperCase());
+
+				// debug code only
+				if(xmlClass.getClasses().length != 1) {
+					log.debug("XMLBinding: bindToXML(): xmlClass.getClass()=" + xmlClass.getClass());
+					log.debug("XMLBinding: bindToXML(): xmlClass.toString()=" + xmlClass.toString());
+					for(Class clazz : xmlClass.getClasses()) {
+						log.debug("\t clazz.getClass()=" + clazz.getClass());
+						log.debug("\t clazz.toString()=" + clazz.toString());
+					}
+				}
+
+				// ES modification: pick the method with an XmlOptions
+				// parameter to add openehr (default) and xsi namespaces
+				Class factoryClass = xmlClass.getClasses()[0];
+				factoryMethod = factoryClass.getMethod(NEW_INSTANCE,
+						XmlOptions.class);
+				documentAddNew = null;
+			}
+			this.xmlClass = xmlClass;
+
+			List<Property> list = new ArrayList<Property>();
+			for (Method getter : rmClass.getMethods()) {
+				String name = getter.getName();
+
+				// cause dead-loop
+				if("getParent".equals(name)) {
+					continue;
+				}
+				if (!isGetter(name, attributeNames)
+						|| getter.getParameterTypes().length > 0) {
+					continue;
+				}
+				String attributeName = getAttributeNameFromGetter(name);
+
+				// skip function according to specs
+				if("isMerged".equals(attributeName)) {
+					continue;
+				}
+				list.add(new Property(getter, attributeName, xmlClass));
+			}
+			properties = list.toArray(new Property[list.size()]);
+		}
+
+		/**
+		 * Creates the XMLBeans object instances are bound to
+		 *
+		 * @param xopt options of the new object
+		 * @return XMLBeans object
+		 */
+		Object newXMLObject(XmlOptions xopt) throws Exception {
+			Object xmlObj = factoryMethod.invoke(null, xopt);
+			if (documentAddNew != null) {
+				xmlObj = documentAddNew.invoke(xmlObj);
+			}
+			return xmlObj;
+		}
+
+		/* fields */
+		final Class xmlClass;
+		final Property[] properties;
+		private final Method factoryMethod;
+		private final Method documentAddNew;
+	}
+
+	/**
+	 * Getter of a RM attribute with the XMLBeans methods setting it
+	 */
+	static final class Property {
+
+		Property(Method getter, String attributeName, Class xmlClass) {
+			this.getter = getter;
+			this.attributeName = attributeName;
+
+			listSetter = findSetter(attributeName, xmlClass, true);
+			addNew = findAddNew(attributeName, xmlClass);
+
+			// TODO fix for mismatched attribute name in XSD and RM
+			String xmlName = "nullFlavor".equals(attributeName)
+					? "nullFlavour" : attributeName;
+			setter = findSetter(xmlName, xmlClass, false);
+
+			// special handling deals with 'real' typed
+			// attributes in specs but typed 'float' in xsd
+			String setterName = setter == null ? null : setter.getName();
+			floatValue = "setAccuracy".equals(setterName)
+					|| "setDenominator".equals(setterName)
+					|| "setNumerator".equals(setterName);
+		}
+
+		/* fields */
+		final Method getter;
+		final String attributeName;
+		final Method setter;
+		final Method listSetter;
+		final Method addNew;
+		final boolean floatValue;
+	}
+
+	/**
+	 * Plan binding instances of a XMLBeans class to RM objects
+	 */
+	static final class ToRM {
+
+		/**
+		 * Resolves the plan of given XMLBeans class
+		 *
+		 * @param xmlClass
+		 * @param rmClassName name of the RM class bound to
+		 * @param attributeNames names of the RM attributes of the class
+		 */
+		ToRM(Class xmlClass, String rmClassName, Set<String> attributeNames) {
+			this.rmClassName = rmClassName;
+
+			List<Method> list = new ArrayList<Method>();
+			for (Method method : xmlClass.getMethods()) {
+				if (isGetter(method.getName(), attributeNames)
+						&& method.getParameterTypes().length == 0) {
+					list.add(method);
+				}
+			}
+			getters = list.toArray(new Method[list.size()]);
+			attributes = new String[getters.length];
+			for (int i = 0; i < getters.length; i++) {
+				attributes[i] = getAttributeNameFromGetter(
+						getters[i].getName());
+			}
+		}
+
+		/* fields */
+		final String rmClassName;
+		final Method[] getters;
+		final String[] attributes;
+	}
+
+	/**
+	 * Plan writing instances of a RM class as XML without XMLBeans objects
+	 */
+	static final class ToStream {
+
+		/**
+		 * Resolves the plan of given RM class from the schema type of its
+		 * XMLBeans class
+		 *
+		 * @param rmClass
+		 * @throws XMLBindingException if the class has no schema type
+		 */
+		ToStream(Class rmClass) throws XMLBindingException {
+			SchemaType type;
+			try {
+				Class xmlClass = Class.forName(XML_BINDING_PACKAGE
+						+ rmClass.getSimpleName().toUpperCase());
+				type = (SchemaType) xmlClass.getField("type").get(null);
+			} catch (Exception e) {
+				throw new XMLBindingException("no schema type of "
+						+ rmClass.getName() + ", " + e.getMessage());
+			}
+			schemaType = type;
+			RMClassDescriptor descriptor = RMClassDescriptor.forClass(rmClass);
+
+			List<Node> list = new ArrayList<Node>();
+			SchemaLocalAttribute[] xmlAttributes =
+				schemaType.getAttributeModel() == null
+					? new SchemaLocalAttribute[0]
+					: schemaType.getAttributeModel().getAttributes();
+			for (SchemaLocalAttribute attribute : xmlAttributes) {
+				addNode(list, rmClass, descriptor, attribute.getName(),
+						attribute.getType());
+			}
+			attributes = list.toArray(new Node[list.size()]);
+
+			list.clear();
+			if (schemaType.getContentModel() != null) {
+				addElements(list, rmClass, descriptor,
+						schemaType.getContentModel());
+			}
+			elements = list.toArray(new Node[list.size()]);
+		}
+
+		/* adds the element particles of a content model in schema order */
+		private static void addElements(List<Node> list, Class rmClass,
+				RMClassDescriptor descriptor, SchemaParticle particle) {
+			if (particle.getParticleType() == SchemaParticle.ELEMENT) {
+				addNode(list, rmClass, descriptor, particle.getName(),
+						particle.getType());
+			} else if (particle.getParticleType() != SchemaParticle.WILDCARD) {
+				for (SchemaParticle child : particle.getParticleChildren()) {
+					addElements(list, rmClass, descriptor, child);
+				}
+			}
+		}
+
+		/* adds the node of a RM attribute, if the class has one */
+		private static void addNode(List<Node> list, Class rmClass,
+				RMClassDescriptor descriptor, QName name, SchemaType type) {
+			String attributeName = toCamelCase(name.getLocalPart());
+
+			// skip function according to specs
+			if ("isMerged".equals(attributeName)) {
+				return;
+			}
+			if (descriptor != null && descriptor.indexOf(attributeName) < 0) {
+				return;
+			}
+			AttributeAccessor accessor = AttributeAccessor.forAttribute(
+					rmClass, attributeName);
+			if (!accessor.isReadable()) {
+				return;
+			}
+			list.add(new Node(name.getLocalPart(), accessor, type));
+		}
+
+		/* fields */
+		final SchemaType schemaType;
+		final Node[] attributes;
+		final Node[] elements;
+	}
+
+	/**
+	 * Getter of a RM attribute with the schema type it is written as
+	 */
+	static final class Node {
+
+		Node(String xmlName, AttributeAccessor accessor, SchemaType type) {
+			this.xmlName = xmlName;
+			this.accessor = accessor;
+			this.type = type;
+			simple = type.isSimpleType()
+					|| type.getContentType() == SchemaType.SIMPLE_CONTENT;
+			SchemaType primitive = type.getPrimitiveType();
+			builtinType = primitive == null ? SchemaType.BTC_NOT_BUILTIN
+					: primitive.getBuiltinTypeCode();
+		}
+
+		/* fields */
+		final String xmlName;
+		final AttributeAccessor accessor;
+		final SchemaType type;
+		final boolean simple;
+		final int builtinType;
+	}
+
+	/**
+	 * Name of the RM class of given XMLBeans class
+	 *
+	 * @param xmlClass
+	 * @return simple class name without "Impl"
+	 */
+	static String rmClassName(Class xmlClass) {
+		String className = xmlClass.getSimpleName();
+		if (className.endsWith("Impl")) {
+			className = className.substring(0, className.length() - 4);
+		}
+		return className;
+	}
+
+	static Method findSetter(String attributeName, Class xmlClass,
+			boolean isList) {
+		Method[] methods = xmlClass.getMethods();
+		String name = "set" + attributeName.substring(0, 1).toUpperCase() +
+						attributeName.substring(1);
+
+		if(isList) {
+			name += "Array";
+		}
+
+		log.debug("search method of name '" + name + "'");
+
+		for(Method method : methods) {
+			if(method.getName().equals(name)) {
+				Type[] paras = method.getParameterTypes();
+				if(isList) {
+					if(paras.length == 2) {
+						return method;
+					}
+				} else if(paras.length == 1) {
+					return method;
+				}
+			}
+		}
+		return null;
+	}
+
+	static Method findAddNew(String attributeName, Class xmlClass) {
+		Method[] methods = xmlClass.getMethods();
+		String name = "addNew" + attributeName.substring(0, 1).toUpperCase() +
+						attributeName.substring(1);
+
+		log.debug("search method of name '" + name + "'");
+
+		for(Method method : methods) {
+			if(method.getName().equals(name)) {
+				return method;
+			}
+		}
+		return null;
+	}
+
+	/* turns an underscore separated name into camel case */
+	static String toCamelCase(String name) {
+		int index = name.indexOf('_');
+		if (index < 0) {
+			return name;
+		}
+		StringBuffer buf = new StringBuffer(name.length());
+		buf.append(name, 0, index);
+		boolean upper = true;
+		for (int i = index + 1; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c == '_') {
+				upper = true;
+			} else if (upper) {
+				buf.append(Character.toUpperCase(c));
+				upper = false;
+			} else {
+				buf.append(c);
+			}
+		}
+		return buf.toString();
+	}
+
+	/* checks if the given method is a known getter of attributes */
+	static boolean isGetter(String method, Set<String> attributes) {
+		if (!method.startsWith("get")) {
+			return false;
+		}
+		String name = getAttributeNameFromGetter(method);
+		return attributes.contains(name);
+	}
+
+	/* turns a getter's name into an attribute name */
+	static String getAttributeNameFromGetter(String name) {
+		name = name.substring(3, name.length());
+		name = name.substring(0, 1).toLowerCase() + name.substring(1);
+		if(name.endsWith("Array")) {
+			name = name.substring(0, name.length() - 5);
+		}
+		return name;
+	}
+
+	/* logger */
+	private static Logger log = Logger.getLogger(BindingPlan.class);
+
+	/* namespace for generated binding class */
+	static final String XML_BINDING_PACKAGE = "org.openehr.schemas.v1.";
+
+	/* factory method name */
+	private static final String NEW_INSTANCE = "newInstance";
+}
+/*
+ * ***** BEGIN LICENSE BLOCK ***** Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the 'License'); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is BindingPlan.java
+ *
+ * ***** END LICENSE BLOCK *****
+ */
@@ -0,0 +1,377 @@
+/*
+ * component:   "openEHR Java Reference Implementation"
+ * description: "Class BulkXMLImporter"
+ * keywords:    "XML binding"
+ *
+ * file:        "$URL$"
+ * revision:    "$LastChangedRevision$"
+ * last_change: "$LastChangedDate$"
+ */
+package org.openehr.binding;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileFilter;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.apache.log4j.Logger;
+import org.openehr.build.SystemValue;
+
+/**
+ * Binds many openEHR XML files to RM objects in parallel.
+ * <p>
+ * Files are read and bound by a fixed pool of worker threads, each with
+ * its own {@link XMLStreamBinding}. At most a bounded number of files are
+ * read ahead of the calling thread, so the files may come from a lazy
+ * iterator of any length. The bound RM objects are handed to a
+ * {@link Handler} on the calling thread, either in the order of the files
+ * or as soon as they are bound. A file that fails to bind is recorded in the
+ * {@link Report} of the import and does not stop the other files.
+ */
+public class BulkXMLImporter {
+
+	/**
+	 * Receives the RM objects bound from the files, one at a time on the
+	 * thread running the import
+	 */
+	public interface Handler {
+
+		/**
+		 * Called for each file bound
+		 *
+		 * @param file the file read
+		 * @param rmObj RM object bound from the file
+		 */
+		void bound(File file, Object rmObj);
+	}
+
+	/**
+	 * Creates an importer with given system values
+	 *
+	 * @param values system values of the RM objects
+	 * @param threads number of worker threads, at least 1
+	 * @param maxPending maximum number of files read ahead of the handler,
+	 *        at least threads
+	 * @throws IllegalArgumentException if threads or maxPending invalid
+	 */
+	public BulkXMLImporter(Map<SystemValue, Object> values, int threads,
+			int maxPending) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("invalid threads: " + threads);
+		}
+		if (maxPending < threads) {
+			throw new IllegalArgumentException("invalid maxPending: "
+					+ maxPending);
+		}
+		this.values = values;
+		this.threads = threads;
+		this.maxPending = maxPending;
+	}
+
+	/**
+	 * Creates an importer using the same system values as the default
+	 * constructor of {@link XMLBinding}, with up to four files per thread
+	 * read ahead
+	 *
+	 * @param threads number of worker threads, at least 1
+	 * @throws IllegalArgumentException if threads less than 1
+	 */
+	public BulkXMLImporter(int threads) {
+		this(null, threads, threads * PENDING_PER_THREAD);
+	}
+
+	/**
+	 * Binds all ".xml" files in given directory and its sub-directories, in
+	 * order of their paths
+	 *
+	 * @param directory not null
+	 * @param ordered true to hand the RM objects over in order of the files
+	 * @param handler not null
+	 * @return report of the import
+	 * @throws IllegalArgumentException if directory is not a directory
+	 * @throws InterruptedException if interrupted while waiting for the
+	 *             worker threads
+	 */
+	public Report importDirectory(File directory, boolean ordered,
+			Handler handler) throws InterruptedException {
+		if (directory == null || !directory.isDirectory()) {
+			throw new IllegalArgumentException("not a directory: "
+					+ directory);
+		}
+		List<File> files = new ArrayList<File>();
+		listFiles(directory, files);
+		return importFiles(files.iterator(), ordered, handler);
+	}
+
+	/**
+	 * Binds the files of given iterator, which is only advanced as far as
+	 * the files read ahead allow
+	 *
+	 * @param files not null
+	 * @param ordered true to hand the RM objects over in order of the files
+	 * @param handler not null
+	 * @return report of the import
+	 * @throws IllegalArgumentException if files or handler null
+	 * @throws InterruptedException if interrupted while waiting for the
+	 *             worker threads
+	 */
+	public Report importFiles(Iterator<File> files, boolean ordered,
+			Handler handler) throws InterruptedException {
+		if (files == null) {
+			throw new IllegalArgumentException("null files");
+		}
+		if (handler == null) {
+			throw new IllegalArgumentException("null handler");
+		}
+		Report report = new Report();
+		long start = System.currentTimeMillis();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CompletionService<Task> completion =
+			new ExecutorCompletionService<Task>(executor);
+		LinkedList<Future<Task>> pending = new LinkedList<Future<Task>>();
+		try {
+			while (files.hasNext()) {
+				if (pending.size() >= maxPending) {
+					deliver(next(pending, completion, ordered), handler,
+							report);
+				}
+				Task task = new Task(files.next());
+				pending.add(ordered ? executor.submit(task)
+						: completion.submit(task));
+			}
+			while (!pending.isEmpty()) {
+				deliver(next(pending, completion, ordered), handler, report);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		report.elapsedMillis = System.currentTimeMillis() - start;
+		return report;
+	}
+
+	/*
+	 * Waits for the next task to deliver, the oldest if ordered or else the
+	 * first completed
+	 */
+	private static Task next(LinkedList<Future<Task>> pending,
+			CompletionService<Task> completion, boolean ordered)
+			throws InterruptedException {
+		Future<Task> future;
+		if (ordered) {
+			future = pending.removeFirst();
+		} else {
+			future = completion.take();
+			pending.remove(future);
+		}
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			// tasks catch everything but errors
+			Throwable cause = e.getCause();
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	private static void deliver(Task task, Handler handler, Report report) {
+		report.files++;
+		report.bytes += task.file.length();
+		if (task.error != null) {
+			log.warn("failed to bind " + task.file + ", " + task.error);
+			report.errors.put(task.file, task.error);
+		} else {
+			report.bound++;
+			handler.bound(task.file, task.rmObj);
+		}
+	}
+
+	/*
+	 * Binds one file with the binding of the worker thread
+	 */
+	private final class Task implements Callable<Task> {
+
+		Task(File file) {
+			this.file = file;
+		}
+
+		public Task call() {
+			try {
+				InputStream input = new BufferedInputStream(
+						new FileInputStream(file));
+				try {
+					rmObj = binding().bindToRM(input);
+				} finally {
+					input.close();
+				}
+			} catch (Exception e) {
+				error = e;
+			}
+			return this;
+		}
+
+		/* fields */
+		final File file;
+		Object rmObj;
+		Exception error;
+	}
+
+	/* the binding of the current worker thread */
+	private XMLStreamBinding binding() {
+		XMLStreamBinding binding = bindings.get();
+		if (binding == null) {
+			binding = values == null ? new XMLStreamBinding()
+					: new XMLStreamBinding(values);
+			bindings.set(binding);
+		}
+		return binding;
+	}
+
+	/* adds the xml files under a directory in order of their names */
+	private static void listFiles(File directory, List<File> files) {
+		File[] children = directory.listFiles(XML_OR_DIRECTORY);
+		if (children == null) {
+			return;
+		}
+		Arrays.sort(children);
+		for (File child : children) {
+			if (child.isDirectory()) {
+				listFiles(child, files);
+			} else {
+				files.add(child);
+			}
+		}
+	}
+
+	/**
+	 * Counts, errors and throughput of an import
+	 */
+	public static final class Report {
+
+		Report() {
+		}
+
+		/**
+		 * Number of files read
+		 *
+		 * @return count of files
+		 */
+		public int getFileCount() {
+			return files;
+		}
+
+		/**
+		 * Number of files bound and handed to the handler
+		 *
+		 * @return count of files
+		 */
+		public int getBoundCount() {
+			return bound;
+		}
+
+		/**
+		 * The errors of files that failed to bind, in the order the files
+		 * were delivered
+		 *
+		 * @return unmodifiable map of errors by file
+		 */
+		public Map<File, Exception> getErrors() {
+			return Collections.unmodifiableMap(errors);
+		}
+
+		/**
+		 * Total size of the files read
+		 *
+		 * @return number of bytes
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * Time taken by the import, handler included
+		 *
+		 * @return milliseconds
+		 */
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		/**
+		 * Files read per second
+		 *
+		 * @return throughput, 0 if no time elapsed
+		 */
+		public double getFilesPerSecond() {
+			return elapsedMillis == 0 ? 0 : files * 1000.0 / elapsedMillis;
+		}
+
+		/**
+		 * Bytes read per second
+		 *
+		 * @return throughput, 0 if no time elapsed
+		 */
+		public double getBytesPerSecond() {
+			return elapsedMillis == 0 ? 0 : bytes * 1000.0 / elapsedMillis;
+		}
+
+		/**
+		 * String representation of the report
+		 *
+		 * @return string form
+		 */
+		public String toString() {
+			return files + " files, " + bound + " bound, " + errors.size()
+					+ " failed in " + elapsedMillis + " ms ("
+					+ Math.round(getFilesPerSecond()) + " files/s)";
+		}
+
+		/* fields */
+		private int files;
+		private int bound;
+		private long bytes;
+		private long elapsedMillis;
+		private final Map<File, Exception> errors =
+			new LinkedHashMap<File, Exception>();
+	}
+
+	/* logger */
+	private static Logger log = Logger.getLogger(BulkXMLImporter.class);
+
+	/* default files read ahead per worker thread */
+	private static final int PENDING_PER_THREAD = 4;
+
+	private static final FileFilter XML_OR_DIRECTORY = new FileFilter() {
+		public boolean accept(File file) {
+			return file.isDirectory()
+					|| file.getName().toLowerCase().endsWith(".xml");
+		}
+	};
+
+	/* fields */
+	private final Map<SystemValue, Object> values;
+	private final int threads;
+	private final int maxPending;
+	private final ThreadLocal<XMLStreamBinding> bindings =
+		new ThreadLocal<XMLStreamBinding>();
+}
+/*
+ * ***** BEGIN LICENSE BLOCK ***** Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the 'License'); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is BulkXMLImporter.java
+ *
+ * ***** END LICENSE BLOCK *****
+ */
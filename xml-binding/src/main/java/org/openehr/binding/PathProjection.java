@@ -0,0 +1,349 @@
+/*
+ * component:   "openEHR Java Reference Implementation"
+ * description: "Class PathProjection"
+ * keywords:    "XML binding"
+ *
+ * file:        "$URL$"
+ * revision:    "$LastChangedRevision$"
+ * last_change: "$LastChangedDate$"
+ */
+package org.openehr.binding;
+
+import java.util.*;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.openehr.build.RMClassDescriptor;
+import org.openehr.rm.common.archetyped.AttributeAccessor;
+import org.openehr.rm.common.archetyped.CompiledPath;
+import org.openehr.rm.common.archetyped.Locatable;
+
+/**
+ * A set of paths whose values are bound from openEHR XML by
+ * {@link XMLStreamBinding#bindPaths(java.io.InputStream, PathProjection)}
+ * without binding the rest of the document.
+ * <p>
+ * The paths are kept in a trie of their segments. While reading, elements
+ * that cannot lead to any of the paths are skipped unread. An element is
+ * only bound to a RM object if it is the value of a path or a name
+ * predicate has to be checked on it; the rest of the paths below it are
+ * then taken from the object. Elements are matched to predicates on
+ * archetype node id by their <code>archetype_node_id</code> attribute.
+ * <p>
+ * The values are the same as {@link Locatable#itemsAtPaths(Collection)}
+ * gives for the RM object of the whole document, except that a path to a
+ * collection without any element has no value. A projection holds no
+ * state of the documents read, so one can be shared by any number of
+ * threads.
+ */
+public final class PathProjection {
+
+	/**
+	 * Creates a projection of given paths
+	 *
+	 * @param paths not null
+	 * @throws IllegalArgumentException if paths or any path null
+	 */
+	public PathProjection(Collection<String> paths) {
+		if (paths == null) {
+			throw new IllegalArgumentException("null paths");
+		}
+		this.paths = new ArrayList<String>(paths);
+		List<Node> list = new ArrayList<Node>();
+		this.root = new Node(null, list);
+		for (int p = 0; p < this.paths.size(); p++) {
+			CompiledPath compiled = CompiledPath.compile(this.paths.get(p));
+			Node node = root;
+			for (int i = 0; i < compiled.size(); i++) {
+				node = node.child(compiled.getSegment(i), list);
+			}
+			node.paths.add(p);
+		}
+		this.nodes = list.size();
+	}
+
+	/**
+	 * The paths of this projection, in the order given
+	 *
+	 * @return unmodifiable list of paths
+	 */
+	public List<String> getPaths() {
+		return Collections.unmodifiableList(paths);
+	}
+
+	/*
+	 * Reads the values of the paths from the current element of given
+	 * reader, bound as an object of given RM class
+	 */
+	Map<String, Object> evaluate(XMLStreamReader reader, Class rmClass,
+			XMLStreamBinding binding) throws XMLStreamException,
+			XMLBindingException {
+		State state = new State();
+		if (root.isTerminal()) {
+			root.select(binding.bindElement(reader, rmClass), false, state);
+		} else {
+			stream(reader, rmClass, Collections.singletonList(root), binding,
+					state);
+		}
+		Map<String, Object> values = new LinkedHashMap<String, Object>();
+		for (int p = 0; p < paths.size(); p++) {
+			values.put(paths.get(p), state.found[p]);
+		}
+		return values;
+	}
+
+	/*
+	 * Reads the current element as an object of given RM class, visiting
+	 * only the child elements wanted by given nodes; the reader is left on
+	 * the end tag of the element
+	 */
+	private void stream(XMLStreamReader reader, Class rmClass,
+			List<Node> active, XMLStreamBinding binding, State state)
+			throws XMLStreamException, XMLBindingException {
+		RMClassDescriptor descriptor = RMClassDescriptor.forClass(rmClass);
+		if (descriptor == null) {
+			XMLStreamBinding.skipElement(reader);
+			return;
+		}
+		for (Node node : active) {
+			for (Node child : node.children) {
+				int index = descriptor.indexOf(child.attribute);
+				String text = reader.getAttributeValue(null,
+						child.segment.getAttributeName());
+				if (text != null && index >= 0 && child.isTerminal()) {
+					child.put(XMLStreamBinding.convert(text, XMLStreamBinding
+							.elementType(descriptor, index), child.attribute),
+							state);
+				}
+			}
+		}
+
+		while (true) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				return;
+			} else if (event != XMLStreamConstants.START_ELEMENT) {
+				continue;
+			}
+			String attribute = BindingPlan.toCamelCase(reader.getLocalName());
+			int index = descriptor.indexOf(attribute);
+			if (index < 0 || !hasChild(active, attribute)) {
+				XMLStreamBinding.skipElement(reader);
+				continue;
+			}
+			Class type = binding.elementClass(reader, descriptor, index);
+			Class attributeType = descriptor.getType(index);
+			boolean collection = attributeType.isArray()
+					|| Collection.class.isAssignableFrom(attributeType);
+			boolean locatable = Locatable.class.isAssignableFrom(type);
+			String nodeId = reader.getAttributeValue(null, ARCHETYPE_NODE_ID);
+
+			List<Node> wanted = null;
+			boolean bind = false;
+			for (Node node : active) {
+				for (Node child : node.children) {
+					if (child.attribute.equals(attribute)
+							&& child.wants(state, collection, locatable,
+								nodeId)) {
+						if (wanted == null) {
+							wanted = new ArrayList<Node>(1);
+						}
+						wanted.add(child);
+						bind |= child.needsObject();
+					}
+				}
+			}
+			if (wanted == null) {
+				XMLStreamBinding.skipElement(reader);
+			} else if (bind) {
+				Object value;
+				if (XMLStreamBinding.xsiType(reader) != null
+						|| XMLStreamBinding.isRMClass(type)) {
+					value = binding.bindElement(reader, type);
+				} else {
+					value = XMLStreamBinding.convert(reader.getElementText(),
+							type, attribute);
+				}
+				for (Node child : wanted) {
+					child.select(value, collection, state);
+				}
+			} else if (XMLStreamBinding.isRMClass(type)) {
+				for (Node child : wanted) {
+					state.visited[child.id] = true;
+				}
+				stream(reader, type, wanted, binding, state);
+			} else {
+				XMLStreamBinding.skipElement(reader);
+			}
+		}
+	}
+
+	/* true if any of given nodes has a child segment of given attribute */
+	private static boolean hasChild(List<Node> nodes, String attribute) {
+		for (Node node : nodes) {
+			for (Node child : node.children) {
+				if (child.attribute.equals(attribute)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Values found so far of one document
+	 */
+	private final class State {
+
+		/* fields */
+		final Object[] found = new Object[paths.size()];
+		final boolean[] visited = new boolean[nodes];
+	}
+
+	/*
+	 * A segment with the child segments following it and the paths
+	 * ending with it
+	 */
+	private static final class Node {
+
+		Node(CompiledPath.Segment segment, List<Node> nodes) {
+			this.segment = segment;
+			this.attribute = segment == null ? null
+					: BindingPlan.toCamelCase(segment.getAttributeName());
+			this.id = nodes.size();
+			nodes.add(this);
+		}
+
+		Node child(CompiledPath.Segment segment, List<Node> nodes) {
+			for (Node child : children) {
+				if (child.segment.toString().equals(segment.toString())) {
+					return child;
+				}
+			}
+			Node child = new Node(segment, nodes);
+			children.add(child);
+			return child;
+		}
+
+		boolean isTerminal() {
+			return !paths.isEmpty();
+		}
+
+		/*
+		 * True if an element with given archetype node id can be an item
+		 * of this segment. Only the first item is taken, except by paths
+		 * to all items of a collection.
+		 */
+		boolean wants(State state, boolean collection, boolean locatable,
+				String nodeId) {
+			if (collection && !segment.hasPredicate()) {
+				return isTerminal() || !state.visited[id];
+			}
+			if (state.visited[id]) {
+				return false;
+			}
+			return !locatable || segment.getArchetypeNodeId() == null
+					|| segment.getArchetypeNodeId().equals(nodeId);
+		}
+
+		/*
+		 * True if the element has to be bound, as it is a value of a path
+		 * or its name is to be checked
+		 */
+		boolean needsObject() {
+			return isTerminal() || segment.getName() != null;
+		}
+
+		/*
+		 * Takes a bound element as item of this segment if it meets the
+		 * predicate, with the values of the paths below it
+		 */
+		void select(Object value, boolean collection, State state) {
+			if (collection && !segment.hasPredicate()) {
+				boolean first = !state.visited[id];
+				state.visited[id] = true;
+				if (isTerminal()) {
+					List<Object> items = first ? new ArrayList<Object>()
+							: (List<Object>) state.found[paths.get(0)];
+					items.add(value);
+					put(items, state);
+				}
+				if (first) {
+					evaluate(this, value, state);
+				}
+				return;
+			}
+			if (segment != null && !segment.matches(value)) {
+				return;
+			}
+			state.visited[id] = true;
+			put(value, state);
+			evaluate(this, value, state);
+		}
+
+		void put(Object value, State state) {
+			for (int p : paths) {
+				state.found[p] = value;
+			}
+		}
+
+		/* fields */
+		final CompiledPath.Segment segment;
+		final String attribute;
+		final int id;
+		final List<Node> children = new ArrayList<Node>();
+		final List<Integer> paths = new ArrayList<Integer>(1);
+	}
+
+	/*
+	 * Values of the paths below given node, taken from its object the
+	 * same way as Locatable.itemAtPath
+	 */
+	private static void evaluate(Node node, Object parent, State state) {
+		for (Node child : node.children) {
+			CompiledPath.Segment segment = child.segment;
+			Object value = AttributeAccessor.forAttribute(parent.getClass(),
+					segment.getAttributeName()).getValue(parent);
+			if (value != null && segment.hasPredicate()) {
+				value = segment.select(value);
+			}
+			if (value == null) {
+				continue;
+			}
+			state.visited[child.id] = true;
+			child.put(value, state);
+			Object next = value;
+			if (!segment.hasPredicate() && value instanceof ArrayList) {
+				ArrayList list = (ArrayList) value;
+				if (!list.isEmpty()) {
+					next = list.get(0);
+				}
+			}
+			evaluate(child, next, state);
+		}
+	}
+
+	private static final String ARCHETYPE_NODE_ID = "archetype_node_id";
+
+	/* fields */
+	private final List<String> paths;
+	private final Node root;
+	private final int nodes;
+}
+/*
+ * ***** BEGIN LICENSE BLOCK ***** Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the 'License'); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PathProjection.java
+ *
+ * ***** END LICENSE BLOCK *****
+ */
@@ -13,10 +13,9 @@
  */
 package org.openehr.binding;
 
-import java.lang.reflect.Method;
-import java.lang.reflect.Type;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 import org.apache.xmlbeans.XmlOptions;
@@ -60,18 +59,7 @@ public class XMLBinding {
 	 */
 	public XMLBinding() throws XMLBindingException {
 		try {
-			TerminologyService termServ = SimpleTerminologyService
-					.getInstance();
-			MeasurementService measureServ = SimpleMeasurementService
-					.getInstance();
-			CodePhrase charset = new CodePhrase("IANA_character-sets",
-								"UTF-8");
-
-			Map<SystemValue, Object> values = new HashMap<SystemValue, Object>();
-			values.put(SystemValue.TERMINOLOGY_SERVICE, termServ);
-			values.put(SystemValue.MEASUREMENT_SERVICE, measureServ);
-			values.put(SystemValue.CHARSET, charset);						
-			init(values);
+			init(defaultSystemValues());
 
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -79,6 +67,27 @@ public class XMLBinding {
 		}
 	}
 
+	/**
+	 * The system values used by the default constructor
+	 *
+	 * @return new map of system values
+	 * @throws Exception if the terminology service fails to start
+	 */
+	static Map<SystemValue, Object> defaultSystemValues() throws Exception {
+		TerminologyService termServ = SimpleTerminologyService
+				.getInstance();
+		MeasurementService measureServ = SimpleMeasurementService
+				.getInstance();
+		CodePhrase charset = new CodePhrase("IANA_character-sets",
+							"UTF-8");
+
+		Map<SystemValue, Object> values = new HashMap<SystemValue, Object>();
+		values.put(SystemValue.TERMINOLOGY_SERVICE, termServ);
+		values.put(SystemValue.MEASUREMENT_SERVICE, measureServ);
+		values.put(SystemValue.CHARSET, charset);
+		return values;
+	}
+
 	public Object bindToXML(Object obj) throws XMLBindingException {
 		return bindToXML(obj, false);
 	}
@@ -96,196 +105,75 @@ public class XMLBinding {
 			return null;
 		}
 		String className = obj.getClass().getSimpleName();
-		Method[] methods = obj.getClass().getMethods();
 
 		try {
-			Class xmlClass = null;
-			Object xmlObj = null;
-			
-			if (asDocument) {
-				// when serializing back to XML strings, XMLBeans needs a Document wrapper to be able to write a 
-				// proper root element. If it doesn't have one, it will output an <xml-fragment/>
-				Class factoryClass;
-				try {
-					factoryClass = Class.forName(XML_BINDING_PACKAGE +
-				 					className + "Document$Factory");
-				} catch (ClassNotFoundException e) {
-					factoryClass = Class.forName(XML_BINDING_PACKAGE +
-				 					className.toUpperCase() + "Document$Factory");
-				}
-
-				Method factoryMethod = factoryClass.getMethod(NEW_INSTANCE, XmlOptions.class);
-				Object documentObj = factoryMethod.invoke(null, xopt);
-				Class documentClass = documentObj.getClass();
-				Method[] documentMethods = documentClass.getMethods();
-				boolean found = false;
-				for (int i = 0; i < documentMethods.length; i++) {
-					Method documentMethod = documentMethods[i];
-					if (documentMethod.getName().startsWith("addNew")) {
-						xmlObj = documentMethod.invoke(documentObj);
-						xmlClass = xmlObj.getClass();
-						found = true;
-						break;
-					}
-				}
-				if (!found) {
-					throw new XMLBindingException("Could not find XXXDocument.addNewXXX() method to invoke");
-				}
-			} else {
-				xmlClass = Class.forName(XML_BINDING_PACKAGE +
-								className.toUpperCase());
-
-				// debug code only
-				if(xmlClass.getClasses().length != 1) {
-					log.debug("XMLBinding: bindToXML(): xmlClass.getClass()=" + xmlClass.getClass());
-					log.debug("XMLBinding: bindToXML(): xmlClass.toString()=" + xmlClass.toString());
-					for(Class clazz : xmlClass.getClasses()) {
-						log.debug("\t clazz.getClass()=" + clazz.getClass());
-						log.debug("\t clazz.toString()=" + clazz.toString());
-					}
-				}
-
-				Class factoryClass = xmlClass.getClasses()[0];
-		
-				// ES modification: Add xmlOptions containing openehr (default) and xsi namespaces
-				
-				// Method factoryMethod = factoryClass.getMethod(NEW_INSTANCE, null);
-				// Changed to pick the method with an XmlOptions parameter instead
-				Method factoryMethod = factoryClass.getMethod(NEW_INSTANCE, XmlOptions.class);
-				
-				// First prameter null because it's a static method, see:
-				// http://java.sun.com/docs/books/tutorial/reflect/member/methodInvocation.html
-				// Second parameter should be the parameter of XmlObject.Factory.newInstance(XmlOptions options) 
-				// see: http://xmlbeans.apache.org/docs/2.2.0/reference/org/apache/xmlbeans/XmlObject.Factory.html
-				//
-				// Previous code was: Object xmlObj = factoryMethod.invoke(null, null);
-				xmlObj = factoryMethod.invoke(null, xopt);
-			}
-
-			Map<String, Class> attributes = builder.retrieveAttribute(className);
-			Set<String> attributeNames = attributes.keySet();
+			BindingPlan.ToXML plan = toXMLPlan(obj.getClass(), asDocument);
+			Object xmlObj = plan.newXMLObject(xopt);
 			Object attributeValue = null;
-			Method setterMethod = null;
 
-			for (Method method : methods) {
-				String name = method.getName();
+			for (BindingPlan.Property property : plan.properties) {
 
-				// cause dead-loop
-				if("getParent".equals(name)) {
-					continue; //
-				}
+				attributeValue = property.getter.invoke(obj);
 
-				if (isGetter(name, attributeNames)) {
+				if (attributeValue == null) {
+					continue;
+				}
 
-					log.debug("getter: " + name);
+				boolean isList = false;
 
-					if(method.getParameterTypes().length > 0) {
+				if (attributeValue.getClass().isArray()) {
+					Object[] array = (Object[]) attributeValue;
+					if(array.length == 0) {
 						continue;
 					}
-
-					attributeValue = method.invoke(obj, null);
-
-					if (attributeValue == null) {
-						continue;
+					Object[] done = new Object[array.length];
+					for (int i = 0; i < array.length; i++) {
+						done[i] = bindToXML(array[i]);
 					}
+					attributeValue = done;
 
-					log.debug("value.class: " + attributeValue.getClass());
-
-					boolean isList = false;
-
-					if (attributeValue.getClass().isArray()) {
-						Object[] array = (Object[]) attributeValue;
-						if(array.length == 0) {
-							continue;
-						}
-						Object[] done = new Object[array.length];
-						for (int i = 0; i < array.length; i++) {
-							done[i] = bindToXML(array[i]);
-						}
-						attributeValue = done;
-
-					} else if (ProportionKind.class.equals(
-							attributeValue.getClass())) {
-
-						ProportionKind kind = (ProportionKind) attributeValue;
-						attributeValue = BigInteger.valueOf(kind.getValue());
-
-					} else if (isOpenEHRRMClass(attributeValue)) {
+				} else if (ProportionKind.class.equals(
+						attributeValue.getClass())) {
 
-						attributeValue = bindToXML(attributeValue);
+					ProportionKind kind = (ProportionKind) attributeValue;
+					attributeValue = BigInteger.valueOf(kind.getValue());
 
-					} else if(List.class.isAssignableFrom(
-							attributeValue.getClass())) {
+				} else if (isOpenEHRRMClass(attributeValue)) {
 
-						isList = true;
-						List list = (List) attributeValue;
+					attributeValue = bindToXML(attributeValue);
 
-						log.debug("list.size: " + list.size());
+				} else if(attributeValue instanceof List) {
 
-						String attributeName = getAttributeNameFromGetter(name);
-						setterMethod = findSetter(attributeName, xmlClass, isList);
+					isList = true;
+					List list = (List) attributeValue;
 
-						Method addNew = findAddNew(attributeName, xmlClass);
-
-						log.debug("setter: " + setterMethod.getName() + ", xmlClass: " + xmlClass);
-
-						for(int i = 0, j = list.size() - 1; i <= j; i++) {
-							Object value = list.get(i);
-
-							Object[] array = new Object[2];
-
-							addNew.invoke(xmlObj, null);
+					if(property.listSetter == null || property.addNew == null) {
+						throw new XMLBindingException(
+								"failed to find list setter for attribute: "
+								+ property.attributeName + " with type: "
+								+ plan.xmlClass);
+					}
 
-							array[0] = new Integer(i);
-							array[1] = bindToXML(value);
-							setterMethod.invoke(xmlObj, array);
+					for(int i = 0, j = list.size() - 1; i <= j; i++) {
+						property.addNew.invoke(xmlObj);
+						property.listSetter.invoke(xmlObj, new Integer(i),
+								bindToXML(list.get(i)));
+					}
+				}
 
-							log.debug("list.member value set!!!!");
-						}
+				if( ! isList) {
+					if(property.setter == null) {
+						log.error("failed to find setterMethod for attribute: "
+								+ property.attributeName + " with type: "
+								+ plan.xmlClass);
+						continue;
 					}
 
-					if( ! isList) {
-						String attributeName = getAttributeNameFromGetter(name);
-
-						log.debug("attribute: " + attributeName + ", value(" + attributeValue + "), " +
-								"type: " + attributeValue.getClass());
-
-						// TODO fix for mismatched attribute name in XSD and RM 
-						if("nullFlavor".equals(attributeName)) {
-							attributeName = "nullFlavour";
-						}
-						
-						// skip function according to specs
-						if("isMerged".equals(attributeName)) {
-							continue;
-						}
-						
-						setterMethod = findSetter(attributeName, xmlClass, isList);
-
-						if(setterMethod == null) {
-							log.error("failed to find setterMethod for attribute: "
-									+ attributeName + " with type: " + xmlClass);
-							continue;
-						}
-
-						// special handling deals with 'real' typed
-						// attributes in specs but typed 'float' in xsd
-						String setter = setterMethod.getName();
-						if("setAccuracy".equals(setter)
-								|| "setDenominator".equals(setter)
-								|| "setNumerator".equals(setter)) {
-
-							Double d = (Double) attributeValue;
-							attributeValue = d.floatValue();
-						}
-						
-						log.debug("setter: " + setterMethod.getName() +
-								", xmlClass: " + xmlClass +
-								", attributeValue: " + attributeValue +
-								", attributeValue.class: " + attributeValue.getClass());
-
-						setterMethod.invoke(xmlObj, attributeValue);
+					if(property.floatValue) {
+						Double d = (Double) attributeValue;
+						attributeValue = d.floatValue();
 					}
+					property.setter.invoke(xmlObj, attributeValue);
 				}
 			}
 
@@ -298,47 +186,6 @@ public class XMLBinding {
 		}
 	}
 
-	Method findSetter(String attributeName, Class xmlClass, boolean isList) {
-		Method[] methods = xmlClass.getMethods();
-		String name = "set" + attributeName.substring(0, 1).toUpperCase() +
-						attributeName.substring(1);
-
-		if(isList) {
-			name += "Array";
-		}
-
-		log.debug("search method of name '" + name + "'");
-
-		for(Method method : methods) {
-			if(method.getName().equals(name)) {
-				Type[] paras = method.getParameterTypes();
-				if(isList) {
-					if(paras.length == 2) {
-						return method;
-					}
-				} else if(paras.length == 1) {
-					return method;
-				}
-			}
-		}
-		return null;
-	}
-
-	Method findAddNew(String attributeName, Class xmlClass) {
-		Method[] methods = xmlClass.getMethods();
-		String name = "addNew" + attributeName.substring(0, 1).toUpperCase() +
-						attributeName.substring(1);
-
-		log.debug("search method of name '" + name + "'");
-
-		for(Method method : methods) {
-			if(method.getName().equals(name)) {
-				return method;
-			}
-		}
-		return null;
-	}
-
 	Class findXMLAbstractClass(Class xmlClass) throws ClassNotFoundException {
 
 		if( ! xmlClass.getName().contains(XML_BINDING_PACKAGE)) {
@@ -362,104 +209,99 @@ public class XMLBinding {
 	 * @throws Exception
 	 */
 	public Object bindToRM(Object object) throws Exception {
-		Method[] methods = object.getClass().getMethods();
+		BindingPlan.ToRM plan = toRMPlan(object.getClass());
 		Object value = null;
 		Map<String, Object> valueMap = new HashMap<String, Object>();
 
-		String className = object.getClass().getSimpleName();
-		if (className.endsWith("Impl")) {
-			className = className.substring(0, className.length() - 4);
-		}
+		for (int m = 0; m < plan.getters.length; m++) {
+			String attribute = plan.attributes[m];
 
-		Map<String, Class> attributes = builder.retrieveAttribute(className);
-		Set<String> attributeNames = attributes.keySet();
+			value = plan.getters[m].invoke(object);
 
-		log.debug("attributeNames: " + attributeNames);
+			if (log.isInfoEnabled()) {
+				log.info("getter: " + plan.getters[m].getName()
+						+ ", attribute: " + attribute + ", value: " + value);
+			}
 
-		for (Method method : methods) {
-			String name = method.getName();
-			
-			if (isGetter(name, attributeNames)) {
-				
-				if(method.getParameterTypes().length > 0) {
-					continue;
-				}
+			if (value == null) {
+				continue;
+			}
 
-				String attribute = getAttributeNameFromGetter(name);
-				
-				value = method.invoke(object, null);
+			if (value.getClass().isArray()) {
+				Object[] array = (Object[]) value;
+				if(array.length == 0) {
 
-				log.info("getter: " + name + ", attribute: " + attribute +
-						", value: " + value);
-				
-				if (value == null) {
-					
+					// special fix for item_structure.items
+					if("items".equals(attribute)) {
+						valueMap.put(attribute, new ArrayList());
+					}
 					continue;
-				}
 
-				log.debug("value.class: " + value.getClass() + ", "
-						+ isXMLBindingClass(value));
+				} else {
 
-				if (value.getClass().isArray()) {
-					Object[] array = (Object[]) value;
-					if(array.length == 0) {
-						
-						// special fix for item_structure.items
-						if("items".equals(attribute)) {
-							valueMap.put(attribute, new ArrayList());
-						}
-						continue;
-						
-					} else {
-					
-						Object[] done = new Object[array.length];
-						for (int i = 0; i < array.length; i++) {
-							done[i] = bindToRM(array[i]);
-						}
-						value = done;
+					Object[] done = new Object[array.length];
+					for (int i = 0; i < array.length; i++) {
+						done[i] = bindToRM(array[i]);
 					}
+					value = done;
+				}
 
-				} else if (isXMLBindingClass(value)) {
+			} else if (isXMLBindingClass(value)) {
 
-					value = bindToRM(value);
+				value = bindToRM(value);
 
-				}
-				
-				log.debug("attribute: " + attribute + ", value(" + value + ")");
-				
-				valueMap.put(attribute, value);
 			}
+
+			valueMap.put(attribute, value);
 		}
 
-		log.info("building rm class: " + className
-				+ ", with valueMap: " + valueMap);
+		if (log.isInfoEnabled()) {
+			log.info("building rm class: " + plan.rmClassName
+					+ ", with valueMap: " + valueMap);
+		}
 
 		Object rmObj = null;
 
-		rmObj = builder.construct(className, valueMap);
+		rmObj = builder.construct(plan.rmClassName, valueMap);
 
 		return rmObj;
 	}
 
-
-
-	/* checks if the given method is a known getter of attributes */
-	private boolean isGetter(String method, Set<String> attributes) {
-		if (!method.startsWith("get")) {
-			return false;
+	/*
+	 * Returns the cached plan binding given RM class to XML
+	 */
+	private BindingPlan.ToXML toXMLPlan(Class rmClass, boolean asDocument)
+			throws Exception {
+		Map<Class, BindingPlan.ToXML> plans = asDocument
+				? documentPlans : toXMLPlans;
+		BindingPlan.ToXML plan = plans.get(rmClass);
+		if (plan == null) {
+			Map<String, Class> attributes = builder.retrieveAttribute(
+					rmClass.getSimpleName());
+			plan = new BindingPlan.ToXML(rmClass, attributes.keySet(),
+					asDocument);
+			plans.put(rmClass, plan);
 		}
-		String name = getAttributeNameFromGetter(method);
-		return attributes.contains(name);
+		return plan;
 	}
 
-	/* turns a getter's name into an attribute name */
-	private String getAttributeNameFromGetter(String name) {
-		name = name.substring(3, name.length());
-		name = name.substring(0, 1).toLowerCase() + name.substring(1);
-		if(name.endsWith("Array")) {
-			name = name.substring(0, name.length() - 5);
+	/*
+	 * Returns the cached plan binding given XMLBeans class to RM
+	 */
+	private BindingPlan.ToRM toRMPlan(Class xmlClass)
+			throws RMObjectBuildingException {
+		BindingPlan.ToRM plan = toRMPlans.get(xmlClass);
+		if (plan == null) {
+			String className = BindingPlan.rmClassName(xmlClass);
+			Map<String, Class> attributes = builder.retrieveAttribute(className);
+
+			log.debug("attributeNames: " + attributes.keySet());
+
+			plan = new BindingPlan.ToRM(xmlClass, className,
+					attributes.keySet());
+			toRMPlans.put(xmlClass, plan);
 		}
-		return name;
+		return plan;
 	}
 
 	private boolean isXMLBindingClass(Object obj) {
@@ -496,14 +338,11 @@ public class XMLBinding {
 	private static Logger log = Logger.getLogger(XMLBinding.class);
 
 	/* namespace for generated binding class */
-	private static String XML_BINDING_PACKAGE = "org.openehr.schemas.v1.";
+	private static String XML_BINDING_PACKAGE = BindingPlan.XML_BINDING_PACKAGE;
 
 	/* namespace for rm class */
 	private static String OPENEHR_RM_PACKAGE = "org.openehr.rm.";
 
-	/* factory method name */
-	private static String NEW_INSTANCE = "newInstance";
-	
 	public static final String SCHEMA_XSI = "http://www.w3.org/2001/XMLSchema-instance";
 	public static final String SCHEMA_OPENEHR_ORG_V1 = "http://schemas.openehr.org/v1";
 
@@ -512,6 +351,17 @@ public class XMLBinding {
 	
 	/* ES: XMLOptions to make nicer XML */
 	private XmlOptions xopt;
+
+	/* binding plans by RM class, of document roots and of other objects,
+	 * shared by all instances */
+	private static final ConcurrentHashMap<Class, BindingPlan.ToXML> documentPlans =
+		new ConcurrentHashMap<Class, BindingPlan.ToXML>();
+	private static final ConcurrentHashMap<Class, BindingPlan.ToXML> toXMLPlans =
+		new ConcurrentHashMap<Class, BindingPlan.ToXML>();
+
+	/* binding plans by XMLBeans class, shared by all instances */
+	private static final ConcurrentHashMap<Class, BindingPlan.ToRM> toRMPlans =
+		new ConcurrentHashMap<Class, BindingPlan.ToRM>();
 }
 /*
  * ***** BEGIN LICENSE BLOCK ***** Version: MPL 1.1/GPL 2.0/LGPL 2.1
@@ -0,0 +1,751 @@
+/*
+ * component:   "openEHR Java Reference Implementation"
+ * description: "Class XMLStreamBinding"
+ * keywords:    "XML binding"
+ *
+ * file:        "$URL$"
+ * revision:    "$LastChangedRevision$"
+ * last_change: "$LastChangedDate$"
+ */
+package org.openehr.binding;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.log4j.Logger;
+import org.apache.xmlbeans.SchemaGlobalElement;
+import org.apache.xmlbeans.SchemaType;
+import org.apache.xmlbeans.XmlBeans;
+import org.apache.xmlbeans.impl.util.XsTypeConverter;
+import org.openehr.build.RMClassDescriptor;
+import org.openehr.build.RMObjectBuilder;
+import org.openehr.build.RMObjectBuildingException;
+import org.openehr.build.SystemValue;
+import org.openehr.rm.datatypes.quantity.ProportionKind;
+
+/**
+ * Binds openEHR XML straight to RM objects with a StAX reader, and RM
+ * objects straight to openEHR XML with a StAX writer, without building
+ * XMLBeans objects first.
+ * <p>
+ * The XML is expected to conform to the openEHR schemas. Elements and
+ * attributes are matched to the attributes of the RM class of their parent
+ * by name, and the RM class of an element is taken from its
+ * <code>xsi:type</code> or else from the type of the RM attribute. Elements
+ * with no RM attribute are skipped. Only the elements on the path from the
+ * root to the current element are held in memory; each RM object is built
+ * as soon as its end tag is read.
+ * <p>
+ * The RM objects are the same as the ones created by
+ * {@link XMLBinding#bindToRM(Object)} from XMLBeans objects parsed from the
+ * same XML. With a {@link PathProjection} only the values of given paths
+ * are bound, skipping the elements not on any of the paths.
+ * <p>
+ * When writing, the elements of each RM object are written in the order of
+ * the schema, with the <code>v1</code> and <code>xsi</code> prefixes used by
+ * {@link XMLBinding} and an <code>xsi:type</code> wherever the RM type differs
+ * from the type declared in the schema. The output is either indented like
+ * {@link XMLBinding} or compact, without any whitespace between elements.
+ */
+public class XMLStreamBinding {
+
+	/**
+	 * Creates a binding using given system values
+	 *
+	 * @param values
+	 */
+	public XMLStreamBinding(Map<SystemValue, Object> values) {
+		builder = new RMObjectBuilder(values);
+		inputFactory = newInputFactory();
+		outputFactory = XMLOutputFactory.newInstance();
+	}
+
+	/**
+	 * Creates a binding using the same system values as the default
+	 * constructor of {@link XMLBinding}
+	 */
+	public XMLStreamBinding() {
+		try {
+			builder = new RMObjectBuilder(XMLBinding.defaultSystemValues());
+		} catch (Exception e) {
+			throw new RuntimeException("failed to start XMLStreamBinding..", e);
+		}
+		inputFactory = newInputFactory();
+		outputFactory = XMLOutputFactory.newInstance();
+	}
+
+	/*
+	 * Input factory ignoring DTDs and external entities, since the
+	 * documents read may come from anywhere
+	 */
+	private static XMLInputFactory newInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(
+				XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return factory;
+	}
+
+	/**
+	 * Binds the XML document in given stream to a RM object, with the RM
+	 * type of the root element taken from its <code>xsi:type</code> or its
+	 * name
+	 *
+	 * @param input not null
+	 * @return RM object
+	 * @throws XMLBindingException if the XML cannot be read or bound
+	 */
+	public Object bindToRM(InputStream input) throws XMLBindingException {
+		return bindToRM(input, null);
+	}
+
+	/**
+	 * Binds the XML document in given stream to a RM object
+	 *
+	 * @param input not null
+	 * @param rmType RM type of the root element, e.g. "DV_PROPORTION", or
+	 *        null to use the <code>xsi:type</code> or name of the element
+	 * @return RM object
+	 * @throws XMLBindingException if the XML cannot be read or bound
+	 */
+	public Object bindToRM(InputStream input, String rmType)
+			throws XMLBindingException {
+		XMLStreamReader reader = null;
+		try {
+			reader = inputFactory.createXMLStreamReader(input);
+			return bindToRM(reader, rmType);
+		} catch (XMLStreamException e) {
+			throw new XMLBindingException("failed to read XML, "
+					+ e.getMessage());
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					log.warn("failed to close XML reader", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Binds the next element of given reader to a RM object; the reader is
+	 * left on the end tag of the element
+	 *
+	 * @param reader not null
+	 * @param rmType RM type of the element, or null to use the
+	 *        <code>xsi:type</code> or name of the element
+	 * @return RM object
+	 * @throws XMLBindingException if the XML cannot be read or bound
+	 */
+	public Object bindToRM(XMLStreamReader reader, String rmType)
+			throws XMLBindingException {
+		try {
+			while (!reader.isStartElement()) {
+				reader.next();
+			}
+			return bindElement(reader, rootClass(reader, rmType));
+		} catch (XMLStreamException e) {
+			throw new XMLBindingException("failed to read XML, "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Binds the values of given paths from the XML document in given
+	 * stream, with the RM type of the root element taken from its
+	 * <code>xsi:type</code> or its name
+	 *
+	 * @param input not null
+	 * @param paths not null
+	 * @return values keyed by path in the order of the paths, null for
+	 *         paths without a value
+	 * @throws XMLBindingException if the XML cannot be read or bound
+	 * @see PathProjection
+	 */
+	public Map<String, Object> bindPaths(InputStream input,
+			Collection<String> paths) throws XMLBindingException {
+		return bindPaths(input, new PathProjection(paths));
+	}
+
+	/**
+	 * Binds the values of the paths of given projection from the XML
+	 * document in given stream, with the RM type of the root element taken
+	 * from its <code>xsi:type</code> or its name
+	 *
+	 * @param input not null
+	 * @param projection not null
+	 * @return values keyed by path in the order of the paths, null for
+	 *         paths without a value
+	 * @throws XMLBindingException if the XML cannot be read or bound
+	 */
+	public Map<String, Object> bindPaths(InputStream input,
+			PathProjection projection) throws XMLBindingException {
+		XMLStreamReader reader = null;
+		try {
+			reader = inputFactory.createXMLStreamReader(input);
+			while (!reader.isStartElement()) {
+				reader.next();
+			}
+			return projection.evaluate(reader, rootClass(reader, null), this);
+		} catch (XMLStreamException e) {
+			throw new XMLBindingException("failed to read XML, "
+					+ e.getMessage());
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					log.warn("failed to close XML reader", e);
+				}
+			}
+		}
+	}
+
+	/*
+	 * RM class of the current element, given or else from its xsi:type or
+	 * name
+	 */
+	private Class rootClass(XMLStreamReader reader, String rmType)
+			throws XMLBindingException {
+		if (rmType == null) {
+			rmType = xsiType(reader);
+		}
+		if (rmType == null) {
+			rmType = reader.getLocalName().toUpperCase();
+		}
+		return rmClass(rmType);
+	}
+
+	/*
+	 * RM class of given type name
+	 */
+	private Class rmClass(String rmType) throws XMLBindingException {
+		try {
+			return builder.retrieveRMType(rmType);
+		} catch (RMObjectBuildingException e) {
+			throw new XMLBindingException("failed to bind XML, "
+					+ e.getMessage());
+		}
+	}
+
+	/*
+	 * Type of the current element as the value of an attribute of a RM
+	 * class, from its xsi:type or else from the attribute
+	 */
+	Class elementClass(XMLStreamReader reader, RMClassDescriptor descriptor,
+			int index) throws XMLBindingException {
+		String xsiType = xsiType(reader);
+		return xsiType != null ? rmClass(xsiType)
+				: elementType(descriptor, index);
+	}
+
+	/*
+	 * Binds the current element to an object of given RM class; the reader
+	 * is left on the end tag of the element
+	 */
+	Object bindElement(XMLStreamReader reader, Class rmClass)
+			throws XMLStreamException, XMLBindingException {
+		try {
+			List<Frame> stack = new ArrayList<Frame>();
+			stack.add(newFrame(null, rmClass, reader));
+
+			while (true) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					Frame parent = stack.get(stack.size() - 1);
+					String attribute = BindingPlan.toCamelCase(
+							reader.getLocalName());
+					int index = parent.descriptor.indexOf(attribute);
+					if (index < 0) {
+						log.debug("skipping element: " + reader.getLocalName());
+						skipElement(reader);
+						continue;
+					}
+					Class type = elementClass(reader, parent.descriptor, index);
+					if (xsiType(reader) != null || isRMClass(type)) {
+						stack.add(newFrame(attribute, type, reader));
+					} else {
+						parent.add(attribute, index,
+								convert(reader.getElementText(), type,
+										attribute));
+					}
+
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					Frame frame = stack.remove(stack.size() - 1);
+					Object rmObj = frame.build();
+					if (stack.isEmpty()) {
+						return rmObj;
+					}
+					Frame parent = stack.get(stack.size() - 1);
+					parent.add(frame.attribute,
+							parent.descriptor.indexOf(frame.attribute), rmObj);
+
+				} else if (event == XMLStreamConstants.END_DOCUMENT) {
+					throw new XMLBindingException("unexpected end of XML");
+				}
+			}
+		} catch (RMObjectBuildingException e) {
+			throw new XMLBindingException("failed to bind XML, "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes given RM object as an XML document to given stream, encoded
+	 * in UTF-8
+	 *
+	 * @param rmObj not null
+	 * @param output not null, left open
+	 * @param compact true to write without indentation and line breaks
+	 * @throws XMLBindingException if the object cannot be written
+	 */
+	public void bindToXML(Object rmObj, OutputStream output, boolean compact)
+			throws XMLBindingException {
+		XMLStreamWriter writer = null;
+		try {
+			writer = outputFactory.createXMLStreamWriter(output, ENCODING);
+			writer.writeStartDocument(ENCODING, "1.0");
+			if (!compact) {
+				indent(writer, 0);
+			}
+			bindToXML(rmObj, null, writer, compact);
+			writer.writeEndDocument();
+			writer.flush();
+		} catch (XMLStreamException e) {
+			throw new XMLBindingException("failed to write XML, "
+					+ e.getMessage());
+		} finally {
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (XMLStreamException e) {
+					log.warn("failed to close XML writer", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes given RM object as one element to given writer; the namespaces
+	 * used are declared on the element
+	 *
+	 * @param rmObj not null
+	 * @param elementName name of the element, or null to use the global
+	 *        schema element of the RM class or its closest superclass, e.g.
+	 *        "version" for an ORIGINAL_VERSION
+	 * @param writer not null
+	 * @param compact true to write without indentation and line breaks
+	 * @throws XMLBindingException if the object cannot be written
+	 */
+	public void bindToXML(Object rmObj, String elementName,
+			XMLStreamWriter writer, boolean compact)
+			throws XMLBindingException {
+		try {
+			SchemaType declared = null;
+			if (elementName == null) {
+				SchemaGlobalElement element = globalElement(rmObj.getClass());
+				if (element != null) {
+					elementName = element.getName().getLocalPart();
+					declared = element.getType();
+				} else {
+					elementName = writePlan(rmObj.getClass()).schemaType
+							.getName().getLocalPart().toLowerCase();
+				}
+			}
+			writeElement(writer, elementName, rmObj, declared, 0, compact);
+		} catch (XMLStreamException e) {
+			throw new XMLBindingException("failed to write XML, "
+					+ e.getMessage());
+		}
+	}
+
+	/*
+	 * Writes a RM object as a complex element, with xsi:type if its type
+	 * is not the declared one
+	 */
+	private void writeElement(XMLStreamWriter writer, String name,
+			Object rmObj, SchemaType declared, int depth, boolean compact)
+			throws XMLStreamException, XMLBindingException {
+		BindingPlan.ToStream plan = writePlan(rmObj.getClass());
+		writer.writeStartElement(V1_PREFIX, name, V1);
+		if (depth == 0) {
+			writer.writeNamespace(V1_PREFIX, V1);
+			writer.writeNamespace(XSI_PREFIX, XSI);
+		}
+		for (BindingPlan.Node node : plan.attributes) {
+			Object value = node.accessor.getValue(rmObj);
+			if (value != null) {
+				writer.writeAttribute(node.xmlName, toText(value, node));
+			}
+		}
+		if (plan.schemaType != declared) {
+			writer.writeAttribute(XSI_PREFIX, XSI, "type", V1_PREFIX + ":"
+					+ plan.schemaType.getName().getLocalPart());
+		}
+
+		boolean children = false;
+		for (BindingPlan.Node node : plan.elements) {
+			Object value = node.accessor.getValue(rmObj);
+			if (value instanceof Collection) {
+				for (Object item : (Collection) value) {
+					children |= writeChild(writer, node, item, depth + 1,
+							compact);
+				}
+			} else if (value instanceof Object[]) {
+				for (Object item : (Object[]) value) {
+					children |= writeChild(writer, node, item, depth + 1,
+							compact);
+				}
+			} else {
+				children |= writeChild(writer, node, value, depth + 1,
+						compact);
+			}
+		}
+		if (children && !compact) {
+			indent(writer, depth);
+		}
+		writer.writeEndElement();
+	}
+
+	/*
+	 * Writes one value of a RM attribute as an element, nothing if null
+	 */
+	private boolean writeChild(XMLStreamWriter writer, BindingPlan.Node node,
+			Object value, int depth, boolean compact)
+			throws XMLStreamException, XMLBindingException {
+		if (value == null) {
+			return false;
+		}
+		if (!compact) {
+			indent(writer, depth);
+		}
+		if (node.simple) {
+			writer.writeStartElement(V1_PREFIX, node.xmlName, V1);
+			writer.writeCharacters(toText(value, node));
+			writer.writeEndElement();
+		} else {
+			writeElement(writer, node.xmlName, value, node.type, depth,
+					compact);
+		}
+		return true;
+	}
+
+	/*
+	 * Line break and indentation of an element at given depth
+	 */
+	private static void indent(XMLStreamWriter writer, int depth)
+			throws XMLStreamException {
+		int length = 1 + depth * INDENT_SIZE;
+		if (length <= INDENT.length) {
+			writer.writeCharacters(INDENT, 0, length);
+		} else {
+			char[] chars = new char[length];
+			Arrays.fill(chars, ' ');
+			chars[0] = '\n';
+			writer.writeCharacters(chars, 0, length);
+		}
+	}
+
+	/*
+	 * Text of a simple value, printed the way XMLBeans prints the schema
+	 * type of the value
+	 */
+	private static String toText(Object value, BindingPlan.Node node) {
+		if (value instanceof ProportionKind) {
+			return Integer.toString(((ProportionKind) value).getValue());
+		}
+		if (value instanceof Number) {
+			if (node.builtinType == SchemaType.BTC_FLOAT) {
+				return XsTypeConverter.printFloat(
+						((Number) value).floatValue());
+			} else if (node.builtinType == SchemaType.BTC_DOUBLE) {
+				return XsTypeConverter.printDouble(
+						((Number) value).doubleValue());
+			}
+		}
+		if (value instanceof byte[]) {
+			return XsTypeConverter.printBase64Binary((byte[]) value)
+					.toString();
+		}
+		return value.toString();
+	}
+
+	/*
+	 * The global schema element of given RM class or its closest
+	 * superclass with one, or null
+	 */
+	private SchemaGlobalElement globalElement(Class rmClass) {
+		for (Class klass = rmClass; klass != null && klass != Object.class;
+				klass = klass.getSuperclass()) {
+			SchemaType type;
+			try {
+				type = writePlan(klass).schemaType;
+			} catch (XMLBindingException e) {
+				continue;
+			}
+			SchemaGlobalElement element = XmlBeans.getContextTypeLoader()
+					.findElement(new QName(V1, type.getName().getLocalPart()
+							.toLowerCase()));
+			if (element != null) {
+				return element;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * The cached plan writing instances of given RM class
+	 */
+	private static BindingPlan.ToStream writePlan(Class rmClass)
+			throws XMLBindingException {
+		BindingPlan.ToStream plan = writePlans.get(rmClass);
+		if (plan == null) {
+			plan = new BindingPlan.ToStream(rmClass);
+			writePlans.put(rmClass, plan);
+		}
+		return plan;
+	}
+
+	/*
+	 * Starts the object of the current element, with the values of its
+	 * XML attributes
+	 */
+	private Frame newFrame(String attribute, Class rmClass,
+			XMLStreamReader reader) throws XMLBindingException {
+		RMClassDescriptor descriptor = RMClassDescriptor.forClass(rmClass);
+		if (descriptor == null) {
+			throw new XMLBindingException("no RM type to bind element "
+					+ reader.getLocalName() + " of type " + rmClass);
+		}
+		Frame frame = new Frame(attribute, descriptor);
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			if (XSI.equals(reader.getAttributeNamespace(i))) {
+				continue;
+			}
+			String name = BindingPlan.toCamelCase(
+					reader.getAttributeLocalName(i));
+			int index = descriptor.indexOf(name);
+			if (index >= 0) {
+				frame.add(name, index, convert(reader.getAttributeValue(i),
+						elementType(descriptor, index), name));
+			}
+		}
+		return frame;
+	}
+
+	/*
+	 * An element being read, with the values of its attributes so far
+	 */
+	private final class Frame {
+
+		Frame(String attribute, RMClassDescriptor descriptor) {
+			this.attribute = attribute;
+			this.descriptor = descriptor;
+		}
+
+		void add(String name, int index, Object value) {
+			Class type = descriptor.getType(index);
+			if (type.isArray() || Collection.class.isAssignableFrom(type)) {
+				if (lists == null) {
+					lists = new HashMap<String, List<Object>>();
+				}
+				List<Object> list = lists.get(name);
+				if (list == null) {
+					list = new ArrayList<Object>();
+					lists.put(name, list);
+				}
+				list.add(value);
+			} else {
+				values.put(name, value);
+			}
+		}
+
+		Object build() throws RMObjectBuildingException {
+			if (lists != null) {
+				for (Map.Entry<String, List<Object>> entry : lists.entrySet()) {
+					values.put(entry.getKey(), entry.getValue().toArray());
+				}
+			}
+
+			// special fix for item_structure.items
+			int items = descriptor.indexOf("items");
+			if (items >= 0 && !values.containsKey("items")
+					&& List.class.isAssignableFrom(descriptor.getType(items))) {
+				values.put("items", new ArrayList());
+			}
+			return builder.construct(descriptor.getRMClass().getSimpleName(),
+					values);
+		}
+
+		/* fields */
+		final String attribute;
+		final RMClassDescriptor descriptor;
+		final Map<String, Object> values = new HashMap<String, Object>();
+		Map<String, List<Object>> lists;
+	}
+
+	/*
+	 * Skips the current element and all its content
+	 */
+	static void skipElement(XMLStreamReader reader)
+			throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	/*
+	 * The xsi:type of the current element without namespace prefix, or null
+	 */
+	static String xsiType(XMLStreamReader reader) {
+		String type = reader.getAttributeValue(XSI, "type");
+		if (type == null) {
+			return null;
+		}
+		int index = type.indexOf(':');
+		return index < 0 ? type : type.substring(index + 1);
+	}
+
+	/*
+	 * Type of the values of a RM attribute, the element type of
+	 * collections if declared
+	 */
+	static Class elementType(RMClassDescriptor descriptor, int index) {
+		Class[] types = elementTypes.get(descriptor.getRMClass());
+		if (types == null) {
+			Type[] generics = descriptor.getConstructor()
+					.getGenericParameterTypes();
+			types = new Class[descriptor.size()];
+			for (int i = 0; i < types.length; i++) {
+				Class type = descriptor.getType(i);
+				if (type.isArray()) {
+					type = type.getComponentType();
+				} else if (Collection.class.isAssignableFrom(type)) {
+					type = Object.class;
+					if (generics[i] instanceof ParameterizedType) {
+						Type arg = ((ParameterizedType) generics[i])
+								.getActualTypeArguments()[0];
+						if (arg instanceof ParameterizedType) {
+							arg = ((ParameterizedType) arg).getRawType();
+						}
+						if (arg instanceof Class) {
+							type = (Class) arg;
+						}
+					}
+				}
+				types[i] = type;
+			}
+			elementTypes.put(descriptor.getRMClass(), types);
+		}
+		return types[index];
+	}
+
+	/*
+	 * True if values of given type are bound from complex elements
+	 */
+	static boolean isRMClass(Class type) {
+		return type.getName().startsWith(OPENEHR_RM_PACKAGE)
+				&& !type.isEnum();
+	}
+
+	/*
+	 * Converts the text of a simple element or attribute to given type;
+	 * enumerations are left to the builder
+	 */
+	static Object convert(String text, Class type, String attribute)
+			throws XMLBindingException {
+		try {
+			if (type == int.class || type == Integer.class) {
+				return Integer.valueOf(text.trim());
+			} else if (type == double.class || type == Double.class) {
+				return Double.valueOf(text.trim());
+			} else if (type == float.class || type == Float.class) {
+				return Float.valueOf(text.trim());
+			} else if (type == long.class || type == Long.class) {
+				return Long.valueOf(text.trim());
+			} else if (type == boolean.class || type == Boolean.class) {
+				String value = text.trim();
+				return Boolean.valueOf("true".equals(value) || "1".equals(value));
+			}
+		} catch (NumberFormatException e) {
+			throw new XMLBindingException("wrong format of attribute "
+					+ attribute + ", expect " + type + ", got " + text);
+		}
+		return text;
+	}
+
+	/* logger */
+	private static Logger log = Logger.getLogger(XMLStreamBinding.class);
+
+	/* namespace of xsi:type */
+	private static final String XSI = XMLBinding.SCHEMA_XSI;
+
+	/* namespace of openEHR elements */
+	private static final String V1 = XMLBinding.SCHEMA_OPENEHR_ORG_V1;
+
+	/* prefixes used by XMLBinding */
+	private static final String V1_PREFIX = "v1";
+	private static final String XSI_PREFIX = "xsi";
+
+	private static final String ENCODING = "UTF-8";
+
+	/* spaces per level of indentation, as by XMLBeans */
+	private static final int INDENT_SIZE = 2;
+
+	/* line break followed by the indentation of the first levels */
+	private static final char[] INDENT = new char[1 + 32 * INDENT_SIZE];
+	static {
+		Arrays.fill(INDENT, ' ');
+		INDENT[0] = '\n';
+	}
+
+	/* namespace for rm class */
+	private static final String OPENEHR_RM_PACKAGE = "org.openehr.rm.";
+
+	/* element types of the attributes of RM classes */
+	private static final Map<Class, Class[]> elementTypes =
+		new ConcurrentHashMap<Class, Class[]>();
+
+	/* plans writing RM classes */
+	private static final Map<Class, BindingPlan.ToStream> writePlans =
+		new ConcurrentHashMap<Class, BindingPlan.ToStream>();
+
+	/* fields */
+	private final RMObjectBuilder builder;
+	private final XMLInputFactory inputFactory;
+	private final XMLOutputFactory outputFactory;
+}
+/*
+ * ***** BEGIN LICENSE BLOCK ***** Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the 'License'); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is XMLStreamBinding.java
+ *
+ * ***** END LICENSE BLOCK *****
+ */
@@ -0,0 +1,63 @@
+package org.openehr.binding;
+
+import java.util.HashMap;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.openehr.build.RMObjectBuilder;
+import org.openehr.build.SystemValue;
+import org.openehr.rm.common.changecontrol.OriginalVersion;
+import org.openehr.rm.composition.Composition;
+import org.openehr.rm.datastructure.itemstructure.representation.Element;
+import org.openehr.rm.datatypes.quantity.DvProportion;
+import org.openehr.schemas.v1.COMPOSITION;
+
+public class BindingPlanTest extends TestCase {
+
+	public void setUp() throws Exception {
+		builder = new RMObjectBuilder(new HashMap<SystemValue, Object>());
+	}
+
+	public void testSetters() throws Exception {
+		BindingPlan.Property property = property(Element.class, "nullFlavour");
+		assertEquals("setNullFlavour", property.setter.getName());
+		assertEquals("setValue",
+				property(Element.class, "value").setter.getName());
+	}
+
+	public void testFloatValueSetters() throws Exception {
+		assertTrue(property(DvProportion.class, "numerator").floatValue);
+		assertTrue(property(DvProportion.class, "denominator").floatValue);
+		assertFalse(property(DvProportion.class, "type").floatValue);
+	}
+
+	public void testSkippedAttributes() throws Exception {
+		assertNull(property(OriginalVersion.class, "isMerged"));
+		assertNull(property(Element.class, "parent"));
+	}
+
+	public void testDocumentPlan() throws Exception {
+		BindingPlan.ToXML plan = new BindingPlan.ToXML(Composition.class,
+				attributeNames(Composition.class), true);
+		assertTrue(plan.newXMLObject(null) instanceof COMPOSITION);
+	}
+
+	private BindingPlan.Property property(Class rmClass, String attribute)
+			throws Exception {
+		BindingPlan.ToXML plan = new BindingPlan.ToXML(rmClass,
+				attributeNames(rmClass), false);
+		for (BindingPlan.Property property : plan.properties) {
+			if (property.attributeName.equals(attribute)) {
+				return property;
+			}
+		}
+		return null;
+	}
+
+	private Set<String> attributeNames(Class rmClass) throws Exception {
+		return builder.retrieveAttribute(rmClass.getSimpleName()).keySet();
+	}
+
+	private RMObjectBuilder builder;
+}
@@ -0,0 +1,124 @@
+package org.openehr.binding;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+
+import org.openehr.rm.composition.Composition;
+
+public class BulkXMLImporterTest extends XMLBindingTestBase {
+
+	public void setUp() throws Exception {
+		super.setUp();
+		directory = File.createTempFile("bulk", "");
+		directory.delete();
+		directory.mkdir();
+		File sub = new File(directory, "sub");
+		sub.mkdir();
+		for (int i = 0; i < 10; i++) {
+			copy("composition.xml", new File(directory, "c" + i + ".xml"));
+		}
+		copy("simple_composition.xml", new File(sub, "s.xml"));
+		copy("dv_proportion.xml", new File(directory, "c5_bad.xml"));
+		copy("log4j.properties", new File(directory, "skipped.properties"));
+	}
+
+	public void tearDown() throws Exception {
+		delete(directory);
+	}
+
+	public void testImportOrdered() throws Exception {
+		final List<String> names = new ArrayList<String>();
+		BulkXMLImporter.Report report = new BulkXMLImporter(null, 3, 3)
+				.importDirectory(directory, true,
+						new BulkXMLImporter.Handler() {
+							public void bound(File file, Object rmObj) {
+								assertTrue(rmObj instanceof Composition);
+								names.add(file.getName());
+							}
+						});
+		assertEquals(Arrays.asList("c0.xml", "c1.xml", "c2.xml", "c3.xml",
+				"c4.xml", "c5.xml", "c6.xml", "c7.xml", "c8.xml", "c9.xml",
+				"s.xml"), names);
+		assertEquals(12, report.getFileCount());
+		assertEquals(11, report.getBoundCount());
+		assertEquals(1, report.getErrors().size());
+		assertTrue(report.getErrors().containsKey(
+				new File(directory, "c5_bad.xml")));
+		assertTrue(report.getBytes() > 0);
+	}
+
+	public void testImportUnordered() throws Exception {
+		final Set<String> names = new HashSet<String>();
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < 10; i++) {
+			files.add(new File(directory, "c" + i + ".xml"));
+		}
+		files.add(new File(directory, "missing.xml"));
+		BulkXMLImporter.Report report = new BulkXMLImporter(2).importFiles(
+				files.iterator(), false, new BulkXMLImporter.Handler() {
+					public void bound(File file, Object rmObj) {
+						assertTrue(names.add(file.getName()));
+					}
+				});
+		assertEquals(10, names.size());
+		assertEquals(11, report.getFileCount());
+		assertEquals(10, report.getBoundCount());
+		assertTrue(report.getErrors().containsKey(
+				new File(directory, "missing.xml")));
+	}
+
+	public void testSameAsSingleBinding() throws Exception {
+		final Object expected = new XMLStreamBinding().bindToRM(
+				fromClasspath("simple_composition.xml"));
+		final List<Object> bound = new ArrayList<Object>();
+		new BulkXMLImporter(2).importDirectory(new File(directory, "sub"),
+				true, new BulkXMLImporter.Handler() {
+					public void bound(File file, Object rmObj) {
+						bound.add(rmObj);
+					}
+				});
+		assertEquals(1, bound.size());
+		assertEquals(toXML(expected), toXML(bound.get(0)));
+	}
+
+	public void testInvalidArguments() throws Exception {
+		try {
+			new BulkXMLImporter(0);
+			fail("exception should be thrown");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new BulkXMLImporter(null, 4, 3);
+			fail("exception should be thrown");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private void copy(String resource, File file) throws Exception {
+		InputStream in = fromClasspath(resource);
+		OutputStream out = new FileOutputStream(file);
+		byte[] buf = new byte[4096];
+		for (int n; (n = in.read(buf)) > 0;) {
+			out.write(buf, 0, n);
+		}
+		out.close();
+		in.close();
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private File directory;
+}
@@ -0,0 +1,111 @@
+package org.openehr.binding;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.*;
+
+import org.apache.commons.io.IOUtils;
+import org.openehr.rm.common.archetyped.Locatable;
+import org.openehr.rm.datastructure.itemstructure.representation.Cluster;
+
+public class PathProjectionTest extends XMLBindingTestBase {
+
+	public void setUp() throws Exception {
+		super.setUp();
+		streamBinding = new XMLStreamBinding();
+	}
+
+	public void testSameAsItemsAtPaths() throws Exception {
+		List<String> paths = Arrays.asList(
+				"/name/value",
+				"/archetype_node_id",
+				"/context/start_time/value",
+				DATA + "/items[at0013.2]/value/magnitude",
+				DATA + "/items[at0011.1]",
+				DATA + "/items[at0011.1]/name/value",
+				DATA + "/items[at0011.1]/items[at0013.4, 'LDL-Cholesterol']/value",
+				DATA + "/items[at0011.1]/items[at0013.4, 'HDL-Cholesterol']",
+				DATA + "/items",
+				DATA + "/items/name/value",
+				"/content/items/data/events/time/value",
+				"/content[openEHR-EHR-SECTION.unknown.v1]/name",
+				"/no_such_attribute");
+		assertSameAsItemsAtPaths("composition.xml", paths);
+	}
+
+	public void testRootPath() throws Exception {
+		assertSameAsItemsAtPaths("composition.xml", Arrays.asList("/",
+				"/name/value"));
+	}
+
+	public void testNoPaths() throws Exception {
+		Map<String, Object> values = streamBinding.bindPaths(
+				fromClasspath("composition.xml"), new ArrayList<String>());
+		assertTrue(values.isEmpty());
+	}
+
+	public void testValues() throws Exception {
+		PathProjection projection = new PathProjection(Arrays.asList(
+				DATA + "/items[at0011.1]", DATA + "/items",
+				"/context/start_time/value"));
+		Map<String, Object> values = streamBinding.bindPaths(
+				fromClasspath("composition.xml"), projection);
+		assertEquals(projection.getPaths(), new ArrayList<String>(values
+				.keySet()));
+		assertTrue(values.get(DATA + "/items[at0011.1]") instanceof Cluster);
+		assertEquals(4, ((List) values.get(DATA + "/items")).size());
+		assertEquals("20080522T200427,833+0930",
+				values.get("/context/start_time/value"));
+	}
+
+	public void testSkipsSubtreesNotOnPaths() throws Exception {
+		String xml = readClasspath("composition.xml").replace(
+				"xsi:type=\"PARTY_IDENTIFIED\"", "xsi:type=\"NO_SUCH_TYPE\"");
+		try {
+			streamBinding.bindToRM(toStream(xml));
+			fail("exception should be thrown");
+		} catch (XMLBindingException e) {
+			// expected
+		}
+		Map<String, Object> values = streamBinding.bindPaths(toStream(xml),
+				Arrays.asList("/name/value", DATA
+						+ "/items[at0013.1]/value/magnitude"));
+		assertEquals("Lipids", values.get("/name/value"));
+		assertEquals(6.1, values.get(DATA + "/items[at0013.1]/value/magnitude"));
+	}
+
+	private void assertSameAsItemsAtPaths(String file, List<String> paths)
+			throws Exception {
+		Locatable locatable = (Locatable) streamBinding.bindToRM(
+				fromClasspath(file));
+		Map<String, Object> expected = locatable.itemsAtPaths(paths);
+		Map<String, Object> actual = streamBinding.bindPaths(
+				fromClasspath(file), paths);
+		assertEquals(new ArrayList<String>(expected.keySet()),
+				new ArrayList<String>(actual.keySet()));
+		for (String path : paths) {
+			assertEquals(path, toXML(expected.get(path)),
+					toXML(actual.get(path)));
+		}
+	}
+
+	private String readClasspath(String file) throws Exception {
+		InputStream in = fromClasspath(file);
+		try {
+			return IOUtils.toString(in, "UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+
+	private static InputStream toStream(String xml) throws Exception {
+		return new ByteArrayInputStream(xml.getBytes("UTF-8"));
+	}
+
+	private static final String DATA =
+		"/content[openEHR-EHR-SECTION.findings.v1]"
+		+ "/items[openEHR-EHR-OBSERVATION.laboratory-lipids.v1]"
+		+ "/data[at0001]/events[at0002]/data[at0003]";
+
+	private XMLStreamBinding streamBinding;
+}
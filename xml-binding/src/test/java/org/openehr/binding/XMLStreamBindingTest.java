@@ -0,0 +1,155 @@
+package org.openehr.binding;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.xmlbeans.XmlObject;
+import org.openehr.rm.common.changecontrol.OriginalVersion;
+import org.openehr.rm.datastructure.itemstructure.ItemTree;
+import org.openehr.rm.datatypes.quantity.DvProportion;
+import org.openehr.rm.datatypes.text.DvText;
+import org.openehr.schemas.v1.*;
+
+public class XMLStreamBindingTest extends XMLBindingTestBase {
+
+	public void setUp() throws Exception {
+		super.setUp();
+		streamBinding = new XMLStreamBinding();
+	}
+
+	public void testBindOriginalVersion() throws Exception {
+		String file = "original_version_002.xml";
+		Object rmObj = assertSameAsXMLBeans(file, VersionDocument.Factory
+				.parse(fromClasspath(file)).getVersion(), null);
+		assertTrue(rmObj instanceof OriginalVersion);
+	}
+
+	public void testBindComposition() throws Exception {
+		for (String file : new String[] { "composition.xml",
+				"simple_composition.xml" }) {
+			assertSameAsXMLBeans(file, CompositionDocument.Factory.parse(
+					fromClasspath(file)).getComposition(), null);
+		}
+	}
+
+	public void testBindItemTree() throws Exception {
+		for (String file : new String[] { "item_tree.xml",
+				"item_tree_002.xml" }) {
+			assertSameAsXMLBeans(file, ItemsDocument.Factory.parse(
+					fromClasspath(file)).getItems(), null);
+		}
+	}
+
+	public void testBindEmptyItemTree() throws Exception {
+		Object rmObj = assertSameAsXMLBeans("empty_item_tree.xml",
+				ITEMTREE.Factory.parse(fromClasspath("empty_item_tree.xml")),
+				null);
+		assertTrue(((ItemTree) rmObj).getItems().isEmpty());
+	}
+
+	public void testBindWithGivenType() throws Exception {
+		Object rmObj = assertSameAsXMLBeans("dv_proportion.xml",
+				DVPROPORTION.Factory.parse(fromClasspath("dv_proportion.xml")),
+				"DV_PROPORTION");
+		assertEquals(0.5, ((DvProportion) rmObj).getNumerator(), 0);
+	}
+
+	public void testUnknownRootType() throws Exception {
+		try {
+			streamBinding.bindToRM(fromClasspath("dv_proportion.xml"));
+			fail("exception should be thrown");
+		} catch (XMLBindingException e) {
+			// expected
+		}
+	}
+
+	public void testExternalEntityNotResolved() throws Exception {
+		File secret = File.createTempFile("secret", ".txt");
+		try {
+			FileUtils.writeStringToFile(secret, "secret", "UTF-8");
+			String xml = "<?xml version=\"1.0\"?>"
+				+ "<!DOCTYPE xml-fragment [<!ENTITY xxe SYSTEM \""
+				+ secret.toURI() + "\">]>"
+				+ "<xml-fragment xmlns:v1=\"http://schemas.openehr.org/v1\">"
+				+ "<v1:value>&xxe;</v1:value></xml-fragment>";
+			try {
+				Object rmObj = streamBinding.bindToRM(new ByteArrayInputStream(
+						xml.getBytes("UTF-8")), "DV_TEXT");
+				assertFalse(((DvText) rmObj).getValue().contains("secret"));
+			} catch (XMLBindingException e) {
+				// rejected, as expected
+			}
+		} finally {
+			secret.delete();
+		}
+	}
+
+	public void testWriteComposition() throws Exception {
+		for (String file : new String[] { "composition.xml",
+				"simple_composition.xml" }) {
+			Object rmObj = streamBinding.bindToRM(fromClasspath(file));
+			for (boolean compact : new boolean[] { false, true }) {
+				byte[] xml = write(rmObj, compact);
+				Object xmlBeans = binding.bindToRM(CompositionDocument.Factory
+						.parse(new ByteArrayInputStream(xml)).getComposition());
+				assertEquals(file, toXML(rmObj), toXML(xmlBeans));
+				Object stream = streamBinding.bindToRM(
+						new ByteArrayInputStream(xml));
+				assertEquals(file, toXML(rmObj), toXML(stream));
+			}
+		}
+	}
+
+	public void testWriteOriginalVersion() throws Exception {
+		Object rmObj = streamBinding.bindToRM(
+				fromClasspath("original_version_002.xml"));
+		String xml = new String(write(rmObj, false), "UTF-8");
+		assertTrue(xml, xml.contains("<v1:version xmlns:v1=\""
+				+ XMLBinding.SCHEMA_OPENEHR_ORG_V1 + "\" xmlns:xsi=\""
+				+ XMLBinding.SCHEMA_XSI + "\" xsi:type=\"v1:ORIGINAL_VERSION\">"));
+		assertTrue(xml, xml.contains("\n  <v1:contribution>"));
+
+		Object xmlBeans = binding.bindToRM(VersionDocument.Factory.parse(xml)
+				.getVersion());
+		assertEquals(toXML(rmObj), toXML(xmlBeans));
+	}
+
+	public void testWriteCompact() throws Exception {
+		Object rmObj = streamBinding.bindToRM(
+				fromClasspath("simple_composition.xml"));
+		String xml = new String(write(rmObj, true), "UTF-8");
+		assertFalse(xml, xml.contains("\n"));
+		assertFalse(xml, xml.contains("> "));
+		assertTrue(xml, xml.contains("<v1:composition "));
+		assertTrue(xml, xml.contains(" archetype_node_id=\""));
+	}
+
+	public void testWriteSubtypeOfDeclaredType() throws Exception {
+		Object rmObj = streamBinding.bindToRM(fromClasspath("dv_proportion.xml"),
+				"DV_PROPORTION");
+		String xml = new String(write(rmObj, true), "UTF-8");
+		assertTrue(xml, xml.contains("<v1:dv_proportion "));
+		assertTrue(xml, xml.contains("xsi:type=\"v1:DV_PROPORTION\""));
+		assertTrue(xml, xml.contains("<v1:numerator>0.5</v1:numerator>"));
+		assertEquals(toXML(rmObj), toXML(streamBinding.bindToRM(
+				new ByteArrayInputStream(xml.getBytes("UTF-8")))));
+	}
+
+	private byte[] write(Object rmObj, boolean compact) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		streamBinding.bindToXML(rmObj, out, compact);
+		return out.toByteArray();
+	}
+
+	private Object assertSameAsXMLBeans(String file, XmlObject xobj,
+			String rmType) throws Exception {
+		Object expected = binding.bindToRM(xobj);
+		Object actual = streamBinding.bindToRM(fromClasspath(file), rmType);
+		assertEquals(file, toXML(expected), toXML(actual));
+		return actual;
+	}
+
+	private XMLStreamBinding streamBinding;
+}